@@ -62,6 +62,10 @@ PY2 = 1
 
 PY3 = 2
 
+# The define used to request that target info is written as JSON rather than as a text format
+# proto, which is much faster for the IDE to parse. Must match AspectStrategy.JSON_IDE_INFO_FLAG.
+IDE_INFO_FORMAT_DEFINE = "intellij_ide_info_format"
+
 ##### Begin bazel-flag-hack
 # The flag hack stuff below is a way to detect flags that bazel has been invoked with from the
 # aspect. Once PY3-as-default is stable, it can be removed. When removing, also remove the
@@ -1132,7 +1136,8 @@ def intellij_info_aspect_impl(target, ctx, semantics):
     if aspect_ids:
         aspect_hash = hash(".".join(aspect_ids))
         file_name = file_name + "-" + str(aspect_hash)
-    file_name = file_name + ".intellij-info.txt"
+    json_output = ctx.var.get(IDE_INFO_FORMAT_DEFINE) == "json"
+    file_name = file_name + (".intellij-info.json" if json_output else ".intellij-info.txt")
     ide_info_file = ctx.actions.declare_file(file_name)
 
     target_key = make_target_key(target.label, aspect_ids)
@@ -1168,7 +1173,7 @@ def intellij_info_aspect_impl(target, ctx, semantics):
 
     # Output the ide information file.
     info = struct_omit_none(**ide_info)
-    ctx.actions.write(ide_info_file, proto.encode_text(info))
+    ctx.actions.write(ide_info_file, json.encode(info) if json_output else proto.encode_text(info))
 
     # Return providers.
     return struct_omit_none(
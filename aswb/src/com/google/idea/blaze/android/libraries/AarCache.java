@@ -71,15 +71,14 @@ public class AarCache {
   }
 
   /**
-   * Create a clean aar directory for the given key. The directory will be removed and recreate if
-   * the directory has already existed.
+   * Get the aar directory for the given key, creating it if it doesn't exist. Existing contents are
+   * kept, so that files which don't change when the aar is unpacked again aren't rewritten.
    */
-  public File recreateAarDir(FileOperationProvider ops, String key) throws IOException {
+  public File getOrCreateAarDir(FileOperationProvider ops, String key) throws IOException {
     File aarDir = aarDirForKey(key);
-    if (ops.exists(aarDir)) {
-      ops.deleteRecursively(aarDir, true);
+    if (!ops.isDirectory(aarDir) && !ops.mkdirs(aarDir)) {
+      throw new IOException("Fail to create aar dir " + aarDir);
     }
-    ops.mkdirs(aarDir);
     return aarDir;
   }
 
@@ -90,18 +89,18 @@ public class AarCache {
    * @param key the key to retrieve aar directory from cache
    * @param aarFile the aar file that we need to create timestamp file for. The modified time of
    *     time stamp file will be updated the same as that of the aar file. So that it can be used to
-   *     decide if the aar file need to be updated next time. Time stamp file will use creation time
-   *     as modified time if null is provided.
+   *     decide if the aar file need to be updated next time. Time stamp file will use the current
+   *     time as modified time if null is provided.
    */
   public File createTimeStampFile(String key, @Nullable File aarFile) throws IOException {
     FileOperationProvider ops = FileOperationProvider.getInstance();
     File stampFile = new File(aarDirForKey(key), STAMP_FILE_NAME);
     stampFile.createNewFile();
-    if (aarFile != null) {
-      long sourceTime = ops.getFileModifiedTime(aarFile);
-      if (!ops.setFileModifiedTime(stampFile, sourceTime)) {
-        throw new IOException("Fail to update file modified time for " + aarFile);
-      }
+    // The stamp file may be left over from an earlier version of the aar.
+    long sourceTime =
+        aarFile != null ? ops.getFileModifiedTime(aarFile) : System.currentTimeMillis();
+    if (!ops.setFileModifiedTime(stampFile, sourceTime)) {
+      throw new IOException("Fail to update file modified time for " + stampFile);
     }
     return stampFile;
   }
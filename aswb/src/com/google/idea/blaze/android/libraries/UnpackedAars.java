@@ -195,10 +195,11 @@ public class UnpackedAars {
       }
 
       // update cache files
-      Unpacker.unpack(projectState, updatedKeys, aarCache);
+      Unpacker.UnpackStats stats = Unpacker.unpack(projectState, updatedKeys, aarCache);
 
       if (!updatedKeys.isEmpty()) {
         context.output(PrintOutput.log(String.format("Copied %d AARs", updatedKeys.size())));
+        logger.info(String.format("Unpacked %d AARs: %s", updatedKeys.size(), stats));
       }
 
     } catch (InterruptedException e) {
@@ -16,30 +16,46 @@
 
 package com.google.idea.blaze.android.libraries;
 
+import static com.android.SdkConstants.FD_ASSETS;
+import static com.android.SdkConstants.FD_RES;
+import static com.android.SdkConstants.FN_ANDROID_MANIFEST_XML;
+import static com.android.SdkConstants.FN_ANNOTATIONS_ZIP;
 import static com.android.SdkConstants.FN_LINT_JAR;
+import static com.android.SdkConstants.FN_PUBLIC_TXT;
+import static com.android.SdkConstants.FN_RESOURCE_TEXT;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.util.io.ZipUtil;
+import com.intellij.util.PathUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Unzip prefetched aars to local cache directories. AARs are directories with many files. {@see
@@ -59,30 +75,91 @@ import java.util.concurrent.ExecutionException;
  *       org.jetbrains.android.uipreview.ModuleClassLoader}, for that possible assumption.
  *   <li>The IDE may want the AndroidManifest.xml as well.
  * </ul>
+ *
+ * <p>AARs are read as a stream, so remote AARs don't need to be copied to a local file first.
+ * Files which are unchanged since the AAR was last unpacked are left untouched, so that the IDE
+ * doesn't see them as modified.
  */
 public final class Unpacker {
   private static final Logger logger = Logger.getInstance(Unpacker.class);
   // Jars that are expected to be extracted from .aar to local
   private static final ImmutableSet<String> EXPECTED_JARS =
       ImmutableSet.of(FN_LINT_JAR, "inspector.jar");
+  // Top level files used by the IDE, in addition to EXPECTED_JARS.
+  private static final ImmutableSet<String> EXPECTED_FILES =
+      ImmutableSet.of(
+          FN_ANDROID_MANIFEST_XML, FN_RESOURCE_TEXT, FN_PUBLIC_TXT, FN_ANNOTATIONS_ZIP);
+  // Directories used by the IDE.
+  private static final ImmutableSet<String> EXPECTED_DIRECTORIES = ImmutableSet.of(FD_RES, FD_ASSETS);
+
+  /** Entries larger than this are always written, rather than compared with the existing file. */
+  private static final int MAX_COMPARED_ENTRY_SIZE = 1024 * 1024;
+
+  private static final BoolExperiment selectiveExtraction =
+      new BoolExperiment("aswb.aar.selective.extraction", true);
+
+  /** Byte counts for the AARs unpacked by a single call to {@link #unpack}. */
+  public static final class UnpackStats {
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesUnchanged = new AtomicLong();
+    private final AtomicLong bytesNotExtracted = new AtomicLong();
+    private final AtomicLong bytesNotCopiedLocally = new AtomicLong();
+
+    /** The number of bytes written to the cache. */
+    public long getBytesWritten() {
+      return bytesWritten.get();
+    }
+
+    /** The number of bytes saved by leaving files with unchanged contents untouched. */
+    public long getBytesUnchanged() {
+      return bytesUnchanged.get();
+    }
+
+    /** The number of bytes saved by not extracting entries the IDE doesn't use. */
+    public long getBytesNotExtracted() {
+      return bytesNotExtracted.get();
+    }
+
+    /** The number of bytes saved by not copying remote AARs to a local file before unpacking. */
+    public long getBytesNotCopiedLocally() {
+      return bytesNotCopiedLocally.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "wrote %d kB; skipped %d kB unchanged, %d kB unused and %d kB of local copies",
+          getBytesWritten() / 1024,
+          getBytesUnchanged() / 1024,
+          getBytesNotExtracted() / 1024,
+          getBytesNotCopiedLocally() / 1024);
+    }
+  }
 
   /** Updated prefetched aars to aar directory. */
-  public static void unpack(
+  public static UnpackStats unpack(
       ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys, AarCache aarCache)
       throws ExecutionException, InterruptedException {
-    unpackAarsToDir(toCache, updatedKeys, aarCache);
+    UnpackStats stats = new UnpackStats();
+    unpackAarsToDir(toCache, updatedKeys, aarCache, stats);
+    return stats;
   }
 
   private static void unpackAarsToDir(
-      ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys, AarCache aarCache)
+      ImmutableMap<String, AarLibraryContents> toCache,
+      Set<String> updatedKeys,
+      AarCache aarCache,
+      UnpackStats stats)
       throws ExecutionException, InterruptedException {
     FileOperationProvider ops = FileOperationProvider.getInstance();
+    // AARs are unpacked in parallel. Entries within an AAR are written sequentially, as they're
+    // read sequentially from the stream anyway.
     List<ListenableFuture<?>> futures = new ArrayList<>();
     updatedKeys.forEach(
         key ->
             futures.add(
                 FetchExecutor.EXECUTOR.submit(
-                    () -> unpackAarToDir(ops, toCache.get(key), aarCache))));
+                    () -> unpackAarToDir(ops, toCache.get(key), aarCache, stats))));
     Futures.allAsList(futures).get();
   }
 
@@ -92,28 +169,27 @@ public final class Unpacker {
    * with same name is found next time.
    */
   private static void unpackAarToDir(
-      FileOperationProvider ops, AarLibraryContents aarLibraryContents, AarCache aarCache) {
+      FileOperationProvider ops,
+      AarLibraryContents aarLibraryContents,
+      AarCache aarCache,
+      UnpackStats stats) {
     String cacheKey = UnpackedAarUtils.getAarDirName(aarLibraryContents.aar());
     try {
-      File aarDir = aarCache.recreateAarDir(ops, cacheKey);
-      // TODO(brendandouglas): decompress via ZipInputStream so we don't require a local file
-      File toCopy = getOrCreateLocalFile(aarLibraryContents.aar());
-      ZipUtil.extract(
-          toCopy,
-          aarDir,
-          // Skip jars except EXPECTED_JARS. We will copy jar in AarLibraryContents instead.
-          // That could give us freedom in the future to use an ijar or header jar instead,
-          // which is more lightweight. For EXPECTED_JARS, they are not collected JarLibrary,
-          // so that we are not able to copy them from AarLibraryContents. But we need them for
-          // some functions e.g. lint check, lay out inspection etc. So copy them directly.
-          (dir, name) -> EXPECTED_JARS.contains(name) || !name.endsWith(".jar"));
-
+      File aarDir = aarCache.getOrCreateAarDir(ops, cacheKey);
+      // Every file belonging to the unpacked AAR. Anything else is left over from an older version.
+      Set<Path> unpackedFiles = new HashSet<>();
       BlazeArtifact aar = aarLibraryContents.aar();
+      extract(aar, aarDir.toPath(), unpackedFiles, stats);
+      if (!(aar instanceof LocalFileArtifact)) {
+        stats.bytesNotCopiedLocally.addAndGet(aar.getLength());
+      }
 
       try {
-        aarCache.createTimeStampFile(
-            cacheKey,
-            (aar instanceof LocalFileArtifact) ? ((LocalFileArtifact) aar).getFile() : null);
+        File stampFile =
+            aarCache.createTimeStampFile(
+                cacheKey,
+                (aar instanceof LocalFileArtifact) ? ((LocalFileArtifact) aar).getFile() : null);
+        unpackedFiles.add(stampFile.toPath());
       } catch (IOException e) {
         logger.warn("Failed to set AAR cache timestamp for " + aar, e);
       }
@@ -123,7 +199,9 @@ public final class Unpacker {
         try (InputStream stream = aarLibraryContents.jar().getInputStream()) {
           Path destination = Paths.get(UnpackedAarUtils.getJarFile(aarDir).getPath());
           ops.mkdirs(destination.getParent().toFile());
-          Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
+          stats.bytesWritten.addAndGet(
+              Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING));
+          unpackedFiles.add(destination);
         } catch (Exception e) {
           logger.warn("Failed to copy class jar for " + aar, e);
         }
@@ -134,11 +212,15 @@ public final class Unpacker {
         try (InputStream stream = srcjar.getInputStream()) {
           Path destination = aarDir.toPath().resolve(UnpackedAarUtils.getSrcJarName(srcjar));
           ops.mkdirs(destination.getParent().toFile());
-          Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
+          stats.bytesWritten.addAndGet(
+              Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING));
+          unpackedFiles.add(destination);
         } catch (Exception e) {
           logger.warn("Failed to copy source jar for " + aar, e);
         }
       }
+
+      deleteOtherFiles(aarDir.toPath(), unpackedFiles);
     } catch (IOException e) {
       logger.warn(
           String.format(
@@ -148,19 +230,100 @@ public final class Unpacker {
     }
   }
 
-  /** Returns a locally-accessible file mirroring the contents of this {@link BlazeArtifact}. */
-  private static File getOrCreateLocalFile(BlazeArtifact artifact) throws IOException {
-    if (artifact instanceof LocalFileArtifact) {
-      return ((LocalFileArtifact) artifact).getFile();
+  /**
+   * Extracts the entries of {@code aar} which the IDE uses into {@code aarDir}, adding the path of
+   * each to {@code extracted}. Files whose contents haven't changed aren't rewritten.
+   */
+  private static void extract(
+      BlazeArtifact aar, Path aarDir, Set<Path> extracted, UnpackStats stats) throws IOException {
+    Path root = aarDir.toAbsolutePath().normalize();
+    try (InputStream stream = aar.getInputStream();
+        ZipInputStream zip = new ZipInputStream(stream)) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        if (!shouldExtract(entry.getName())) {
+          stats.bytesNotExtracted.addAndGet(ByteStreams.exhaust(zip));
+          continue;
+        }
+        Path destination = root.resolve(entry.getName()).normalize();
+        if (!destination.startsWith(root) || destination.equals(root)) {
+          throw new IOException("Invalid entry " + entry.getName() + " in " + aar);
+        }
+        Files.createDirectories(destination.getParent());
+        writeIfChanged(zip, destination, stats);
+        extracted.add(destination);
+      }
+    }
+  }
+
+  private static boolean shouldExtract(String entryName) {
+    String fileName = PathUtil.getFileName(entryName);
+    // Skip jars except EXPECTED_JARS. We will copy jar in AarLibraryContents instead.
+    // That could give us freedom in the future to use an ijar or header jar instead,
+    // which is more lightweight. For EXPECTED_JARS, they are not collected JarLibrary,
+    // so that we are not able to copy them from AarLibraryContents. But we need them for
+    // some functions e.g. lint check, lay out inspection etc. So copy them directly.
+    if (fileName.endsWith(".jar")) {
+      return EXPECTED_JARS.contains(fileName);
+    }
+    if (!selectiveExtraction.getValue()) {
+      return true;
+    }
+    int separator = entryName.indexOf('/');
+    return separator == -1
+        ? EXPECTED_FILES.contains(entryName)
+        : EXPECTED_DIRECTORIES.contains(entryName.substring(0, separator));
+  }
+
+  /**
+   * Writes the rest of {@code in} to {@code destination}, unless it already has the same contents.
+   * Small entries are buffered and compared by size and contents; larger ones are always written.
+   */
+  private static void writeIfChanged(InputStream in, Path destination, UnpackStats stats)
+      throws IOException {
+    byte[] buffer = ByteStreams.toByteArray(ByteStreams.limit(in, MAX_COMPARED_ENTRY_SIZE + 1));
+    if (buffer.length <= MAX_COMPARED_ENTRY_SIZE && hasContents(destination, buffer)) {
+      stats.bytesUnchanged.addAndGet(buffer.length);
+      return;
+    }
+    try (OutputStream out = Files.newOutputStream(destination)) {
+      out.write(buffer);
+      stats.bytesWritten.addAndGet(buffer.length + ByteStreams.copy(in, out));
+    }
+  }
+
+  private static boolean hasContents(Path file, byte[] contents) throws IOException {
+    if (!Files.isRegularFile(file) || Files.size(file) != contents.length) {
+      return false;
     }
-    File tmpFile =
-        FileUtil.createTempFile(
-            "local-aar-file",
-            Integer.toHexString(UnpackedAarUtils.getArtifactKey(artifact).hashCode()),
-            /* deleteOnExit= */ true);
-    try (InputStream stream = artifact.getInputStream()) {
-      Files.copy(stream, Paths.get(tmpFile.getPath()), StandardCopyOption.REPLACE_EXISTING);
-      return tmpFile;
+    return Arrays.equals(Files.readAllBytes(file), contents);
+  }
+
+  /** Deletes the files and empty directories in {@code aarDir} which aren't in {@code keep}. */
+  private static void deleteOtherFiles(Path aarDir, Set<Path> keep) throws IOException {
+    Set<Path> normalized = new HashSet<>();
+    keep.forEach(path -> normalized.add(path.toAbsolutePath().normalize()));
+    Path root = aarDir.toAbsolutePath().normalize();
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(root)) {
+      // children before their parents
+      paths = walk.sorted(Comparator.reverseOrder()).collect(toImmutableList());
+    }
+    for (Path path : paths) {
+      if (path.equals(root) || normalized.contains(path)) {
+        continue;
+      }
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> children = Files.list(path)) {
+          if (children.findAny().isPresent()) {
+            continue;
+          }
+        }
+      }
+      Files.deleteIfExists(path);
     }
   }
 
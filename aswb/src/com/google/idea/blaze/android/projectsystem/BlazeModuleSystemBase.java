@@ -626,6 +626,21 @@ abstract class BlazeModuleSystemBase implements AndroidModuleSystem {
     return libraries.build();
   }
 
+  /** Collects the workspace module's libraries in the background once sync completes. */
+  static class EagerWorkspaceModuleLibraries
+      implements SyncCache.EagerComputable<ImmutableList<ExternalAndroidLibrary>> {
+    @Override
+    public Object getKey() {
+      return BlazeModuleSystem.class;
+    }
+
+    @Override
+    public ImmutableList<ExternalAndroidLibrary> compute(
+        Project project, BlazeProjectData projectData) {
+      return getLibrariesForWorkspaceModule(project, projectData);
+    }
+  }
+
   @Nullable
   static ExternalAndroidLibrary toExternalLibrary(
       Project project, @Nullable AarLibrary library, ArtifactLocationDecoder decoder) {
@@ -366,6 +366,57 @@ public class UnpackedAarsTest extends BlazeTestCase {
     assertThat(messages).doesNotContain("Copied 1 AARs");
   }
 
+  @Test
+  public void refresh_unusedEntriesNotExtracted() {
+    UnpackedAars unpackedAars = UnpackedAars.getInstance(project);
+    File aarCacheDir = unpackedAars.getCacheDir();
+
+    String resourceAar = "resource.aar";
+    LibraryFileBuilder.aar(workspaceRoot, resourceAar)
+        .addContent("res/values/colors.xml", ImmutableList.of(COLORS_XML_CONTENT))
+        .addContent("R.txt", ImmutableList.of("int color primary 0x7f010001"))
+        .addContent("proguard.txt", ImmutableList.of("-keep class com.google.foo.**"))
+        .addContent("jni/x86/libfoo.so", new byte[] {1, 2, 3})
+        .addContent("classes.jar", new byte[] {4, 5, 6})
+        .build();
+    ArtifactLocation resourceAarArtifactLocation = generateArtifactLocation(resourceAar);
+    AarLibrary resourceAarLibrary = new AarLibrary(resourceAarArtifactLocation, null);
+
+    BlazeAndroidImportResult importResult =
+        new BlazeAndroidImportResult(
+            ImmutableList.of(),
+            ImmutableMap.of(
+                LibraryKey.libraryNameFromArtifactLocation(resourceAarArtifactLocation),
+                resourceAarLibrary),
+            ImmutableList.of(),
+            ImmutableList.of());
+    BlazeAndroidSyncData syncData =
+        new BlazeAndroidSyncData(importResult, new AndroidSdkPlatform("stable", 15));
+    BlazeProjectData blazeProjectData =
+        MockBlazeProjectDataBuilder.builder(workspaceRoot)
+            .setWorkspaceLanguageSettings(
+                new WorkspaceLanguageSettings(WorkspaceType.ANDROID, ImmutableSet.of()))
+            .setSyncState(new SyncState.Builder().put(syncData).build())
+            .setArtifactLocationDecoder(remoteArtifactLocationDecoder)
+            .build();
+    FileCache.EP_NAME
+        .extensions()
+        .forEach(
+            ep ->
+                ep.onSync(
+                    getProject(),
+                    context,
+                    ProjectViewSet.builder().add(ProjectView.builder().build()).build(),
+                    blazeProjectData,
+                    null,
+                    SyncMode.INCREMENTAL));
+
+    assertThat(aarCacheDir.list()).hasLength(1);
+    File aarDir = unpackedAars.getAarDir(remoteArtifactLocationDecoder, resourceAarLibrary);
+    assertThat(aarDir.list()).asList().containsExactly("aar.timestamp", "res", "R.txt");
+    assertThat(writingOutputSink.getMessages()).contains("Copied 1 AARs");
+  }
+
   @Test
   public void refresh_localArtifact_includeLintJar() throws IOException {
     testRefreshIncludeLintJar(localArtifactLocationDecoder);
@@ -20,6 +20,11 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 /** An base output stream which marshals output into newline-delimited segments for processing. */
 public final class LineProcessingOutputStream extends OutputStream {
@@ -34,7 +39,21 @@ public final class LineProcessingOutputStream extends OutputStream {
     boolean processLine(String line);
   }
 
-  private final StringBuffer stringBuffer = new StringBuffer();
+  private static final int CHAR_BUFFER_SIZE = 8192;
+
+  private final CharsetDecoder decoder =
+      UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  // Decoded output, scanned for line breaks as soon as it's written.
+  private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+  // The trailing bytes of a character split across writes. Never holds a whole character.
+  private final ByteBuffer splitCharacter = ByteBuffer.allocate(8);
+  // The start of a line not yet terminated by a line break.
+  private final StringBuilder partialLine = new StringBuilder();
+  // Whether the last character was '\r', so that a following '\n' completes the same line break.
+  private boolean skipLineFeed;
   private volatile boolean closed;
   private final ImmutableList<LineProcessor> lineProcessors;
 
@@ -52,40 +71,67 @@ public final class LineProcessingOutputStream extends OutputStream {
 
   @Override
   public synchronized void write(byte[] b, int off, int len) {
-    if (!closed) {
-      String text = new String(b, off, len, UTF_8);
-      stringBuffer.append(text);
+    if (closed) {
+      return;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+    // Complete any character split across writes, a byte at a time.
+    while (splitCharacter.position() > 0 && bytes.hasRemaining()) {
+      splitCharacter.put(bytes.get());
+      splitCharacter.flip();
+      decode(splitCharacter);
+      splitCharacter.compact();
+    }
+    decode(bytes);
+    splitCharacter.put(bytes);
+  }
 
-      while (true) {
-        int lineBreakIndex = -1;
-        int lineBreakLength = 0;
-        for (int i = 0; i < stringBuffer.length(); ++i) {
-          char c = stringBuffer.charAt(i);
-          if (c == '\r' || c == '\n') {
-            lineBreakIndex = i;
-            lineBreakLength = 1;
-            if (c == '\r'
-                && (i + 1) < stringBuffer.length()
-                && stringBuffer.charAt(i + 1) == '\n') {
-              ++lineBreakLength;
-            }
-            break;
-          }
-        }
+  /** Decodes as much of {@code bytes} as possible, processing any complete lines. */
+  private void decode(ByteBuffer bytes) {
+    while (true) {
+      CoderResult result = decoder.decode(bytes, chars, /* endOfInput= */ false);
+      chars.flip();
+      processLines(chars.array(), chars.limit());
+      chars.clear();
+      if (!result.isOverflow()) {
+        return;
+      }
+    }
+  }
 
-        if (lineBreakIndex == -1) {
-          return;
+  /** Processes each line ending in {@code text[0, length)}, keeping the rest for the next write. */
+  private void processLines(char[] text, int length) {
+    int lineStart = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text[i];
+      if (skipLineFeed) {
+        skipLineFeed = false;
+        if (c == '\n') {
+          lineStart = i + 1;
+          continue;
         }
+      }
+      if (c != '\r' && c != '\n') {
+        continue;
+      }
+      String line;
+      if (partialLine.length() == 0) {
+        line = new String(text, lineStart, i - lineStart);
+      } else {
+        line = partialLine.append(text, lineStart, i - lineStart).toString();
+        partialLine.setLength(0);
+      }
+      skipLineFeed = c == '\r';
+      lineStart = i + 1;
+      processLine(line);
+    }
+    partialLine.append(text, lineStart, length - lineStart);
+  }
 
-        String line = stringBuffer.substring(0, lineBreakIndex);
-
-        stringBuffer.delete(0, lineBreakIndex + lineBreakLength);
-
-        for (LineProcessor lineProcessor : lineProcessors) {
-          if (!lineProcessor.processLine(line)) {
-            break;
-          }
-        }
+  private void processLine(String line) {
+    for (LineProcessor lineProcessor : lineProcessors) {
+      if (!lineProcessor.processLine(line)) {
+        break;
       }
     }
   }
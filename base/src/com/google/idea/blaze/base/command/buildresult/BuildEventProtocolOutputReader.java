@@ -32,8 +32,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
@@ -54,11 +56,31 @@ public final class BuildEventProtocolOutputReader {
    */
   public static BlazeTestResults parseTestResults(BuildEventStreamProvider streamProvider)
       throws BuildEventStreamException {
+    return parseTestResults(streamProvider, result -> {});
+  }
+
+  /**
+   * Returns all test results from {@link BuildEventStreamProvider}, passing the results of each
+   * test target to {@code listener} as soon as its {@code TEST_SUMMARY} event has been read. The
+   * summary follows the results of every shard, run and attempt of the target, so they are passed
+   * together. Results with no summary are passed once the end of the stream is reached.
+   *
+   * <p>This allows the results of each test target to be reported while the test invocation is
+   * still running, when {@code streamProvider} is a {@link TailingBuildEventStreamProvider}.
+   *
+   * @throws BuildEventStreamException if the BEP {@link BuildEventStreamProvider} is incorrectly
+   *     formatted
+   */
+  public static BlazeTestResults parseTestResults(
+      BuildEventStreamProvider streamProvider, Consumer<ImmutableList<BlazeTestResult>> listener)
+      throws BuildEventStreamException {
     Map<String, String> configIdToMnemonic = new HashMap<>();
     Map<String, Kind> labelToKind = new HashMap<>();
     Map<String, String> labelToMnemonic = new HashMap<>();
     long startTimeMillis = 0L;
     ImmutableList.Builder<BlazeTestResult> results = ImmutableList.builder();
+    // The results of each target which has no summary yet, keyed by label and configuration.
+    Map<String, ImmutableList.Builder<BlazeTestResult>> unsummarized = new LinkedHashMap<>();
     BuildEventStreamProtos.BuildEvent event;
     while ((event = streamProvider.getNext()) != null) {
       switch (event.getId().getIdCase()) {
@@ -89,20 +111,40 @@ public final class BuildEventProtocolOutputReader {
           continue;
         case TEST_RESULT:
           label = event.getId().getTestResult().getLabel();
-          results.add(
+          BlazeTestResult result =
               parseTestResult(
                   label,
                   labelToKind.get(label),
                   labelToMnemonic.get(label),
                   event.getTestResult(),
-                  startTimeMillis));
+                  startTimeMillis);
+          results.add(result);
+          unsummarized
+              .computeIfAbsent(
+                  targetKey(label, event.getId().getTestResult().getConfiguration().getId()),
+                  k -> ImmutableList.builder())
+              .add(result);
+          continue;
+        case TEST_SUMMARY:
+          label = event.getId().getTestSummary().getLabel();
+          ImmutableList.Builder<BlazeTestResult> targetResults =
+              unsummarized.remove(
+                  targetKey(label, event.getId().getTestSummary().getConfiguration().getId()));
+          if (targetResults != null) {
+            listener.accept(targetResults.build());
+          }
           continue;
         default: // continue
       }
     }
+    unsummarized.values().forEach(targetResults -> listener.accept(targetResults.build()));
     return BlazeTestResults.fromFlatList(results.build());
   }
 
+  private static String targetKey(String label, String configurationId) {
+    return label + " " + configurationId;
+  }
+
   /** Convert BEP 'target_kind' to our internal format */
   @Nullable
   private static Kind parseTargetKind(String kind) {
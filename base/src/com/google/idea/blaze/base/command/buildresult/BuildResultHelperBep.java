@@ -15,7 +15,11 @@
  */
 package com.google.idea.blaze.base.command.buildresult;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.idea.blaze.base.command.buildresult.BuildEventStreamProvider.BuildEventStreamException;
+import com.google.idea.blaze.base.command.buildresult.ParsedBepOutput.CompletedTargetListener;
 import com.google.idea.blaze.base.io.InputStreamProvider;
 import com.google.idea.blaze.base.run.testlogs.BlazeTestResults;
 import com.intellij.openapi.diagnostic.Logger;
@@ -27,6 +31,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
 /**
@@ -39,6 +45,11 @@ public class BuildResultHelperBep implements BuildResultHelper {
 
   private static final Logger logger = Logger.getInstance(BuildResultHelperBep.class);
   private final File outputFile;
+  // Set if the output is being parsed while the build runs.
+  @Nullable private ListenableFuture<ParsedBepOutput> streamedOutput;
+  private volatile boolean buildComplete = false;
+  // Set once the result of streamedOutput, including any failure, has been passed on.
+  private volatile boolean streamedOutputRetrieved = false;
 
   public BuildResultHelperBep() {
     outputFile = BuildEventProtocolUtils.createTempOutputFile();
@@ -54,9 +65,38 @@ public class BuildResultHelperBep implements BuildResultHelper {
     return BuildEventProtocolUtils.getBuildFlags(outputFile);
   }
 
+  /**
+   * Starts parsing the BEP output on {@code executor} while the build is running, and passes the
+   * outputs of each target to {@code listener} as soon as it completes. {@link #getBuildOutput}
+   * then returns the result of this, rather than parsing the output after the build.
+   *
+   * <p>Must be called before the build starts.
+   */
+  public void streamBuildOutput(
+      CompletedTargetListener listener, ListeningExecutorService executor) {
+    streamedOutput =
+        executor.submit(
+            () -> {
+              try (TailingBuildEventStreamProvider stream =
+                  new TailingBuildEventStreamProvider(outputFile, () -> buildComplete)) {
+                return ParsedBepOutput.parseBepArtifacts(stream, null, listener);
+              }
+            });
+  }
+
   @Override
   public ParsedBepOutput getBuildOutput(Optional<String> completedBuildId)
       throws GetArtifactsException {
+    if (streamedOutput != null) {
+      buildComplete = true;
+      streamedOutputRetrieved = true;
+      try {
+        return Uninterruptibles.getUninterruptibly(streamedOutput);
+      } catch (ExecutionException e) {
+        logger.error(e.getCause());
+        throw new GetArtifactsException(e.getCause().getMessage());
+      }
+    }
     try (InputStream inputStream = new BufferedInputStream(new FileInputStream(outputFile))) {
       return ParsedBepOutput.parseBepArtifacts(inputStream);
     } catch (IOException | BuildEventStreamException e) {
@@ -94,6 +134,18 @@ public class BuildResultHelperBep implements BuildResultHelper {
 
   @Override
   public void close() {
+    buildComplete = true;
+    if (streamedOutput != null) {
+      // Once the build is complete the stream ends at the end of the file, so this doesn't wait
+      // long. The file mustn't be deleted while it's still being read.
+      try {
+        Uninterruptibles.getUninterruptibly(streamedOutput);
+      } catch (ExecutionException e) {
+        if (!streamedOutputRetrieved) {
+          logger.warn("Failed to parse BEP output while the build was running", e.getCause());
+        }
+      }
+    }
     if (!outputFile.delete()) {
       logger.warn("Could not delete BEP output file: " + outputFile);
     }
@@ -97,6 +97,22 @@ public final class ParsedBepOutput {
   public static ParsedBepOutput parseBepArtifacts(
       BuildEventStreamProvider stream, @Nullable Interner<String> interner)
       throws BuildEventStreamException {
+    return parseBepArtifacts(stream, interner, null);
+  }
+
+  /**
+   * Parses BEP events into {@link ParsedBepOutput}, passing the outputs of each target to {@code
+   * listener} as soon as its {@code TARGET_COMPLETED} event has been read.
+   *
+   * <p>This allows work on the outputs of a build to start while its BEP output is still being
+   * written, when {@code stream} is a {@link TailingBuildEventStreamProvider}. Each artifact is
+   * passed to the listener at most once per output group.
+   */
+  public static ParsedBepOutput parseBepArtifacts(
+      BuildEventStreamProvider stream,
+      @Nullable Interner<String> interner,
+      @Nullable CompletedTargetListener listener)
+      throws BuildEventStreamException {
 
     if (interner == null) {
       interner = Interners.newStrongInterner();
@@ -114,6 +130,8 @@ public final class ParsedBepOutput {
     long startTimeMillis = 0L;
     BuildResult buildResult = BuildResult.SUCCESS;
     boolean emptyBuildEventStream = true;
+    // For each output group, the file sets that have already been passed to the listener.
+    Map<String, Set<String>> notifiedFileSets = new HashMap<>();
 
     while ((event = stream.getNext()) != null) {
       emptyBuildEventStream = false;
@@ -151,6 +169,7 @@ public final class ParsedBepOutput {
         case TARGET_COMPLETED:
           String label = event.getId().getTargetCompleted().getLabel();
           String configId = event.getId().getTargetCompleted().getConfiguration().getId();
+          long buildStartTimeMillis = startTimeMillis;
 
           event
               .getCompleted()
@@ -171,6 +190,18 @@ public final class ParsedBepOutput {
                                 .addTargets(ImmutableSet.of(label));
                           });
                     }
+                    if (listener != null && configIdToMnemonic.containsKey(configId)) {
+                      ImmutableList<OutputArtifact> artifacts =
+                          resolveNewArtifacts(
+                              sets,
+                              fileSets,
+                              notifiedFileSets.computeIfAbsent(o.getName(), g -> new HashSet<>()),
+                              configIdToMnemonic.get(configId),
+                              buildStartTimeMillis);
+                      if (!artifacts.isEmpty()) {
+                        listener.targetCompleted(label, o.getName(), artifacts);
+                      }
+                    }
                   });
           continue;
         case STARTED:
@@ -203,6 +234,39 @@ public final class ParsedBepOutput {
         targetsWithErrors.build());
   }
 
+  /**
+   * Returns the artifacts in the file sets {@code setIds} and their transitive children which are
+   * not in {@code visited}, and adds those file sets to it. Since BEP announces each named set
+   * before any event that refers to it, all of them have been read when a target completes.
+   */
+  private static ImmutableList<OutputArtifact> resolveNewArtifacts(
+      List<String> setIds,
+      Map<String, FileSet.Builder> fileSets,
+      Set<String> visited,
+      String configMnemonic,
+      long startTimeMillis) {
+    ImmutableList.Builder<OutputArtifact> artifacts = ImmutableList.builder();
+    Queue<String> toVisit = Queues.newArrayDeque();
+    for (String setId : setIds) {
+      if (visited.add(setId)) {
+        toVisit.add(setId);
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      FileSet.Builder fileSet = fileSets.get(toVisit.remove());
+      if (fileSet == null || fileSet.namedSet == null) {
+        continue;
+      }
+      artifacts.addAll(parseFiles(fileSet.namedSet, configMnemonic, startTimeMillis));
+      for (NamedSetOfFilesId child : fileSet.namedSet.getFileSetsList()) {
+        if (visited.add(child.getId())) {
+          toVisit.add(child.getId());
+        }
+      }
+    }
+    return artifacts.build();
+  }
+
   private static List<String> getFileSets(OutputGroup group) {
     return group.getFileSetsList().stream()
         .map(NamedSetOfFilesId::getId)
@@ -243,6 +307,15 @@ public final class ParsedBepOutput {
                 Entry::getKey, e -> e.getValue().build(configIdToMnemonic, startTimeMillis)));
   }
 
+  /** Receives the outputs of each target as soon as it completes. */
+  public interface CompletedTargetListener {
+    /**
+     * Called when {@code label} completes, with the artifacts in {@code outputGroup} which have not
+     * already been passed to this listener for that output group.
+     */
+    void targetCompleted(String label, String outputGroup, ImmutableList<OutputArtifact> artifacts);
+  }
+
   @Nullable public final String buildId;
 
   /** A path to the local execroot */
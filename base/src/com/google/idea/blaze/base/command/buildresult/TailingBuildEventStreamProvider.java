@@ -0,0 +1,174 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.buildresult;
+
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEvent;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistry;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BuildEventStreamProvider} which reads a BEP output file while the build is still writing
+ * to it.
+ *
+ * <p>When the end of the file is reached, or it ends with a partially written event, this waits
+ * for more to be written. The stream ends after the event marked as the last message, or once the
+ * build is complete and the whole file has been read.
+ */
+public class TailingBuildEventStreamProvider implements BuildEventStreamProvider, AutoCloseable {
+
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+  private final File file;
+  private final BooleanSupplier buildComplete;
+  @Nullable private InputStream in;
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  // The unread bytes are buffer[start, end).
+  private int start = 0;
+  private int end = 0;
+  // The number of bytes needed to parse the next event, or 0 if not known.
+  private int required = 0;
+  private long bytesConsumed = 0;
+  private boolean lastMessageRead = false;
+
+  /** {@code buildComplete} must return true once the build has finished writing to {@code file}. */
+  public TailingBuildEventStreamProvider(File file, BooleanSupplier buildComplete) {
+    this.file = file;
+    this.buildComplete = buildComplete;
+  }
+
+  @Nullable
+  @Override
+  public BuildEvent getNext() throws BuildEventStreamException {
+    if (lastMessageRead) {
+      return null;
+    }
+    try {
+      while (true) {
+        BuildEvent event = parseBufferedEvent();
+        if (event != null) {
+          lastMessageRead = event.getLastMessage();
+          return event;
+        }
+        // Checked before reading, so that anything written before the build completed is read.
+        boolean complete = buildComplete.getAsBoolean();
+        if (read() > 0) {
+          continue;
+        }
+        if (complete) {
+          if (start != end) {
+            throw new BuildEventStreamException(
+                String.format("Incomplete build event at the end of %s", file));
+          }
+          return null;
+        }
+        Thread.sleep(POLL_INTERVAL.toMillis());
+      }
+    } catch (IOException e) {
+      throw new BuildEventStreamException(e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BuildEventStreamException("Interrupted while reading " + file, e);
+    }
+  }
+
+  @Override
+  public long getBytesConsumed() {
+    return bytesConsumed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+
+  /** Returns the next event if all of it has been read into the buffer, or null otherwise. */
+  @Nullable
+  private BuildEvent parseBufferedEvent() throws IOException {
+    int available = end - start;
+    if (available == 0 || (required > 0 && available < required)) {
+      return null;
+    }
+    // Each event is preceded by its size as a varint of at most 5 bytes.
+    int size = 0;
+    int headerLength = 0;
+    while (true) {
+      if (headerLength == available) {
+        return null;
+      }
+      if (headerLength == 5) {
+        throw new IOException("Malformed build event size in " + file);
+      }
+      byte b = buffer[start + headerLength];
+      size |= (b & 0x7f) << (7 * headerLength);
+      headerLength++;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    if (size < 0) {
+      throw new IOException("Malformed build event size in " + file);
+    }
+    if (available < headerLength + size) {
+      required = headerLength + size;
+      return null;
+    }
+    BuildEvent event =
+        BuildEvent.parseFrom(
+            CodedInputStream.newInstance(buffer, start + headerLength, size),
+            ExtensionRegistry.getEmptyRegistry());
+    start += headerLength + size;
+    bytesConsumed += headerLength + size;
+    required = 0;
+    return event;
+  }
+
+  /** Reads whatever has been written to the file since the last read, returning its length. */
+  private int read() throws IOException {
+    if (in == null) {
+      if (!file.exists()) {
+        return 0;
+      }
+      in = new FileInputStream(file);
+    }
+    if (start > 0) {
+      System.arraycopy(buffer, start, buffer, 0, end - start);
+      end -= start;
+      start = 0;
+    }
+    if (required > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+    } else if (end == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    int read = in.read(buffer, end, buffer.length - end);
+    if (read <= 0) {
+      return 0;
+    }
+    end += read;
+    return read;
+  }
+}
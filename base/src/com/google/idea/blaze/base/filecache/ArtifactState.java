@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.filecache;
 
 import com.google.devtools.intellij.model.ProjectData.LocalFile;
 import com.google.devtools.intellij.model.ProjectData.LocalFileOrOutputArtifact;
+import com.google.devtools.intellij.model.ProjectData.OutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import java.io.File;
 
@@ -115,4 +116,53 @@ public interface ArtifactState {
       return blazeOutPath.equals(((LocalFileState) obj).blazeOutPath);
     }
   }
+
+  /**
+   * Serialization state for an output artifact identified by the digest of its contents, as
+   * reported by the build. Unlike {@link LocalFileState}, this does not require accessing the
+   * file, and is unaffected by rebuilds which produce identical output.
+   */
+  class DigestState implements ArtifactState {
+    private final String blazeOutPath;
+    private final String digest;
+
+    public DigestState(String blazeOutPath, String digest) {
+      this.blazeOutPath = blazeOutPath;
+      this.digest = digest;
+    }
+
+    @Override
+    public String getKey() {
+      return blazeOutPath;
+    }
+
+    @Override
+    public boolean isMoreRecent(ArtifactState output) {
+      return !(output instanceof DigestState) || !digest.equals(((DigestState) output).digest);
+    }
+
+    @Override
+    public LocalFileOrOutputArtifact serializeToProto() {
+      return LocalFileOrOutputArtifact.newBuilder()
+          .setArtifact(OutputArtifact.newBuilder().setRelativePath(blazeOutPath).setDigest(digest))
+          .build();
+    }
+
+    @Override
+    public int hashCode() {
+      return blazeOutPath.hashCode();
+    }
+
+    /** Returns true for {@link DigestState} with the same key, as for {@link LocalFileState}. */
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof DigestState)) {
+        return false;
+      }
+      return blazeOutPath.equals(((DigestState) obj).blazeOutPath);
+    }
+  }
 }
@@ -62,7 +62,17 @@ public abstract class ArtifactsDiff {
       @Nullable ImmutableMap<String, ArtifactState> oldState,
       ImmutableMap<String, OutputArtifactWithoutDigest> newArtifacts)
       throws InterruptedException, ExecutionException {
-    ImmutableMap<String, ArtifactState> newState = computeState(newArtifacts.values());
+    return diffArtifacts(oldState, newArtifacts, computeState(newArtifacts.values()));
+  }
+
+  /**
+   * Diffs artifacts whose {@link ArtifactState}s are already known, without accessing them. {@code
+   * newState} is keyed the same way as {@code newArtifacts}.
+   */
+  public static ArtifactsDiff diffArtifacts(
+      @Nullable ImmutableMap<String, ArtifactState> oldState,
+      ImmutableMap<String, OutputArtifactWithoutDigest> newArtifacts,
+      ImmutableMap<String, ArtifactState> newState) {
     // Find new/updated
     final ImmutableMap<String, ArtifactState> previous =
         oldState != null ? oldState : ImmutableMap.of();
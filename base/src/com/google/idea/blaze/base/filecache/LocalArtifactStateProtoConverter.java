@@ -16,10 +16,15 @@
 package com.google.idea.blaze.base.filecache;
 
 import com.google.devtools.intellij.model.ProjectData.LocalFileOrOutputArtifact;
+import com.google.devtools.intellij.model.ProjectData.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState.DigestState;
 import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
 import javax.annotation.Nullable;
 
-/** Implementation of {@link ArtifactStateProtoConverter} for {@link LocalFileState} */
+/**
+ * Implementation of {@link ArtifactStateProtoConverter} for {@link LocalFileState} and {@link
+ * DigestState}
+ */
 public class LocalArtifactStateProtoConverter implements ArtifactStateProtoConverter {
 
   @Override
@@ -28,6 +33,11 @@ public class LocalArtifactStateProtoConverter implements ArtifactStateProtoConve
     if (proto.hasLocalFile()) {
       return new LocalFileState(proto.getLocalFile());
     }
+    // Output artifacts with an id are remote, and handled by other converters.
+    OutputArtifact artifact = proto.getArtifact();
+    if (proto.hasArtifact() && artifact.getId().isEmpty() && !artifact.getDigest().isEmpty()) {
+      return new DigestState(artifact.getRelativePath(), artifact.getDigest());
+    }
     return null;
   }
 }
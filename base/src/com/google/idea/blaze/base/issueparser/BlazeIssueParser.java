@@ -16,12 +16,16 @@
 package com.google.idea.blaze.base.issueparser;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.idea.blaze.base.scope.output.IssueOutput.Category.ERROR;
 import static com.google.idea.blaze.base.scope.output.IssueOutput.Category.NOTE;
 import static com.google.idea.blaze.base.scope.output.IssueOutput.Category.WARNING;
 
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.command.BlazeInvocationContext;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.TargetExpression;
@@ -34,10 +38,12 @@ import com.google.idea.blaze.base.projectview.section.SectionKey;
 import com.google.idea.blaze.base.projectview.section.sections.TargetSection;
 import com.google.idea.blaze.base.run.filter.FileResolver;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -109,14 +115,31 @@ public class BlazeIssueParser {
   /** Used by BlazeIssueParser. Generally implemented by subclassing SingleLineParser */
   public interface Parser {
     ParseResult parse(String currentLine, List<String> previousLines);
+
+    /**
+     * Substrings of which any line this parser can match must contain at least one. Other lines
+     * aren't passed to the parser, except to continue a multi-line match. If empty, every line is
+     * parsed.
+     */
+    default ImmutableSet<String> triggers() {
+      return ImmutableSet.of();
+    }
   }
 
   /** Base for a Parser that consumes a single contextless line at a time, matched via regex */
   public abstract static class SingleLineParser implements Parser {
     final Pattern pattern;
+    private final ImmutableSet<String> triggers;
 
-    public SingleLineParser(String regex) {
+    /** See {@link Parser#triggers()} for the meaning of {@code triggers}. */
+    public SingleLineParser(String regex, String... triggers) {
       pattern = Pattern.compile(regex);
+      this.triggers = ImmutableSet.copyOf(triggers);
+    }
+
+    @Override
+    public ImmutableSet<String> triggers() {
+      return triggers;
     }
 
     @Override
@@ -189,7 +212,8 @@ public class BlazeIssueParser {
       super(
           "^File \"([^:]*\\.py)\", " // file path
               + "line ([0-9]+), " // line number
-              + "(.*)$"); // message
+              + "(.*)$", // message
+          ".py\", line ");
       this.project = project;
     }
 
@@ -219,7 +243,8 @@ public class BlazeIssueParser {
               + "(fatal error|error|warning|note|internal problem|context|info)"
               + "(?::| -)? " // optional colon or hyphen separator
               + ")?"
-              + "(.*)$"); // message
+              + "(.*)$", // message
+          ":");
       this.project = project;
     }
 
@@ -263,6 +288,11 @@ public class BlazeIssueParser {
         Pattern.compile(
             "(ERROR): (.*?):([0-9]+):([0-9]+): (Traceback \\(most recent call last\\):)");
 
+    @Override
+    public ImmutableSet<String> triggers() {
+      return ImmutableSet.of("Traceback (most recent call last):");
+    }
+
     @Override
     public ParseResult parse(String currentLine, List<String> previousLines) {
       if (previousLines.isEmpty()) {
@@ -296,7 +326,7 @@ public class BlazeIssueParser {
 
   static class BuildParser extends SingleLineParser {
     BuildParser() {
-      super("^ERROR: " + BAZEL_BUILD_FILES_PATTERN + ":([0-9]+):([0-9]+): (.*)$");
+      super("^ERROR: " + BAZEL_BUILD_FILES_PATTERN + ":([0-9]+):([0-9]+): (.*)$", "ERROR: ");
     }
 
     @Nullable
@@ -320,7 +350,7 @@ public class BlazeIssueParser {
 
   static class SkylarkErrorParser extends SingleLineParser {
     SkylarkErrorParser() {
-      super("^ERROR: (/.*?\\.bzl):([0-9]+):([0-9]+): (.*)$");
+      super("^ERROR: (/.*?\\.bzl):([0-9]+):([0-9]+): (.*)$", ".bzl:");
     }
 
     @Override
@@ -338,7 +368,7 @@ public class BlazeIssueParser {
 
   static class LinelessBuildParser extends SingleLineParser {
     LinelessBuildParser() {
-      super("^ERROR: (.*?):char offsets [0-9]+--[0-9]+: (.*)$");
+      super("^ERROR: (.*?):char offsets [0-9]+--[0-9]+: (.*)$", ":char offsets ");
     }
 
     @Override
@@ -354,7 +384,7 @@ public class BlazeIssueParser {
     private final WorkspaceRoot workspaceRoot;
 
     FileNotFoundBuildParser(WorkspaceRoot workspaceRoot) {
-      super("^ERROR: .*? Unable to load file '(.*?)': (.*)$");
+      super("^ERROR: .*? Unable to load file '(.*?)': (.*)$", " Unable to load file '");
       this.workspaceRoot = workspaceRoot;
     }
 
@@ -373,7 +403,9 @@ public class BlazeIssueParser {
     @Nullable private final ProjectViewSet projectViewSet;
 
     ProjectViewLabelParser(@Nullable ProjectViewSet projectViewSet) {
-      super("no such target '(.*)': target .*? not declared in package .*? defined by");
+      super(
+          "no such target '(.*)': target .*? not declared in package .*? defined by",
+          "no such target '");
       this.projectViewSet = projectViewSet;
     }
 
@@ -403,10 +435,27 @@ public class BlazeIssueParser {
     private final ProjectViewSet projectViewSet;
 
     InvalidTargetProjectViewPackageParser(ProjectViewSet projectViewSet, String regex) {
-      super(regex);
+      super(regex, literalPrefix(regex));
       this.projectViewSet = projectViewSet;
     }
 
+    /** The text matched by the start of {@code regex}, before any special characters. */
+    private static String[] literalPrefix(String regex) {
+      if (regex.contains("|")) {
+        // The prefix may be only one of the alternatives.
+        return new String[0];
+      }
+      int end = 0;
+      while (end < regex.length() && "\\^$.|?*+()[]{}".indexOf(regex.charAt(end)) < 0) {
+        end++;
+      }
+      if (end < regex.length() && "?*{".indexOf(regex.charAt(end)) >= 0) {
+        // The last character is optional.
+        end--;
+      }
+      return end > 0 ? new String[] {regex.substring(0, end)} : new String[0];
+    }
+
     @Override
     protected IssueOutput createIssue(Matcher matcher) {
       final String packageString = matcher.group(1);
@@ -446,7 +495,7 @@ public class BlazeIssueParser {
             + "(.*))$";
 
     private GenericErrorParser() {
-      super(PATTERN);
+      super(PATTERN, "ERROR: ");
     }
 
     @Nullable
@@ -478,28 +527,63 @@ public class BlazeIssueParser {
     return null;
   }
 
+  /** How much output a parser has been given, and how long it took to parse it. */
+  @AutoValue
+  abstract static class ParserStats {
+    abstract Parser parser();
+
+    /** The number of lines passed to the parser, rather than skipped by its triggers. */
+    abstract long linesParsed();
+
+    abstract long issuesFound();
+
+    abstract long parseTimeNanos();
+
+    static ParserStats create(
+        Parser parser, long linesParsed, long issuesFound, long parseTimeNanos) {
+      return new AutoValue_BlazeIssueParser_ParserStats(
+          parser, linesParsed, issuesFound, parseTimeNanos);
+    }
+  }
+
+  private static final Logger logger = Logger.getInstance(BlazeIssueParser.class);
+
   private final ImmutableList<Parser> parsers;
+  // Finds the parsers which may match a line, from their triggers.
+  private final KeywordMatcher prefilter;
+  private final BitSet candidateParsers = new BitSet();
   /**
-   * The parser that requested more lines of input during the last call to {@link
-   * #parseIssue(String)}.
+   * The index of the parser that requested more lines of input during the last call to {@link
+   * #parseIssue(String)}, or -1 if none did.
    */
-  @Nullable private Parser multilineMatchingParser;
+  private int multilineMatchingParser = -1;
 
   private List<String> multilineMatchResult = new ArrayList<>();
 
+  private long linesProcessed;
+  private final long[] linesParsed;
+  private final long[] issuesFound;
+  private final long[] parseTimeNanos;
+
   public BlazeIssueParser(ImmutableList<Parser> parsers) {
     this.parsers = parsers;
+    this.prefilter =
+        new KeywordMatcher(parsers.stream().map(Parser::triggers).collect(toImmutableList()));
+    this.linesParsed = new long[parsers.size()];
+    this.issuesFound = new long[parsers.size()];
+    this.parseTimeNanos = new long[parsers.size()];
   }
 
   @Nullable
   public IssueOutput parseIssue(String line) {
-    if (multilineMatchingParser != null) {
-      ParseResult issue = multilineMatchingParser.parse(line, multilineMatchResult);
+    linesProcessed++;
+    if (multilineMatchingParser >= 0) {
+      ParseResult issue = parse(multilineMatchingParser, line, multilineMatchResult);
       if (issue.needsMoreInput) {
         multilineMatchResult.add(line);
         return null;
       }
-      multilineMatchingParser = null;
+      multilineMatchingParser = -1;
       multilineMatchResult = new ArrayList<>();
       if (issue.output != null) {
         return issue.output;
@@ -507,8 +591,12 @@ public class BlazeIssueParser {
       // multi line match failed, continue with other parsers
     }
 
-    for (Parser parser : parsers) {
-      ParseResult issue = parser.parse(line, ImmutableList.of());
+    candidateParsers.clear();
+    prefilter.findMatches(line, candidateParsers);
+    for (int parser = candidateParsers.nextSetBit(0);
+        parser >= 0;
+        parser = candidateParsers.nextSetBit(parser + 1)) {
+      ParseResult issue = parse(parser, line, ImmutableList.of());
       if (issue.needsMoreInput) {
         multilineMatchingParser = parser;
         multilineMatchResult.add(line);
@@ -522,6 +610,52 @@ public class BlazeIssueParser {
     return null;
   }
 
+  private ParseResult parse(int parser, String line, List<String> previousLines) {
+    long start = System.nanoTime();
+    ParseResult issue = parsers.get(parser).parse(line, previousLines);
+    parseTimeNanos[parser] += System.nanoTime() - start;
+    linesParsed[parser]++;
+    if (issue.output != null) {
+      issuesFound[parser]++;
+    }
+    return issue;
+  }
+
+  /** The number of lines passed to {@link #parseIssue(String)}. */
+  @VisibleForTesting
+  long getLinesProcessed() {
+    return linesProcessed;
+  }
+
+  /** Statistics for each parser, in the order they're run. */
+  ImmutableList<ParserStats> getParserStats() {
+    ImmutableList.Builder<ParserStats> stats = ImmutableList.builder();
+    for (int i = 0; i < parsers.size(); i++) {
+      stats.add(
+          ParserStats.create(parsers.get(i), linesParsed[i], issuesFound[i], parseTimeNanos[i]));
+    }
+    return stats.build();
+  }
+
+  /** Logs the lines given to each parser and the time taken to parse them, once output ends. */
+  void logParserStats() {
+    if (linesProcessed == 0) {
+      return;
+    }
+    StringBuilder message =
+        new StringBuilder(String.format("Parsed %d lines for issues:", linesProcessed));
+    for (ParserStats stats : getParserStats()) {
+      message.append(
+          String.format(
+              "%n  %s: %d lines, %d issues, %d ms",
+              stats.parser().getClass().getName(),
+              stats.linesParsed(),
+              stats.issuesFound(),
+              stats.parseTimeNanos() / 1_000_000));
+    }
+    logger.info(message.toString());
+  }
+
   /**
    * The union of the two ranges. If one of the ranges is null, returns the other. If both are null,
    * returns null.
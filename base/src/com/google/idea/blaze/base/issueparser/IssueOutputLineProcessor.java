@@ -20,6 +20,7 @@ import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.command.BlazeInvocationContext;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.BlazeScope;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.common.PrintOutput.OutputType;
@@ -41,16 +42,22 @@ public class IssueOutputLineProcessor implements LineProcessingOutputStream.Line
       WorkspaceRoot workspaceRoot,
       BlazeContext context,
       BlazeInvocationContext.ContextType invocationContext) {
-    this.context = context;
-    this.blazeIssueParser =
-        new BlazeIssueParser(
-            BlazeIssueParser.defaultIssueParsers(project, workspaceRoot, invocationContext));
+    this(
+        context, BlazeIssueParser.defaultIssueParsers(project, workspaceRoot, invocationContext));
   }
 
   public IssueOutputLineProcessor(
       BlazeContext context, ImmutableList<BlazeIssueParser.Parser> parsers) {
     this.context = context;
     this.blazeIssueParser = new BlazeIssueParser(parsers);
+    // The output ends with the context.
+    context.push(
+        new BlazeScope() {
+          @Override
+          public void onScopeEnd(BlazeContext context) {
+            blazeIssueParser.logParserStats();
+          }
+        });
   }
 
   @Override
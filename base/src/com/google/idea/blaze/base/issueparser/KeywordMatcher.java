@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.issueparser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds which of several sets of keywords occur in a line of text, in a single pass over the text
+ * regardless of the number of keywords (the Aho-Corasick algorithm).
+ *
+ * <p>An empty set of keywords matches every line.
+ */
+final class KeywordMatcher {
+
+  private static final int ASCII = 128;
+
+  // Maps each character which appears in a keyword to its column in the transition table.
+  private final int[] asciiIndex = new int[ASCII];
+  private final Map<Character, Integer> nonAsciiIndex = new HashMap<>();
+  // The next state for each state and character. State 0 has matched nothing.
+  private final int[][] transitions;
+  // The keyword sets matched on reaching each state, or null if none are.
+  private final BitSet[] matches;
+  private final BitSet alwaysMatched = new BitSet();
+
+  KeywordMatcher(ImmutableList<ImmutableSet<String>> keywordSets) {
+    Arrays.fill(asciiIndex, -1);
+    int alphabetSize = 0;
+    for (ImmutableSet<String> keywords : keywordSets) {
+      for (String keyword : keywords) {
+        for (char c : keyword.toCharArray()) {
+          if (index(c) < 0) {
+            if (c < ASCII) {
+              asciiIndex[c] = alphabetSize++;
+            } else {
+              nonAsciiIndex.put(c, alphabetSize++);
+            }
+          }
+        }
+      }
+    }
+
+    // Build a trie of the keywords.
+    List<int[]> trie = new ArrayList<>();
+    List<BitSet> output = new ArrayList<>();
+    trie.add(newState(alphabetSize));
+    output.add(new BitSet());
+    for (int set = 0; set < keywordSets.size(); set++) {
+      if (keywordSets.get(set).isEmpty()) {
+        alwaysMatched.set(set);
+        continue;
+      }
+      for (String keyword : keywordSets.get(set)) {
+        int state = 0;
+        for (char c : keyword.toCharArray()) {
+          int column = index(c);
+          if (trie.get(state)[column] < 0) {
+            trie.get(state)[column] = trie.size();
+            trie.add(newState(alphabetSize));
+            output.add(new BitSet());
+          }
+          state = trie.get(state)[column];
+        }
+        output.get(state).set(set);
+      }
+    }
+
+    // Turn the trie into a deterministic automaton, in breadth first order so that the longest
+    // proper suffix of each state's keyword prefix has been completed before the state itself.
+    int[] fallback = new int[trie.size()];
+    Queue<Integer> queue = new ArrayDeque<>();
+    int[] root = trie.get(0);
+    for (int column = 0; column < alphabetSize; column++) {
+      if (root[column] < 0) {
+        root[column] = 0;
+      } else {
+        queue.add(root[column]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      int[] next = trie.get(state);
+      output.get(state).or(output.get(fallback[state]));
+      for (int column = 0; column < alphabetSize; column++) {
+        int fallbackNext = trie.get(fallback[state])[column];
+        if (next[column] < 0) {
+          next[column] = fallbackNext;
+        } else {
+          fallback[next[column]] = fallbackNext;
+          queue.add(next[column]);
+        }
+      }
+    }
+
+    transitions = trie.toArray(new int[0][]);
+    matches = new BitSet[output.size()];
+    for (int state = 0; state < matches.length; state++) {
+      matches[state] = output.get(state).isEmpty() ? null : output.get(state);
+    }
+  }
+
+  /** Sets the index of each keyword set with a keyword contained in {@code text}. */
+  void findMatches(CharSequence text, BitSet result) {
+    result.or(alwaysMatched);
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      int column = index(text.charAt(i));
+      state = column < 0 ? 0 : transitions[state][column];
+      if (matches[state] != null) {
+        result.or(matches[state]);
+      }
+    }
+  }
+
+  private int index(char c) {
+    if (c < ASCII) {
+      return asciiIndex[c];
+    }
+    Integer index = nonAsciiIndex.get(c);
+    return index != null ? index : -1;
+  }
+
+  private static int[] newState(int alphabetSize) {
+    int[] state = new int[alphabetSize];
+    Arrays.fill(state, -1);
+    return state;
+  }
+}
@@ -30,6 +30,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.idea.blaze.base.bazel.BazelExitCodeException;
 import com.google.idea.blaze.base.bazel.BazelExitCodeException.ThrowOption;
@@ -41,7 +42,9 @@ import com.google.idea.blaze.base.command.BlazeFlags;
 import com.google.idea.blaze.base.command.BlazeInvocationContext;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper;
+import com.google.idea.blaze.base.command.buildresult.BuildResultHelperBep;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.command.buildresult.ParsedBepOutput.CompletedTargetListener;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStats;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStatsScope;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
@@ -67,6 +70,7 @@ import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.extensions.PluginDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtilRt;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -76,8 +80,10 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 /** An object that knows how to build dependencies for given targets */
@@ -89,6 +95,13 @@ public class BazelDependencyBuilder implements DependencyBuilder {
   public static final BoolExperiment buildGeneratedSrcJars =
       new BoolExperiment("qsync.build.generated.src.jars", false);
 
+  /**
+   * Parse the BEP output while the build is running, and start reading the artifact info files of
+   * each target as soon as it completes.
+   */
+  public static final BoolExperiment pipelinedBepParsing =
+      new BoolExperiment("qsync.pipelined.bep.parsing", false);
+
   /**
    * Logs message if the number of artifact info files fetched is greater than
    * FILE_NUMBER_LOG_THRESHOLD
@@ -143,6 +156,13 @@ public class BazelDependencyBuilder implements DependencyBuilder {
         BuildDepsStatsScope.fromContext(context);
     buildDepsStatsBuilder.ifPresent(stats -> stats.setBlazeBinaryType(invoker.getType()));
     try (BuildResultHelper buildResultHelper = invoker.createBuildResultHelper()) {
+      ArtifactInfoPrefetcher prefetcher = new ArtifactInfoPrefetcher();
+      if (pipelinedBepParsing.getValue() && buildResultHelper instanceof BuildResultHelperBep) {
+        ((BuildResultHelperBep) buildResultHelper)
+            .streamBuildOutput(
+                prefetcher,
+                MoreExecutors.listeningDecorator(AppExecutorUtil.getAppExecutorService()));
+      }
       String includes =
           projectDefinition.projectIncludes().stream()
               .map(path -> "//" + path)
@@ -212,7 +232,7 @@ public class BazelDependencyBuilder implements DependencyBuilder {
           ThrowOption.ALLOW_PARTIAL_SUCCESS,
           ThrowOption.ALLOW_BUILD_FAILURE);
 
-      return createOutputInfo(outputs, outputGroups, context);
+      return createOutputInfo(outputs, outputGroups, prefetcher, context);
     }
   }
 
@@ -237,7 +257,10 @@ public class BazelDependencyBuilder implements DependencyBuilder {
   }
 
   private OutputInfo createOutputInfo(
-      BlazeBuildOutputs blazeBuildOutputs, Set<OutputGroup> outputGroups, BlazeContext context)
+      BlazeBuildOutputs blazeBuildOutputs,
+      Set<OutputGroup> outputGroups,
+      ArtifactInfoPrefetcher prefetcher,
+      BlazeContext context)
       throws BuildException {
     GroupedOutputArtifacts allArtifacts =
         new GroupedOutputArtifacts(blazeBuildOutputs, outputGroups);
@@ -268,9 +291,10 @@ public class BazelDependencyBuilder implements DependencyBuilder {
     if (fetchArtifactInfoInParallel.getValue()) {
       try {
         ListenableFuture<List<JavaArtifacts>> artifactInfoFutures =
-            readAndTransformInfoFiles(artifactInfoFiles, this::readArtifactInfoFile);
+            readAndTransformInfoFiles(
+                artifactInfoFiles, prefetcher.artifactInfo, this::readArtifactInfoFile);
         ListenableFuture<List<CcCompilationInfo>> ccInfoFutures =
-            readAndTransformInfoFiles(ccArtifactInfoFiles, this::readCcInfoFile);
+            readAndTransformInfoFiles(ccArtifactInfoFiles, prefetcher.ccInfo, this::readCcInfoFile);
 
         artifactInfoFilesBuilder.addAll(Uninterruptibles.getUninterruptibly(artifactInfoFutures));
         ccInfoBuilder.addAll(Uninterruptibles.getUninterruptibly(ccInfoFutures));
@@ -313,16 +337,56 @@ public class BazelDependencyBuilder implements DependencyBuilder {
     R apply(T t) throws BuildException;
   }
 
+  /**
+   * Reads and transforms all {@code artifactInfoFiles}, using the result in {@code prefetched} for
+   * those that have already been started.
+   */
   private <T> ListenableFuture<List<T>> readAndTransformInfoFiles(
       ImmutableList<OutputArtifact> artifactInfoFiles,
+      Map<String, ListenableFuture<T>> prefetched,
       CheckedTransform<OutputArtifact, T> transform) {
     List<ListenableFuture<T>> futures = Lists.newArrayList();
     for (OutputArtifact artifactInfoFile : artifactInfoFiles) {
-      futures.add(Futures.submit(() -> transform.apply(artifactInfoFile), FetchExecutor.EXECUTOR));
+      ListenableFuture<T> future = prefetched.get(artifactInfoFile.getRelativePath());
+      if (future == null) {
+        future = Futures.submit(() -> transform.apply(artifactInfoFile), FetchExecutor.EXECUTOR);
+      }
+      futures.add(future);
     }
     return Futures.allAsList(futures);
   }
 
+  /**
+   * Starts reading artifact info files as soon as the targets producing them complete, while the
+   * rest of the build is still running.
+   */
+  private class ArtifactInfoPrefetcher implements CompletedTargetListener {
+    // Keyed by artifact path.
+    final Map<String, ListenableFuture<JavaArtifacts>> artifactInfo = new ConcurrentHashMap<>();
+    final Map<String, ListenableFuture<CcCompilationInfo>> ccInfo = new ConcurrentHashMap<>();
+
+    @Override
+    public void targetCompleted(
+        String label, String outputGroup, ImmutableList<OutputArtifact> artifacts) {
+      if (outputGroup.equals(OutputGroup.ARTIFACT_INFO_FILE.outputGroupName())) {
+        prefetch(artifacts, artifactInfo, BazelDependencyBuilder.this::readArtifactInfoFile);
+      } else if (outputGroup.equals(OutputGroup.CC_INFO_FILE.outputGroupName())) {
+        prefetch(artifacts, ccInfo, BazelDependencyBuilder.this::readCcInfoFile);
+      }
+    }
+
+    private <T> void prefetch(
+        ImmutableList<OutputArtifact> artifacts,
+        Map<String, ListenableFuture<T>> results,
+        CheckedTransform<OutputArtifact, T> transform) {
+      for (OutputArtifact artifact : artifacts) {
+        results.computeIfAbsent(
+            artifact.getRelativePath(),
+            path -> Futures.submit(() -> transform.apply(artifact), FetchExecutor.EXECUTOR));
+      }
+    }
+  }
+
   private JavaArtifacts readArtifactInfoFile(BlazeArtifact file) throws BuildException {
     return readArtifactInfoProtoFile(JavaArtifacts.newBuilder(), file).build();
   }
@@ -27,8 +27,10 @@ import com.google.idea.blaze.base.logging.utils.querysync.SyncQueryStatsScope;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.exception.BuildException;
+import com.google.idea.blaze.qsync.BlazeQueryParser;
 import com.google.idea.blaze.qsync.query.QuerySpec;
 import com.google.idea.blaze.qsync.query.QuerySummary;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.IOException;
@@ -46,6 +48,13 @@ public class BazelQueryRunner implements QueryRunner {
 
   private static final Logger logger = Logger.getInstance(BazelQueryRunner.class);
 
+  /**
+   * Summarise the query output as it is streamed, skipping attributes that are not needed, and
+   * dropping the sources and deps of rules that are not used by the project structure.
+   */
+  private static final BoolExperiment STREAMING_QUERY_SUMMARY =
+      new BoolExperiment("qsync.streaming.query.summary", false);
+
   private final Project project;
   private final BuildSystem buildSystem;
 
@@ -115,7 +124,10 @@ public class BazelQueryRunner implements QueryRunner {
     logger.info(String.format("Summarising query from %s", in));
     Instant start = Instant.now();
     try {
-      QuerySummary summary = QuerySummary.create(in);
+      QuerySummary summary =
+          STREAMING_QUERY_SUMMARY.getValue()
+              ? QuerySummary.createStreaming(in, BlazeQueryParser::needsSourcesAndDeps)
+              : QuerySummary.create(in);
       logger.info(
           String.format(
               "Summarised query in %ds", Duration.between(start, Instant.now()).toSeconds()));
@@ -98,8 +98,7 @@ public class DependencyTrackerImpl implements DependencyTracker {
     }
 
     Set<Label> cachedTargets = artifactTracker.getLiveCachedTargets();
-    return projectTargets.stream()
-        .map(projectTarget -> currentSnapshot.graph().getExternalDepsToBuildFor(projectTarget))
+    return currentSnapshot.graph().getExternalDepsToBuildFor(projectTargets).values().stream()
         .map(targets -> Sets.difference(targets, cachedTargets))
         .min(Comparator.comparingInt(SetView::size))
         .map(SetView::immutableCopy)
@@ -31,6 +31,7 @@ import com.google.idea.blaze.base.projectview.section.Glob;
 import com.google.idea.blaze.base.projectview.section.sections.TestSourceSection;
 import com.google.idea.blaze.base.qsync.cache.ArtifactFetcher;
 import com.google.idea.blaze.base.qsync.cache.ArtifactTrackerImpl;
+import com.google.idea.blaze.base.qsync.cache.ContentAddressedArtifactFetcher;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
@@ -49,10 +50,14 @@ import com.google.idea.blaze.qsync.ProjectProtoTransform;
 import com.google.idea.blaze.qsync.ProjectProtoTransform.Registry;
 import com.google.idea.blaze.qsync.ProjectRefresher;
 import com.google.idea.blaze.qsync.VcsStateDiffer;
+import com.google.idea.blaze.qsync.java.CachingPackageReader;
+import com.google.idea.blaze.qsync.java.PackageCache;
+import com.google.idea.blaze.qsync.java.PackageReader;
 import com.google.idea.blaze.qsync.java.PackageStatementParser;
 import com.google.idea.blaze.qsync.java.ParallelPackageReader;
 import com.google.idea.blaze.qsync.project.ProjectDefinition;
 import com.google.idea.blaze.qsync.project.ProjectPath;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.util.SimpleModificationTracker;
@@ -160,11 +165,12 @@ public class ProjectLoader {
     BlazeProjectSnapshotBuilder blazeProjectSnapshotBuilder =
         new BlazeProjectSnapshotBuilder(
             executor,
-            createWorkspaceRelativePackageReader(),
+            createWorkspaceRelativePackageReader(importSettings),
             workspaceRoot.path(),
             handledRules,
             QuerySync.USE_NEW_RES_DIR_LOGIC::getValue,
-            () -> !QuerySync.EXTRACT_RES_PACKAGES_AT_BUILD_TIME.getValue());
+            () -> !QuerySync.EXTRACT_RES_PACKAGES_AT_BUILD_TIME.getValue(),
+            QuerySync.PARALLEL_QUERY_PARSE::getValue);
     QueryRunner queryRunner = createQueryRunner(buildSystem);
     ProjectQuerier projectQuerier = createProjectQuerier(projectRefresher, queryRunner, vcsHandler);
     QuerySyncSourceToTargetMap sourceToTargetMap =
@@ -199,8 +205,14 @@ public class ProjectLoader {
     return querySyncProject;
   }
 
-  private ParallelPackageReader createWorkspaceRelativePackageReader() {
-    return new ParallelPackageReader(executor, new PackageStatementParser());
+  private PackageReader createWorkspaceRelativePackageReader(BlazeImportSettings importSettings) {
+    PackageReader reader = new ParallelPackageReader(executor, new PackageStatementParser());
+    if (!QuerySync.PERSISTENT_PACKAGE_CACHE.getValue()) {
+      return reader;
+    }
+    Path cacheFile =
+        BlazeDataStorage.getProjectDataDir(importSettings).toPath().resolve(PackageCache.FILE_NAME);
+    return new CachingPackageReader(PackageCache.load(cacheFile), reader);
   }
 
   private ProjectQuerierImpl createProjectQuerier(
@@ -237,8 +249,16 @@ public class ProjectLoader {
   }
 
   private ArtifactFetcher<OutputArtifact> createArtifactFetcher() {
-    return new DynamicallyDispatchingArtifactFetcher(
-        ImmutableList.copyOf(ArtifactFetcher.EP_NAME.getExtensions()));
+    ArtifactFetcher<OutputArtifact> fetcher =
+        new DynamicallyDispatchingArtifactFetcher(
+            ImmutableList.copyOf(ArtifactFetcher.EP_NAME.getExtensions()));
+    if (!QuerySync.SHARED_ARTIFACT_STORE.getValue()) {
+      return fetcher;
+    }
+    return new ContentAddressedArtifactFetcher(
+        fetcher,
+        Path.of(PathManager.getSystemPath(), "blaze", "artifact_store"),
+        QuerySync.SHARED_ARTIFACT_STORE_MAX_SIZE_MB.getValue() * 1024L * 1024L);
   }
 
   /**
@@ -20,6 +20,7 @@ import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BlazeImportSettings.ProjectType;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.google.idea.common.experiments.FeatureRolloutExperiment;
+import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.project.Project;
 import java.util.function.Supplier;
 
@@ -35,6 +36,42 @@ public class QuerySync {
   public static final BoolExperiment EXTRACT_RES_PACKAGES_AT_BUILD_TIME =
       new BoolExperiment("query.sync.respackages.at.build.time", true);
 
+  /** Build the project's build graph from the query output on multiple threads. */
+  public static final BoolExperiment PARALLEL_QUERY_PARSE =
+      new BoolExperiment("query.sync.parallel.query.parse", false);
+
+  /**
+   * Derive the build graph from that of the previous snapshot on delta syncs and dependency builds,
+   * rather than rebuilding it from the full query output.
+   */
+  public static final BoolExperiment INCREMENTAL_GRAPH_UPDATE =
+      new BoolExperiment("query.sync.incremental.graph.update", false);
+
+  /**
+   * Store the project snapshot in the uncompressed, per-package chunked format instead of as a
+   * single compressed proto.
+   */
+  public static final BoolExperiment CHUNKED_SNAPSHOT_FORMAT =
+      new BoolExperiment("query.sync.chunked.snapshot.format", false);
+
+  /**
+   * Keep fetched artifacts in a content addressed store shared by all projects, and hard link them
+   * into each project's caches rather than copying them.
+   */
+  public static final BoolExperiment SHARED_ARTIFACT_STORE =
+      new BoolExperiment("query.sync.shared.artifact.store", false);
+
+  /** The size above which unused artifacts are evicted from the shared artifact store. */
+  public static final IntExperiment SHARED_ARTIFACT_STORE_MAX_SIZE_MB =
+      new IntExperiment("query.sync.shared.artifact.store.max.size.mb", 10 * 1024);
+
+  /**
+   * Keep the packages of source files in a cache which persists across syncs, so that unchanged
+   * files aren't read again.
+   */
+  public static final BoolExperiment PERSISTENT_PACKAGE_CACHE =
+      new BoolExperiment("query.sync.persistent.package.cache", true);
+
   /**
    * Previously, query sync was enabled by an experiment. Some users still have that experiment set
    * and we don't want to inadvertently disable query sync for them.
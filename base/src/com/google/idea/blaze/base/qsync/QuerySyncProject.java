@@ -47,6 +47,8 @@ import com.google.idea.blaze.qsync.BlazeProject;
 import com.google.idea.blaze.qsync.BlazeProjectSnapshotBuilder;
 import com.google.idea.blaze.qsync.ProjectProtoTransform;
 import com.google.idea.blaze.qsync.project.BlazeProjectSnapshot;
+import com.google.idea.blaze.qsync.project.ChunkedSnapshotReader;
+import com.google.idea.blaze.qsync.project.ChunkedSnapshotWriter;
 import com.google.idea.blaze.qsync.project.PostQuerySyncData;
 import com.google.idea.blaze.qsync.project.ProjectDefinition;
 import com.google.idea.blaze.qsync.project.ProjectPath;
@@ -62,6 +64,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -78,6 +81,8 @@ import java.util.zip.GZIPOutputStream;
  */
 public class QuerySyncProject {
 
+  private static final String CHUNKED_SNAPSHOT_FILE_NAME = "qsyncdata.chunked";
+
   private final Path snapshotFilePath;
   private final Project project;
   private final BlazeProject snapshotHolder;
@@ -241,7 +246,10 @@ public class QuerySyncProject {
                 : projectQuerier.update(projectDefinition, lastQuery.get(), context);
         BlazeProjectSnapshot newSnapshot =
             blazeProjectSnapshotBuilder.createBlazeProjectSnapshot(
-                context, postQuerySyncData, projectProtoTransforms.getComposedTransform());
+                context,
+                postQuerySyncData,
+                projectProtoTransforms.getComposedTransform(),
+                lastQuery.isEmpty() ? Optional.empty() : previousSnapshotForGraphUpdate());
         onNewSnapshot(context, newSnapshot);
 
         // TODO: Revisit SyncListeners once we switch fully to qsync
@@ -320,12 +328,20 @@ public class QuerySyncProject {
             blazeProjectSnapshotBuilder.createBlazeProjectSnapshot(
                 context,
                 snapshotHolder.getCurrent().orElseThrow().queryData(),
-                projectProtoTransforms.getComposedTransform());
+                projectProtoTransforms.getComposedTransform(),
+                previousSnapshotForGraphUpdate());
         onNewSnapshot(context, newSnapshot);
       }
     }
   }
 
+  /** Returns the snapshot to derive a new build graph from, if incremental updates are enabled. */
+  private Optional<BlazeProjectSnapshot> previousSnapshotForGraphUpdate() {
+    return QuerySync.INCREMENTAL_GRAPH_UPDATE.getValue()
+        ? snapshotHolder.getCurrent()
+        : Optional.empty();
+  }
+
   public void buildRenderJar(BlazeContext parentContext, List<Path> wps)
       throws IOException, BuildException {
     try (BlazeContext context = BlazeContext.create(parentContext)) {
@@ -418,6 +434,10 @@ public class QuerySyncProject {
   }
 
   public Optional<PostQuerySyncData> readSnapshotFromDisk(BlazeContext context) throws IOException {
+    Path chunkedSnapshotFilePath = getChunkedSnapshotFilePath();
+    if (QuerySync.CHUNKED_SNAPSHOT_FORMAT.getValue() && Files.exists(chunkedSnapshotFilePath)) {
+      return ChunkedSnapshotReader.open(chunkedSnapshotFilePath).readSyncData(context);
+    }
     File f = snapshotFilePath.toFile();
     if (!f.exists()) {
       return Optional.empty();
@@ -505,9 +525,21 @@ public class QuerySyncProject {
         throw new IOException("Cannot create directory " + f.getParent());
       }
     }
+    // Only one of the formats is kept on disk, so that switching between them never reads a stale
+    // snapshot.
+    if (QuerySync.CHUNKED_SNAPSHOT_FORMAT.getValue()) {
+      ChunkedSnapshotWriter.write(snapshot.queryData(), getChunkedSnapshotFilePath());
+      Files.deleteIfExists(snapshotFilePath);
+      return;
+    }
     try (OutputStream o = new GZIPOutputStream(new FileOutputStream(f))) {
       new SnapshotSerializer().visit(snapshot.queryData()).toProto().writeTo(o);
     }
+    Files.deleteIfExists(getChunkedSnapshotFilePath());
+  }
+
+  private Path getChunkedSnapshotFilePath() {
+    return snapshotFilePath.resolveSibling(CHUNKED_SNAPSHOT_FILE_NAME);
   }
 
   private void onNewSnapshot(BlazeContext context, BlazeProjectSnapshot newSnapshot)
@@ -519,7 +551,10 @@ public class QuerySyncProject {
 
   public Iterable<Path> getBugreportFiles() {
     return ImmutableList.<Path>builder()
-        .add(snapshotFilePath)
+        .add(
+            QuerySync.CHUNKED_SNAPSHOT_FORMAT.getValue()
+                ? getChunkedSnapshotFilePath()
+                : snapshotFilePath)
         .addAll(artifactTracker.getBugreportFiles())
         .build();
   }
@@ -26,6 +26,11 @@ import static com.google.idea.blaze.qsync.project.BlazeProjectDataStorage.GEN_HE
 import static com.google.idea.blaze.qsync.project.BlazeProjectDataStorage.GEN_SRC_DIRECTORY;
 import static com.google.idea.blaze.qsync.project.BlazeProjectDataStorage.LIBRARY_DIRECTORY;
 import static com.google.idea.blaze.qsync.project.BlazeProjectDataStorage.RENDER_JARS_DIRECTORY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.function.Predicate.not;
 
@@ -46,8 +51,11 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.intellij.qsync.ArtifactTrackerData.ArtifactTrackerState;
 import com.google.devtools.intellij.qsync.ArtifactTrackerData.CachedArtifacts;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStats;
 import com.google.idea.blaze.base.logging.utils.querysync.BuildDepsStatsScope;
@@ -80,6 +88,7 @@ import com.google.idea.blaze.qsync.java.GeneratedSourceProjectUpdater.GeneratedS
 import com.google.idea.blaze.qsync.java.JavaArtifactInfo;
 import com.google.idea.blaze.qsync.java.JavaTargetInfo.JavaArtifacts;
 import com.google.idea.blaze.qsync.java.JavaTargetInfo.JavaTargetArtifacts;
+import com.google.idea.blaze.qsync.java.SrcJarInnerPathIndex;
 import com.google.idea.blaze.qsync.java.SrcJarProjectUpdater;
 import com.google.idea.blaze.qsync.java.cc.CcCompilationInfoOuterClass.CcCompilationInfo;
 import com.google.idea.blaze.qsync.project.BuildGraphData;
@@ -88,27 +97,34 @@ import com.google.idea.blaze.qsync.project.ProjectPath;
 import com.google.idea.blaze.qsync.project.ProjectProto;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -126,8 +142,17 @@ public class ArtifactTrackerImpl
   private static final BoolExperiment ATTACH_DEP_SRCJARS =
       new BoolExperiment("querysync.attach.dep.srcjars", true);
 
+  private static final BoolExperiment SRCJAR_INNER_PATH_INDEX =
+      new BoolExperiment("querysync.srcjar.inner.path.index", true);
+
   public static final String DIGESTS_DIRECTORY_NAME = ".digests";
   public static final int STORAGE_VERSION = 3;
+  // The journal is not compacted until it is at least this large, or larger than the full state.
+  private static final long MIN_JOURNAL_BYTES_TO_COMPACT = 1 << 20;
+  private static final ListeningExecutorService COMPACTION_EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor(
+              "ArtifactTrackerStateCompaction", 1));
   private static final Logger logger = Logger.getInstance(ArtifactTrackerImpl.class);
 
   // Information about java dependency artifacts derived when the dependencies were built.
@@ -135,8 +160,9 @@ public class ArtifactTrackerImpl
   private final Map<Label, JavaArtifactInfo> javaArtifacts = new HashMap<>();
   private CcDependenciesInfo ccDepencenciesInfo = CcDependenciesInfo.EMPTY;
   // Information about the origin of files in the cache. For each file in the cache, stores the
-  // artifact key that the file was derived from.
-  private final Map<Path, Path> cachePathToArtifactKeyMap = new HashMap<>();
+  // artifact key that the file was derived from. Read concurrently with updates, e.g. while srcjar
+  // digests are looked up.
+  private final Map<Path, Path> cachePathToArtifactKeyMap = new ConcurrentHashMap<>();
 
   private final ArtifactFetcher<OutputArtifact> artifactFetcher;
   private final ProjectPath.Resolver projectPathResolver;
@@ -156,7 +182,15 @@ public class ArtifactTrackerImpl
   private final FileCache generatedHeadersCache;
   private final Path appInspectorCacheDirectory;
   private final FileCache appInspectorCache;
+  // The full state, as of the last time it was written.
   private final Path persistentFile;
+  private final SrcJarInnerPathIndex srcJarInnerPathIndex;
+  // Updates made since the full state was written, each appended as a delimited proto.
+  private final Path journalFile;
+  private final Object journalLock = new Object();
+  // The uncompressed size of the full state, as of the last time it was written or read.
+  private volatile long fullStateSize = 0;
+  private ListenableFuture<?> pendingCompaction = Futures.immediateVoidFuture();
   private final Path ideProjectBasePath;
 
   public ArtifactTrackerImpl(
@@ -212,6 +246,14 @@ public class ArtifactTrackerImpl
             projectDirectory.resolve(DIGESTS_DIRECTORY_NAME),
             fileCacheCreator.getCacheDirectories());
     persistentFile = projectDirectory.resolve("artifact_tracker_state");
+    srcJarInnerPathIndex =
+        SRCJAR_INNER_PATH_INDEX.getValue()
+            ? SrcJarInnerPathIndex.load(
+                projectDirectory.resolve("srcjar_inner_paths"),
+                ArtifactFetcher.EXECUTOR,
+                this::getCachedArtifactDigest)
+            : SrcJarInnerPathIndex.NONE;
+    journalFile = projectDirectory.resolve("artifact_tracker_state.journal");
     transformRegistry.add(this::updateProjectProto);
     transformRegistry.add(new CcProjectProtoTransform(this));
   }
@@ -241,62 +283,202 @@ public class ArtifactTrackerImpl
     saveState();
   }
 
-  private void saveState() throws IOException {
+  /**
+   * Builds the entire persistent state. This is cheap compared to serializing and compressing it,
+   * so it is done on the calling thread to take a consistent snapshot of the maps.
+   */
+  private ArtifactTrackerState buildState() {
     JavaArtifacts.Builder builder = JavaArtifacts.newBuilder();
     javaArtifacts.values().stream().map(JavaArtifactInfo::toProto).forEach(builder::addArtifacts);
-    CcCompilationInfo ccCompilationInfo = ccDepencenciesInfo.toProto();
+    return ArtifactTrackerState.newBuilder()
+        .setVersion(STORAGE_VERSION)
+        .setArtifactInfo(builder.build())
+        .setCachedArtifacts(toProto(cachePathToArtifactKeyMap))
+        .setCcCompilationInfo(ccDepencenciesInfo.toProto())
+        .build();
+  }
+
+  private static CachedArtifacts toProto(Map<Path, Path> cachePathToArtifactKeyMap) {
     CachedArtifacts.Builder cachedArtifactsBuilder = CachedArtifacts.newBuilder();
     for (Map.Entry<Path, Path> entry : cachePathToArtifactKeyMap.entrySet()) {
       cachedArtifactsBuilder.putCachePathToArtifactPath(
           entry.getKey().toString(), entry.getValue().toString());
     }
-    try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(persistentFile))) {
-      ArtifactTrackerState.newBuilder()
-          .setVersion(STORAGE_VERSION)
-          .setArtifactInfo(builder.build())
-          .setCachedArtifacts(cachedArtifactsBuilder.build())
-          .setCcCompilationInfo(ccCompilationInfo)
-          .build()
-          .writeTo(stream);
+    return cachedArtifactsBuilder.build();
+  }
+
+  /** Writes the entire state to disk, replacing any journaled updates. */
+  private void saveState() throws IOException {
+    awaitCompaction();
+    ArtifactTrackerState state = buildState();
+    synchronized (journalLock) {
+      writeState(state);
+      Files.deleteIfExists(journalFile);
     }
   }
 
-  private void loadFromDisk() {
-    if (!Files.exists(persistentFile)) {
-      return;
+  private void writeState(ArtifactTrackerState state) throws IOException {
+    Path tmp = persistentFile.resolveSibling(persistentFile.getFileName() + ".tmp");
+    try (OutputStream stream = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+      state.writeTo(stream);
+    }
+    Files.move(tmp, persistentFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    fullStateSize = state.getSerializedSize();
+  }
+
+  /**
+   * Appends {@code update}, which holds only the entries changed by a single build, to the journal.
+   * Once the journal is larger than the full state, it is compacted in the background.
+   */
+  private void appendToJournal(ArtifactTrackerState update) throws IOException {
+    long journalSize;
+    synchronized (journalLock) {
+      try (OutputStream out =
+          new BufferedOutputStream(Files.newOutputStream(journalFile, CREATE, APPEND))) {
+        update.writeDelimitedTo(out);
+      }
+      journalSize = Files.size(journalFile);
     }
+    if (journalSize >= Math.max(MIN_JOURNAL_BYTES_TO_COMPACT, fullStateSize)
+        && pendingCompaction.isDone()) {
+      compactJournal();
+    }
+  }
+
+  /**
+   * Writes the entire state in the background, and then removes the journaled updates that it
+   * includes. Updates appended to the journal while this is in progress are kept.
+   *
+   * <p>Replaying an update is idempotent, so if the IDE exits after the state is written but before
+   * the journal is trimmed, the same state is loaded next time.
+   */
+  @CanIgnoreReturnValue
+  @VisibleForTesting
+  ListenableFuture<?> compactJournal() throws IOException {
+    long compactedJournalSize;
+    synchronized (journalLock) {
+      compactedJournalSize = Files.exists(journalFile) ? Files.size(journalFile) : 0;
+    }
+    ArtifactTrackerState state = buildState();
+    pendingCompaction =
+        COMPACTION_EXECUTOR.submit(
+            () -> {
+              writeState(state);
+              synchronized (journalLock) {
+                if (!Files.exists(journalFile)) {
+                  return null;
+                }
+                byte[] journal = Files.readAllBytes(journalFile);
+                if (journal.length <= compactedJournalSize) {
+                  Files.delete(journalFile);
+                } else {
+                  Path tmp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+                  Files.write(
+                      tmp,
+                      Arrays.copyOfRange(journal, (int) compactedJournalSize, journal.length));
+                  Files.move(tmp, journalFile, REPLACE_EXISTING, ATOMIC_MOVE);
+                }
+              }
+              return null;
+            });
+    return pendingCompaction;
+  }
+
+  private void awaitCompaction() {
+    try {
+      getUninterruptibly(pendingCompaction);
+    } catch (ExecutionException e) {
+      // The journal is left in place, so no updates are lost.
+      logger.warn("Failed to compact artifact tracker state", e);
+    }
+  }
+
+  /** Loads the last full state written, and then replays any journaled updates on top of it. */
+  private void loadFromDisk() {
     javaArtifacts.clear();
     cachePathToArtifactKeyMap.clear();
-    try (InputStream stream = new GZIPInputStream(Files.newInputStream(persistentFile))) {
-      ArtifactTrackerState saved =
-          ArtifactTrackerState.parseFrom(stream, ExtensionRegistry.getEmptyRegistry());
-      if (saved.getVersion() != STORAGE_VERSION) {
-        return;
-      }
-      cachePathToArtifactKeyMap.putAll(
-          saved.getCachedArtifacts().getCachePathToArtifactPathMap().entrySet().stream()
-              .collect(toImmutableMap(e -> Path.of(e.getKey()), e -> Path.of(e.getValue()))));
-      javaArtifacts.putAll(
-          saved.getArtifactInfo().getArtifactsList().stream()
-              .map(JavaArtifactInfo::create)
-              .collect(toImmutableMap(JavaArtifactInfo::label, Function.identity())));
-      for (JavaTargetArtifacts targetArtifact : saved.getArtifactInfo().getArtifactsList()) {
-        JavaArtifactInfo javaArtifactInfo = JavaArtifactInfo.create(targetArtifact);
-        javaArtifacts.put(javaArtifactInfo.label(), javaArtifactInfo);
+    CcDependenciesInfo.Builder ccDependencies = CcDependenciesInfo.EMPTY.toBuilder();
+    try {
+      if (Files.exists(persistentFile)) {
+        ArtifactTrackerState saved;
+        try (InputStream stream = new GZIPInputStream(Files.newInputStream(persistentFile))) {
+          saved = ArtifactTrackerState.parseFrom(stream, ExtensionRegistry.getEmptyRegistry());
+        }
+        if (saved.getVersion() != STORAGE_VERSION) {
+          Files.deleteIfExists(journalFile);
+          return;
+        }
+        fullStateSize = saved.getSerializedSize();
+        applyState(saved, ccDependencies);
       }
-      ccDepencenciesInfo = CcDependenciesInfo.create(saved.getCcCompilationInfo());
+      replayJournal(ccDependencies);
     } catch (IOException e) {
       logger.warn("Failed to load artifact tracker state", e);
       // TODO: If there is an error parsing the index, reinitialize the cache properly.
+    } finally {
+      ccDepencenciesInfo = ccDependencies.build();
     }
   }
 
+  private void replayJournal(CcDependenciesInfo.Builder ccDependencies) throws IOException {
+    if (!Files.exists(journalFile)) {
+      return;
+    }
+    byte[] journal = Files.readAllBytes(journalFile);
+    ByteArrayInputStream in = new ByteArrayInputStream(journal);
+    int validLength = 0;
+    try {
+      while (true) {
+        ArtifactTrackerState update =
+            ArtifactTrackerState.parseDelimitedFrom(in, ExtensionRegistry.getEmptyRegistry());
+        if (update == null || update.getVersion() != STORAGE_VERSION) {
+          break;
+        }
+        applyState(update, ccDependencies);
+        validLength = journal.length - in.available();
+      }
+    } catch (InvalidProtocolBufferException e) {
+      // An incomplete update, left behind if the IDE exited while it was being written.
+    }
+    if (validLength < journal.length) {
+      logger.warn(
+          String.format(
+              "Discarding %d bytes at the end of %s", journal.length - validLength, journalFile));
+      try (FileChannel channel = FileChannel.open(journalFile, WRITE)) {
+        channel.truncate(validLength);
+      }
+    }
+  }
+
+  /** Applies either the full state, or a journaled update, to the in memory maps. */
+  private void applyState(ArtifactTrackerState state, CcDependenciesInfo.Builder ccDependencies) {
+    for (Map.Entry<String, String> entry :
+        state.getCachedArtifacts().getCachePathToArtifactPathMap().entrySet()) {
+      cachePathToArtifactKeyMap.put(Path.of(entry.getKey()), Path.of(entry.getValue()));
+    }
+    for (JavaTargetArtifacts targetArtifact : state.getArtifactInfo().getArtifactsList()) {
+      JavaArtifactInfo javaArtifactInfo = JavaArtifactInfo.create(targetArtifact);
+      javaArtifacts.put(javaArtifactInfo.label(), javaArtifactInfo);
+    }
+    ccDependencies.add(state.getCcCompilationInfo());
+  }
+
+  /** Returns the digest of the artifact that {@code cachedArtifact} was copied from, if known. */
+  private Optional<String> getCachedArtifactDigest(Path cachedArtifact) {
+    Path artifactPath = cachePathToArtifactKeyMap.get(cachedArtifact);
+    if (artifactPath == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(
+        cacheDirectoryManager.getStoredArtifactDigest(artifactPath::toString));
+  }
+
   @Override
   public ImmutableSet<Path> getTargetSources(Path cachedArtifact) {
-    if (!cachePathToArtifactKeyMap.containsKey(cachedArtifact)) {
+    Path artifactPath = cachePathToArtifactKeyMap.get(cachedArtifact);
+    if (artifactPath == null) {
       return ImmutableSet.of();
     }
-    Path artifactPath = cachePathToArtifactKeyMap.get(cachedArtifact);
     return javaArtifacts.values().stream()
         .filter(d -> d.containsPath(artifactPath))
         .map(JavaArtifactInfo::sources)
@@ -429,9 +611,8 @@ public class ArtifactTrackerImpl
     }
     try (BlazeContext context = BlazeContext.create(outerContext)) {
       ImmutableMap<Path, Path> updated = cache(context, artifactMap);
-      saveState();
       return ArtifactTrackerUpdateResult.create(updated.keySet(), ImmutableSet.of());
-    } catch (ExecutionException | IOException e) {
+    } catch (ExecutionException e) {
       throw new BuildException(e);
     }
   }
@@ -454,9 +635,8 @@ public class ArtifactTrackerImpl
         layout.createFinalDestination(finalDest);
         paths.add(finalDest);
       }
-      saveState();
       return paths.build();
-    } catch (ExecutionException | IOException e) {
+    } catch (ExecutionException e) {
       throw new BuildException(e);
     }
   }
@@ -475,14 +655,30 @@ public class ArtifactTrackerImpl
       ImmutableMap<Path, Path> updated = cache(context, artifactMap);
 
       this.cachePathToArtifactKeyMap.putAll(updated);
+      Set<Label> updatedTargets = new HashSet<>();
       for (JavaArtifacts artifacts : outputInfo.getArtifactInfo()) {
-        updateMaps(targets, artifacts);
+        updatedTargets.addAll(updateMaps(targets, artifacts));
       }
       CcDependenciesInfo.Builder ccDepsBuilder = ccDepencenciesInfo.toBuilder();
-      outputInfo.getCcCompilationInfo().forEach(ccDepsBuilder::add);
+      CcDependenciesInfo.Builder ccDepsUpdate = CcDependenciesInfo.EMPTY.toBuilder();
+      for (CcCompilationInfo ccCompilationInfo : outputInfo.getCcCompilationInfo()) {
+        ccDepsBuilder.add(ccCompilationInfo);
+        ccDepsUpdate.add(ccCompilationInfo);
+      }
       ccDepencenciesInfo = ccDepsBuilder.build();
 
-      saveState();
+      JavaArtifacts.Builder javaArtifactsUpdate = JavaArtifacts.newBuilder();
+      updatedTargets.stream()
+          .map(javaArtifacts::get)
+          .map(JavaArtifactInfo::toProto)
+          .forEach(javaArtifactsUpdate::addArtifacts);
+      appendToJournal(
+          ArtifactTrackerState.newBuilder()
+              .setVersion(STORAGE_VERSION)
+              .setArtifactInfo(javaArtifactsUpdate)
+              .setCachedArtifacts(toProto(updated))
+              .setCcCompilationInfo(ccDepsUpdate.build().toProto())
+              .build());
       return ArtifactTrackerUpdateResult.create(updated.keySet(), ImmutableSet.of());
     } catch (ExecutionException | IOException e) {
       throw new BuildException(e);
@@ -605,19 +801,24 @@ public class ArtifactTrackerImpl
    *
    * @param targets the list of targets that were expected to be built. (From blaze query)
    * @param newArtifacts the artifacts that were actually built. From (blaze build)
+   * @return the labels of the entries of {@link #javaArtifacts} that were updated
    */
-  private void updateMaps(Set<Label> targets, JavaArtifacts newArtifacts) {
+  private ImmutableSet<Label> updateMaps(Set<Label> targets, JavaArtifacts newArtifacts) {
+    ImmutableSet.Builder<Label> updated = ImmutableSet.builder();
     for (JavaTargetArtifacts targetArtifacts : newArtifacts.getArtifactsList()) {
       JavaArtifactInfo javaArtifactInfo = JavaArtifactInfo.create(targetArtifacts);
       javaArtifacts.put(javaArtifactInfo.label(), javaArtifactInfo);
+      updated.add(javaArtifactInfo.label());
     }
     for (Label label : targets) {
       if (!javaArtifacts.containsKey(label)) {
         logger.warn(
             "Target " + label + " was not built. If the target is an alias, this is expected");
         javaArtifacts.put(label, JavaArtifactInfo.empty(label));
+        updated.add(label);
       }
     }
+    return updated.build();
   }
 
   private static final ImmutableSet<String> JAR_ZIP_EXTENSIONS =
@@ -684,7 +885,8 @@ public class ArtifactTrackerImpl
             projectProto,
             ImmutableSet.copyOf(generatedJavaSrcRoots),
             generatedProjectSrcJars.build(),
-            projectPathResolver);
+            projectPathResolver,
+            srcJarInnerPathIndex);
 
     projectProto = updater.addGenSrcContentEntry();
 
@@ -713,11 +915,18 @@ public class ArtifactTrackerImpl
           new SrcJarProjectUpdater(
               projectProto,
               Sets.union(workspaceSrcJars, generatedExternalSrcJars),
-              projectPathResolver);
+              projectPathResolver,
+              srcJarInnerPathIndex);
       projectProto = srcJarUpdater.addSrcJars();
     } else {
       logger.info("srcjar attachment disabled.");
     }
+    try {
+      srcJarInnerPathIndex.save();
+    } catch (IOException e) {
+      // The srcjars will just be examined again next time.
+      logger.warn("Failed to save srcjar inner path index", e);
+    }
 
     if (QuerySync.EXTRACT_RES_PACKAGES_AT_BUILD_TIME.getValue()) {
       AndroidResPackagesProjectUpdater resPackagesUpdater =
@@ -787,6 +996,6 @@ public class ArtifactTrackerImpl
 
   @Override
   public Iterable<Path> getBugreportFiles() {
-    return ImmutableList.of(persistentFile);
+    return ImmutableList.of(persistentFile, journalFile);
   }
 }
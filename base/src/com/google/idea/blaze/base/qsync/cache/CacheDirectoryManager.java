@@ -16,7 +16,9 @@
 package com.google.idea.blaze.base.qsync.cache;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.hash.Hashing;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactInfo;
@@ -27,17 +29,24 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * A class that knows how to manage artifact caches.
  *
  * <p>(1) This class manages cache directories and (2) this class keeps track of the digests of
- * artifacts stored in the cache.
+ * artifacts stored in the cache. The digests are kept in a single {@link DigestStore} file in the
+ * digest directory.
  */
 class CacheDirectoryManager {
 
+  private static final String DIGEST_STORE_FILE_NAME = "digests.log";
+
   private final Path digestDirectory;
   private final ImmutableCollection<Path> cacheDirectories;
+  @Nullable private DigestStore digestStore;
 
   public CacheDirectoryManager(Path digestDirectory, ImmutableCollection<Path> cacheDirectories) {
     this.digestDirectory = digestDirectory;
@@ -49,12 +58,15 @@ class CacheDirectoryManager {
    *
    * <p>Both in-memory and on-disk structures are initialized.
    */
-  public void initialize() {
+  public synchronized void initialize() {
     try {
       for (Path cacheDirectory : cacheDirectories) {
         Files.createDirectories(cacheDirectory);
       }
       Files.createDirectories(digestDirectory);
+      closeDigestStore();
+      digestStore = DigestStore.open(digestDirectory.resolve(DIGEST_STORE_FILE_NAME));
+      migrateDigestFiles(digestStore);
     } catch (IOException e) {
       throw new UncheckedIOException(
           String.format(
@@ -69,7 +81,8 @@ class CacheDirectoryManager {
    *
    * <p>Both in-memory and on-disk storage is cleared.
    */
-  public void clear() throws IOException {
+  public synchronized void clear() throws IOException {
+    closeDigestStore();
     // Delete dot directory first to ensure invalidation if interrupted.
     for (Path cacheDirectory : cacheDirectories) {
       if (Files.exists(cacheDirectory)) {
@@ -100,32 +113,42 @@ class CacheDirectoryManager {
 
   /** Gets the previously stored digest of the given artifact. */
   public String getStoredArtifactDigest(OutputArtifactInfo artifactInfo) {
-    return fileContentOrEmptyString(
-        digestDirectory.resolve(cacheKeyForArtifact(artifactInfo) + ".txt"));
+    return digestStore().get(cacheKeyForArtifact(artifactInfo));
   }
 
   /** Stores the digest of the given artifact for later use. */
   public void setStoredArtifactDigest(OutputArtifactInfo artifactInfo, String value) {
     try {
-      Path artifactDigestFile = digestDirectory.resolve(cacheKeyForArtifact(artifactInfo) + ".txt");
-      if (value.isEmpty()) {
-        Files.deleteIfExists(artifactDigestFile);
-      } else {
-        Files.writeString(artifactDigestFile, value);
-      }
+      digestStore().put(cacheKeyForArtifact(artifactInfo), value);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
-  private static String fileContentOrEmptyString(Path path) {
-    if (Files.isRegularFile(path)) {
-      try {
-        return Files.readString(path);
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
-      }
+  private synchronized DigestStore digestStore() {
+    return Preconditions.checkNotNull(digestStore, "Cache not initialized");
+  }
+
+  private void closeDigestStore() throws IOException {
+    if (digestStore != null) {
+      digestStore.close();
+      digestStore = null;
+    }
+  }
+
+  /**
+   * Moves any digests stored by earlier versions of the plugin, as one {@code .txt} file per
+   * artifact, into {@code store}.
+   */
+  private void migrateDigestFiles(DigestStore store) throws IOException {
+    List<Path> digestFiles;
+    try (Stream<Path> files = Files.list(digestDirectory)) {
+      digestFiles = files.filter(f -> f.toString().endsWith(".txt")).collect(toList());
+    }
+    for (Path digestFile : digestFiles) {
+      String key = FileUtilRt.getNameWithoutExtension(digestFile.getFileName().toString());
+      store.put(key, Files.readString(digestFile));
+      Files.delete(digestFile);
     }
-    return "";
   }
 }
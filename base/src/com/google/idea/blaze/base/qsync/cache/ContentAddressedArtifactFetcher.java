@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.common.Context;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link ArtifactFetcher} which keeps fetched artifacts in a {@link ContentAddressedStore}
+ * shared between projects, and hard links them into place.
+ *
+ * <p>Artifacts already in the store are linked without being fetched at all, and an artifact
+ * requested at several destinations is fetched only once. Artifacts without a usable digest are
+ * fetched directly by the delegate.
+ */
+public class ContentAddressedArtifactFetcher implements ArtifactFetcher<OutputArtifact> {
+
+  private static final Logger logger = Logger.getInstance(ContentAddressedArtifactFetcher.class);
+
+  private final ArtifactFetcher<OutputArtifact> delegate;
+  private final ContentAddressedStore store;
+
+  public ContentAddressedArtifactFetcher(
+      ArtifactFetcher<OutputArtifact> delegate, Path storeDirectory, long maxSizeBytes) {
+    this(delegate, new ContentAddressedStore(storeDirectory, maxSizeBytes));
+  }
+
+  @VisibleForTesting
+  ContentAddressedArtifactFetcher(
+      ArtifactFetcher<OutputArtifact> delegate, ContentAddressedStore store) {
+    this.delegate = delegate;
+    this.store = store;
+  }
+
+  @Override
+  public ListenableFuture<?> copy(
+      ImmutableMap<? extends OutputArtifact, ArtifactDestination> artifactToDest,
+      Context<?> context) {
+    Map<OutputArtifact, ArtifactDestination> uncached = new LinkedHashMap<>();
+    Map<String, OutputArtifact> artifactByDigest = new LinkedHashMap<>();
+    ListMultimap<String, Path> destinationsByDigest = ArrayListMultimap.create();
+    for (Map.Entry<? extends OutputArtifact, ArtifactDestination> entry :
+        artifactToDest.entrySet()) {
+      String digest = entry.getKey().getDigest();
+      if (ContentAddressedStore.isValidDigest(digest)) {
+        artifactByDigest.putIfAbsent(digest, entry.getKey());
+        destinationsByDigest.put(digest, entry.getValue().path);
+      } else {
+        uncached.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    // The store is consulted on the calling thread so that the delegate is called, and can report
+    // what it fetches to the context, before this method returns.
+    Map<OutputArtifact, ArtifactDestination> toFetch = new LinkedHashMap<>();
+    Map<String, Path> fetchedPaths = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<String, OutputArtifact> entry : artifactByDigest.entrySet()) {
+        String digest = entry.getKey();
+        if (!store.linkIfPresent(digest, destinationsByDigest.get(digest))) {
+          Path tempPath = store.newTempPath();
+          toFetch.put(entry.getValue(), new ArtifactDestination(tempPath));
+          fetchedPaths.put(digest, tempPath);
+        }
+      }
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    logger.info(
+        String.format(
+            "%d of %d artifacts found in %s",
+            artifactByDigest.size() - toFetch.size(), artifactByDigest.size(), store));
+
+    ImmutableList.Builder<ListenableFuture<?>> tasks = ImmutableList.builder();
+    if (!uncached.isEmpty()) {
+      tasks.add(delegate.copy(ImmutableMap.copyOf(uncached), context));
+    }
+    if (!toFetch.isEmpty()) {
+      tasks.add(
+          Futures.transform(
+              delegate.copy(ImmutableMap.copyOf(toFetch), context),
+              unused -> {
+                for (Map.Entry<String, Path> fetched : fetchedPaths.entrySet()) {
+                  List<Path> destinations = destinationsByDigest.get(fetched.getKey());
+                  try {
+                    store.add(fetched.getKey(), fetched.getValue(), destinations);
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                }
+                return null;
+              },
+              EXECUTOR));
+    }
+    ListenableFuture<List<Object>> result = Futures.allAsList(tasks.build());
+    result.addListener(
+        () -> {
+          try {
+            store.evict();
+          } catch (IOException e) {
+            logger.warn("Failed to evict artifacts from " + store, e);
+          }
+        },
+        EXECUTOR);
+    return result;
+  }
+
+  @Override
+  public Class<OutputArtifact> supportedArtifactType() {
+    return OutputArtifact.class;
+  }
+}
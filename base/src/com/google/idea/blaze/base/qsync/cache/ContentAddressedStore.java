@@ -0,0 +1,292 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A store of build artifacts keyed by their digest, which may be shared by several projects.
+ *
+ * <p>Artifacts are placed in a project's cache directories by hard linking them to the entry in
+ * the store, so each distinct artifact is stored on disk once however many caches and projects use
+ * it. Where hard links are not supported, such as when the cache is on a different file system to
+ * the store, the entry is copied instead.
+ *
+ * <p>The number of hard links to an entry serves as its reference count. When the store grows
+ * larger than its maximum size, entries that are no longer linked from any cache are deleted,
+ * least recently released first. Deleting an entry that is still linked would not free any disk
+ * space, so those are never evicted. The size of the store is found by walking it the first time
+ * entries are evicted, and is then kept up to date as entries are added, so that it is only walked
+ * again once it grows past its maximum size. Entries added by other IDE instances are only counted
+ * by the next walk.
+ *
+ * <p>The store may be used by several IDE instances concurrently: entries are only ever added by
+ * atomically moving a complete file into place.
+ */
+final class ContentAddressedStore {
+
+  private static final Logger logger = Logger.getInstance(ContentAddressedStore.class);
+
+  // Only digests which are safe to use as file names are stored.
+  private static final Pattern VALID_DIGEST = Pattern.compile("[0-9A-Za-z_\\-]{8,128}");
+
+  /**
+   * Entries released more recently than this are not evicted, so that an entry is not removed by
+   * another IDE instance between looking it up and linking to it.
+   */
+  private static final Duration DEFAULT_EVICTION_GRACE_PERIOD = Duration.ofMinutes(10);
+
+  private static final String TMP_DIRECTORY = "tmp";
+
+  private final Path root;
+  private final long maxSizeBytes;
+  private final Duration evictionGracePeriod;
+
+  // The size of the store as of the last walk, plus the entries added since, or -1 before the first
+  // walk. Guarded by this.
+  private long knownSizeBytes = -1;
+  // The store is walked again once it is known to be larger than this. Guarded by this.
+  private long walkAboveBytes;
+
+  ContentAddressedStore(Path root, long maxSizeBytes) {
+    this(root, maxSizeBytes, DEFAULT_EVICTION_GRACE_PERIOD);
+  }
+
+  @VisibleForTesting
+  ContentAddressedStore(Path root, long maxSizeBytes, Duration evictionGracePeriod) {
+    this.root = root;
+    this.maxSizeBytes = maxSizeBytes;
+    this.evictionGracePeriod = evictionGracePeriod;
+    this.walkAboveBytes = maxSizeBytes;
+  }
+
+  /** Returns true if an artifact with this digest can be kept in the store. */
+  static boolean isValidDigest(String digest) {
+    return VALID_DIGEST.matcher(digest).matches();
+  }
+
+  @VisibleForTesting
+  Path pathFor(String digest) {
+    return root.resolve(digest.substring(0, 2)).resolve(digest);
+  }
+
+  /**
+   * Links all {@code destinations} to the entry for {@code digest}, replacing any existing files or
+   * directories. Returns false, leaving the destinations untouched, if there is no such entry.
+   */
+  synchronized boolean linkIfPresent(String digest, List<Path> destinations) throws IOException {
+    Path entry = pathFor(digest);
+    if (!Files.isRegularFile(entry)) {
+      return false;
+    }
+    for (Path destination : destinations) {
+      link(entry, destination);
+    }
+    return true;
+  }
+
+  /** Returns a new, unique path that an artifact may be written to before it is added. */
+  Path newTempPath() throws IOException {
+    Path tmpDirectory = root.resolve(TMP_DIRECTORY);
+    Files.createDirectories(tmpDirectory);
+    return tmpDirectory.resolve(UUID.randomUUID().toString());
+  }
+
+  /**
+   * Adds the artifact in {@code file}, which must have been created by {@link #newTempPath()}, as
+   * the entry for {@code digest}, and links all {@code destinations} to it.
+   */
+  synchronized void add(String digest, Path file, List<Path> destinations) throws IOException {
+    Path entry = pathFor(digest);
+    if (Files.isRegularFile(entry)) {
+      // Added concurrently by another IDE instance. The contents are the same, but existing links
+      // would no longer share the entry if it were replaced.
+      Files.delete(file);
+    } else {
+      Files.createDirectories(entry.getParent());
+      Files.move(file, entry, ATOMIC_MOVE);
+      if (knownSizeBytes >= 0) {
+        knownSizeBytes += Files.size(entry);
+      }
+    }
+    for (Path destination : destinations) {
+      link(entry, destination);
+    }
+  }
+
+  private static void link(Path entry, Path destination) throws IOException {
+    if (Files.isDirectory(destination)) {
+      FileOperationProvider.getInstance().deleteRecursively(destination.toFile(), true);
+    } else {
+      Files.deleteIfExists(destination);
+    }
+    try {
+      Files.createLink(destination, entry);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(entry, destination, REPLACE_EXISTING, COPY_ATTRIBUTES);
+    }
+  }
+
+  /**
+   * Deletes unreferenced entries, least recently released first, until the store is no larger than
+   * its maximum size. Also deletes temporary files left behind by fetches that did not complete.
+   *
+   * <p>This does nothing unless the store is known to have grown past its maximum size, or has not
+   * been walked yet.
+   */
+  synchronized void evict() throws IOException {
+    if (knownSizeBytes >= 0 && knownSizeBytes <= walkAboveBytes) {
+      return;
+    }
+    if (!Files.isDirectory(root)) {
+      knownSizeBytes = 0;
+      return;
+    }
+    Instant gracePeriodStart = Instant.now().minus(evictionGracePeriod);
+    long totalSize = 0;
+    List<Entry> evictable = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(root, 2)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+          continue;
+        }
+        if (file.getParent().getFileName().toString().equals(TMP_DIRECTORY)) {
+          if (attributes.lastModifiedTime().toInstant().isBefore(gracePeriodStart)) {
+            Files.deleteIfExists(file);
+          }
+          continue;
+        }
+        totalSize += attributes.size();
+        Entry entry = Entry.read(file, attributes);
+        if (entry.unreferenced() && entry.releasedAt().toInstant().isBefore(gracePeriodStart)) {
+          evictable.add(entry);
+        }
+      }
+    }
+    if (totalSize <= maxSizeBytes) {
+      setSizeAfterWalk(totalSize);
+      return;
+    }
+    evictable.sort(Comparator.comparing(Entry::releasedAt));
+    int evicted = 0;
+    for (Entry entry : evictable) {
+      if (totalSize <= maxSizeBytes) {
+        break;
+      }
+      Files.deleteIfExists(entry.path());
+      totalSize -= entry.size();
+      evicted++;
+    }
+    setSizeAfterWalk(totalSize);
+    logger.info(
+        String.format(
+            "Evicted %d entries from %s, now %d bytes (maximum %d)",
+            evicted, root, totalSize, maxSizeBytes));
+  }
+
+  private void setSizeAfterWalk(long sizeBytes) {
+    knownSizeBytes = sizeBytes;
+    // If entries that are still linked keep the store over its maximum size, wait for a tenth of
+    // the maximum size to be added before walking it again, rather than walking it on every call.
+    walkAboveBytes = Math.max(maxSizeBytes, sizeBytes + maxSizeBytes / 10);
+  }
+
+  @Override
+  public String toString() {
+    return root.toString();
+  }
+
+  @VisibleForTesting
+  ImmutableList<Path> entries() throws IOException {
+    if (!Files.isDirectory(root)) {
+      return ImmutableList.of();
+    }
+    try (Stream<Path> files = Files.walk(root, 2)) {
+      return files
+          .filter(Files::isRegularFile)
+          .filter(f -> !f.getParent().getFileName().toString().equals(TMP_DIRECTORY))
+          .collect(ImmutableList.toImmutableList());
+    }
+  }
+
+  /** An entry in the store, as seen while evicting. */
+  private static final class Entry {
+    private final Path path;
+    private final long size;
+    private final int linkCount;
+    private final FileTime releasedAt;
+
+    private Entry(Path path, long size, int linkCount, FileTime releasedAt) {
+      this.path = path;
+      this.size = size;
+      this.linkCount = linkCount;
+      this.releasedAt = releasedAt;
+    }
+
+    /**
+     * Where the file system exposes it, the change time of a file is updated whenever a link to
+     * it is removed, so for an entry with no remaining links it is the time it was last released.
+     * Elsewhere, every entry is treated as unreferenced and evicted in the order they were added.
+     */
+    static Entry read(Path file, BasicFileAttributes attributes) throws IOException {
+      if (!file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+        return new Entry(file, attributes.size(), 1, attributes.lastModifiedTime());
+      }
+      return new Entry(
+          file,
+          attributes.size(),
+          (Integer) Files.getAttribute(file, "unix:nlink"),
+          (FileTime) Files.getAttribute(file, "unix:ctime"));
+    }
+
+    Path path() {
+      return path;
+    }
+
+    long size() {
+      return size;
+    }
+
+    boolean unreferenced() {
+      return linkCount <= 1;
+    }
+
+    FileTime releasedAt() {
+      return releasedAt;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * A persistent map from artifact cache keys to digests, stored as an append-only log in a single
+ * file.
+ *
+ * <p>Each update appends one record to the log, and all lookups are served from memory. When
+ * opened, the log is read and replayed, stopping at the first incomplete or corrupt record, such as
+ * one left behind by a crash while it was being written; the log is truncated at that point. Once
+ * the log holds many more records than live entries, it is compacted by writing the live entries
+ * to a new file which atomically replaces it.
+ *
+ * <p>This class is thread safe.
+ */
+final class DigestStore implements AutoCloseable {
+
+  private static final int MAGIC = 0x51534447; // "QSDG"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+
+  /** The log is not compacted until it holds at least this many records. */
+  @VisibleForTesting static final int MIN_RECORDS_TO_COMPACT = 1000;
+
+  private final Path file;
+  private final Map<String, String> digests;
+  private int recordCount;
+  private FileChannel log;
+
+  private DigestStore(Path file, Map<String, String> digests, int recordCount) {
+    this.file = file;
+    this.digests = digests;
+    this.recordCount = recordCount;
+  }
+
+  /** Opens the store in {@code file}, creating it if it does not exist. */
+  static DigestStore open(Path file) throws IOException {
+    Map<String, String> digests = new HashMap<>();
+    int recordCount = 0;
+    long validLength = 0;
+    if (Files.exists(file)) {
+      // The log is read in a single bulk read rather than memory mapped, as on some platforms a
+      // mapped file cannot be truncated or replaced until the mapping is garbage collected.
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      if (buffer.limit() >= HEADER_SIZE
+          && buffer.getInt(0) == MAGIC
+          && buffer.getInt(4) == VERSION) {
+        buffer.position(HEADER_SIZE);
+        while (readRecord(buffer, digests)) {
+          recordCount++;
+        }
+        validLength = buffer.position();
+      }
+    }
+    DigestStore store = new DigestStore(file, digests, recordCount);
+    if (validLength == 0 || store.shouldCompact()) {
+      // The file is new or unreadable, or due to be compacted: write it afresh.
+      store.compact();
+    } else {
+      store.log = FileChannel.open(file, StandardOpenOption.WRITE);
+      store.log.truncate(validLength);
+      store.log.position(validLength);
+    }
+    return store;
+  }
+
+  /** Returns the digest stored for {@code key}, or an empty string if there is none. */
+  synchronized String get(String key) {
+    return digests.getOrDefault(key, "");
+  }
+
+  /** Stores {@code digest} for {@code key}. An empty digest removes any stored digest. */
+  synchronized void put(String key, String digest) throws IOException {
+    String previous = digest.isEmpty() ? digests.remove(key) : digests.put(key, digest);
+    if (digest.equals(previous == null ? "" : previous)) {
+      return;
+    }
+    ByteBuffer record = encodeRecord(key, digest);
+    while (record.hasRemaining()) {
+      log.write(record);
+    }
+    recordCount++;
+    if (shouldCompact()) {
+      compact();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    log.close();
+  }
+
+  @VisibleForTesting
+  synchronized int recordCount() {
+    return recordCount;
+  }
+
+  private boolean shouldCompact() {
+    return recordCount >= MIN_RECORDS_TO_COMPACT && recordCount > 2 * digests.size();
+  }
+
+  private void compact() throws IOException {
+    if (log != null) {
+      log.close();
+    }
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+      out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array());
+      for (Map.Entry<String, String> entry : digests.entrySet()) {
+        ByteBuffer record = encodeRecord(entry.getKey(), entry.getValue());
+        out.write(record.array(), 0, record.limit());
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    recordCount = digests.size();
+  }
+
+  /**
+   * A record is the length prefixed key and digest in UTF-8, followed by a CRC32 of the preceding
+   * bytes.
+   */
+  private static ByteBuffer encodeRecord(String key, String digest) {
+    byte[] keyBytes = key.getBytes(UTF_8);
+    byte[] digestBytes = digest.getBytes(UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(12 + keyBytes.length + digestBytes.length);
+    record.putInt(keyBytes.length).put(keyBytes).putInt(digestBytes.length).put(digestBytes);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 0, record.position());
+    record.putInt((int) crc.getValue());
+    record.flip();
+    return record;
+  }
+
+  /**
+   * Reads the record at the current position of {@code buffer} into {@code digests}, and advances
+   * past it. Returns false, leaving the position unchanged, if there is no complete valid record.
+   */
+  private static boolean readRecord(ByteBuffer buffer, Map<String, String> digests) {
+    int start = buffer.position();
+    String key = readString(buffer);
+    String digest = key == null ? null : readString(buffer);
+    if (digest == null || buffer.remaining() < 4) {
+      buffer.position(start);
+      return false;
+    }
+    ByteBuffer recordBytes = buffer.duplicate();
+    recordBytes.position(start);
+    recordBytes.limit(buffer.position());
+    CRC32 crc = new CRC32();
+    crc.update(recordBytes);
+    if (buffer.getInt() != (int) crc.getValue()) {
+      buffer.position(start);
+      return false;
+    }
+    if (digest.isEmpty()) {
+      digests.remove(key);
+    } else {
+      digests.put(key, digest);
+    }
+    return true;
+  }
+
+  @Nullable
+  private static String readString(ByteBuffer buffer) {
+    if (buffer.remaining() < 4) {
+      return null;
+    }
+    int length = buffer.getInt();
+    if (length < 0 || buffer.remaining() < length) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
@@ -178,7 +178,7 @@ public class BlazeXmlSchema {
     // Can't use @XmlValue with @XmlElement
     @XmlMixed
     @XmlAnyElement(lax = true)
-    private List<Object> content;
+    List<Object> content;
 
     @XmlAttribute String message;
     @XmlAttribute String type;
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestSuite;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.Values;
+import java.io.InputStream;
+import java.util.ArrayList;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses the test.xml generated by the blaze/bazel testing framework into the same model as {@link
+ * BlazeXmlSchema#parse}, with a single pass of a StAX stream reader.
+ *
+ * <p>This avoids creating a JAXB unmarshaller per file, and the reflective binding it performs,
+ * so that the output of each test target can be parsed cheaply as soon as it is written. Unknown
+ * elements are skipped, as they are by JAXB.
+ */
+final class BlazeXmlStreamParser {
+
+  private static final XMLInputFactory FACTORY = createFactory();
+
+  private BlazeXmlStreamParser() {}
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  static TestSuite parse(InputStream input) {
+    try {
+      XMLStreamReader reader = FACTORY.createXMLStreamReader(input);
+      try {
+        reader.nextTag();
+        switch (reader.getLocalName()) {
+          case "testsuites":
+            // optional wrapping XML element. Some test runners don't include it.
+            TestSuite suite = new TestSuite();
+            while (nextChildElement(reader)) {
+              if (reader.getLocalName().equals("testsuite")) {
+                suite.testSuites.add(readTestSuite(reader));
+              } else {
+                skipElement(reader);
+              }
+            }
+            return suite;
+          case "testsuite":
+            return readTestSuite(reader);
+          default:
+            throw new XMLStreamException("Unexpected root element " + reader.getLocalName());
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new RuntimeException("Failed to parse test XML", e);
+    }
+  }
+
+  private static TestSuite readTestSuite(XMLStreamReader reader) throws XMLStreamException {
+    TestSuite suite = new TestSuite();
+    suite.name = reader.getAttributeValue(null, "name");
+    suite.classname = reader.getAttributeValue(null, "classname");
+    suite.tests = parseInt(reader.getAttributeValue(null, "tests"));
+    suite.failures = parseInt(reader.getAttributeValue(null, "failures"));
+    suite.errors = parseInt(reader.getAttributeValue(null, "errors"));
+    suite.skipped = parseInt(reader.getAttributeValue(null, "skipped"));
+    suite.disabled = parseInt(reader.getAttributeValue(null, "disabled"));
+    suite.time = parseDouble(reader.getAttributeValue(null, "time"));
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          suite.sysOut = readText(reader);
+          break;
+        case "system-err":
+          suite.sysErr = readText(reader);
+          break;
+        case "error":
+          suite.error = readError(reader);
+          break;
+        case "failure":
+          suite.failure = readError(reader);
+          break;
+        case "testsuite":
+          suite.testSuites.add(readTestSuite(reader));
+          break;
+        case "testdecorator":
+          suite.testDecorators.add(readTestSuite(reader));
+          break;
+        case "testcase":
+          suite.testCases.add(readTestCase(reader));
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return suite;
+  }
+
+  private static TestCase readTestCase(XMLStreamReader reader) throws XMLStreamException {
+    TestCase test = new TestCase();
+    test.name = reader.getAttributeValue(null, "name");
+    test.classname = reader.getAttributeValue(null, "classname");
+    test.status = reader.getAttributeValue(null, "status");
+    test.result = reader.getAttributeValue(null, "result");
+    test.time = reader.getAttributeValue(null, "time");
+    while (nextChildElement(reader)) {
+      switch (reader.getLocalName()) {
+        case "system-out":
+          test.sysOut = readText(reader);
+          break;
+        case "system-err":
+          test.sysErr = readText(reader);
+          break;
+        case "error":
+          test.errors.add(readError(reader));
+          break;
+        case "failure":
+          test.failures.add(readError(reader));
+          break;
+        case "skipped":
+          test.skipped = readError(reader);
+          break;
+        default:
+          skipElement(reader);
+      }
+    }
+    return test;
+  }
+
+  /** Reads mixed content, in which each run of text is kept separately, as JAXB does. */
+  private static ErrorOrFailureOrSkipped readError(XMLStreamReader reader)
+      throws XMLStreamException {
+    ErrorOrFailureOrSkipped error = new ErrorOrFailureOrSkipped();
+    error.message = reader.getAttributeValue(null, "message");
+    error.type = reader.getAttributeValue(null, "type");
+    while (true) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return error;
+      }
+      if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+        if (error.content == null) {
+          error.content = new ArrayList<>();
+        }
+        error.content.add(reader.getText());
+      } else if (event == XMLStreamConstants.START_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case "expected":
+            error.expected = readValues(reader);
+            break;
+          case "actual":
+            error.actual = readValues(reader);
+            break;
+          default:
+            skipElement(reader);
+        }
+      }
+    }
+  }
+
+  private static Values readValues(XMLStreamReader reader) throws XMLStreamException {
+    Values values = new Values();
+    while (nextChildElement(reader)) {
+      if (reader.getLocalName().equals("value")) {
+        values.values.add(readText(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Moves to the next child element of the current element, returning false at the end of the
+   * current element instead. Text between child elements is ignored.
+   */
+  private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+    while (true) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      }
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+  }
+
+  /** Returns the text of the current element, ignoring the tags of any nested elements. */
+  private static String readText(XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          text.append(reader.getText());
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        default: // fall out
+      }
+    }
+    return text.toString();
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /** Unparseable numeric attributes are treated as absent. */
+  private static int parseInt(@Nullable String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static double parseDouble(@Nullable String value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
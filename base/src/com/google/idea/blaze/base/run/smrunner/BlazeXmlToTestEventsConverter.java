@@ -15,13 +15,20 @@
  */
 package com.google.idea.blaze.base.run.smrunner;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
+import com.google.idea.blaze.base.command.buildresult.TailingBuildEventStreamProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
@@ -53,26 +60,43 @@ import com.intellij.execution.testframework.sm.runner.events.TestSuiteStartedEve
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 import jetbrains.buildServer.messages.serviceMessages.TestSuiteStarted;
 
 /** Converts blaze test runner xml logs to smRunner events. */
 public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConverter {
+  private static final Logger logger = Logger.getInstance(BlazeXmlToTestEventsConverter.class);
   private static final ErrorOrFailureOrSkipped NO_ERROR = new ErrorOrFailureOrSkipped();
   private static final BoolExperiment removeZeroRunTimeCheck =
       new BoolExperiment("remove.zero.run.time.check", true);
 
+  /**
+   * Reports the results of each test target while the test is running, as soon as its BEP test
+   * result event is written, rather than once the whole run has finished.
+   */
+  private static final BoolExperiment streamTestResults =
+      new BoolExperiment("blaze.test.results.streaming", false);
+
   {
     NO_ERROR.message = "No message"; // cannot be null
   }
 
   private final BlazeTestResultFinderStrategy testResultFinderStrategy;
+  // Serializes the events of each target, which may be reported from several threads.
+  private final Object eventsLock = new Object();
+  private volatile boolean testComplete = false;
+  @Nullable private volatile TestResultStreamer streamer;
 
   public BlazeXmlToTestEventsConverter(
       String testFrameworkName,
@@ -82,32 +106,68 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     this.testResultFinderStrategy = testResultFinderStrategy;
   }
 
+  @Override
+  public void onStartTesting() {
+    super.onStartTesting();
+    if (streamer != null || testComplete || !streamTestResults.getValue()) {
+      return;
+    }
+    TailingBuildEventStreamProvider stream =
+        testResultFinderStrategy.streamBuildEvents(() -> testComplete);
+    if (stream != null) {
+      streamer = new TestResultStreamer(stream);
+    }
+  }
+
   @Override
   public void flushBufferOnProcessTermination(int exitCode) {
     super.flushBufferOnProcessTermination(exitCode);
+    testComplete = true;
 
     try {
+      TestResultStreamer streamer = this.streamer;
+      BlazeTestResults streamedResults = streamer != null ? streamer.finish() : null;
+      if (streamedResults != null) {
+        // The results of every target have already been reported.
+        if (streamedResults == BlazeTestResults.NO_RESULTS) {
+          reportError(exitCode);
+        }
+        return;
+      }
+      // Results reported before the build events could no longer be read aren't reported again.
+      Set<BlazeTestResult> reportedResults =
+          streamer != null ? streamer.reportedResults : ImmutableSet.of();
       BlazeTestResults testResults = testResultFinderStrategy.findTestResults();
       if (testResults == BlazeTestResults.NO_RESULTS) {
-        reportError(exitCode);
+        if (reportedResults.isEmpty()) {
+          reportError(exitCode);
+        }
       } else {
-        processAllTestResults(testResults);
+        processAllTestResults(testResults, reportedResults);
       }
     } catch (GetArtifactsException e) {
-      Logger.getInstance(this.getClass()).error(e.getMessage());
+      logger.error(e.getMessage());
     } finally {
       testResultFinderStrategy.deleteTemporaryOutputFiles();
     }
   }
 
-  private void processAllTestResults(BlazeTestResults testResults) {
+  private void processAllTestResults(
+      BlazeTestResults testResults, Set<BlazeTestResult> reportedResults) {
     onStartTesting();
     getProcessor().onTestsReporterAttached();
     List<ListenableFuture<ParsedTargetResults>> futures = new ArrayList<>();
     for (Label label : testResults.perTargetResults.keySet()) {
+      ImmutableList<BlazeTestResult> results =
+          testResults.perTargetResults.get(label).stream()
+              .filter(result -> !reportedResults.contains(result))
+              .collect(toImmutableList());
+      if (results.isEmpty()) {
+        continue;
+      }
       futures.add(
           FetchExecutor.EXECUTOR.submit(
-              () -> parseTestXml(label, testResults.perTargetResults.get(label))));
+              () -> parseTestXml(label, results, BlazeXmlSchema::parse)));
     }
     List<ParsedTargetResults> parsedResults =
         FuturesUtil.getIgnoringErrors(Futures.allAsList(futures));
@@ -145,15 +205,78 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     }
   }
 
+  /**
+   * Reports the results of each test target as soon as all of them have been written to the BEP,
+   * while the test is still running. The results of every shard and attempt of a target are
+   * reported together, as a single suite.
+   */
+  private class TestResultStreamer {
+    private final ListenableFuture<BlazeTestResults> results;
+    // Only added to while reading the build events, so safe to read once that has finished.
+    private final List<ListenableFuture<?>> reporting = new ArrayList<>();
+    private final Set<BlazeTestResult> reportedResults = ConcurrentHashMap.newKeySet();
+    // Guarded by eventsLock.
+    private boolean reporterAttached = false;
+
+    TestResultStreamer(TailingBuildEventStreamProvider stream) {
+      // The build events are read for as long as the test runs, so this shouldn't hold up fetches.
+      results =
+          MoreExecutors.listeningDecorator(AppExecutorUtil.getAppExecutorService())
+              .submit(
+                  () -> {
+                    try (TailingBuildEventStreamProvider events = stream) {
+                      return BuildEventProtocolOutputReader.parseTestResults(events, this::report);
+                    }
+                  });
+    }
+
+    private void report(ImmutableList<BlazeTestResult> targetResults) {
+      reportedResults.addAll(targetResults);
+      Label label = targetResults.get(0).getLabel();
+      reporting.add(
+          FetchExecutor.EXECUTOR.submit(
+              () -> {
+                ParsedTargetResults parsed =
+                    parseTestXml(label, targetResults, BlazeXmlStreamParser::parse);
+                synchronized (eventsLock) {
+                  if (!reporterAttached) {
+                    reporterAttached = true;
+                    getProcessor().onTestsReporterAttached();
+                  }
+                  processParsedTestResults(parsed);
+                }
+              }));
+    }
+
+    /**
+     * Waits for the test results to be read and reported, returning them, or null if the build
+     * events could not be read to the end.
+     */
+    @Nullable
+    BlazeTestResults finish() {
+      BlazeTestResults testResults;
+      try {
+        testResults = Uninterruptibles.getUninterruptibly(results);
+      } catch (ExecutionException e) {
+        logger.warn("Could not read streamed test results", e.getCause());
+        testResults = null;
+      }
+      FuturesUtil.getIgnoringErrors(Futures.successfulAsList(reporting));
+      return testResults;
+    }
+  }
+
   /** Parse all test XML files from a single test target. */
   private static ParsedTargetResults parseTestXml(
-      Label label, Collection<BlazeTestResult> results) {
+      Label label,
+      Collection<BlazeTestResult> results,
+      Function<InputStream, TestSuite> parser) {
     List<BlazeArtifact> outputFiles = new ArrayList<>();
     results.forEach(result -> outputFiles.addAll(result.getOutputXmlFiles()));
     List<TestSuite> targetSuites = new ArrayList<>();
     for (BlazeArtifact file : outputFiles) {
       try (InputStream input = file.getInputStream()) {
-        targetSuites.add(BlazeXmlSchema.parse(input));
+        targetSuites.add(parser.apply(input));
       } catch (Exception e) {
         // ignore parsing errors -- most common cause is user cancellation, which we can't easily
         // recognize.
@@ -16,6 +16,9 @@
 package com.google.idea.blaze.base.run.testlogs;
 
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
+import com.google.idea.blaze.base.command.buildresult.TailingBuildEventStreamProvider;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nullable;
 
 /** A strategy for locating results from 'blaze test' invocation (e.g. output XML files). */
 public interface BlazeTestResultFinderStrategy {
@@ -27,6 +30,18 @@ public interface BlazeTestResultFinderStrategy {
    */
   BlazeTestResults findTestResults() throws GetArtifactsException;
 
+  /**
+   * Returns the build events of the 'blaze test' invocation as they are written, so that results
+   * can be read while it runs, or null if they can only be found once it completes. The stream
+   * must be closed by the caller.
+   *
+   * @param testComplete returns true once the invocation has finished writing build events
+   */
+  @Nullable
+  default TailingBuildEventStreamProvider streamBuildEvents(BooleanSupplier testComplete) {
+    return null;
+  }
+
   /** Remove any temporary files used by this result finder. */
   void deleteTemporaryOutputFiles();
 }
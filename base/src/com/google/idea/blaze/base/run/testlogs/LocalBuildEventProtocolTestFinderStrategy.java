@@ -17,7 +17,11 @@ package com.google.idea.blaze.base.run.testlogs;
 
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper;
 import com.google.idea.blaze.base.command.buildresult.BuildResultHelper.GetArtifactsException;
+import com.google.idea.blaze.base.command.buildresult.BuildResultHelperBep;
+import com.google.idea.blaze.base.command.buildresult.TailingBuildEventStreamProvider;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nullable;
 
 /**
  * A strategy for locating results from a single 'blaze test' invocation (e.g. output XML files).
@@ -37,6 +41,16 @@ public final class LocalBuildEventProtocolTestFinderStrategy
     return buildResultHelper.getTestResults(Optional.empty());
   }
 
+  @Nullable
+  @Override
+  public TailingBuildEventStreamProvider streamBuildEvents(BooleanSupplier testComplete) {
+    if (!(buildResultHelper instanceof BuildResultHelperBep)) {
+      return null;
+    }
+    return new TailingBuildEventStreamProvider(
+        ((BuildResultHelperBep) buildResultHelper).getOutputFile(), testComplete);
+  }
+
   @Override
   public void deleteTemporaryOutputFiles() {
     buildResultHelper.deleteTemporaryOutputFiles();
@@ -17,26 +17,61 @@ package com.google.idea.blaze.base.sync;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
-/** Computes a cache on the project data. */
+/**
+ * Computes a cache on the project data.
+ *
+ * <p>Each value is computed at most once per sync: concurrent callers asking for the same key wait
+ * for the first caller's computation, while callers asking for different keys don't block each
+ * other. Values registered as {@link EagerComputable}s are computed in the background as soon as
+ * sync completes.
+ */
 public class SyncCache {
+  private static final Logger logger = Logger.getInstance(SyncCache.class);
+
+  private static final BoolExperiment eagerComputation =
+      new BoolExperiment("sync.cache.eager.computation", true);
+
   /** Computes a value based on the sync project data. */
   public interface SyncCacheComputable<T> {
     @Nullable
     T compute(Project project, BlazeProjectData projectData);
   }
 
+  /**
+   * A value that's needed soon after most syncs, and so is computed in the background once sync
+   * completes rather than by the first caller.
+   */
+  public interface EagerComputable<T> extends SyncCacheComputable<T> {
+    ExtensionPointName<EagerComputable<?>> EP_NAME =
+        ExtensionPointName.create("com.google.idea.blaze.SyncCacheEagerComputable");
+
+    /** The key the value is cached under, which callers pass to {@link SyncCache#get}. */
+    Object getKey();
+  }
+
   private final Project project;
-  private final Map<Object, Object> cache = Maps.newHashMap();
+  private final ConcurrentMap<Object, CompletableFuture<Object>> cache = new ConcurrentHashMap<>();
+  /** Incremented by each {@link #clear}, so computations can tell they may be out of date. */
+  private final AtomicInteger generation = new AtomicInteger();
 
   public SyncCache(Project project) {
     this.project = project;
@@ -49,25 +84,94 @@ public class SyncCache {
   /** Computes a value derived from the sync project data and caches it until the next sync. */
   @Nullable
   @SuppressWarnings("unchecked")
-  public synchronized <T> T get(Object key, SyncCacheComputable<T> computable) {
-    if (cache.containsKey(key)) {
-      return (T) cache.get(key);
+  public <T> T get(Object key, SyncCacheComputable<T> computable) {
+    while (true) {
+      // Read before the entry is added, so a clear() racing with this call is always noticed.
+      int startGeneration = generation.get();
+      CompletableFuture<Object> existing = cache.get(key);
+      if (existing == null) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        existing = cache.putIfAbsent(key, future);
+        if (existing == null) {
+          return (T) compute(key, computable, startGeneration, future);
+        }
+      }
+      try {
+        return (T) existing.join();
+      } catch (CompletionException | CancellationException e) {
+        // The computing thread failed, and has removed its entry. Its failure may be specific to
+        // that thread (e.g. its progress indicator was cancelled), so try again on this one.
+      }
     }
+  }
+
+  @Nullable
+  private Object compute(
+      Object key,
+      SyncCacheComputable<?> computable,
+      int startGeneration,
+      CompletableFuture<Object> future) {
+    // Only read once this thread owns the entry, so it's no older than the last clear().
     BlazeProjectData blazeProjectData =
         BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
     if (blazeProjectData == null) {
+      cache.remove(key, future);
+      future.complete(null);
       return null;
     }
-    T value = computable.compute(project, blazeProjectData);
-    cache.put(key, value);
+    long start = System.nanoTime();
+    Object value;
+    try {
+      value = computable.compute(project, blazeProjectData);
+    } catch (RuntimeException | Error e) {
+      cache.remove(key, future);
+      future.completeExceptionally(e);
+      throw e;
+    }
+    logger.info(
+        String.format("Computed %s in %d ms", key, (System.nanoTime() - start) / 1_000_000));
+    if (generation.get() != startGeneration) {
+      // The cache was cleared while computing, so the value may be from the previous sync's
+      // project data. Callers already waiting on it still get it, but it isn't kept.
+      cache.remove(key, future);
+    }
+    future.complete(value);
     return value;
   }
 
   @VisibleForTesting
-  public synchronized void clear() {
+  public void clear() {
+    // Computations still in flight complete their own futures, but don't store their values.
+    generation.incrementAndGet();
     cache.clear();
   }
 
+  /**
+   * Starts computing each {@link EagerComputable} on a background thread, from whatever project
+   * data is current when it runs.
+   */
+  private void computeEagerly() {
+    for (EagerComputable<?> computable : EagerComputable.EP_NAME.getExtensionList()) {
+      @SuppressWarnings("unused") // failures are logged
+      Future<?> possiblyIgnoredError =
+          BlazeExecutor.getInstance()
+              .submit(
+                  () -> {
+                    if (project.isDisposed()) {
+                      return null;
+                    }
+                    Object key = computable.getKey();
+                    try {
+                      get(key, computable);
+                    } catch (RuntimeException e) {
+                      // It will be computed again by the first caller that needs it.
+                      logger.warn("Failed to compute " + key, e);
+                    }
+                    return null;
+                  });
+    }
+  }
+
   static class ClearSyncCache implements SyncListener {
     @Override
     public void onSyncComplete(
@@ -81,6 +185,9 @@ public class SyncCache {
         SyncResult syncResult) {
       SyncCache syncCache = getInstance(project);
       syncCache.clear();
+      if (eagerComputation.getValue()) {
+        syncCache.computeEagerly();
+      }
     }
   }
 }
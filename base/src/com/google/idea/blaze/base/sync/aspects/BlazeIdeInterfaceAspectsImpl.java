@@ -46,6 +46,7 @@ import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactWithoutDigest;
 import com.google.idea.blaze.base.command.info.BlazeConfigurationHandler;
 import com.google.idea.blaze.base.filecache.ArtifactState;
+import com.google.idea.blaze.base.filecache.ArtifactState.DigestState;
 import com.google.idea.blaze.base.filecache.ArtifactsDiff;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
@@ -128,6 +129,16 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
   private static final BoolExperiment noFakeStampExperiment =
       new BoolExperiment("blaze.sync.nofake.stamp.data", true);
 
+  /**
+   * Whether aspect output files are diffed using the digests reported by the build rather than
+   * their timestamps, and parsed in batches rather than one task per file.
+   */
+  private static final BoolExperiment batchAspectOutputsExperiment =
+      new BoolExperiment("blaze.sync.batch.aspect.outputs", false);
+
+  /** The number of aspect output files parsed by each task, if they are parsed in batches. */
+  private static final int ASPECT_FILES_PER_TASK = 64;
+
   @Override
   @Nullable
   public ProjectTargetData updateTargetData(
@@ -181,6 +192,39 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
         .collect(toImmutableSet());
   }
 
+  /** Returns the aspect output files containing target info. */
+  private static ImmutableList<OutputArtifact> getIdeInfoFiles(BlazeBuildOutputs buildOutputs) {
+    Predicate<String> ideInfoPredicate = AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE;
+    return buildOutputs
+        .getOutputGroupArtifacts(group -> group.startsWith(OutputGroup.INFO.prefix))
+        .stream()
+        .filter(f -> ideInfoPredicate.test(f.getRelativePath()))
+        .distinct()
+        .collect(toImmutableList());
+  }
+
+  /**
+   * Diffs aspect output files by the digests reported by the build, so that unlike {@link
+   * ArtifactsDiff#diffArtifacts(ImmutableMap, Collection)} the files are not accessed at all. Files
+   * without a digest fall back to their usual {@link ArtifactState}.
+   */
+  private static ArtifactsDiff diffByDigest(
+      @Nullable ImmutableMap<String, ArtifactState> oldState, Collection<OutputArtifact> files) {
+    ImmutableMap.Builder<String, OutputArtifactWithoutDigest> artifacts = ImmutableMap.builder();
+    ImmutableMap.Builder<String, ArtifactState> newState = ImmutableMap.builder();
+    for (OutputArtifact file : files) {
+      artifacts.put(file.getRelativePath(), file);
+      ArtifactState state =
+          file.getDigest().isEmpty()
+              ? file.toArtifactState()
+              : new DigestState(file.getRelativePath(), file.getDigest());
+      if (state != null) {
+        newState.put(file.getRelativePath(), state);
+      }
+    }
+    return ArtifactsDiff.diffArtifacts(oldState, artifacts.buildOrThrow(), newState.buildOrThrow());
+  }
+
   @Nullable
   private static TargetMapAndInterfaceState updateTargetMap(
       Project project,
@@ -201,20 +245,16 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
     BlazeIdeInterfaceState prevState =
         oldProjectData != null ? oldProjectData.getTargetData().ideInterfaceState : null;
 
-    Predicate<String> ideInfoPredicate = AspectStrategy.ASPECT_OUTPUT_FILE_PREDICATE;
-    Collection<OutputArtifact> files =
-        buildResult
-            .getBuildResult()
-            .getOutputGroupArtifacts(group -> group.startsWith(OutputGroup.INFO.prefix))
-            .stream()
-            .filter(f -> ideInfoPredicate.test(f.getRelativePath()))
-            .distinct()
-            .collect(toImmutableList());
+    Collection<OutputArtifact> files = getIdeInfoFiles(buildResult.getBuildResult());
 
     ArtifactsDiff diff;
     try {
+      ImmutableMap<String, ArtifactState> prevFileState =
+          prevState != null ? prevState.ideInfoFileState : null;
       diff =
-          ArtifactsDiff.diffArtifacts(prevState != null ? prevState.ideInfoFileState : null, files);
+          batchAspectOutputsExperiment.getValue()
+              ? diffByDigest(prevFileState, files)
+              : ArtifactsDiff.diffArtifacts(prevFileState, files);
     } catch (InterruptedException e) {
       throw new ProcessCanceledException(e);
     } catch (ExecutionException e) {
@@ -356,23 +396,31 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
 
               ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
 
-              // Read protos from any new files
-              List<ListenableFuture<TargetFilePair>> futures = Lists.newArrayList();
-              for (OutputArtifactWithoutDigest file : fileState.getUpdatedOutputs()) {
+              // Read protos from any new files, optionally in batches to avoid the overhead of a
+              // task per file.
+              int filesPerTask =
+                  batchAspectOutputsExperiment.getValue() ? ASPECT_FILES_PER_TASK : 1;
+              List<ListenableFuture<List<TargetFilePair>>> futures = Lists.newArrayList();
+              for (List<OutputArtifactWithoutDigest> batch :
+                  Lists.partition(fileState.getUpdatedOutputs(), filesPerTask)) {
                 futures.add(
                     executor.submit(
                         () -> {
-                          totalSizeLoaded.addAndGet(file.getLength());
-                          IntellijIdeInfo.TargetIdeInfo message =
-                              aspectStrategy.readAspectFile(file);
-                          TargetIdeInfo target =
-                              protoToTarget(
-                                  languageSettings,
-                                  importRoots,
-                                  message,
-                                  ignoredLanguages,
-                                  syncTime);
-                          return new TargetFilePair(file, target);
+                          List<TargetFilePair> targets = new ArrayList<>(batch.size());
+                          for (OutputArtifactWithoutDigest file : batch) {
+                            totalSizeLoaded.addAndGet(file.getLength());
+                            IntellijIdeInfo.TargetIdeInfo message =
+                                aspectStrategy.readAspectFile(file);
+                            TargetIdeInfo target =
+                                protoToTarget(
+                                    languageSettings,
+                                    importRoots,
+                                    message,
+                                    ignoredLanguages,
+                                    syncTime);
+                            targets.add(new TargetFilePair(file, target));
+                          }
+                          return targets;
                         }));
               }
 
@@ -383,7 +431,8 @@ public class BlazeIdeInterfaceAspectsImpl implements BlazeIdeInterface {
               // Update state with result from proto files
               int duplicateTargetLabels = 0;
               try {
-                for (TargetFilePair targetFilePair : Futures.allAsList(futures).get()) {
+                for (TargetFilePair targetFilePair :
+                    Iterables.concat(Futures.allAsList(futures).get())) {
                   if (targetFilePair.target != null) {
                     OutputArtifactWithoutDigest file = targetFilePair.file;
                     String config = file.getConfigurationMnemonic();
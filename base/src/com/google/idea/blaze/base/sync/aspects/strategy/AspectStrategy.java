@@ -30,9 +30,10 @@ import com.google.idea.blaze.base.model.BlazeVersionData;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.google.protobuf.TextFormat;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -45,7 +46,7 @@ import javax.annotation.Nullable;
 public abstract class AspectStrategy {
 
   public static final Predicate<String> ASPECT_OUTPUT_FILE_PREDICATE =
-      str -> str.endsWith(".intellij-info.txt");
+      str -> str.endsWith(".intellij-info.txt") || str.endsWith(".intellij-info.json");
 
   /** A Blaze output group created by the aspect. */
   public enum OutputGroup {
@@ -79,6 +80,19 @@ public abstract class AspectStrategy {
   private static final BoolExperiment directDepsTrimmingEnabled =
       new BoolExperiment("sync.allow.requesting.direct.deps", true);
 
+  /**
+   * Whether the aspect should write target info as JSON rather than as text format protos, which
+   * are much slower to parse.
+   *
+   * <p>The output format is passed to the aspect as a define, so changing it invalidates the
+   * analysis cache of the next build.
+   */
+  private static final BoolExperiment jsonIdeInfoEnabled =
+      new BoolExperiment("sync.aspect.json.ide.info", false);
+
+  @VisibleForTesting
+  static final String JSON_IDE_INFO_FLAG = "--define=intellij_ide_info_format=json";
+
   /** True if the aspect available to the plugin supports direct deps trimming. */
   private final boolean aspectSupportsDirectDepsTrimming;
 
@@ -109,6 +123,9 @@ public abstract class AspectStrategy {
     builder
         .addBlazeFlags(getAspectFlags())
         .addBlazeFlags("--output_groups=" + Joiner.on(',').join(groups));
+    if (jsonIdeInfoEnabled.getValue()) {
+      builder.addBlazeFlags(JSON_IDE_INFO_FLAG);
+    }
   }
 
   /**
@@ -160,15 +177,44 @@ public abstract class AspectStrategy {
         .collect(ImmutableList.toImmutableList());
   }
 
+  /**
+   * Reads a target info file written by the aspect, in either text format or, when the
+   * experiment is enabled, JSON. The format is detected from the contents of the file, since
+   * files from earlier builds may be in either.
+   */
   public final IntellijIdeInfo.TargetIdeInfo readAspectFile(BlazeArtifact file) throws IOException {
-    try (InputStream inputStream = file.getInputStream()) {
+    try (BufferedInputStream inputStream = file.getInputStream()) {
       IntellijIdeInfo.TargetIdeInfo.Builder builder = IntellijIdeInfo.TargetIdeInfo.newBuilder();
-      TextFormat.Parser parser = TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
-      parser.merge(new InputStreamReader(inputStream, UTF_8), builder);
+      boolean json = isJson(inputStream);
+      Reader reader = new InputStreamReader(inputStream, UTF_8);
+      if (json) {
+        JsonProtoDecoder.merge(reader, builder);
+      } else {
+        TextFormat.Parser parser =
+            TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
+        parser.merge(reader, builder);
+      }
       return builder.build();
     }
   }
 
+  /**
+   * Returns true if the first non-whitespace character of {@code inputStream} opens a JSON object,
+   * which can never start a text format message. Leaves the stream at its original position.
+   */
+  private static boolean isJson(BufferedInputStream inputStream) throws IOException {
+    inputStream.mark(Integer.MAX_VALUE);
+    try {
+      int c;
+      do {
+        c = inputStream.read();
+      } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+      return c == '{';
+    } finally {
+      inputStream.reset();
+    }
+  }
+
   @Nullable
   private String getOutputGroupForLanguage(
       OutputGroup group, LanguageClass language, boolean directDepsOnly) {
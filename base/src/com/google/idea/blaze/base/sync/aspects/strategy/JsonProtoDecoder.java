@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes the output of Starlark's {@code json.encode} for a struct with the same shape as a proto
+ * message, as accepted by {@code proto.encode_text}, directly into a message builder.
+ *
+ * <p>Objects are matched to messages by proto field name, and unknown fields are skipped. Enum
+ * values may be given either by number or by name. Map fields may be given either as objects or,
+ * as {@code proto.encode_text} requires, as lists of key/value entries.
+ *
+ * <p>This avoids the overhead of the general purpose text format parser, which tokenizes with
+ * regular expressions and resolves every field name through the descriptor pool.
+ */
+final class JsonProtoDecoder {
+
+  private static final ConcurrentHashMap<Descriptor, ImmutableMap<String, FieldDescriptor>>
+      fieldsByName = new ConcurrentHashMap<>();
+
+  private JsonProtoDecoder() {}
+
+  /** Merges the single JSON object read from {@code reader} into {@code builder}. */
+  static void merge(Reader reader, Message.Builder builder) throws IOException {
+    JsonReader json = new JsonReader(reader);
+    try {
+      mergeMessage(json, builder);
+      if (json.peek() != JsonToken.END_DOCUMENT) {
+        throw new IOException("Unexpected content after the end of the message at " + json);
+      }
+    } catch (IllegalStateException | IllegalArgumentException e) {
+      // Thrown by JsonReader when a value has the wrong type for its field.
+      throw new IOException("Malformed JSON message: " + e.getMessage(), e);
+    }
+  }
+
+  private static void mergeMessage(JsonReader json, Message.Builder builder) throws IOException {
+    ImmutableMap<String, FieldDescriptor> fields =
+        fieldsByName.computeIfAbsent(
+            builder.getDescriptorForType(),
+            descriptor ->
+                descriptor.getFields().stream()
+                    .collect(toImmutableMap(FieldDescriptor::getName, Function.identity())));
+    json.beginObject();
+    while (json.hasNext()) {
+      FieldDescriptor field = fields.get(json.nextName());
+      if (field == null || json.peek() == JsonToken.NULL) {
+        json.skipValue();
+        continue;
+      }
+      if (field.isMapField() && json.peek() == JsonToken.BEGIN_OBJECT) {
+        mergeMapObject(json, builder, field);
+      } else if (field.isRepeated() && json.peek() == JsonToken.BEGIN_ARRAY) {
+        json.beginArray();
+        while (json.hasNext()) {
+          addRepeatedValue(json, builder, field);
+        }
+        json.endArray();
+      } else if (field.isRepeated()) {
+        addRepeatedValue(json, builder, field);
+      } else if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        mergeMessage(json, builder.getFieldBuilder(field));
+      } else {
+        Object value = readScalar(json, field);
+        if (value != null) {
+          builder.setField(field, value);
+        }
+      }
+    }
+    json.endObject();
+  }
+
+  private static void addRepeatedValue(
+      JsonReader json, Message.Builder builder, FieldDescriptor field) throws IOException {
+    if (json.peek() == JsonToken.NULL) {
+      json.skipValue();
+      return;
+    }
+    if (field.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+      Message.Builder element = builder.newBuilderForField(field);
+      mergeMessage(json, element);
+      builder.addRepeatedField(field, element.build());
+      return;
+    }
+    Object value = readScalar(json, field);
+    if (value != null) {
+      builder.addRepeatedField(field, value);
+    }
+  }
+
+  /** Reads a map given as a JSON object, which may only have keys of type string. */
+  private static void mergeMapObject(
+      JsonReader json, Message.Builder builder, FieldDescriptor field) throws IOException {
+    Descriptor entryType = field.getMessageType();
+    FieldDescriptor keyField = entryType.findFieldByNumber(1);
+    FieldDescriptor valueField = entryType.findFieldByNumber(2);
+    if (keyField.getJavaType() != FieldDescriptor.JavaType.STRING) {
+      throw new IOException("Map field " + field.getFullName() + " must be given as entries");
+    }
+    json.beginObject();
+    while (json.hasNext()) {
+      Message.Builder entry = builder.newBuilderForField(field);
+      entry.setField(keyField, json.nextName());
+      if (json.peek() == JsonToken.NULL) {
+        json.skipValue();
+        continue;
+      }
+      if (valueField.getJavaType() == FieldDescriptor.JavaType.MESSAGE) {
+        mergeMessage(json, entry.getFieldBuilder(valueField));
+      } else {
+        Object value = readScalar(json, valueField);
+        if (value == null) {
+          continue;
+        }
+        entry.setField(valueField, value);
+      }
+      builder.addRepeatedField(field, entry.build());
+    }
+    json.endObject();
+  }
+
+  /** Returns null for enum values not known to this version of the proto. */
+  @Nullable
+  private static Object readScalar(JsonReader json, FieldDescriptor field) throws IOException {
+    switch (field.getJavaType()) {
+      case INT:
+        return json.nextInt();
+      case LONG:
+        return json.nextLong();
+      case FLOAT:
+        return (float) json.nextDouble();
+      case DOUBLE:
+        return json.nextDouble();
+      case BOOLEAN:
+        return json.nextBoolean();
+      case STRING:
+        return json.nextString();
+      case BYTE_STRING:
+        return ByteString.copyFrom(Base64.getDecoder().decode(json.nextString()));
+      case ENUM:
+        return readEnum(json, field);
+      case MESSAGE:
+        break;
+    }
+    throw new IllegalStateException("Not a scalar field: " + field.getFullName());
+  }
+
+  @Nullable
+  private static EnumValueDescriptor readEnum(JsonReader json, FieldDescriptor field)
+      throws IOException {
+    if (json.peek() == JsonToken.NUMBER) {
+      return field.getEnumType().findValueByNumber(json.nextInt());
+    }
+    return field.getEnumType().findValueByName(json.nextString());
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.workspace;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import java.io.File;
+
+/**
+ * An {@link ExecutionRootPathResolver} which remembers the include directories each path resolves
+ * to, so that the file system is only probed once for each unique path.
+ *
+ * <p>Resolving a path can involve several file system calls, for example to follow the symlinks
+ * of external workspaces, and most include directories are shared by many targets. Files may be
+ * created or removed by a build, so an instance should only be used for the duration of a single
+ * sync.
+ */
+public class CachingExecutionRootPathResolver extends ExecutionRootPathResolver {
+
+  private final LoadingCache<ExecutionRootPath, ImmutableList<File>> includeDirectories =
+      CacheBuilder.newBuilder()
+          .recordStats()
+          .build(CacheLoader.from(super::resolveToIncludeDirectories));
+
+  public CachingExecutionRootPathResolver(
+      BuildSystemProvider buildSystemProvider,
+      WorkspaceRoot workspaceRoot,
+      File executionRoot,
+      File outputBase,
+      WorkspacePathResolver workspacePathResolver,
+      TargetMap targetMap) {
+    super(
+        buildSystemProvider,
+        workspaceRoot,
+        executionRoot,
+        outputBase,
+        workspacePathResolver,
+        targetMap);
+  }
+
+  @Override
+  public ImmutableList<File> resolveToIncludeDirectories(ExecutionRootPath path) {
+    return includeDirectories.getUnchecked(path);
+  }
+
+  /** The hit and miss counts of the cache of resolved include directories. */
+  public CacheStats getCacheStats() {
+    return includeDirectories.stats();
+  }
+}
@@ -50,4 +50,19 @@ public class ReverseDependencyMap {
     }
     return builder.build();
   }
+
+  /** Builds the map in the background once sync completes, as it's needed by many features. */
+  static class EagerComputable
+      implements SyncCache.EagerComputable<ImmutableMultimap<TargetKey, TargetKey>> {
+    @Override
+    public Object getKey() {
+      return ReverseDependencyMap.class;
+    }
+
+    @Override
+    public ImmutableMultimap<TargetKey, TargetKey> compute(
+        Project project, BlazeProjectData projectData) {
+      return createRdepsMap(project, projectData);
+    }
+  }
 }
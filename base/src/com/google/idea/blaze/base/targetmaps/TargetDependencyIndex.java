@@ -0,0 +1,386 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.targetmaps;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.ideinfo.Dependency;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.sync.SyncCache;
+import com.intellij.openapi.project.Project;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A compact index of the dependency graph of a {@link TargetMap}, built once per sync, which
+ * answers transitive dependency queries without walking the target map.
+ *
+ * <p>Each target key, and each key depended on, is given an int id, and the dependencies are stored
+ * as adjacency arrays. The strongly connected components of the graph are collapsed into a DAG
+ * whose nodes are numbered in reverse topological order, and which is labelled with:
+ *
+ * <ul>
+ *   <li>the pre and post order interval of a depth first spanning tree, so that a dependency
+ *       within the subtree of a node is known to be reachable without any search.
+ *   <li>a GRAIL interval (the minimum post order number reachable from a node), so that most
+ *       unreachable nodes are rejected without any search.
+ * </ul>
+ *
+ * The remaining queries search the DAG, pruned by both labels and by topological order.
+ *
+ * <p>As in {@link TransitiveDependencyMap}, dependencies are followed by their plain target key.
+ */
+public final class TargetDependencyIndex {
+
+  private final Map<TargetKey, Integer> ids;
+  private final TargetKey[] keys;
+  // The dependencies of node i are edges[edgeStarts[i], edgeStarts[i + 1]).
+  private final int[] edgeStarts;
+  private final int[] edges;
+
+  // The strongly connected component of each node. Components are numbered in reverse topological
+  // order, so a component can only reach components with a lower number.
+  private final int[] component;
+  private final BitSet cyclicComponents;
+  private final int[] componentEdgeStarts;
+  private final int[] componentEdges;
+  private final int[] preOrder;
+  private final int[] postOrder;
+  private final int[] minReachablePostOrder;
+
+  private TargetDependencyIndex(
+      Map<TargetKey, Integer> ids, TargetKey[] keys, int[] edgeStarts, int[] edges) {
+    this.ids = ids;
+    this.keys = keys;
+    this.edgeStarts = edgeStarts;
+    this.edges = edges;
+
+    this.component = new int[keys.length];
+    int componentCount = findComponents();
+    this.cyclicComponents = new BitSet(componentCount);
+    this.componentEdgeStarts = new int[componentCount + 1];
+    this.componentEdges = buildComponentEdges(componentCount);
+    this.preOrder = new int[componentCount];
+    this.postOrder = new int[componentCount];
+    this.minReachablePostOrder = new int[componentCount];
+    labelComponents(componentCount);
+  }
+
+  /** Returns the index for the current project data, or null if the project isn't synced. */
+  @Nullable
+  public static TargetDependencyIndex get(Project project) {
+    return SyncCache.getInstance(project).get(TargetDependencyIndex.class, new EagerComputable());
+  }
+
+  /** Builds the index of the dependencies in {@code targetMap}. */
+  public static TargetDependencyIndex create(TargetMap targetMap) {
+    Map<TargetKey, Integer> ids = new HashMap<>();
+    List<TargetKey> keys = new ArrayList<>();
+    ImmutableList<TargetIdeInfo> targets = ImmutableList.copyOf(targetMap.targets());
+    for (TargetIdeInfo target : targets) {
+      if (ids.putIfAbsent(target.getKey(), keys.size()) == null) {
+        keys.add(target.getKey());
+      }
+    }
+    int targetCount = keys.size();
+    int[] dependencyCounts = new int[targetCount];
+    int edgeCount = 0;
+    for (TargetIdeInfo target : targets) {
+      int id = ids.get(target.getKey());
+      for (Dependency dependency : target.getDependencies()) {
+        TargetKey key = TargetKey.forPlainTarget(dependency.getTargetKey().getLabel());
+        if (ids.putIfAbsent(key, keys.size()) == null) {
+          keys.add(key);
+        }
+        dependencyCounts[id]++;
+        edgeCount++;
+      }
+    }
+
+    int[] edgeStarts = new int[keys.size() + 1];
+    for (int i = 0; i < targetCount; i++) {
+      edgeStarts[i + 1] = edgeStarts[i] + dependencyCounts[i];
+    }
+    Arrays.fill(edgeStarts, targetCount + 1, edgeStarts.length, edgeCount);
+    int[] edges = new int[edgeCount];
+    int[] next = Arrays.copyOf(edgeStarts, targetCount);
+    for (TargetIdeInfo target : targets) {
+      int id = ids.get(target.getKey());
+      for (Dependency dependency : target.getDependencies()) {
+        edges[next[id]++] =
+            ids.get(TargetKey.forPlainTarget(dependency.getTargetKey().getLabel()));
+      }
+    }
+    return new TargetDependencyIndex(ids, keys.toArray(new TargetKey[0]), edgeStarts, edges);
+  }
+
+  /** Returns the number of target keys in the index, including those only depended upon. */
+  public int size() {
+    return keys.length;
+  }
+
+  /** Returns true if {@code dependent} transitively depends on {@code dependency}. */
+  public boolean hasTransitiveDependency(TargetKey dependent, TargetKey dependency) {
+    Integer from = ids.get(dependent);
+    Integer to = ids.get(dependency);
+    if (from == null || to == null) {
+      return false;
+    }
+    return reaches(component[from], component[to]);
+  }
+
+  /**
+   * Returns the transitive dependencies of {@code targetKeys}, in breadth first order. Each key is
+   * only included if it's a transitive dependency of one of the keys.
+   */
+  public ImmutableSet<TargetKey> getTransitiveDependencies(Collection<TargetKey> targetKeys) {
+    BitSet seen = new BitSet(keys.length);
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    ImmutableSet.Builder<TargetKey> result = ImmutableSet.builder();
+    for (TargetKey key : targetKeys) {
+      Integer id = ids.get(key);
+      if (id != null) {
+        enqueueDependencies(id, seen, queue);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int id = queue.removeFirst();
+      result.add(keys[id]);
+      enqueueDependencies(id, seen, queue);
+    }
+    return result.build();
+  }
+
+  private void enqueueDependencies(int id, BitSet seen, ArrayDeque<Integer> queue) {
+    for (int i = edgeStarts[id]; i < edgeStarts[id + 1]; i++) {
+      int dependency = edges[i];
+      if (!seen.get(dependency)) {
+        seen.set(dependency);
+        queue.addLast(dependency);
+      }
+    }
+  }
+
+  private boolean reaches(int from, int to) {
+    if (from == to) {
+      return cyclicComponents.get(from);
+    }
+    if (!mayReach(from, to)) {
+      return false;
+    }
+    if (inSpanningSubtree(from, to)) {
+      return true;
+    }
+    BitSet visited = new BitSet(from + 1);
+    ArrayDeque<Integer> stack = new ArrayDeque<>();
+    stack.push(from);
+    visited.set(from);
+    while (!stack.isEmpty()) {
+      int current = stack.pop();
+      for (int i = componentEdgeStarts[current]; i < componentEdgeStarts[current + 1]; i++) {
+        int next = componentEdges[i];
+        if (next == to || inSpanningSubtree(next, to)) {
+          return true;
+        }
+        if (!visited.get(next) && mayReach(next, to)) {
+          visited.set(next);
+          stack.push(next);
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Returns false if {@code from} definitely can't reach {@code to}. */
+  private boolean mayReach(int from, int to) {
+    return from > to
+        && minReachablePostOrder[from] <= minReachablePostOrder[to]
+        && postOrder[to] <= postOrder[from];
+  }
+
+  private boolean inSpanningSubtree(int root, int node) {
+    return preOrder[root] <= preOrder[node] && postOrder[node] <= postOrder[root];
+  }
+
+  /**
+   * Finds the strongly connected components with an iterative version of Tarjan's algorithm, which
+   * numbers them in reverse topological order. Returns the number of components.
+   */
+  private int findComponents() {
+    int n = keys.length;
+    int[] index = new int[n];
+    Arrays.fill(index, -1);
+    int[] lowLink = new int[n];
+    int[] nextEdge = new int[n];
+    BitSet onStack = new BitSet(n);
+    int[] stack = new int[n];
+    int stackSize = 0;
+    int[] callStack = new int[n];
+    int nextIndex = 0;
+    int componentCount = 0;
+
+    for (int root = 0; root < n; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      int depth = 0;
+      callStack[depth] = root;
+      index[root] = lowLink[root] = nextIndex++;
+      nextEdge[root] = edgeStarts[root];
+      stack[stackSize++] = root;
+      onStack.set(root);
+      while (depth >= 0) {
+        int node = callStack[depth];
+        if (nextEdge[node] < edgeStarts[node + 1]) {
+          int next = edges[nextEdge[node]++];
+          if (index[next] == -1) {
+            index[next] = lowLink[next] = nextIndex++;
+            nextEdge[next] = edgeStarts[next];
+            stack[stackSize++] = next;
+            onStack.set(next);
+            callStack[++depth] = next;
+          } else if (onStack.get(next)) {
+            lowLink[node] = Math.min(lowLink[node], index[next]);
+          }
+          continue;
+        }
+        if (lowLink[node] == index[node]) {
+          int member;
+          do {
+            member = stack[--stackSize];
+            onStack.clear(member);
+            component[member] = componentCount;
+          } while (member != node);
+          componentCount++;
+        }
+        depth--;
+        if (depth >= 0) {
+          int parent = callStack[depth];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+      }
+    }
+    return componentCount;
+  }
+
+  /** Collapses the edges between components, and marks the components which contain cycles. */
+  private int[] buildComponentEdges(int componentCount) {
+    int[] lastSource = new int[componentCount];
+    Arrays.fill(lastSource, -1);
+    // Group the nodes by component.
+    int[] memberStarts = new int[componentCount + 1];
+    for (int node = 0; node < keys.length; node++) {
+      memberStarts[component[node] + 1]++;
+    }
+    for (int c = 0; c < componentCount; c++) {
+      memberStarts[c + 1] += memberStarts[c];
+    }
+    int[] members = new int[keys.length];
+    int[] next = Arrays.copyOf(memberStarts, componentCount);
+    for (int node = 0; node < keys.length; node++) {
+      members[next[component[node]]++] = node;
+    }
+
+    int[] result = new int[edges.length];
+    int size = 0;
+    for (int c = 0; c < componentCount; c++) {
+      componentEdgeStarts[c] = size;
+      if (memberStarts[c + 1] - memberStarts[c] > 1) {
+        cyclicComponents.set(c);
+      }
+      for (int m = memberStarts[c]; m < memberStarts[c + 1]; m++) {
+        int node = members[m];
+        for (int i = edgeStarts[node]; i < edgeStarts[node + 1]; i++) {
+          int target = component[edges[i]];
+          if (target == c) {
+            cyclicComponents.set(c);
+          } else if (lastSource[target] != c) {
+            lastSource[target] = c;
+            result[size++] = target;
+          }
+        }
+      }
+    }
+    componentEdgeStarts[componentCount] = size;
+    return Arrays.copyOf(result, size);
+  }
+
+  /** Assigns the spanning tree and GRAIL intervals of each component. */
+  private void labelComponents(int componentCount) {
+    BitSet visited = new BitSet(componentCount);
+    int[] nextEdge = new int[componentCount];
+    int[] callStack = new int[componentCount];
+    int order = 0;
+    int finished = 0;
+    // Sources have the highest numbers, so start from those.
+    for (int root = componentCount - 1; root >= 0; root--) {
+      if (visited.get(root)) {
+        continue;
+      }
+      int depth = 0;
+      callStack[0] = root;
+      visited.set(root);
+      preOrder[root] = order++;
+      nextEdge[root] = componentEdgeStarts[root];
+      while (depth >= 0) {
+        int c = callStack[depth];
+        if (nextEdge[c] < componentEdgeStarts[c + 1]) {
+          int next = componentEdges[nextEdge[c]++];
+          if (!visited.get(next)) {
+            visited.set(next);
+            preOrder[next] = order++;
+            nextEdge[next] = componentEdgeStarts[next];
+            callStack[++depth] = next;
+          }
+          continue;
+        }
+        postOrder[c] = finished++;
+        depth--;
+      }
+    }
+    // Every successor of a component has a lower number, so is labelled first.
+    for (int c = 0; c < componentCount; c++) {
+      int min = postOrder[c];
+      for (int i = componentEdgeStarts[c]; i < componentEdgeStarts[c + 1]; i++) {
+        min = Math.min(min, minReachablePostOrder[componentEdges[i]]);
+      }
+      minReachablePostOrder[c] = min;
+    }
+  }
+
+  /** Builds the index in the background once sync completes. */
+  static class EagerComputable implements SyncCache.EagerComputable<TargetDependencyIndex> {
+    @Override
+    public Object getKey() {
+      return TargetDependencyIndex.class;
+    }
+
+    @Override
+    public TargetDependencyIndex compute(Project project, BlazeProjectData projectData) {
+      return create(projectData.getTargetMap());
+    }
+  }
+}
@@ -23,8 +23,6 @@ import com.google.idea.blaze.base.ideinfo.Dependency;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
-import com.google.idea.blaze.base.model.BlazeProjectData;
-import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.project.Project;
 import java.util.Collection;
 import java.util.HashSet;
@@ -52,15 +50,8 @@ public class TransitiveDependencyMap {
    */
   public boolean hasTransitiveDependency(
       TargetKey possibleDependent, TargetKey possibleDependency) {
-
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
-      return false;
-    }
-
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .anyMatch(possibleDependency::equals);
+    TargetDependencyIndex index = TargetDependencyIndex.get(project);
+    return index != null && index.hasTransitiveDependency(possibleDependent, possibleDependency);
   }
 
   /**
@@ -72,27 +63,21 @@ public class TransitiveDependencyMap {
    */
   public ImmutableSet<TargetKey> filterPossibleTransitiveDeps(
       TargetKey possibleDependent, Collection<TargetKey> possibleDependencies) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TargetDependencyIndex index = TargetDependencyIndex.get(project);
+    if (index == null) {
       return ImmutableSet.of();
     }
-    ImmutableSet<TargetKey> possibleDepsSet = ImmutableSet.copyOf(possibleDependencies);
-    return getTransitiveDependenciesStream(possibleDependent, blazeProjectData.getTargetMap())
-        .filter(possibleDepsSet::contains)
-        .distinct()
-        .limit(possibleDepsSet.size())
+    return possibleDependencies.stream()
+        .filter(dependency -> index.hasTransitiveDependency(possibleDependent, dependency))
         .collect(ImmutableSet.toImmutableSet());
   }
 
   public ImmutableCollection<TargetKey> getTransitiveDependencies(TargetKey targetKey) {
-    BlazeProjectData blazeProjectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    TargetDependencyIndex index = TargetDependencyIndex.get(project);
+    if (index == null) {
       return ImmutableSet.of();
     }
-    // TODO: see if we need caching.
-    return getTransitiveDependencies(targetKey, blazeProjectData.getTargetMap());
+    return index.getTransitiveDependencies(ImmutableList.of(targetKey));
   }
 
   public static ImmutableCollection<TargetKey> getTransitiveDependencies(
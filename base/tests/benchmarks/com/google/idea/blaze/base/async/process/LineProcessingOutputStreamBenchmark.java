@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Command line tool to measure the time taken by {@link LineProcessingOutputStream} to split a
+ * synthetic build log into lines.
+ *
+ * <p>To use this, run:
+ *
+ * <pre>
+ *   blaze run //base:line_processing_output_stream_benchmark -- [megabytes] [iterations]
+ * </pre>
+ *
+ * The log is written in the arbitrary sized pieces a process produces it in. Each measurement is
+ * the median over all iterations.
+ */
+public class LineProcessingOutputStreamBenchmark {
+
+  /** The size of the pieces the log is written in, chosen not to align with any line. */
+  private static final int WRITE_SIZE = 8191;
+
+  private final int megabytes;
+  private final int iterations;
+
+  public static void main(String[] args) throws IOException {
+    new LineProcessingOutputStreamBenchmark(
+            args.length > 0 ? Integer.parseInt(args[0]) : 100,
+            args.length > 1 ? Integer.parseInt(args[1]) : 10)
+        .run();
+  }
+
+  private LineProcessingOutputStreamBenchmark(int megabytes, int iterations) {
+    this.megabytes = megabytes;
+    this.iterations = iterations;
+  }
+
+  private void run() throws IOException {
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; log.length() < 1 << 20; i++) {
+      log.append("INFO: From Compiling foo/bar/baz")
+          .append(i)
+          .append(".cc: warning: unused variable ‘x’\r\n");
+    }
+    // One megabyte of output, written repeatedly.
+    byte[] output = log.toString().getBytes(UTF_8);
+
+    long[] timesNanos = new long[iterations];
+    long[] lineCount = new long[1];
+    for (int i = 0; i < iterations; i++) {
+      lineCount[0] = 0;
+      LineProcessingOutputStream stream =
+          LineProcessingOutputStream.of(
+              line -> {
+                lineCount[0]++;
+                return true;
+              });
+      long start = System.nanoTime();
+      for (int mb = 0; mb < megabytes; mb++) {
+        for (int offset = 0; offset < output.length; offset += WRITE_SIZE) {
+          stream.write(output, offset, Math.min(WRITE_SIZE, output.length - offset));
+        }
+      }
+      stream.close();
+      timesNanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(timesNanos);
+    System.err.printf(
+        "%d MB, %d lines: %8d ms%n",
+        megabytes, lineCount[0], timesNanos[iterations / 2] / 1000000L);
+  }
+}
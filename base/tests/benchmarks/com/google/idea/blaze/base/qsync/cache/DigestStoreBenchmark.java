@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Command line tool to compare the time taken to store the artifact digests of one dependency
+ * build in a {@link DigestStore} against the earlier approach of one file per digest.
+ *
+ * <p>To use this, run:
+ *
+ * <pre>
+ *   blaze run //base:digest_store_benchmark -- [artifacts] [iterations]
+ * </pre>
+ *
+ * Each iteration reads, clears and writes the digest of every artifact, as a dependency build
+ * does, starting from the digests written by the previous iteration. Each measurement is the
+ * median over all iterations.
+ */
+public class DigestStoreBenchmark {
+
+  private final int artifactCount;
+  private final int iterations;
+
+  public static void main(String[] args) throws IOException {
+    new DigestStoreBenchmark(
+            args.length > 0 ? Integer.parseInt(args[0]) : 20000,
+            args.length > 1 ? Integer.parseInt(args[1]) : 10)
+        .run();
+  }
+
+  private DigestStoreBenchmark(int artifactCount, int iterations) {
+    this.artifactCount = artifactCount;
+    this.iterations = iterations;
+  }
+
+  private void run() throws IOException {
+    Path directory = Files.createTempDirectory("digests");
+    try {
+      Path digestDirectory = Files.createDirectory(directory.resolve("files"));
+      measure("file per digest", i -> writeDigestFiles(digestDirectory, i));
+      Path storeFile = directory.resolve("digests.log");
+      measure("digest store", i -> writeDigestStore(storeFile, i));
+    } finally {
+      MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+
+  private void writeDigestFiles(Path digestDirectory, int iteration) throws IOException {
+    for (int i = 0; i < artifactCount; i++) {
+      Path digestFile = digestDirectory.resolve("artifact" + i + ".jar.txt");
+      if (Files.isRegularFile(digestFile)) {
+        Files.readString(digestFile);
+      }
+      Files.deleteIfExists(digestFile);
+      Files.writeString(digestFile, digest(i, iteration));
+    }
+  }
+
+  private void writeDigestStore(Path storeFile, int iteration) throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile)) {
+      for (int i = 0; i < artifactCount; i++) {
+        String key = "artifact" + i + ".jar";
+        store.get(key);
+        store.put(key, "");
+        store.put(key, digest(i, iteration));
+      }
+    }
+  }
+
+  private static String digest(int artifact, int iteration) {
+    return "digest" + artifact + "-" + iteration;
+  }
+
+  /** Prints the median time taken by {@code build}. */
+  private void measure(String name, Build build) throws IOException {
+    long[] timesNanos = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      build.run(i);
+      timesNanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(timesNanos);
+    System.err.printf(
+        "%-20s %d artifacts: %8d ms%n",
+        name, artifactCount, timesNanos[iterations / 2] / 1000000L);
+  }
+
+  private interface Build {
+    void run(int iteration) throws IOException;
+  }
+}
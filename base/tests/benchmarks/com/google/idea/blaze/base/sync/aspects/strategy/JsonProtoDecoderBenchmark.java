@@ -0,0 +1,101 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.protobuf.TextFormat;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Command line tool to compare the time taken to parse aspect output written as text format
+ * protos against the same output written as JSON and read with {@link JsonProtoDecoder}.
+ *
+ * <p>To use this, run:
+ *
+ * <pre>
+ *   blaze run //base:json_proto_decoder_benchmark -- [targets] [iterations]
+ * </pre>
+ *
+ * Each iteration parses the output of every target in a generated corpus of Java targets. Each
+ * measurement is the median over all iterations.
+ */
+public class JsonProtoDecoderBenchmark {
+
+  private final int targetCount;
+  private final int iterations;
+
+  public static void main(String[] args) throws IOException {
+    new JsonProtoDecoderBenchmark(
+            args.length > 0 ? Integer.parseInt(args[0]) : 20000,
+            args.length > 1 ? Integer.parseInt(args[1]) : 10)
+        .run();
+  }
+
+  private JsonProtoDecoderBenchmark(int targetCount, int iterations) {
+    this.targetCount = targetCount;
+    this.iterations = iterations;
+  }
+
+  private void run() throws IOException {
+    ImmutableList<TargetIdeInfo> corpus = StarlarkJsonCorpus.createCorpus(targetCount);
+    ImmutableList<String> text =
+        corpus.stream().map(TextFormat.printer()::printToString).collect(toImmutableList());
+    ImmutableList<String> json =
+        corpus.stream().map(StarlarkJsonCorpus::toStarlarkJson).collect(toImmutableList());
+
+    TextFormat.Parser parser = TextFormat.Parser.newBuilder().setAllowUnknownFields(true).build();
+    measure(
+        "text format",
+        () -> {
+          for (String file : text) {
+            TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
+            parser.merge(new StringReader(file), builder);
+            builder.build();
+          }
+        });
+    measure(
+        "json",
+        () -> {
+          for (String file : json) {
+            TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
+            JsonProtoDecoder.merge(new StringReader(file), builder);
+            builder.build();
+          }
+        });
+  }
+
+  /** Prints the median time taken by {@code parse}. */
+  private void measure(String name, Parse parse) throws IOException {
+    long[] timesNanos = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      parse.run();
+      timesNanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(timesNanos);
+    System.err.printf(
+        "%-20s %d targets: %8d ms%n", name, targetCount, timesNanos[iterations / 2] / 1000000L);
+  }
+
+  private interface Parse {
+    void run() throws IOException;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link LineProcessingOutputStream}. */
+@RunWith(JUnit4.class)
+public class LineProcessingOutputStreamTest {
+
+  private final List<String> lines = new ArrayList<>();
+  private final LineProcessingOutputStream stream =
+      LineProcessingOutputStream.of(
+          line -> {
+            lines.add(line);
+            return true;
+          });
+
+  @Test
+  public void splitsOnEachKindOfLineBreak() throws IOException {
+    stream.write("a\nb\r\nc\rd\n\ne".getBytes(UTF_8));
+
+    assertThat(lines).containsExactly("a", "b", "c", "d", "").inOrder();
+  }
+
+  @Test
+  public void lineSplitAcrossWrites_processedOnceComplete() throws IOException {
+    stream.write("first ".getBytes(UTF_8));
+    stream.write("second ".getBytes(UTF_8));
+    assertThat(lines).isEmpty();
+
+    stream.write("third\nnext".getBytes(UTF_8));
+    assertThat(lines).containsExactly("first second third");
+  }
+
+  @Test
+  public void crlfSplitAcrossWrites_isSingleLineBreak() throws IOException {
+    stream.write("a\r".getBytes(UTF_8));
+    stream.write("\nb\n".getBytes(UTF_8));
+
+    assertThat(lines).containsExactly("a", "b").inOrder();
+  }
+
+  @Test
+  public void characterSplitAcrossWrites_decodedWhole() throws IOException {
+    byte[] bytes = "caf\u00e9 \ud83d\ude00\n".getBytes(UTF_8);
+    for (byte b : bytes) {
+      stream.write(b);
+    }
+
+    assertThat(lines).containsExactly("caf\u00e9 \ud83d\ude00");
+  }
+
+  @Test
+  public void malformedInput_replaced() throws IOException {
+    stream.write(new byte[] {'a', (byte) 0xff, 'b', '\n'});
+
+    assertThat(lines).containsExactly("a\ufffdb");
+  }
+
+  @Test
+  public void longLines_notTruncated() throws IOException {
+    String longLine = "x".repeat(100_000);
+    stream.write((longLine + "\n" + longLine + "\n").getBytes(UTF_8));
+
+    assertThat(lines).containsExactly(longLine, longLine);
+  }
+
+  @Test
+  public void processorReturningFalse_skipsLaterProcessors() throws IOException {
+    List<String> skipped = new ArrayList<>();
+    LineProcessingOutputStream stream =
+        LineProcessingOutputStream.of(line -> !line.equals("stop"), skipped::add);
+
+    stream.write("go\nstop\n".getBytes(UTF_8));
+
+    assertThat(skipped).containsExactly("go");
+  }
+
+  @Test
+  public void closed_ignoresWrites() throws IOException {
+    stream.close();
+    stream.write("a\n".getBytes(UTF_8));
+
+    assertThat(lines).isEmpty();
+  }
+}
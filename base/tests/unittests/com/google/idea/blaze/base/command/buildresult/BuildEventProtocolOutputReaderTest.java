@@ -32,12 +32,14 @@ import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Bui
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetCompletedId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TargetConfiguredId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestResultId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestSummaryId;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.Configuration;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.NamedSetOfFiles;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.OutputGroup;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetComplete;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TargetConfigured;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestResult;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestSummary;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.GenericBlazeRules.RuleTypes;
@@ -55,6 +57,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Iterator;
@@ -120,6 +123,44 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
         .inOrder();
   }
 
+  @Test
+  public void parseAllOutputs_withListener_notifiesEachArtifactOncePerOutputGroup()
+      throws Exception {
+    ImmutableList<BuildEvent.Builder> events =
+        ImmutableList.of(
+            configuration("config-id", "k8-opt"),
+            setOfFiles(ImmutableList.of("/usr/out/shared.jar"), "shared-set"),
+            setOfFiles(ImmutableList.of("/usr/out/a.jar"), "a-set", ImmutableList.of("shared-set")),
+            targetComplete(
+                "//some:a",
+                "config-id",
+                ImmutableList.of(outputGroup("jars", ImmutableList.of("a-set")))),
+            setOfFiles(ImmutableList.of("/usr/out/b.jar"), "b-set", ImmutableList.of("shared-set")),
+            targetComplete(
+                "//some:b",
+                "config-id",
+                ImmutableList.of(
+                    outputGroup("jars", ImmutableList.of("b-set")),
+                    outputGroup("srcjars", ImmutableList.of("shared-set")))));
+    List<String> notified = new ArrayList<>();
+
+    ParsedBepOutput unused =
+        ParsedBepOutput.parseBepArtifacts(
+            BuildEventStreamProvider.fromInputStream(asInputStream(events)),
+            null,
+            (label, outputGroup, artifacts) ->
+                BlazeArtifact.getLocalFiles(artifacts)
+                    .forEach(file -> notified.add(label + " " + outputGroup + " " + file)));
+
+    assertThat(notified)
+        .containsExactly(
+            "//some:a jars /usr/out/a.jar",
+            "//some:a jars /usr/out/shared.jar",
+            "//some:b jars /usr/out/b.jar",
+            "//some:b srcjars /usr/out/shared.jar")
+        .inOrder();
+  }
+
   @Test
   public void parseAllOutputsWithFilter_singleFileEvent_returnsFilteredOutputs() throws Exception {
     Predicate<String> filter = path -> path.endsWith(".py");
@@ -644,6 +685,49 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
         .containsExactly(new File("/usr/local/tmp/_cache/second_result.xml"));
   }
 
+  @Test
+  public void parseTestResults_withListener_notifiesEachTargetOnceSummarized() throws Exception {
+    BuildEvent.Builder test1Shard1 =
+        testResultEvent(
+            "//java/com/google:Test1",
+            BuildEventStreamProtos.TestStatus.PASSED,
+            ImmutableList.of("/usr/local/tmp/_cache/shard1_of_2.xml"));
+    BuildEvent.Builder test2 =
+        testResultEvent(
+            "//java/com/google:Test2",
+            BuildEventStreamProtos.TestStatus.FAILED,
+            ImmutableList.of("/usr/local/tmp/_cache/second_result.xml"));
+    BuildEvent.Builder test1Shard2 =
+        testResultEvent(
+            "//java/com/google:Test1",
+            BuildEventStreamProtos.TestStatus.FAILED,
+            ImmutableList.of("/usr/local/tmp/_cache/shard2_of_2.xml"));
+
+    List<ImmutableList<BlazeTestResult>> notified = new ArrayList<>();
+    BlazeTestResults results =
+        BuildEventProtocolOutputReader.parseTestResults(
+            BuildEventStreamProvider.fromInputStream(
+                asInputStream(
+                    test1Shard1,
+                    test2,
+                    test1Shard2,
+                    testSummaryEvent("//java/com/google:Test1"))),
+            notified::add);
+
+    // Test1 is notified with both shards once summarized, and Test2 at the end of the stream.
+    assertThat(notified).hasSize(2);
+    assertThat(notified.get(0).stream().map(BlazeTestResult::getLabel).distinct())
+        .containsExactly(Label.create("//java/com/google:Test1"));
+    assertThat(notified.get(0).stream().map(BlazeTestResult::getTestStatus))
+        .containsExactly(TestStatus.PASSED, TestStatus.FAILED)
+        .inOrder();
+    assertThat(notified.get(1).stream().map(BlazeTestResult::getLabel))
+        .containsExactly(Label.create("//java/com/google:Test2"));
+    assertThat(results.perTargetResults.values())
+        .containsExactlyElementsIn(
+            notified.stream().flatMap(List::stream).collect(toImmutableList()));
+  }
+
   private static ImmutableList<File> getOutputXmlFiles(BlazeTestResult result) {
     return BlazeArtifact.getLocalFiles(result.getOutputXmlFiles());
   }
@@ -687,6 +771,13 @@ public class BuildEventProtocolOutputReaderTest extends BlazeTestCase {
                     filePaths.stream().map(this::toFileEvent).collect(toImmutableList())));
   }
 
+  private BuildEvent.Builder testSummaryEvent(String label) {
+    return BuildEvent.newBuilder()
+        .setId(
+            BuildEventId.newBuilder().setTestSummary(TestSummaryId.newBuilder().setLabel(label)))
+        .setTestSummary(TestSummary.getDefaultInstance());
+  }
+
   private BuildEvent.Builder targetComplete(
       String label, String configId, List<OutputGroup> outputGroups) {
     return BuildEvent.newBuilder()
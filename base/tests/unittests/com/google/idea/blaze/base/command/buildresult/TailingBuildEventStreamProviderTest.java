@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.buildresult;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.BuildStartedId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildStarted;
+import com.google.idea.blaze.base.command.buildresult.BuildEventStreamProvider.BuildEventStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TailingBuildEventStreamProviderTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void readsEventsWrittenWhileReading() throws Exception {
+    File file = temporaryFolder.newFile();
+    AtomicBoolean buildComplete = new AtomicBoolean(false);
+    byte[] events = serialize(startedEvent("first"), startedEvent("second"));
+    int split = events.length / 2;
+
+    try (OutputStream out = new FileOutputStream(file);
+        TailingBuildEventStreamProvider stream =
+            new TailingBuildEventStreamProvider(file, buildComplete::get)) {
+      Thread writer =
+          new Thread(
+              () -> {
+                try {
+                  // The first event, and only part of the second one.
+                  out.write(events, 0, split);
+                  out.flush();
+                  Thread.sleep(300);
+                  out.write(events, split, events.length - split);
+                  out.flush();
+                  buildComplete.set(true);
+                } catch (IOException | InterruptedException e) {
+                  throw new AssertionError(e);
+                }
+              });
+      writer.start();
+
+      assertThat(stream.getNext().getStarted().getUuid()).isEqualTo("first");
+      assertThat(stream.getNext().getStarted().getUuid()).isEqualTo("second");
+      assertThat(stream.getNext()).isNull();
+      assertThat(stream.getBytesConsumed()).isEqualTo(events.length);
+      writer.join();
+    }
+  }
+
+  @Test
+  public void stopsAfterLastMessage() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(serialize(startedEvent("first").setLastMessage(true)));
+    }
+
+    try (TailingBuildEventStreamProvider stream =
+        new TailingBuildEventStreamProvider(file, () -> false)) {
+      assertThat(stream.getNext().getStarted().getUuid()).isEqualTo("first");
+      assertThat(stream.getNext()).isNull();
+    }
+  }
+
+  @Test
+  public void incompleteEventAfterBuildComplete_throws() throws Exception {
+    File file = temporaryFolder.newFile();
+    byte[] events = serialize(startedEvent("first"), startedEvent("second"));
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(Arrays.copyOf(events, events.length - 1));
+    }
+
+    try (TailingBuildEventStreamProvider stream =
+        new TailingBuildEventStreamProvider(file, () -> true)) {
+      assertThat(stream.getNext().getStarted().getUuid()).isEqualTo("first");
+      assertThrows(BuildEventStreamException.class, stream::getNext);
+    }
+  }
+
+  private static BuildEvent.Builder startedEvent(String uuid) {
+    return BuildEvent.newBuilder()
+        .setId(BuildEventId.newBuilder().setStarted(BuildStartedId.getDefaultInstance()))
+        .setStarted(BuildStarted.newBuilder().setUuid(uuid));
+  }
+
+  private static byte[] serialize(BuildEvent.Builder... events) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (BuildEvent.Builder event : events) {
+      event.build().writeDelimitedTo(output);
+    }
+    return output.toByteArray();
+  }
+}
@@ -17,6 +17,8 @@ package com.google.idea.blaze.base.filecache;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.idea.blaze.base.filecache.ArtifactState.DigestState;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -42,4 +44,21 @@ public class ArtifactStateTest {
     String key = "/abs/path/to/bazel-out/then/file.java";
     assertThat(ArtifactState.migrateOldKeyFormat(key)).isEqualTo("then/file.java");
   }
+
+  @Test
+  public void digestState_moreRecentOnlyIfDigestDiffers() {
+    DigestState state = new DigestState("path/to/file.txt", "digest1");
+    assertThat(state.isMoreRecent(new DigestState("path/to/file.txt", "digest1"))).isFalse();
+    assertThat(state.isMoreRecent(new DigestState("path/to/file.txt", "digest2"))).isTrue();
+    assertThat(state.isMoreRecent(new LocalFileState("path/to/file.txt", 1L))).isTrue();
+  }
+
+  @Test
+  public void digestState_serializationRoundTrip() {
+    DigestState state = new DigestState("path/to/file.txt", "digest1");
+    ArtifactState parsed =
+        new LocalArtifactStateProtoConverter().parseProto(state.serializeToProto());
+    assertThat(parsed).isEqualTo(state);
+    assertThat(state.isMoreRecent(parsed)).isFalse();
+  }
 }
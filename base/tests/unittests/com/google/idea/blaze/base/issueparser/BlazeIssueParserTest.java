@@ -573,6 +573,50 @@ public class BlazeIssueParserTest extends BlazeTestCase {
         .isEqualTo(TextRange.create(0, "File \"foo/bar.py\", line 123".length()));
   }
 
+  @Test
+  public void testLinesWithoutTriggersSkipParser() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(parsers);
+    assertThat(blazeIssueParser.parseIssue("INFO: Build completed successfully")).isNull();
+    assertThat(blazeIssueParser.parseIssue("ERROR: build interrupted.")).isNull();
+
+    ImmutableList<BlazeIssueParser.ParserStats> stats = blazeIssueParser.getParserStats();
+    assertThat(blazeIssueParser.getLinesProcessed()).isEqualTo(2);
+    // Only the compile parser's trigger appears in the first line.
+    assertThat(statsFor(stats, BlazeIssueParser.DefaultCompileParser.class).linesParsed())
+        .isEqualTo(2);
+    assertThat(statsFor(stats, BlazeIssueParser.GenericErrorParser.class).linesParsed())
+        .isEqualTo(1);
+    assertThat(statsFor(stats, BlazeIssueParser.TracebackParser.class).linesParsed()).isEqualTo(0);
+  }
+
+  @Test
+  public void testParserStatsCountIssues() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(parsers);
+    blazeIssueParser.parseIssue("ERROR: something went wrong");
+    blazeIssueParser.parseIssue("foo/bar.go:123:45: undefined: asdf");
+
+    ImmutableList<BlazeIssueParser.ParserStats> stats = blazeIssueParser.getParserStats();
+    assertThat(statsFor(stats, BlazeIssueParser.GenericErrorParser.class).issuesFound())
+        .isEqualTo(1);
+    assertThat(statsFor(stats, BlazeIssueParser.DefaultCompileParser.class).issuesFound())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void testParserWithoutTriggersSeesEveryLine() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(ImmutableList.of(new TestParser()));
+    blazeIssueParser.parseIssue("no keywords here");
+    blazeIssueParser.parseIssue("TEST message");
+
+    assertThat(blazeIssueParser.getParserStats().get(0).linesParsed()).isEqualTo(2);
+    assertThat(blazeIssueParser.getParserStats().get(0).issuesFound()).isEqualTo(1);
+  }
+
+  private static BlazeIssueParser.ParserStats statsFor(
+      ImmutableList<BlazeIssueParser.ParserStats> stats, Class<?> parserClass) {
+    return stats.stream().filter(s -> parserClass.isInstance(s.parser())).findFirst().get();
+  }
+
   /** Simple Parser for testing */
   private static class TestParser extends BlazeIssueParser.SingleLineParser {
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.issueparser;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link KeywordMatcher}. */
+@RunWith(JUnit4.class)
+public class KeywordMatcherTest {
+
+  @Test
+  public void findsSetsWithKeywordInText() {
+    KeywordMatcher matcher =
+        new KeywordMatcher(
+            ImmutableList.of(
+                ImmutableSet.of("ERROR: "),
+                ImmutableSet.of("warning", "note"),
+                ImmutableSet.of(".bzl:")));
+
+    assertThat(matches(matcher, "ERROR: /foo/bar.bzl:1:2: oops")).containsExactly(0, 2);
+    assertThat(matches(matcher, "a note")).containsExactly(1);
+    assertThat(matches(matcher, "ERROR:no space")).isEmpty();
+  }
+
+  @Test
+  public void findsOverlappingKeywords() {
+    KeywordMatcher matcher =
+        new KeywordMatcher(
+            ImmutableList.of(
+                ImmutableSet.of("she"), ImmutableSet.of("he"), ImmutableSet.of("hers")));
+
+    assertThat(matches(matcher, "ushers")).containsExactly(0, 1, 2);
+    assertThat(matches(matcher, "shhe")).containsExactly(1);
+  }
+
+  @Test
+  public void emptySetMatchesEverything() {
+    KeywordMatcher matcher =
+        new KeywordMatcher(ImmutableList.of(ImmutableSet.of("x"), ImmutableSet.of()));
+
+    assertThat(matches(matcher, "")).containsExactly(1);
+    assertThat(matches(matcher, "x")).containsExactly(0, 1);
+  }
+
+  @Test
+  public void handlesNonAsciiText() {
+    KeywordMatcher matcher =
+        new KeywordMatcher(ImmutableList.of(ImmutableSet.of("caf\u00e9"), ImmutableSet.of("a")));
+
+    assertThat(matches(matcher, "\u2018caf\u00e9\u2019")).containsExactly(0, 1);
+    assertThat(matches(matcher, "\u00e9")).isEmpty();
+  }
+
+  @Test
+  public void agreesWithContains() {
+    Random random = new Random(0);
+    ImmutableList.Builder<ImmutableSet<String>> keywordSets = ImmutableList.builder();
+    for (int i = 0; i < 20; i++) {
+      keywordSets.add(ImmutableSet.of(randomString(random, 1 + random.nextInt(4))));
+    }
+    ImmutableList<ImmutableSet<String>> sets = keywordSets.build();
+    KeywordMatcher matcher = new KeywordMatcher(sets);
+
+    for (int i = 0; i < 1000; i++) {
+      String text = randomString(random, random.nextInt(30));
+      ImmutableList.Builder<Integer> expected = ImmutableList.builder();
+      for (int set = 0; set < sets.size(); set++) {
+        if (text.contains(sets.get(set).iterator().next())) {
+          expected.add(set);
+        }
+      }
+      assertThat(matches(matcher, text)).containsExactlyElementsIn(expected.build());
+    }
+  }
+
+  private static ImmutableList<Integer> matches(KeywordMatcher matcher, String text) {
+    BitSet result = new BitSet();
+    matcher.findMatches(text, result);
+    return result.stream().boxed().collect(ImmutableList.toImmutableList());
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder string = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      string.append((char) ('a' + random.nextInt(3)));
+    }
+    return string.toString();
+  }
+}
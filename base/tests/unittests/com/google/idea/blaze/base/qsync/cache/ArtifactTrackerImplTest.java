@@ -43,7 +43,9 @@ import com.google.idea.blaze.qsync.project.ProjectDefinition;
 import com.google.idea.blaze.qsync.project.ProjectPath.Resolver;
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -412,6 +414,90 @@ public class ArtifactTrackerImplTest {
     assertThat(update).hasSize(1);
   }
 
+  @Test
+  public void state_reloaded_from_journal() throws Throwable {
+    ArtifactTrackerImpl artifactTracker = createInitializedArtifactTracker();
+    updateWithJar(artifactTracker, "//test:test", "out/test.jar");
+    updateWithJar(artifactTracker, "//test:anothertest", "out/anothertest.jar");
+    assertThat(Files.exists(journalFile())).isTrue();
+
+    ArtifactTrackerImpl reloaded = createInitializedArtifactTracker();
+    assertThat(reloaded.getCachedFiles(Label.of("//test:test")).orElseThrow()).hasSize(1);
+    assertThat(reloaded.getCachedFiles(Label.of("//test:anothertest")).orElseThrow()).hasSize(1);
+  }
+
+  @Test
+  public void state_reloaded_after_compaction() throws Throwable {
+    ArtifactTrackerImpl artifactTracker = createInitializedArtifactTracker();
+    updateWithJar(artifactTracker, "//test:test", "out/test.jar");
+    artifactTracker.compactJournal().get();
+    assertThat(Files.exists(journalFile())).isFalse();
+    updateWithJar(artifactTracker, "//test:anothertest", "out/anothertest.jar");
+
+    ArtifactTrackerImpl reloaded = createInitializedArtifactTracker();
+    assertThat(reloaded.getCachedFiles(Label.of("//test:test")).orElseThrow()).hasSize(1);
+    assertThat(reloaded.getCachedFiles(Label.of("//test:anothertest")).orElseThrow()).hasSize(1);
+  }
+
+  @Test
+  public void truncated_journal_update_discarded() throws Throwable {
+    ArtifactTrackerImpl artifactTracker = createInitializedArtifactTracker();
+    updateWithJar(artifactTracker, "//test:test", "out/test.jar");
+    updateWithJar(artifactTracker, "//test:anothertest", "out/anothertest.jar");
+    byte[] journal = Files.readAllBytes(journalFile());
+    Files.write(journalFile(), Arrays.copyOf(journal, journal.length - 2));
+
+    ArtifactTrackerImpl reloaded = createInitializedArtifactTracker();
+    assertThat(reloaded.getCachedFiles(Label.of("//test:test")).orElseThrow()).hasSize(1);
+    assertThat(reloaded.getCachedFiles(Label.of("//test:anothertest"))).isEmpty();
+    updateWithJar(reloaded, "//test:third", "out/third.jar");
+
+    reloaded = createInitializedArtifactTracker();
+    assertThat(reloaded.getCachedFiles(Label.of("//test:test")).orElseThrow()).hasSize(1);
+    assertThat(reloaded.getCachedFiles(Label.of("//test:third")).orElseThrow()).hasSize(1);
+  }
+
+  private ArtifactTrackerImpl createInitializedArtifactTracker() {
+    ArtifactTrackerImpl artifactTracker =
+        new ArtifactTrackerImpl(
+            temporaryFolder.getRoot().toPath(),
+            temporaryFolder.getRoot().toPath().resolve("ide_project"),
+            new TestArtifactFetcher(),
+            Resolver.EMPTY_FOR_TESTING,
+            ProjectDefinition.EMPTY,
+            new ProjectProtoTransform.Registry());
+    artifactTracker.initialize();
+    return artifactTracker;
+  }
+
+  private Path journalFile() {
+    return temporaryFolder.getRoot().toPath().resolve("artifact_tracker_state.journal");
+  }
+
+  private static void updateWithJar(ArtifactTrackerImpl artifactTracker, String target, String jar)
+      throws Exception {
+    ArtifactTrackerUpdateResult unused =
+        artifactTracker.update(
+            ImmutableSet.of(Label.of(target)),
+            OutputInfo.builder()
+                .setOutputGroups(
+                    GroupedOutputArtifacts.builder()
+                        .put(
+                            OutputGroup.JARS,
+                            TestOutputArtifact.builder()
+                                .setRelativePath(jar)
+                                .setDigest(jar + "_digest")
+                                .build())
+                        .build())
+                .setArtifactInfo(
+                    JavaArtifacts.newBuilder()
+                        .addArtifacts(
+                            JavaTargetArtifacts.newBuilder().setTarget(target).addJars(jar).build())
+                        .build())
+                .build(),
+            BlazeContext.create());
+  }
+
   private static class TestArtifactFetcher implements ArtifactFetcher<OutputArtifact> {
 
     private final Map<String, Path> collectedArtifactOriginToDestPathPap = Maps.newHashMap();
@@ -22,6 +22,8 @@ import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.filecache.ArtifactState;
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
@@ -95,6 +97,36 @@ public class CacheDirectoryManagerTest {
     assertThat(cacheDirectoryManager.getStoredArtifactDigest(testOutputArtifact("123"))).isEmpty();
   }
 
+  @Test
+  public void set_reinitialize_and_read_medatadata() {
+    CacheDirectoryManager cacheDirectoryManager1 = createCacheDirectoryManager();
+    cacheDirectoryManager1.initialize();
+    cacheDirectoryManager1.setStoredArtifactDigest(testOutputArtifact("123"), "abc");
+
+    CacheDirectoryManager cacheDirectoryManager2 = createCacheDirectoryManager();
+    cacheDirectoryManager2.initialize();
+
+    assertThat(cacheDirectoryManager2.getStoredArtifactDigest(testOutputArtifact("123")))
+        .isEqualTo("abc");
+  }
+
+  @Test
+  public void initialize_migrates_digest_files() throws IOException {
+    Path digestDirectory = temporaryFolder.getRoot().toPath().resolve(".digest");
+    Files.createDirectories(digestDirectory);
+    Path digestFile =
+        digestDirectory.resolve(
+            CacheDirectoryManager.cacheKeyForArtifact(testOutputArtifact("123")) + ".txt");
+    Files.writeString(digestFile, "abc");
+
+    CacheDirectoryManager cacheDirectoryManager = createCacheDirectoryManager();
+    cacheDirectoryManager.initialize();
+
+    assertThat(cacheDirectoryManager.getStoredArtifactDigest(testOutputArtifact("123")))
+        .isEqualTo("abc");
+    assertThat(Files.exists(digestFile)).isFalse();
+  }
+
   private CacheDirectoryManager createCacheDirectoryManager() {
     return new CacheDirectoryManager(
         temporaryFolder.getRoot().toPath().resolve(".digest"),
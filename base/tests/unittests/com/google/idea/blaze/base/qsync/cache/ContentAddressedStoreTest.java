@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ContentAddressedStoreTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void isValidDigest() {
+    assertThat(ContentAddressedStore.isValidDigest("0123456789abcdef")).isTrue();
+    assertThat(ContentAddressedStore.isValidDigest("")).isFalse();
+    assertThat(ContentAddressedStore.isValidDigest("../../etc/passwd")).isFalse();
+  }
+
+  @Test
+  public void add_linksAllDestinations() throws IOException {
+    ContentAddressedStore store = createStore(Long.MAX_VALUE);
+    Path cache = temporaryFolder.newFolder("cache").toPath();
+
+    store.add(
+        "digest0001",
+        writeTemp(store, "contents"),
+        ImmutableList.of(cache.resolve("a.jar"), cache.resolve("b.jar")));
+
+    assertThat(Files.readString(cache.resolve("a.jar"))).isEqualTo("contents");
+    assertThat(Files.readString(cache.resolve("b.jar"))).isEqualTo("contents");
+    assertThat(Files.isSameFile(cache.resolve("a.jar"), store.pathFor("digest0001"))).isTrue();
+  }
+
+  @Test
+  public void linkIfPresent() throws IOException {
+    ContentAddressedStore store = createStore(Long.MAX_VALUE);
+    Path cache = temporaryFolder.newFolder("cache").toPath();
+    Files.writeString(cache.resolve("a.jar"), "old contents");
+
+    assertThat(store.linkIfPresent("digest0001", ImmutableList.of(cache.resolve("a.jar"))))
+        .isFalse();
+    assertThat(Files.readString(cache.resolve("a.jar"))).isEqualTo("old contents");
+
+    store.add("digest0001", writeTemp(store, "contents"), ImmutableList.of());
+    assertThat(store.linkIfPresent("digest0001", ImmutableList.of(cache.resolve("a.jar"))))
+        .isTrue();
+    assertThat(Files.readString(cache.resolve("a.jar"))).isEqualTo("contents");
+  }
+
+  @Test
+  public void add_alreadyPresent() throws IOException {
+    ContentAddressedStore store = createStore(Long.MAX_VALUE);
+    Path cache = temporaryFolder.newFolder("cache").toPath();
+    store.add("digest0001", writeTemp(store, "contents"), ImmutableList.of());
+
+    store.add("digest0001", writeTemp(store, "contents"), ImmutableList.of(cache.resolve("a.jar")));
+
+    assertThat(Files.readString(cache.resolve("a.jar"))).isEqualTo("contents");
+    assertThat(store.entries()).containsExactly(store.pathFor("digest0001"));
+  }
+
+  @Test
+  public void evict_onlyUnreferencedEntries() throws IOException {
+    ContentAddressedStore store = createStore(10);
+    Path cache = temporaryFolder.newFolder("cache").toPath();
+    store.add("digest0001", writeTemp(store, "unreferenced"), ImmutableList.of());
+    store.add("digest0002", writeTemp(store, "referenced"), ImmutableList.of(cache.resolve("a")));
+
+    store.evict();
+
+    assertThat(store.entries()).containsExactly(store.pathFor("digest0002"));
+    assertThat(Files.readString(cache.resolve("a"))).isEqualTo("referenced");
+  }
+
+  @Test
+  public void evict_underMaximumSize_keepsEntries() throws IOException {
+    ContentAddressedStore store = createStore(1000);
+    store.add("digest0001", writeTemp(store, "unreferenced"), ImmutableList.of());
+
+    store.evict();
+
+    assertThat(store.entries()).containsExactly(store.pathFor("digest0001"));
+  }
+
+  @Test
+  public void evict_onlyWalksStoreOnceKnownToBeTooLarge() throws IOException {
+    ContentAddressedStore store = createStore(20);
+    store.evict();
+    // Written by another IDE instance, so not counted until the store is walked again.
+    Path other = store.pathFor("digest0000");
+    Files.createDirectories(other.getParent());
+    Files.writeString(other, "added by another instance");
+
+    store.add("digest0001", writeTemp(store, "unreferenced"), ImmutableList.of());
+    store.evict();
+    assertThat(store.entries()).containsExactly(other, store.pathFor("digest0001"));
+
+    store.add("digest0002", writeTemp(store, "unreferenced"), ImmutableList.of());
+    store.evict();
+    assertThat(store.entries()).containsExactly(store.pathFor("digest0002"));
+  }
+
+  private ContentAddressedStore createStore(long maxSizeBytes) {
+    return new ContentAddressedStore(
+        temporaryFolder.getRoot().toPath().resolve("store"), maxSizeBytes, Duration.ZERO);
+  }
+
+  private static Path writeTemp(ContentAddressedStore store, String contents) throws IOException {
+    Path temp = store.newTempPath();
+    Files.writeString(temp, contents);
+    return temp;
+  }
+}
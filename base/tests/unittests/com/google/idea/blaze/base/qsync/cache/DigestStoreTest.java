@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.qsync.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DigestStoreTest {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void put_and_get() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      store.put("a.jar", "abc");
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+      assertThat(store.get("b.jar")).isEmpty();
+    }
+  }
+
+  @Test
+  public void put_empty_removes() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      store.put("a.jar", "abc");
+      store.put("a.jar", "");
+      assertThat(store.get("a.jar")).isEmpty();
+    }
+  }
+
+  @Test
+  public void reopen() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      store.put("a.jar", "abc");
+      store.put("b.jar", "def");
+      store.put("b.jar", "xyz");
+      store.put("c.jar", "ghi");
+      store.put("c.jar", "");
+    }
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+      assertThat(store.get("b.jar")).isEqualTo("xyz");
+      assertThat(store.get("c.jar")).isEmpty();
+    }
+  }
+
+  @Test
+  public void reopen_truncatedRecord_recovers() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      store.put("a.jar", "abc");
+      store.put("b.jar", "def");
+    }
+    byte[] contents = Files.readAllBytes(storeFile());
+    Files.write(storeFile(), Arrays.copyOf(contents, contents.length - 2));
+
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+      assertThat(store.get("b.jar")).isEmpty();
+      store.put("c.jar", "ghi");
+    }
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+      assertThat(store.get("c.jar")).isEqualTo("ghi");
+    }
+  }
+
+  @Test
+  public void reopen_corruptRecord_recovers() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      store.put("a.jar", "abc");
+      store.put("b.jar", "def");
+    }
+    byte[] contents = Files.readAllBytes(storeFile());
+    contents[contents.length - 6]++;
+    Files.write(storeFile(), contents);
+
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+      assertThat(store.get("b.jar")).isEmpty();
+    }
+  }
+
+  @Test
+  public void reopen_notADigestStore_isEmpty() throws IOException {
+    Files.writeString(storeFile(), "not a digest store");
+
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEmpty();
+      store.put("a.jar", "abc");
+    }
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar")).isEqualTo("abc");
+    }
+  }
+
+  @Test
+  public void compaction() throws IOException {
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      for (int i = 0; i < DigestStore.MIN_RECORDS_TO_COMPACT * 2; i++) {
+        store.put("a.jar", "digest" + i);
+      }
+      assertThat(store.recordCount()).isLessThan(DigestStore.MIN_RECORDS_TO_COMPACT);
+      assertThat(store.get("a.jar"))
+          .isEqualTo("digest" + (DigestStore.MIN_RECORDS_TO_COMPACT * 2 - 1));
+    }
+    try (DigestStore store = DigestStore.open(storeFile())) {
+      assertThat(store.get("a.jar"))
+          .isEqualTo("digest" + (DigestStore.MIN_RECORDS_TO_COMPACT * 2 - 1));
+    }
+  }
+
+  private Path storeFile() {
+    return temporaryFolder.getRoot().toPath().resolve("digests.log");
+  }
+}
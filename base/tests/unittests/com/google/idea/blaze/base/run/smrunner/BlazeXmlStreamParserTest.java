@@ -0,0 +1,215 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
+import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestSuite;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeXmlStreamParser}. */
+@RunWith(JUnit4.class)
+public class BlazeXmlStreamParserTest {
+
+  @Test
+  public void matchesJaxb_noTestSuitesOuterElement() {
+    assertParsedAsJaxbDoes(
+        "  <testsuite name=\"foo/bar\" tests=\"1\" time=\"19.268\">",
+        "      <testcase name=\"TestName\" result=\"completed\" status=\"run\" time=\"19.2\">",
+        "          <system-out>PASS&#xA;&#xA;</system-out>",
+        "      </testcase>",
+        "  </testsuite>");
+  }
+
+  @Test
+  public void matchesJaxb_outerTestSuitesElementWithUnknownElements() {
+    assertParsedAsJaxbDoes(
+        "<?xml version='1.0' encoding='UTF-8'?>",
+        "<testsuites>",
+        "  <testsuite name='foo' hostname='localhost' tests='331' failures='0' id='0'>",
+        "    <properties><property name='a' value='b'/></properties>",
+        "    <system-out />",
+        "    <system-err />",
+        "  </testsuite>",
+        "  <testsuite name='bar'>",
+        "    <testcase name='bar_test_1' time='12.2' />",
+        "    <system-out />",
+        "  </testsuite>",
+        "</testsuites>");
+  }
+
+  @Test
+  public void matchesJaxb_failuresAndErrors() {
+    assertParsedAsJaxbDoes(
+        "<?xml version='1.0' encoding='UTF-8'?>",
+        "<testsuites>",
+        "  <testsuite name='com.google.ConfigTest' time='10' tests='3' failures='1' errors='1'>",
+        "    <testcase name='testCase1' time='7.9' status='run' result='completed'>",
+        "      <failure message='failed' type='AssertionError'>Error message</failure>",
+        "      <failure message='failed2' type='AssertionError'><![CDATA[Another <Error>]]>",
+        "      </failure>",
+        "    </testcase>",
+        "    <testcase name='testCase2' status='run' time='55'>",
+        "      <error message='exited with error code 1'></error>",
+        "      <system-out>out &amp; about</system-out>",
+        "      <system-err>err</system-err>",
+        "    </testcase>",
+        "    <testcase name='testCase3' result='suppressed'>",
+        "      <skipped message='not today'/>",
+        "    </testcase>",
+        "    <testdecorator name='decorator'>",
+        "      <testcase name='decorated' status='run'/>",
+        "    </testdecorator>",
+        "    <testsuite name='nested'>",
+        "      <testcase name='nestedCase' status='run'/>",
+        "    </testsuite>",
+        "  </testsuite>",
+        "</testsuites>");
+  }
+
+  @Test
+  public void matchesJaxb_expectedAndActualValues() {
+    assertParsedAsJaxbDoes(
+        "<?xml version='1.0' encoding='UTF-8'?>",
+        "<testsuites>",
+        "  <testsuite name='com.google.ConfigTest' time='10' tests='1' failures='1'>",
+        "    <testcase name='testCase1' time='7.9' status='run' result='completed'>",
+        "      <failure message='failed' type='AssertionError'>Error message",
+        "        <expected><value><![CDATA[abc]]></value><value>def</value></expected>",
+        "        <actual><value><![CDATA[xyz]]></value></actual>",
+        "        trailing text",
+        "      </failure>",
+        "    </testcase>",
+        "  </testsuite>",
+        "</testsuites>");
+  }
+
+  @Test
+  public void errorContentIsKeptAsMixedContent() {
+    TestSuite parsed =
+        parse(
+            "<testsuite name='suite'>",
+            "  <testcase name='test' status='run'>",
+            "    <failure message='failed'>first<expected><value>a</value></expected>second",
+            "    </failure>",
+            "  </testcase>",
+            "</testsuite>");
+
+    ErrorOrFailureOrSkipped failure =
+        Iterables.getOnlyElement(Iterables.getOnlyElement(parsed.testCases).failures);
+    assertThat(BlazeXmlSchema.getErrorContent(failure)).isEqualTo("first\nsecond");
+    assertThat(failure.expected.values).containsExactly("a");
+  }
+
+  @Test
+  public void unexpectedRootElement_throws() {
+    assertThrows(RuntimeException.class, () -> parse("<html><body/></html>"));
+  }
+
+  private static void assertParsedAsJaxbDoes(String... lines) {
+    assertThat(describe(parse(lines))).isEqualTo(describe(BlazeXmlSchema.parse(toStream(lines))));
+  }
+
+  private static TestSuite parse(String... lines) {
+    return BlazeXmlStreamParser.parse(toStream(lines));
+  }
+
+  private static InputStream toStream(String... lines) {
+    return new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Lists every field of the parsed model, so that the results of two parsers can be compared. */
+  private static List<String> describe(TestSuite suite) {
+    List<String> fields = new ArrayList<>();
+    describe(suite, "", fields);
+    return fields;
+  }
+
+  private static void describe(TestSuite suite, String prefix, List<String> fields) {
+    fields.add(
+        String.format(
+            "%ssuite name=%s classname=%s tests=%d failures=%d errors=%d skipped=%d disabled=%d"
+                + " time=%s out=%s err=%s",
+            prefix,
+            suite.name,
+            suite.classname,
+            suite.tests,
+            suite.failures,
+            suite.errors,
+            suite.skipped,
+            suite.disabled,
+            suite.time,
+            suite.sysOut,
+            suite.sysErr));
+    describe(suite.error, prefix + "  suite error ", fields);
+    describe(suite.failure, prefix + "  suite failure ", fields);
+    for (TestSuite child : suite.testSuites) {
+      describe(child, prefix + "  ", fields);
+    }
+    for (TestSuite decorator : suite.testDecorators) {
+      describe(decorator, prefix + "  decorator ", fields);
+    }
+    for (TestCase test : suite.testCases) {
+      fields.add(
+          String.format(
+              "%s  case name=%s classname=%s status=%s result=%s time=%s out=%s err=%s",
+              prefix,
+              test.name,
+              test.classname,
+              test.status,
+              test.result,
+              test.time,
+              test.sysOut,
+              test.sysErr));
+      for (ErrorOrFailureOrSkipped error : test.errors) {
+        describe(error, prefix + "    error ", fields);
+      }
+      for (ErrorOrFailureOrSkipped failure : test.failures) {
+        describe(failure, prefix + "    failure ", fields);
+      }
+      describe(test.skipped, prefix + "    skipped ", fields);
+    }
+  }
+
+  private static void describe(
+      @Nullable ErrorOrFailureOrSkipped error, String prefix, List<String> fields) {
+    if (error == null) {
+      return;
+    }
+    fields.add(
+        String.format(
+            "%smessage=%s type=%s content=%s expected=%s actual=%s",
+            prefix,
+            error.message,
+            error.type,
+            BlazeXmlSchema.getErrorContent(error),
+            error.expected != null ? error.expected.values : null,
+            error.actual != null ? error.actual.values : null));
+  }
+}
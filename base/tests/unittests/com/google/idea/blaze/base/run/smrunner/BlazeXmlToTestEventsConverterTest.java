@@ -0,0 +1,229 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.smrunner;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEvent;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestResultId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestSummaryId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestResult;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.TestSummary;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
+import com.google.idea.blaze.base.command.buildresult.TailingBuildEventStreamProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.run.testlogs.BlazeTestResult;
+import com.google.idea.blaze.base.run.testlogs.BlazeTestResult.TestStatus;
+import com.google.idea.blaze.base.run.testlogs.BlazeTestResultFinderStrategy;
+import com.google.idea.blaze.base.run.testlogs.BlazeTestResults;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.execution.testframework.TestConsoleProperties;
+import com.intellij.execution.testframework.sm.runner.GeneralTestEventsProcessor;
+import com.intellij.execution.testframework.sm.runner.events.TestFailedEvent;
+import com.intellij.execution.testframework.sm.runner.events.TestStartedEvent;
+import com.intellij.execution.testframework.sm.runner.events.TestSuiteStartedEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.BooleanSupplier;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for {@link BlazeXmlToTestEventsConverter} reporting streamed test results. */
+@RunWith(JUnit4.class)
+public class BlazeXmlToTestEventsConverterTest extends BlazeTestCase {
+
+  private static final String SHARDED_TEST = "//java/com/google:ShardedTest";
+  private static final String OTHER_TEST = "//java/com/google:OtherTest";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final GeneralTestEventsProcessor processor = mock(GeneralTestEventsProcessor.class);
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    MockExperimentService experimentService = new MockExperimentService();
+    experimentService.setExperimentRaw("blaze.test.results.streaming", true);
+    applicationServices.register(ExperimentService.class, experimentService);
+    registerExtensionPoint(BlazeTestEventsHandler.EP_NAME, BlazeTestEventsHandler.class);
+  }
+
+  @Test
+  public void streamedShardedTarget_reportedAsOneSuite() throws Exception {
+    File shard1 = testXml("ShardedTest", "testOne");
+    File shard2 = testXml("ShardedTest", "testTwo");
+    File events =
+        buildEvents(
+            testResultEvent(SHARDED_TEST, shard1),
+            testResultEvent(SHARDED_TEST, shard2),
+            testSummaryEvent(SHARDED_TEST).setLastMessage(true));
+
+    runConverter(new StreamingResultFinder(events, BlazeTestResults.NO_RESULTS));
+
+    assertThat(reportedSuites()).containsExactly("ShardedTest");
+    assertThat(reportedTests()).containsExactly("testOne", "testTwo");
+    verify(processor, never()).onTestFailure(any(TestFailedEvent.class));
+  }
+
+  @Test
+  public void streamingInterrupted_remainingResultsReportedOnce() throws Exception {
+    File shard1 = testXml("ShardedTest", "testOne");
+    File shard2 = testXml("ShardedTest", "testTwo");
+    File other = testXml("OtherTest", "testOther");
+    // The stream ends part way through an event, after the sharded target has been summarized.
+    File events =
+        buildEvents(
+            testResultEvent(SHARDED_TEST, shard1),
+            testResultEvent(SHARDED_TEST, shard2),
+            testSummaryEvent(SHARDED_TEST),
+            testResultEvent(OTHER_TEST, other));
+    Files.write(events.toPath(), new byte[] {42}, APPEND);
+    BlazeTestResults allResults =
+        BlazeTestResults.fromFlatList(
+            ImmutableList.of(
+                testResult(SHARDED_TEST, shard1),
+                testResult(SHARDED_TEST, shard2),
+                testResult(OTHER_TEST, other)));
+
+    runConverter(new StreamingResultFinder(events, allResults));
+
+    assertThat(reportedSuites()).containsExactly("ShardedTest", "OtherTest");
+    assertThat(reportedTests()).containsExactly("testOne", "testTwo", "testOther");
+  }
+
+  private void runConverter(BlazeTestResultFinderStrategy resultFinder) {
+    BlazeXmlToTestEventsConverter converter =
+        new BlazeXmlToTestEventsConverter(
+            "Blaze", mock(TestConsoleProperties.class), resultFinder);
+    converter.setProcessor(processor);
+    converter.onStartTesting();
+    converter.flushBufferOnProcessTermination(0);
+  }
+
+  private ImmutableList<String> reportedSuites() {
+    ArgumentCaptor<TestSuiteStartedEvent> captor =
+        ArgumentCaptor.forClass(TestSuiteStartedEvent.class);
+    verify(processor, atLeastOnce()).onSuiteStarted(captor.capture());
+    return captor.getAllValues().stream()
+        .map(TestSuiteStartedEvent::getName)
+        .collect(toImmutableList());
+  }
+
+  private ImmutableList<String> reportedTests() {
+    ArgumentCaptor<TestStartedEvent> captor = ArgumentCaptor.forClass(TestStartedEvent.class);
+    verify(processor, atLeastOnce()).onTestStarted(captor.capture());
+    return captor.getAllValues().stream().map(TestStartedEvent::getName).collect(toImmutableList());
+  }
+
+  private File testXml(String suite, String testCase) throws IOException {
+    File file = temporaryFolder.newFile(suite + "_" + testCase + ".xml");
+    Files.write(
+        file.toPath(),
+        String.join(
+                "\n",
+                "<?xml version='1.0' encoding='UTF-8'?>",
+                "<testsuites>",
+                "  <testsuite name='" + suite + "' tests='1'>",
+                "    <testcase name='" + testCase + "' status='run' time='1'/>",
+                "  </testsuite>",
+                "</testsuites>")
+            .getBytes(UTF_8));
+    return file;
+  }
+
+  private File buildEvents(BuildEvent.Builder... events) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    for (BuildEvent.Builder event : events) {
+      event.build().writeDelimitedTo(output);
+    }
+    File file = temporaryFolder.newFile("build_events");
+    Files.write(file.toPath(), output.toByteArray());
+    return file;
+  }
+
+  private static BuildEvent.Builder testResultEvent(String label, File outputXml) {
+    return BuildEvent.newBuilder()
+        .setId(BuildEventId.newBuilder().setTestResult(TestResultId.newBuilder().setLabel(label)))
+        .setTestResult(
+            TestResult.newBuilder()
+                .setStatus(BuildEventStreamProtos.TestStatus.PASSED)
+                .addTestActionOutput(
+                    BuildEventStreamProtos.File.newBuilder()
+                        .setUri(outputXml.toURI().toString())
+                        .setName(outputXml.getName())));
+  }
+
+  private static BuildEvent.Builder testSummaryEvent(String label) {
+    return BuildEvent.newBuilder()
+        .setId(
+            BuildEventId.newBuilder().setTestSummary(TestSummaryId.newBuilder().setLabel(label)))
+        .setTestSummary(TestSummary.getDefaultInstance());
+  }
+
+  private static BlazeTestResult testResult(String label, File outputXml) {
+    return BlazeTestResult.create(
+        Label.create(label),
+        /* targetKind= */ null,
+        TestStatus.PASSED,
+        ImmutableSet.of(new SourceArtifact(outputXml)));
+  }
+
+  /** Streams the given build events, falling back to the given results. */
+  private static class StreamingResultFinder implements BlazeTestResultFinderStrategy {
+    private final File buildEvents;
+    private final BlazeTestResults results;
+
+    StreamingResultFinder(File buildEvents, BlazeTestResults results) {
+      this.buildEvents = buildEvents;
+      this.results = results;
+    }
+
+    @Nullable
+    @Override
+    public TailingBuildEventStreamProvider streamBuildEvents(BooleanSupplier testComplete) {
+      return new TailingBuildEventStreamProvider(buildEvents, testComplete);
+    }
+
+    @Override
+    public BlazeTestResults findTestResults() {
+      return results;
+    }
+
+    @Override
+    public void deleteTemporaryOutputFiles() {}
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SyncCache}. */
+@RunWith(JUnit4.class)
+public class SyncCacheTest extends BlazeTestCase {
+
+  private MockBlazeProjectDataManager projectDataManager;
+  private SyncCache syncCache;
+
+  @Override
+  protected void initTest(
+      @NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    projectDataManager =
+        new MockBlazeProjectDataManager(MockBlazeProjectDataBuilder.builder().build());
+    projectServices.register(BlazeProjectDataManager.class, projectDataManager);
+    syncCache = new SyncCache(project);
+    projectServices.register(SyncCache.class, syncCache);
+  }
+
+  @Test
+  public void testConcurrentCallersComputeOnce() throws Exception {
+    AtomicInteger computations = new AtomicInteger();
+    CountDownLatch computing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SyncCache.SyncCacheComputable<String> computable =
+        (project, projectData) -> {
+          computations.incrementAndGet();
+          computing.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          return "value";
+        };
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(() -> syncCache.get("key", computable)));
+      }
+      computing.await();
+      // Other keys aren't blocked by the computation in progress.
+      assertThat(syncCache.get("other", (project, projectData) -> "other")).isEqualTo("other");
+      release.countDown();
+      for (Future<String> result : results) {
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("value");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(computations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testNullValuesAreCached() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<String> computable =
+        (project, projectData) -> {
+          computations.incrementAndGet();
+          return null;
+        };
+
+    assertThat(syncCache.get("key", computable)).isNull();
+    assertThat(syncCache.get("key", computable)).isNull();
+    assertThat(computations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFailedComputationIsRetried() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<String> computable =
+        (project, projectData) -> {
+          if (computations.incrementAndGet() == 1) {
+            throw new IllegalStateException("first attempt");
+          }
+          return "value";
+        };
+
+    assertThrows(IllegalStateException.class, () -> syncCache.get("key", computable));
+    assertThat(syncCache.get("key", computable)).isEqualTo("value");
+    assertThat(computations.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testClearRecomputes() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<Integer> computable =
+        (project, projectData) -> computations.incrementAndGet();
+
+    assertThat(syncCache.get("key", computable)).isEqualTo(1);
+    syncCache.clear();
+    assertThat(syncCache.get("key", computable)).isEqualTo(2);
+    assertThat(syncCache.get("key", computable)).isEqualTo(2);
+  }
+
+  @Test
+  public void testClearDuringComputation_valueNotKept() {
+    AtomicInteger computations = new AtomicInteger();
+    SyncCache.SyncCacheComputable<Integer> computable =
+        (project, projectData) -> {
+          if (computations.incrementAndGet() == 1) {
+            // Sync completes while the first value is being computed from the old project data.
+            syncCache.clear();
+          }
+          return computations.get();
+        };
+
+    assertThat(syncCache.get("key", computable)).isEqualTo(1);
+    assertThat(syncCache.get("key", computable)).isEqualTo(2);
+    assertThat(syncCache.get("key", computable)).isEqualTo(2);
+  }
+
+  @Test
+  public void testNoProjectData_notCached() {
+    projectDataManager.setBlazeProjectData(null);
+    assertThat(syncCache.get("key", (project, projectData) -> "value")).isNull();
+
+    projectDataManager.setBlazeProjectData(MockBlazeProjectDataBuilder.builder().build());
+    assertThat(syncCache.get("key", (project, projectData) -> "value")).isEqualTo("value");
+  }
+}
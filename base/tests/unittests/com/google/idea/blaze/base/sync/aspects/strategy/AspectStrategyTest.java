@@ -16,16 +16,23 @@
 package com.google.idea.blaze.base.sync.aspects.strategy;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetKey;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.command.BlazeCommand;
 import com.google.idea.blaze.base.command.BlazeCommandName;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.sync.aspects.strategy.AspectStrategy.OutputGroup;
 import com.google.idea.common.experiments.ExperimentService;
 import com.google.idea.common.experiments.MockExperimentService;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -185,6 +192,65 @@ public class AspectStrategyTest extends BlazeTestCase {
         .containsExactly("intellij-info-generic", "intellij-info-java", "intellij-resolve-java");
   }
 
+  @Test
+  public void testJsonIdeInfoExperimentRespected() {
+    BlazeCommand.Builder builder = emptyBuilder();
+    strategy.addAspectAndOutputGroups(
+        builder,
+        ImmutableList.of(OutputGroup.INFO),
+        ImmutableSet.of(),
+        /* directDepsOnly= */ false);
+    assertThat(getBlazeFlags(builder)).doesNotContain(AspectStrategy.JSON_IDE_INFO_FLAG);
+
+    experiments.setExperimentRaw("sync.aspect.json.ide.info", true);
+    builder = emptyBuilder();
+    strategy.addAspectAndOutputGroups(
+        builder,
+        ImmutableList.of(OutputGroup.INFO),
+        ImmutableSet.of(),
+        /* directDepsOnly= */ false);
+    assertThat(getBlazeFlags(builder)).contains(AspectStrategy.JSON_IDE_INFO_FLAG);
+  }
+
+  @Test
+  public void testReadAspectFileInEitherFormat() throws IOException {
+    TargetIdeInfo expected =
+        TargetIdeInfo.newBuilder()
+            .setKindString("java_library")
+            .setKey(TargetKey.newBuilder().setLabel("//foo:bar"))
+            .addTags("manual")
+            .build();
+
+    assertThat(
+            strategy.readAspectFile(
+                artifact(
+                    "kind_string: \"java_library\"\n"
+                        + "key {\n  label: \"//foo:bar\"\n}\n"
+                        + "tags: \"manual\"\n")))
+        .isEqualTo(expected);
+    assertThat(
+            strategy.readAspectFile(
+                artifact(
+                    " {\"key\": {\"label\": \"//foo:bar\"}, \"kind_string\": \"java_library\","
+                        + " \"tags\": [\"manual\"]}")))
+        .isEqualTo(expected);
+  }
+
+  private static BlazeArtifact artifact(String contents) {
+    byte[] bytes = contents.getBytes(UTF_8);
+    return new BlazeArtifact() {
+      @Override
+      public long getLength() {
+        return bytes.length;
+      }
+
+      @Override
+      public BufferedInputStream getInputStream() {
+        return new BufferedInputStream(new ByteArrayInputStream(bytes));
+      }
+    };
+  }
+
   private static BlazeCommand.Builder emptyBuilder() {
     return BlazeCommand.builder("/usr/bin/blaze", BlazeCommandName.BUILD);
   }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.base.sync.aspects.strategy.StarlarkJsonCorpus.createCorpus;
+import static com.google.idea.blaze.base.sync.aspects.strategy.StarlarkJsonCorpus.toStarlarkJson;
+import static org.junit.Assert.assertThrows;
+
+import com.google.devtools.intellij.aspect.Common.ArtifactLocation;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.AndroidIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.Dependency;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.PyIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetKey;
+import com.google.protobuf.TextFormat;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class JsonProtoDecoderTest {
+
+  @Test
+  public void decodesStarlarkJson() throws IOException {
+    String json =
+        "{\"android_ide_info\":{\"java_package\":\"com.example\","
+            + "\"manifest_values\":[{\"key\":\"minSdk\",\"value\":\"21\"}]},"
+            + "\"deps\":[{\"dependency_type\":1,\"target\":{\"label\":\"//foo:dep\"}}],"
+            + "\"key\":{\"label\":\"//foo:bar\"},"
+            + "\"kind_string\":\"py_binary\","
+            + "\"py_ide_info\":{\"python_version\":2,\"sources\":[{\"is_source\":true,"
+            + "\"relative_path\":\"foo/bar.py\"}]},"
+            + "\"tags\":[\"manual\",\"no-ide\"]}";
+
+    assertThat(decode(json))
+        .isEqualTo(
+            TargetIdeInfo.newBuilder()
+                .setKindString("py_binary")
+                .setKey(TargetKey.newBuilder().setLabel("//foo:bar"))
+                .addDeps(
+                    Dependency.newBuilder()
+                        .setTarget(TargetKey.newBuilder().setLabel("//foo:dep"))
+                        .setDependencyType(Dependency.DependencyType.RUNTIME))
+                .addTags("manual")
+                .addTags("no-ide")
+                .setPyIdeInfo(
+                    PyIdeInfo.newBuilder()
+                        .setPythonVersion(PyIdeInfo.PythonVersion.PY3)
+                        .addSources(
+                            ArtifactLocation.newBuilder()
+                                .setRelativePath("foo/bar.py")
+                                .setIsSource(true)))
+                .setAndroidIdeInfo(
+                    AndroidIdeInfo.newBuilder()
+                        .setJavaPackage("com.example")
+                        .putManifestValues("minSdk", "21"))
+                .build());
+  }
+
+  @Test
+  public void skipsUnknownFieldsAndNulls() throws IOException {
+    String json =
+        "{\"kind_string\":\"java_library\",\"unknown\":{\"nested\":[1,2,{\"a\":null}]},"
+            + "\"test_info\":null,\"tags\":[null,\"manual\"]}";
+
+    assertThat(decode(json))
+        .isEqualTo(
+            TargetIdeInfo.newBuilder().setKindString("java_library").addTags("manual").build());
+  }
+
+  @Test
+  public void acceptsEnumNamesAndMapObjects() throws IOException {
+    String json =
+        "{\"py_ide_info\":{\"python_version\":\"PY2\",\"srcs_version\":\"NOT_A_VERSION\"},"
+            + "\"android_ide_info\":{\"manifest_values\":{\"a\":\"1\",\"b\":\"2\"}}}";
+
+    TargetIdeInfo info = decode(json);
+
+    assertThat(info.getPyIdeInfo().getPythonVersion()).isEqualTo(PyIdeInfo.PythonVersion.PY2);
+    assertThat(info.getPyIdeInfo().getSrcsVersion())
+        .isEqualTo(PyIdeInfo.PythonSrcsVersion.SRC_UNKNOWN);
+    assertThat(info.getAndroidIdeInfo().getManifestValuesMap()).containsExactly("a", "1", "b", "2");
+  }
+
+  @Test
+  public void malformedJson_throws() {
+    assertThrows(IOException.class, () -> decode("{\"kind_string\":"));
+    assertThrows(IOException.class, () -> decode("{\"kind_string\":[\"a\"]}"));
+    assertThrows(IOException.class, () -> decode("{\"kind_string\":\"a\"} {}"));
+  }
+
+  @Test
+  public void matchesTextFormat() throws IOException {
+    for (TargetIdeInfo target : createCorpus(50)) {
+      TargetIdeInfo.Builder fromText = TargetIdeInfo.newBuilder();
+      TextFormat.merge(TextFormat.printer().printToString(target), fromText);
+
+      assertThat(decode(toStarlarkJson(target))).isEqualTo(fromText.build());
+    }
+  }
+
+  private static TargetIdeInfo decode(String json) throws IOException {
+    TargetIdeInfo.Builder builder = TargetIdeInfo.newBuilder();
+    JsonProtoDecoder.merge(new StringReader(json), builder);
+    return builder.build();
+  }
+}
@@ -156,6 +156,26 @@ public class ExecutionRootPathResolverTest extends BlazeTestCase {
     assertThat(files).containsExactly(new File(OUTPUT_BASE, "external/guava/src"));
   }
 
+  @Test
+  public void testCachingResolverResolvesEachPathOnce() {
+    CachingExecutionRootPathResolver cachingResolver =
+        new CachingExecutionRootPathResolver(
+            new BazelBuildSystemProvider(),
+            WORKSPACE_ROOT,
+            new File(EXECUTION_ROOT),
+            new File(OUTPUT_BASE),
+            new WorkspacePathResolverImpl(WORKSPACE_ROOT),
+            getTargetMap());
+    ExecutionRootPath path = new ExecutionRootPath("external/guava/src");
+
+    assertThat(cachingResolver.resolveToIncludeDirectories(path))
+        .isEqualTo(pathResolver.resolveToIncludeDirectories(path));
+    assertThat(cachingResolver.resolveToIncludeDirectories(path))
+        .isEqualTo(pathResolver.resolveToIncludeDirectories(path));
+    assertThat(cachingResolver.getCacheStats().missCount()).isEqualTo(1);
+    assertThat(cachingResolver.getCacheStats().hitCount()).isEqualTo(1);
+  }
+
   @Test
   public void testGenfilesPathRelativeToExecRoot() {
     ImmutableList<File> files =
@@ -30,6 +30,7 @@ import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.qsync.settings.QuerySyncSettings;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
 import java.io.File;
@@ -62,6 +63,7 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
         BlazeProjectDataManager.class,
         new MockBlazeProjectDataManager(
             MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build()));
+    projectServices.register(SyncCache.class, new SyncCache(project));
     projectServices.register(TransitiveDependencyMap.class, new TransitiveDependencyMap(project));
     transitiveDependencyMap = TransitiveDependencyMap.getInstance(project);
   }
@@ -156,6 +158,65 @@ public class TransitiveDependencyMapTest extends BlazeTestCase {
     assertThat(transitiveDependencyMap.getTransitiveDependencies(bogus)).isEmpty();
   }
 
+  @Test
+  public void testFilterPossibleTransitiveDeps() {
+    TargetKey diamondBB = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:bb"));
+    TargetKey diamondC = TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:c"));
+    TargetKey diamondCCC =
+        TargetKey.forPlainTarget(Label.create("//com/google/example/diamond:ccc"));
+    TargetKey chainD = TargetKey.forPlainTarget(Label.create("//com/google/example/chain:d"));
+
+    assertThat(
+            transitiveDependencyMap.filterPossibleTransitiveDeps(
+                diamondBB, ImmutableSet.of(diamondBB, diamondC, diamondCCC, chainD)))
+        .containsExactly(diamondC);
+  }
+
+  @Test
+  public void testIndexMatchesTraversal() {
+    TargetDependencyIndex index = TargetDependencyIndex.create(targetMap);
+    for (TargetKey key : targetMap.map().keySet()) {
+      assertThat(index.getTransitiveDependencies(ImmutableSet.of(key)))
+          .containsExactlyElementsIn(
+              TransitiveDependencyMap.getTransitiveDependenciesStream(key, targetMap)
+                  .collect(Collectors.toList()))
+          .inOrder();
+    }
+  }
+
+  @Test
+  public void testIndexWithCycles() {
+    Label a = Label.create("//com/google/example/cycle:a");
+    Label b = Label.create("//com/google/example/cycle:b");
+    Label c = Label.create("//com/google/example/cycle:c");
+    Label d = Label.create("//com/google/example/cycle:d");
+    Label self = Label.create("//com/google/example/cycle:self");
+    TargetDependencyIndex index =
+        TargetDependencyIndex.create(
+            TargetMapBuilder.builder()
+                .addTarget(mockTargetIdeInfoBuilder().setLabel(a).addDependency(b))
+                .addTarget(mockTargetIdeInfoBuilder().setLabel(b).addDependency(c))
+                .addTarget(
+                    mockTargetIdeInfoBuilder().setLabel(c).addDependency(a).addDependency(d))
+                .addTarget(mockTargetIdeInfoBuilder().setLabel(d))
+                .addTarget(mockTargetIdeInfoBuilder().setLabel(self).addDependency(self))
+                .build());
+
+    assertThat(index.hasTransitiveDependency(plainKey(a), plainKey(a))).isTrue();
+    assertThat(index.hasTransitiveDependency(plainKey(c), plainKey(b))).isTrue();
+    assertThat(index.hasTransitiveDependency(plainKey(b), plainKey(d))).isTrue();
+    assertThat(index.hasTransitiveDependency(plainKey(d), plainKey(a))).isFalse();
+    assertThat(index.hasTransitiveDependency(plainKey(d), plainKey(d))).isFalse();
+    assertThat(index.hasTransitiveDependency(plainKey(self), plainKey(self))).isTrue();
+    assertThat(index.getTransitiveDependencies(ImmutableSet.of(plainKey(a))))
+        .containsExactly(plainKey(b), plainKey(c), plainKey(a), plainKey(d))
+        .inOrder();
+  }
+
+  private static TargetKey plainKey(Label label) {
+    return TargetKey.forPlainTarget(label);
+  }
+
   private static TargetMap buildTargetMap() {
     Label simpleA = Label.create("//com/google/example/simple:a");
     Label simpleB = Label.create("//com/google/example/simple:b");
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.aspects.strategy;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.intellij.aspect.Common.ArtifactLocation;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.Dependency;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.JavaIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.LibraryArtifact;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetIdeInfo;
+import com.google.devtools.intellij.ideinfo.IntellijIdeInfo.TargetKey;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Generates aspect output for testing {@link JsonProtoDecoder}. */
+public final class StarlarkJsonCorpus {
+
+  private StarlarkJsonCorpus() {}
+
+  /** Java targets shaped like those written by the aspect. */
+  public static ImmutableList<TargetIdeInfo> createCorpus(int size) {
+    ImmutableList.Builder<TargetIdeInfo> corpus = ImmutableList.builder();
+    for (int i = 0; i < size; i++) {
+      String pkg = "java/com/example/package" + i;
+      TargetIdeInfo.Builder target =
+          TargetIdeInfo.newBuilder()
+              .setKindString("java_library")
+              .setKey(TargetKey.newBuilder().setLabel("//" + pkg + ":lib"))
+              .setBuildFileArtifactLocation(
+                  ArtifactLocation.newBuilder().setRelativePath(pkg + "/BUILD").setIsSource(true))
+              .addFeatures("parse_headers")
+              .addTags("team-\"quoted\"\n");
+      for (int dep = 0; dep < i % 20; dep++) {
+        target.addDeps(
+            Dependency.newBuilder()
+                .setTarget(
+                    TargetKey.newBuilder().setLabel("//java/com/example/package" + dep + ":lib"))
+                .setDependencyType(
+                    dep % 5 == 0
+                        ? Dependency.DependencyType.RUNTIME
+                        : Dependency.DependencyType.COMPILE_TIME));
+      }
+      JavaIdeInfo.Builder java = JavaIdeInfo.newBuilder();
+      for (int src = 0; src < 10; src++) {
+        java.addSources(
+            ArtifactLocation.newBuilder()
+                .setRelativePath(pkg + "/Source" + src + ".java")
+                .setIsSource(true));
+      }
+      java.addJars(
+          LibraryArtifact.newBuilder()
+              .setJar(outputArtifact(pkg + "/liblib.jar"))
+              .setInterfaceJar(outputArtifact(pkg + "/liblib-hjar.jar"))
+              .addSourceJars(outputArtifact(pkg + "/liblib-src.jar")));
+      java.setJdeps(outputArtifact(pkg + "/liblib.jdeps"));
+      corpus.add(target.setJavaIdeInfo(java).build());
+    }
+    return corpus.build();
+  }
+
+  private static ArtifactLocation outputArtifact(String path) {
+    return ArtifactLocation.newBuilder()
+        .setRelativePath(path)
+        .setRootExecutionPathFragment("bazel-out/k8-fastbuild/bin")
+        .build();
+  }
+
+  /**
+   * Encodes a message as {@code json.encode} does for the struct that {@code proto.encode_text}
+   * would encode as the same message.
+   */
+  public static String toStarlarkJson(Message message) {
+    List<String> fields = new ArrayList<>();
+    for (Map.Entry<FieldDescriptor, Object> field : message.getAllFields().entrySet()) {
+      String value;
+      if (field.getKey().isRepeated()) {
+        List<String> values = new ArrayList<>();
+        for (Object element : (List<?>) field.getValue()) {
+          values.add(toStarlarkJson(field.getKey(), element));
+        }
+        value = "[" + Joiner.on(',').join(values) + "]";
+      } else {
+        value = toStarlarkJson(field.getKey(), field.getValue());
+      }
+      fields.add(quote(field.getKey().getName()) + ":" + value);
+    }
+    return "{" + Joiner.on(',').join(fields) + "}";
+  }
+
+  private static String toStarlarkJson(FieldDescriptor field, Object value) {
+    switch (field.getJavaType()) {
+      case MESSAGE:
+        return toStarlarkJson((Message) value);
+      case ENUM:
+        return String.valueOf(((EnumValueDescriptor) value).getNumber());
+      case STRING:
+        return quote((String) value);
+      default:
+        return String.valueOf(value);
+    }
+  }
+
+  private static String quote(String string) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : string.toCharArray()) {
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
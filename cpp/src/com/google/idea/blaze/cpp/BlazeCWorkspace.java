@@ -18,10 +18,19 @@ package com.google.idea.blaze.cpp;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.errorprone.annotations.Keep;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -33,6 +42,7 @@ import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BlazeImportSettings.ProjectType;
 import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.workspace.CachingExecutionRootPathResolver;
 import com.google.idea.blaze.base.sync.workspace.ExecutionRootPathResolver;
 import com.intellij.ide.actions.ShowFilePathAction;
 import com.intellij.openapi.application.ApplicationManager;
@@ -41,6 +51,7 @@ import com.intellij.openapi.application.TransactionGuard;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -76,8 +87,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /** Main entry point for C/CPP configuration data. */
@@ -86,10 +102,12 @@ public final class BlazeCWorkspace implements ProjectComponent {
   // This component is never actually serialized, and this should not ever need to change
   private static final int SERIALIZATION_VERSION = 1;
   private static final Logger logger = Logger.getInstance(BlazeCWorkspace.class);
+  // How often to check whether the calculation of configurations has been cancelled.
+  private static final long CANCELLATION_CHECK_INTERVAL_MILLIS = 100;
 
   private final BlazeConfigurationResolver configurationResolver;
   private BlazeConfigurationResolverResult resolverResult;
-  private final ImmutableList<OCLanguageKind> supportedLanguages =
+  private static final ImmutableList<OCLanguageKind> SUPPORTED_LANGUAGES =
       ImmutableList.of(CLanguageKind.C, CLanguageKind.CPP);
 
   private final Project project;
@@ -129,9 +147,24 @@ public final class BlazeCWorkspace implements ProjectComponent {
       return;
     }
     BlazeConfigurationResolverResult oldResult = resolverResult;
+    // Include directories are resolved both to find the valid header roots and to calculate each
+    // configuration's switches, so the resolved paths are shared for the rest of the update.
+    CachingExecutionRootPathResolver executionRootPathResolver =
+        new CachingExecutionRootPathResolver(
+            Blaze.getBuildSystemProvider(project),
+            workspaceRoot,
+            blazeProjectData.getBlazeInfo().getExecutionRoot(),
+            blazeProjectData.getBlazeInfo().getOutputBase(),
+            blazeProjectData.getWorkspacePathResolver(),
+            blazeProjectData.getTargetMap());
     BlazeConfigurationResolverResult newResult =
         configurationResolver.update(
-            context, workspaceRoot, projectViewSet, blazeProjectData, oldResult);
+            context,
+            workspaceRoot,
+            projectViewSet,
+            blazeProjectData,
+            oldResult,
+            executionRootPathResolver);
     BlazeCompilerInfoMapService.getInstance(project).setState(newResult.getTargetToCompilerVersion());
     // calculateConfigurations is expensive, so run async without a read lock (b/78570947)
     ProgressManager.getInstance()
@@ -149,7 +182,16 @@ public final class BlazeCWorkspace implements ProjectComponent {
                   indicator.setFraction(0.0);
                   OCWorkspaceImpl.ModifiableModel model =
                       calculateConfigurations(
-                          blazeProjectData, workspaceRoot, newResult, indicator);
+                          blazeProjectData,
+                          workspaceRoot,
+                          newResult,
+                          executionRootPathResolver,
+                          indicator);
+                  CacheStats cacheStats = executionRootPathResolver.getCacheStats();
+                  logger.info(
+                      String.format(
+                          "Resolved %d unique include directories, %.1f%% cache hit rate",
+                          cacheStats.loadCount(), cacheStats.hitRate() * 100));
                   ImmutableList<String> issues =
                       commit(model, SERIALIZATION_VERSION, toolEnvironment, workspaceRoot);
                   logger.info(
@@ -169,6 +211,7 @@ public final class BlazeCWorkspace implements ProjectComponent {
       BlazeProjectData blazeProjectData,
       WorkspaceRoot workspaceRoot,
       BlazeConfigurationResolverResult configResolveData,
+      ExecutionRootPathResolver executionRootPathResolver,
       ProgressIndicator indicator) {
 
     OCWorkspaceImpl.ModifiableModel workspaceModifiable =
@@ -176,137 +219,187 @@ public final class BlazeCWorkspace implements ProjectComponent {
             .getModifiableModel(OCWorkspace.LEGACY_CLIENT_KEY, true);
     ImmutableList<BlazeResolveConfiguration> configurations =
         configResolveData.getAllConfigurations();
-    ExecutionRootPathResolver executionRootPathResolver =
-        new ExecutionRootPathResolver(
-            Blaze.getBuildSystemProvider(project),
-            workspaceRoot,
-            blazeProjectData.getBlazeInfo().getExecutionRoot(),
-            blazeProjectData.getBlazeInfo().getOutputBase(),
-            blazeProjectData.getWorkspacePathResolver(),
-            blazeProjectData.getTargetMap());
+    // Configurations are calculated in parallel, but only added to the model from this thread.
+    ImmutableList<ConfigurationOpts> configurationOpts =
+        calculateConfigurationOpts(
+            configurations,
+            blazeProjectData,
+            configResolveData,
+            executionRootPathResolver,
+            BlazeExecutor.getInstance().getExecutor(),
+            indicator);
+
+    for (int i = 0; i < configurations.size(); i++) {
+      String id = configurations.get(i).getDisplayName();
+      addConfiguration(
+          workspaceModifiable,
+          id,
+          id,
+          workspaceRoot.directory(),
+          configurationOpts.get(i).configLanguages,
+          configurationOpts.get(i).configSourceFiles);
+    }
+    return workspaceModifiable;
+  }
 
-    int progress = 0;
-
-    for (BlazeResolveConfiguration resolveConfiguration : configurations) {
-      indicator.setText2(resolveConfiguration.getDisplayName());
-      indicator.setFraction(((double) progress) / configurations.size());
-      BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
-      Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
-      Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
-      for (TargetKey targetKey : resolveConfiguration.getTargets()) {
-        TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
-        if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
-          continue;
+  /**
+   * Calculates the compiler options of each of {@code configurations} on {@code executor},
+   * returning them in the same order.
+   */
+  @VisibleForTesting
+  static ImmutableList<ConfigurationOpts> calculateConfigurationOpts(
+      ImmutableList<BlazeResolveConfiguration> configurations,
+      BlazeProjectData blazeProjectData,
+      BlazeConfigurationResolverResult configResolveData,
+      ExecutionRootPathResolver executionRootPathResolver,
+      ListeningExecutorService executor,
+      ProgressIndicator indicator) {
+    SwitchCache switchCache = new SwitchCache(executionRootPathResolver, configResolveData);
+    AtomicInteger progress = new AtomicInteger();
+    List<ListenableFuture<ConfigurationOpts>> futures =
+        configurations.stream()
+            .map(
+                resolveConfiguration ->
+                    executor.submit(
+                        () -> {
+                          ConfigurationOpts opts =
+                              calculateConfiguration(
+                                  resolveConfiguration, blazeProjectData, switchCache);
+                          indicator.setText2(resolveConfiguration.getDisplayName());
+                          indicator.setFraction(
+                              ((double) progress.incrementAndGet()) / configurations.size());
+                          return opts;
+                        }))
+            .collect(toImmutableList());
+    // Cancelling this cancels each configuration which hasn't been calculated yet.
+    ListenableFuture<List<ConfigurationOpts>> allOpts = Futures.allAsList(futures);
+    try {
+      while (true) {
+        try {
+          return ImmutableList.copyOf(
+              allOpts.get(CANCELLATION_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+          indicator.checkCanceled();
         }
+      }
+    } catch (ProcessCanceledException e) {
+      allOpts.cancel(true);
+      throw e;
+    } catch (InterruptedException e) {
+      allOpts.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException(e);
+    } catch (ExecutionException e) {
+      // Rethrow the original failure, as it would have been thrown calculating them serially.
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
 
-        // defines and include directories are the same for all sources in a given target, so lets
-        // collect them once and reuse for each source file's options
+  private static ConfigurationOpts calculateConfiguration(
+      BlazeResolveConfiguration resolveConfiguration,
+      BlazeProjectData blazeProjectData,
+      SwitchCache switchCache) {
+    BlazeCompilerSettings compilerSettings = resolveConfiguration.getCompilerSettings();
+    Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages = new HashMap<>();
+    Map<VirtualFile, PerFileCompilerOpts> configSourceFiles = new HashMap<>();
+    for (TargetKey targetKey : resolveConfiguration.getTargets()) {
+      TargetIdeInfo targetIdeInfo = blazeProjectData.getTargetMap().get(targetKey);
+      if (targetIdeInfo == null || targetIdeInfo.getcIdeInfo() == null) {
+        continue;
+      }
 
-        UnfilteredCompilerOptions coptsExtractor =
-            UnfilteredCompilerOptions.builder()
-                .registerSingleOrSplitOption("-I")
-                .build(targetIdeInfo.getcIdeInfo().getLocalCopts());
-        List<String> plainLocalCopts = coptsExtractor.getUninterpretedOptions();
-        if (Registry.is("bazel.cpp.sync.workspace.filter.out.incompatible.flags")) {
-          plainLocalCopts = filterIncompatibleFlags(plainLocalCopts);
-        }
+      // defines and include directories are the same for all sources in a given target, so lets
+      // collect them once and reuse for each source file's options
 
-        ImmutableList<ExecutionRootPath> localIncludes =
-            coptsExtractor.getExtractedOptionValues("-I").stream()
-                .map(ExecutionRootPath::new)
-                .collect(toImmutableList());
-
-        // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
-        ImmutableList<String> transitiveDefineOptions =
-            targetIdeInfo.getcIdeInfo().getTransitiveDefines().stream()
-                .map(s -> "-D" + s)
-                .collect(toImmutableList());
-
-        Function<ExecutionRootPath, Stream<File>> resolver =
-            executionRootPath ->
-                executionRootPathResolver.resolveToIncludeDirectories(executionRootPath).stream();
-        // localIncludes are sourced from -I options in a target's "copts" attribute. They  can be
-        // arbitrarily declared and may not exist in configResolveData.
-        // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
-
-        ImmutableList<String> iOptionIncludeDirectories =
-            Stream.concat(
-                    localIncludes.stream().flatMap(resolver),
-                    targetIdeInfo.getcIdeInfo().getTransitiveIncludeDirectories().stream()
-                        .flatMap(resolver)
-                        .filter(configResolveData::isValidHeaderRoot))
-                .map(file -> "-I" + file.getAbsolutePath())
-                .collect(toImmutableList());
-
-        // transitiveQuoteIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.quote_include_directories
-        ImmutableList<String> iquoteOptionIncludeDirectories =
-            targetIdeInfo.getcIdeInfo().getTransitiveQuoteIncludeDirectories().stream()
-                .flatMap(resolver)
-                .filter(configResolveData::isValidHeaderRoot)
-                .map(file -> "-iquote" + file.getAbsolutePath())
-                .collect(toImmutableList());
-        // transitiveSystemIncludeDirectories are sourced from
-        // CcSkylarkApiProvider.system_include_directories
-        // Note: We would ideally use -isystem here, but it interacts badly with the switches
-        // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
-        ImmutableList<String> isystemOptionIncludeDirectories =
-            targetIdeInfo.getcIdeInfo().getTransitiveSystemIncludeDirectories().stream()
-                .flatMap(resolver)
-                .filter(configResolveData::isValidHeaderRoot)
-                .map(file -> "-I" + file.getAbsolutePath())
-                .collect(toImmutableList());
-
-        for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
-          OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
-          if (kind == null) {
-            kind = CLanguageKind.CPP;
-          }
+      UnfilteredCompilerOptions coptsExtractor =
+          UnfilteredCompilerOptions.builder()
+              .registerSingleOrSplitOption("-I")
+              .build(targetIdeInfo.getcIdeInfo().getLocalCopts());
+      List<String> plainLocalCopts = coptsExtractor.getUninterpretedOptions();
+      if (Registry.is("bazel.cpp.sync.workspace.filter.out.incompatible.flags")) {
+        plainLocalCopts = filterIncompatibleFlags(plainLocalCopts);
+      }
 
-          CidrSwitchBuilder fileSpecificSwitchBuilder = new CidrSwitchBuilder();
-
-          ImmutableList<String> baseSwitches = compilerSettings.getCompilerSwitches(kind, vf);
-          fileSpecificSwitchBuilder.addAllRaw(baseSwitches);
-          fileSpecificSwitchBuilder.addAllRaw(transitiveDefineOptions);
-          fileSpecificSwitchBuilder.addAllRaw(iquoteOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(iOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(isystemOptionIncludeDirectories);
-          fileSpecificSwitchBuilder.addAllRaw(plainLocalCopts);
-
-          PerFileCompilerOpts perFileCompilerOpts =
-              new PerFileCompilerOpts(kind, fileSpecificSwitchBuilder.build());
-          configSourceFiles.put(vf, perFileCompilerOpts);
-          if (!configLanguages.containsKey(kind)) {
-            addConfigLanguageSwitches(
-                configLanguages, compilerSettings,
-                // If a file isn't found in configSourceFiles (newly created files), CLion uses the
-                // configLanguages switches. We want some basic header search roots (genfiles),
-                // which are part of every target's iquote directories. See:
-                // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
-                iquoteOptionIncludeDirectories, kind);
-          }
+      ImmutableList<ExecutionRootPath> localIncludes =
+          coptsExtractor.getExtractedOptionValues("-I").stream()
+              .map(ExecutionRootPath::new)
+              .collect(toImmutableList());
+
+      // transitiveDefines are sourced from a target's (and transitive deps) "defines" attribute
+      ImmutableList<String> transitiveDefineOptions =
+          switchCache.intern(
+              targetIdeInfo.getcIdeInfo().getTransitiveDefines().stream()
+                  .map(s -> "-D" + s)
+                  .collect(toImmutableList()));
+
+      // localIncludes are sourced from -I options in a target's "copts" attribute. They  can be
+      // arbitrarily declared and may not exist in configResolveData.
+      // transitiveIncludeDirectories are sourced from CcSkylarkApiProvider.include_directories
+
+      ImmutableList<String> iOptionIncludeDirectories =
+          switchCache.intern(
+              Stream.concat(
+                      localIncludes.stream().flatMap(switchCache.localIncludeSwitches),
+                      targetIdeInfo.getcIdeInfo().getTransitiveIncludeDirectories().stream()
+                          .flatMap(switchCache.includeSwitches))
+                  .collect(toImmutableList()));
+
+      // transitiveQuoteIncludeDirectories are sourced from
+      // CcSkylarkApiProvider.quote_include_directories
+      ImmutableList<String> iquoteOptionIncludeDirectories =
+          switchCache.intern(
+              targetIdeInfo.getcIdeInfo().getTransitiveQuoteIncludeDirectories().stream()
+                  .flatMap(switchCache.quoteIncludeSwitches)
+                  .collect(toImmutableList()));
+      // transitiveSystemIncludeDirectories are sourced from
+      // CcSkylarkApiProvider.system_include_directories
+      // Note: We would ideally use -isystem here, but it interacts badly with the switches
+      // that get built by ClangUtils::addIncludeDirectories (it uses -I for system libraries).
+      ImmutableList<String> isystemOptionIncludeDirectories =
+          switchCache.intern(
+              targetIdeInfo.getcIdeInfo().getTransitiveSystemIncludeDirectories().stream()
+                  .flatMap(switchCache.includeSwitches)
+                  .collect(toImmutableList()));
+
+      for (VirtualFile vf : resolveConfiguration.getSources(targetKey)) {
+        OCLanguageKind kind = resolveConfiguration.getDeclaredLanguageKind(vf);
+        if (kind == null) {
+          kind = CLanguageKind.CPP;
         }
-      }
 
-      for (OCLanguageKind language : supportedLanguages) {
-        if (!configLanguages.containsKey(language)) {
+        CidrSwitchBuilder fileSpecificSwitchBuilder = new CidrSwitchBuilder();
+
+        ImmutableList<String> baseSwitches = compilerSettings.getCompilerSwitches(kind, vf);
+        fileSpecificSwitchBuilder.addAllRaw(baseSwitches);
+        fileSpecificSwitchBuilder.addAllRaw(transitiveDefineOptions);
+        fileSpecificSwitchBuilder.addAllRaw(iquoteOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(iOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(isystemOptionIncludeDirectories);
+        fileSpecificSwitchBuilder.addAllRaw(plainLocalCopts);
+
+        PerFileCompilerOpts perFileCompilerOpts =
+            new PerFileCompilerOpts(kind, fileSpecificSwitchBuilder.build());
+        configSourceFiles.put(vf, perFileCompilerOpts);
+        if (!configLanguages.containsKey(kind)) {
           addConfigLanguageSwitches(
-              configLanguages, compilerSettings, ImmutableList.of(), language);
+              configLanguages, compilerSettings,
+              // If a file isn't found in configSourceFiles (newly created files), CLion uses the
+              // configLanguages switches. We want some basic header search roots (genfiles),
+              // which are part of every target's iquote directories. See:
+              // https://github.com/bazelbuild/bazel/blob/2c493e8a2132d54f4b2fb8046f6bcef11e92cd22/src/main/java/com/google/devtools/build/lib/rules/cpp/CcCompilationHelper.java#L911
+              iquoteOptionIncludeDirectories, kind);
         }
       }
+    }
 
-      String id = resolveConfiguration.getDisplayName();
-
-      addConfiguration(
-          workspaceModifiable,
-          id,
-          id,
-          workspaceRoot.directory(),
-          configLanguages,
-          configSourceFiles);
-      progress++;
+    for (OCLanguageKind language : SUPPORTED_LANGUAGES) {
+      if (!configLanguages.containsKey(language)) {
+        addConfigLanguageSwitches(
+            configLanguages, compilerSettings, ImmutableList.of(), language);
+      }
     }
-    return workspaceModifiable;
+    return new ConfigurationOpts(configLanguages, configSourceFiles);
   }
 
   private static void addConfiguration(
@@ -335,8 +428,65 @@ public final class BlazeCWorkspace implements ProjectComponent {
       fileCompilerSettings.setCompilerSwitches(compilerOpts.switches);
     }
   }
+
+  /** Group compiler options for a resolve configuration. */
+  @VisibleForTesting
+  static class ConfigurationOpts {
+    final Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages;
+    final Map<VirtualFile, PerFileCompilerOpts> configSourceFiles;
+
+    private ConfigurationOpts(
+        Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages,
+        Map<VirtualFile, PerFileCompilerOpts> configSourceFiles) {
+      this.configLanguages = configLanguages;
+      this.configSourceFiles = configSourceFiles;
+    }
+  }
+
+  /**
+   * Include directory switches, shared between the targets of every configuration. Each
+   * directory's switches are built once, and identical switch lists are only stored once.
+   */
+  private static class SwitchCache {
+    // localIncludes may not exist in configResolveData, so aren't checked against it.
+    final Function<ExecutionRootPath, Stream<String>> localIncludeSwitches;
+    final Function<ExecutionRootPath, Stream<String>> includeSwitches;
+    final Function<ExecutionRootPath, Stream<String>> quoteIncludeSwitches;
+    private final ExecutionRootPathResolver executionRootPathResolver;
+    private final Interner<ImmutableList<String>> switchLists = Interners.newStrongInterner();
+
+    SwitchCache(
+        ExecutionRootPathResolver executionRootPathResolver,
+        BlazeConfigurationResolverResult configResolveData) {
+      this.executionRootPathResolver = executionRootPathResolver;
+      localIncludeSwitches = memoizedSwitches("-I", file -> true);
+      includeSwitches = memoizedSwitches("-I", configResolveData::isValidHeaderRoot);
+      quoteIncludeSwitches = memoizedSwitches("-iquote", configResolveData::isValidHeaderRoot);
+    }
+
+    ImmutableList<String> intern(ImmutableList<String> switches) {
+      return switches.isEmpty() ? switches : switchLists.intern(switches);
+    }
+
+    private Function<ExecutionRootPath, Stream<String>> memoizedSwitches(
+        String option, Predicate<File> filter) {
+      Map<ExecutionRootPath, ImmutableList<String>> switches = new ConcurrentHashMap<>();
+      return executionRootPath ->
+          switches
+              .computeIfAbsent(
+                  executionRootPath,
+                  path ->
+                      executionRootPathResolver.resolveToIncludeDirectories(path).stream()
+                          .filter(filter)
+                          .map(file -> option + file.getAbsolutePath())
+                          .collect(toImmutableList()))
+              .stream();
+    }
+  }
+
   /** Group compiler options for a specific file. */
-  private static class PerFileCompilerOpts {
+  @VisibleForTesting
+  static class PerFileCompilerOpts {
     final OCLanguageKind kind;
     final CidrCompilerSwitches switches;
 
@@ -347,7 +497,8 @@ public final class BlazeCWorkspace implements ProjectComponent {
   }
 
   /** Group compiler options for a specific language. */
-  private static class PerLanguageCompilerOpts {
+  @VisibleForTesting
+  static class PerLanguageCompilerOpts {
     final OCCompilerKind kind;
     final File compiler;
     final CidrCompilerSwitches switches;
@@ -360,7 +511,7 @@ public final class BlazeCWorkspace implements ProjectComponent {
     }
   }
 
-  private void addConfigLanguageSwitches(
+  private static void addConfigLanguageSwitches(
       Map<OCLanguageKind, PerLanguageCompilerOpts> configLanguages,
       BlazeCompilerSettings compilerSettings,
       List<String> additionalSwitches,
@@ -83,14 +83,33 @@ final class BlazeConfigurationResolver {
       ProjectViewSet projectViewSet,
       BlazeProjectData blazeProjectData,
       BlazeConfigurationResolverResult oldResult) {
-    ExecutionRootPathResolver executionRootPathResolver =
+    return update(
+        context,
+        workspaceRoot,
+        projectViewSet,
+        blazeProjectData,
+        oldResult,
         new ExecutionRootPathResolver(
             Blaze.getBuildSystemProvider(project),
             WorkspaceRoot.fromProject(project),
             blazeProjectData.getBlazeInfo().getExecutionRoot(),
             blazeProjectData.getBlazeInfo().getOutputBase(),
             blazeProjectData.getWorkspacePathResolver(),
-            blazeProjectData.getTargetMap());
+            blazeProjectData.getTargetMap()));
+  }
+
+  /**
+   * As {@link #update(BlazeContext, WorkspaceRoot, ProjectViewSet, BlazeProjectData,
+   * BlazeConfigurationResolverResult)}, resolving paths with a caller provided resolver, which may
+   * be shared with later steps of the sync.
+   */
+  public BlazeConfigurationResolverResult update(
+      BlazeContext context,
+      WorkspaceRoot workspaceRoot,
+      ProjectViewSet projectViewSet,
+      BlazeProjectData blazeProjectData,
+      BlazeConfigurationResolverResult oldResult,
+      ExecutionRootPathResolver executionRootPathResolver) {
     ImmutableMap<TargetKey, CToolchainIdeInfo> toolchainLookupMap =
         BlazeConfigurationToolchainResolver.buildToolchainLookupMap(
             context, blazeProjectData.getTargetMap());
@@ -94,6 +94,10 @@ public class CcProjectModelUpdateOperation implements Disposable {
       compilerSwitches.put(
           e.getKey(), new CidrCompilerSwitches(flagResolver.resolveAll(e.getValue())));
     }
+    logger.info(
+        String.format(
+            "Resolved %d flag paths, of which %d were unique",
+            flagResolver.getDirectoryChecks(), flagResolver.getUniqueDirectoryChecks()));
   }
 
   private void visitCompilationContext(CcCompilationContext ccCc) {
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.async.executor.MockBlazeExecutor;
+import com.google.idea.blaze.base.bazel.BazelBuildSystemProvider;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.CIdeInfo;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.projectview.ProjectView;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.projectview.section.ListSection;
+import com.google.idea.blaze.base.projectview.section.sections.DirectoryEntry;
+import com.google.idea.blaze.base.projectview.section.sections.DirectorySection;
+import com.google.idea.blaze.base.projectview.section.sections.TargetSection;
+import com.google.idea.blaze.base.qsync.settings.QuerySyncSettings;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettings.ProjectType;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.workspace.ExecutionRootPathResolver;
+import com.google.idea.blaze.cpp.BlazeCWorkspace.ConfigurationOpts;
+import com.google.idea.blaze.cpp.BlazeCWorkspace.PerFileCompilerOpts;
+import com.google.idea.blaze.cpp.BlazeCWorkspace.PerLanguageCompilerOpts;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.impl.ProgressManagerImpl;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.jetbrains.cidr.lang.workspace.compiler.CidrCompilerSwitches;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link BlazeCWorkspace}. */
+@RunWith(JUnit4.class)
+public class BlazeCWorkspaceTest extends BlazeTestCase {
+  private final WorkspaceRoot workspaceRoot = new WorkspaceRoot(new File("/root"));
+
+  private LocalFileSystem mockFileSystem;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    applicationServices.register(BlazeExecutor.class, new MockBlazeExecutor());
+    applicationServices.register(ExperimentService.class, new MockExperimentService());
+    applicationServices.register(QuerySyncSettings.class, new QuerySyncSettings());
+    applicationServices.register(
+        CompilerVersionChecker.class, new MockCompilerVersionChecker("1234"));
+    applicationServices.register(ProgressManager.class, new ProgressManagerImpl());
+    applicationServices.register(CompilerWrapperProvider.class, new CompilerWrapperProviderImpl());
+    projectServices.register(XcodeCompilerSettingsProvider.class, new MockXcodeSettingsProvider());
+    applicationServices.register(VirtualFileManager.class, mock(VirtualFileManager.class));
+    FileOperationProvider spyFileOperationProvider = spy(FileOperationProvider.class);
+    doReturn(true).when(spyFileOperationProvider).exists(any(File.class));
+    applicationServices.register(FileOperationProvider.class, spyFileOperationProvider);
+    mockFileSystem = mock(LocalFileSystem.class);
+    applicationServices.register(
+        VirtualFileSystemProvider.class, mock(VirtualFileSystemProvider.class));
+    when(VirtualFileSystemProvider.getInstance().getSystem()).thenReturn(mockFileSystem);
+
+    Registry.get(BlazeConfigurationResolver.SYNC_EXTERNAL_TARGETS_FROM_DIRECTORIES_KEY)
+        .setValue(true);
+    Registry.get("bazel.cpp.sync.workspace.filter.out.incompatible.flags").setValue(false);
+
+    ExtensionPointImpl<Kind.Provider> ep =
+        registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class);
+    ep.registerExtension(new CppBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+
+    projectServices.register(
+        BlazeImportSettingsManager.class, new BlazeImportSettingsManager(project));
+    BlazeImportSettingsManager.getInstance(getProject())
+        .setImportSettings(
+            new BlazeImportSettings(
+                "",
+                "",
+                "",
+                "",
+                getBuildSystemProvider().getBuildSystem().getName(),
+                ProjectType.ASPECT_SYNC));
+
+    registerExtensionPoint(
+        BlazeCompilerFlagsProcessor.EP_NAME, BlazeCompilerFlagsProcessor.Provider.class);
+
+    BlazeProjectDataManager mockProjectDataManager =
+        new MockBlazeProjectDataManager(MockBlazeProjectDataBuilder.builder(workspaceRoot).build());
+    projectServices.register(BlazeProjectDataManager.class, mockProjectDataManager);
+    projectServices.register(SyncCache.class, new SyncCache(project));
+  }
+
+  @Override
+  protected BuildSystemProvider createBuildSystemProvider() {
+    return new BazelBuildSystemProvider();
+  }
+
+  @Test
+  public void testParallelCalculationMatchesSerialCalculation() {
+    TargetMapBuilder targetMapBuilder = TargetMapBuilder.builder().addTarget(createCcToolchain());
+    for (int i = 0; i < 8; i++) {
+      String dir = "foo/lib" + i;
+      targetMapBuilder.addTarget(
+          createCcTarget(
+              "//" + dir + ":lib",
+              ImmutableList.of(src(dir + "/a.cc"), src(dir + "/b.c")),
+              ImmutableList.of("-I" + dir + "/include", "-DLOCAL=" + i, "-Wall"),
+              // Shared between targets, so the switch cache is used from several threads.
+              ImmutableList.of(new ExecutionRootPath("shared"), new ExecutionRootPath(dir))));
+    }
+    BlazeProjectData blazeProjectData =
+        MockBlazeProjectDataBuilder.builder(workspaceRoot)
+            .setTargetMap(targetMapBuilder.build())
+            .build();
+    BlazeConfigurationResolverResult resolverResult = resolve(blazeProjectData);
+    assertThat(resolverResult.getAllConfigurations()).hasSize(8);
+
+    ImmutableList<Map<String, String>> serial =
+        calculate(blazeProjectData, resolverResult, MoreExecutors.newDirectExecutorService());
+    ListeningExecutorService pool =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      for (int i = 0; i < 10; i++) {
+        assertThat(calculate(blazeProjectData, resolverResult, pool)).isEqualTo(serial);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testWorkerFailureIsRethrownUnwrapped() {
+    ListeningExecutorService failingExecutor = mock(ListeningExecutorService.class);
+    IllegalStateException failure = new IllegalStateException("boom");
+    doReturn(Futures.immediateFailedFuture(failure))
+        .when(failingExecutor)
+        .submit(any(Callable.class));
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(createCcToolchain())
+            .addTarget(
+                createCcTarget(
+                    "//foo/lib0:lib",
+                    ImmutableList.of(src("foo/lib0/a.cc")),
+                    ImmutableList.of(),
+                    ImmutableList.of()))
+            .build();
+    BlazeProjectData blazeProjectData =
+        MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build();
+    BlazeConfigurationResolverResult resolverResult = resolve(blazeProjectData);
+
+    IllegalStateException thrown =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                BlazeCWorkspace.calculateConfigurationOpts(
+                    resolverResult.getAllConfigurations(),
+                    blazeProjectData,
+                    resolverResult,
+                    executionRootPathResolver(blazeProjectData),
+                    failingExecutor,
+                    new EmptyProgressIndicator()));
+    assertThat(thrown).isSameInstanceAs(failure);
+  }
+
+  @Test
+  public void testCancelledIndicatorCancelsCalculation() {
+    ListeningExecutorService stalledExecutor = mock(ListeningExecutorService.class);
+    SettableFuture<ConfigurationOpts> stalled = SettableFuture.create();
+    doReturn(stalled).when(stalledExecutor).submit(any(Callable.class));
+    TargetMap targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(createCcToolchain())
+            .addTarget(
+                createCcTarget(
+                    "//foo/lib0:lib",
+                    ImmutableList.of(src("foo/lib0/a.cc")),
+                    ImmutableList.of(),
+                    ImmutableList.of()))
+            .build();
+    BlazeProjectData blazeProjectData =
+        MockBlazeProjectDataBuilder.builder(workspaceRoot).setTargetMap(targetMap).build();
+    BlazeConfigurationResolverResult resolverResult = resolve(blazeProjectData);
+    EmptyProgressIndicator indicator = new EmptyProgressIndicator();
+    indicator.cancel();
+
+    assertThrows(
+        ProcessCanceledException.class,
+        () ->
+            BlazeCWorkspace.calculateConfigurationOpts(
+                resolverResult.getAllConfigurations(),
+                blazeProjectData,
+                resolverResult,
+                executionRootPathResolver(blazeProjectData),
+                stalledExecutor,
+                indicator));
+    assertThat(stalled.isCancelled()).isTrue();
+  }
+
+  private BlazeConfigurationResolverResult resolve(BlazeProjectData blazeProjectData) {
+    ProjectView projectView =
+        ProjectView.builder()
+            .add(
+                ListSection.builder(DirectorySection.KEY)
+                    .add(DirectoryEntry.include(WorkspacePath.createIfValid("foo"))))
+            .add(
+                ListSection.builder(TargetSection.KEY)
+                    .add(TargetExpression.fromStringSafe("//foo/...")))
+            .build();
+    return new BlazeConfigurationResolver(project)
+        .update(
+            BlazeContext.create(),
+            workspaceRoot,
+            ProjectViewSet.builder().add(projectView).build(),
+            blazeProjectData,
+            BlazeConfigurationResolverResult.empty());
+  }
+
+  private ExecutionRootPathResolver executionRootPathResolver(BlazeProjectData blazeProjectData) {
+    return new ExecutionRootPathResolver(
+        getBuildSystemProvider(),
+        workspaceRoot,
+        blazeProjectData.getBlazeInfo().getExecutionRoot(),
+        blazeProjectData.getBlazeInfo().getOutputBase(),
+        blazeProjectData.getWorkspacePathResolver(),
+        blazeProjectData.getTargetMap());
+  }
+
+  /** Calculates every configuration's options, flattened to strings so they can be compared. */
+  private ImmutableList<Map<String, String>> calculate(
+      BlazeProjectData blazeProjectData,
+      BlazeConfigurationResolverResult resolverResult,
+      ListeningExecutorService executor) {
+    return BlazeCWorkspace.calculateConfigurationOpts(
+            resolverResult.getAllConfigurations(),
+            blazeProjectData,
+            resolverResult,
+            executionRootPathResolver(blazeProjectData),
+            executor,
+            new EmptyProgressIndicator())
+        .stream()
+        .map(BlazeCWorkspaceTest::describe)
+        .collect(toImmutableList());
+  }
+
+  private static Map<String, String> describe(ConfigurationOpts opts) {
+    Map<String, String> description = new TreeMap<>();
+    for (Map.Entry<?, PerLanguageCompilerOpts> entry : opts.configLanguages.entrySet()) {
+      PerLanguageCompilerOpts languageOpts = entry.getValue();
+      description.put(
+          "language " + entry.getKey(),
+          languageOpts.kind + " " + languageOpts.compiler + " " + raw(languageOpts.switches));
+    }
+    for (Map.Entry<VirtualFile, PerFileCompilerOpts> entry : opts.configSourceFiles.entrySet()) {
+      PerFileCompilerOpts fileOpts = entry.getValue();
+      description.put(
+          "file " + entry.getKey().getPath(), fileOpts.kind + " " + raw(fileOpts.switches));
+    }
+    return ImmutableMap.copyOf(description);
+  }
+
+  private static String raw(CidrCompilerSwitches switches) {
+    return String.join(" ", switches.getList(CidrCompilerSwitches.Format.RAW));
+  }
+
+  private static ArtifactLocation src(String path) {
+    return ArtifactLocation.builder().setRelativePath(path).setIsSource(true).build();
+  }
+
+  private TargetIdeInfo.Builder createCcTarget(
+      String label,
+      ImmutableList<ArtifactLocation> sources,
+      ImmutableList<String> copts,
+      ImmutableList<ExecutionRootPath> includeDirectories) {
+    sources.forEach(source -> createVirtualFile("/root/" + source.getRelativePath()));
+    TargetIdeInfo.Builder targetInfo =
+        TargetIdeInfo.builder()
+            .setLabel(label)
+            .setKind(CppBlazeRules.RuleTypes.CC_LIBRARY.getKind())
+            .addDependency("//:toolchain");
+    sources.forEach(targetInfo::addSource);
+    return targetInfo.setCInfo(
+        CIdeInfo.builder()
+            .addSources(sources)
+            .addLocalCopts(copts)
+            .addTransitiveDefines(ImmutableList.of("SHARED"))
+            .addTransitiveIncludeDirectories(includeDirectories)
+            .addTransitiveQuoteIncludeDirectories(includeDirectories)
+            .addTransitiveSystemIncludeDirectories(includeDirectories));
+  }
+
+  private static TargetIdeInfo.Builder createCcToolchain() {
+    return TargetIdeInfo.builder()
+        .setLabel("//:toolchain")
+        .setKind(CppBlazeRules.RuleTypes.CC_TOOLCHAIN.getKind())
+        .setCToolchainInfo(
+            CToolchainIdeInfo.builder()
+                .setCppExecutable(new ExecutionRootPath("cc"))
+                .setTargetName("toolchain"));
+  }
+
+  private VirtualFile createVirtualFile(String path) {
+    VirtualFile mockFile = mock(VirtualFile.class);
+    when(mockFile.getPath()).thenReturn(path);
+    when(mockFile.isValid()).thenReturn(true);
+    File f = new File(path);
+    when(mockFileSystem.findFileByIoFile(f)).thenReturn(mockFile);
+    when(mockFile.getName()).thenReturn(f.getName());
+    return mockFile;
+  }
+}
@@ -48,7 +48,7 @@ public class GazelleIssueParsers {
     Project project;
 
     GenericGazelleIssueParser(Project project) {
-      super(GAZELLE_ISSUE_REGEX);
+      super(GAZELLE_ISSUE_REGEX, "gazelle: ");
       this.project = project;
     }
 
@@ -149,6 +149,20 @@ public class BlazeGoPackage extends GoPackage {
     return map;
   }
 
+  /** Builds the target to file map in the background once sync completes. */
+  static class EagerTargetToFileMap
+      implements SyncCache.EagerComputable<ImmutableMultimap<Label, File>> {
+    @Override
+    public Object getKey() {
+      return GO_TARGET_TO_FILE_MAP_KEY;
+    }
+
+    @Override
+    public ImmutableMultimap<Label, File> compute(Project project, BlazeProjectData projectData) {
+      return getUncachedTargetToFileMap(project, projectData);
+    }
+  }
+
   public static ImmutableMultimap<Label, File> getUncachedTargetToFileMap(
       Project project, BlazeProjectData projectData) {
     ImmutableMultimap<Label, GoIdeInfo> libraryToTestMap = buildLibraryToTestMap(projectData);
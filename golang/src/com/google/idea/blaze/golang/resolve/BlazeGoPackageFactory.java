@@ -96,6 +96,20 @@ public class BlazeGoPackageFactory implements GoPackageFactory {
     return map;
   }
 
+  /** Builds the file to import path map in the background once sync completes. */
+  static class EagerFileToImportPathMap
+      implements SyncCache.EagerComputable<ConcurrentMap<File, String>> {
+    @Override
+    public Object getKey() {
+      return BlazeGoPackageFactory.class;
+    }
+
+    @Override
+    public ConcurrentMap<File, String> compute(Project project, BlazeProjectData projectData) {
+      return buildFileToImportPathMap(project, projectData);
+    }
+  }
+
   @Nullable
   @Override
   public GoPackage createPackage(String packageName, PsiDirectory... directories) {
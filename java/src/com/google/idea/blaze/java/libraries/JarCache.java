@@ -17,11 +17,13 @@ package com.google.idea.blaze.java.libraries;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -39,6 +41,7 @@ import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.io.FileSizeScanner;
+import com.google.idea.blaze.base.io.ModifiedTimeScanner;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.RemoteOutputArtifacts;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
@@ -57,9 +60,11 @@ import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.java.settings.BlazeJavaUserSettings;
 import com.google.idea.blaze.java.sync.model.BlazeJarLibrary;
+import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.PathUtil;
 import com.intellij.util.concurrency.AppExecutorUtil;
@@ -76,8 +81,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -94,6 +102,11 @@ public class JarCache {
           AppExecutorUtil.createBoundedApplicationPoolExecutor(
               "JarRepackagerExecutor", /*maxThreads*/ 4));
 
+  private static final BoolExperiment persistentState =
+      new BoolExperiment("blaze.jar.cache.persistent.state", true);
+  private static final BoolExperiment hardLinkOutputs =
+      new BoolExperiment("blaze.jar.cache.hard.link.outputs", false);
+
   private boolean isAvailable = !ApplicationManager.getApplication().isUnitTestMode();
 
   private final Project project;
@@ -105,6 +118,9 @@ public class JarCache {
   private volatile ListenableFuture<List<Object>> repackagingTasks =
       Futures.immediateCancelledFuture();
 
+  /** The state of the cached artifacts, loaded on first use. */
+  @Nullable private JarCacheState jarCacheState;
+
   private boolean enabled;
 
   public JarCache(Project project) {
@@ -125,6 +141,13 @@ public class JarCache {
     isAvailable = true;
   }
 
+  private synchronized JarCacheState getState() {
+    if (jarCacheState == null) {
+      jarCacheState = JarCacheState.load(jarCacheFolderProvider.getJarCacheStateFile());
+    }
+    return jarCacheState;
+  }
+
   private boolean updateEnabled() {
     // force-enable the jar cache if syncing remotely
     this.enabled =
@@ -161,12 +184,16 @@ public class JarCache {
       return;
     }
     boolean fullRefresh = syncMode == SyncMode.FULL;
-    if (fullRefresh) {
+    // With the state of each cached jar known, a full sync only needs to replace the jars whose
+    // state has changed, rather than starting again from an empty cache.
+    boolean trackState = persistentState.getValue();
+    if (fullRefresh && !trackState) {
       clearCache(context, /* blockOnCompletion= */ true);
     }
 
     // TODO(brendandouglas): add a mechanism for removing missing files for partial syncs
-    boolean removeMissingFiles = syncMode == SyncMode.INCREMENTAL;
+    boolean removeMissingFiles =
+        syncMode == SyncMode.INCREMENTAL || (fullRefresh && trackState);
 
     refresh(
         context,
@@ -197,9 +224,16 @@ public class JarCache {
     ImmutableMap<String, BlazeArtifact> projectState =
         getArtifactsToCache(projectViewSet, projectData);
     ImmutableMap<String, File> cachedFiles = readFileState();
+    boolean trackState = persistentState.getValue();
+    JarCacheState state = getState();
+    // The current state of each artifact, recorded once it has been cached.
+    Map<String, String> currentStates = new HashMap<>();
+    Set<String> failedKeys = ConcurrentHashMap.newKeySet();
     try {
       Map<String, BlazeArtifact> updated =
-          FileCacheDiffer.findUpdatedOutputs(projectState, cachedFiles, previousOutputs);
+          trackState
+              ? findUpdatedOutputs(state, projectState, cachedFiles, previousOutputs, currentStates)
+              : FileCacheDiffer.findUpdatedOutputs(projectState, cachedFiles, previousOutputs);
 
       List<File> removed = new ArrayList<>();
       if (removeMissingFiles) {
@@ -209,12 +243,11 @@ public class JarCache {
                 .filter(
                     e ->
                         !projectState.containsKey(e.getKey())
-                            || (jarRepackager.isEnabled()
-                                && !projectState.containsKey(
+                            && !(jarRepackager.isEnabled()
+                                && e.getKey().startsWith(jarRepackager.getRepackagePrefix())
+                                && projectState.containsKey(
                                     e.getKey()
-                                        .substring(
-                                            e.getKey().indexOf(jarRepackager.getRepackagePrefix())
-                                                + 1))))
+                                        .substring(jarRepackager.getRepackagePrefix().length()))))
                 .map(Map.Entry::getValue)
                 .collect(toImmutableList());
       }
@@ -231,21 +264,40 @@ public class JarCache {
           .run();
 
       // update cache files, and remove files if required
-      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(updated));
+      Stopwatch timer = Stopwatch.createStarted();
+      CopyStats stats = new CopyStats();
+      ImmutableMap<String, ListenableFuture<Boolean>> copies =
+          copyLocally(updated, getLintJarKeys(projectData), stats);
+      // lint jars are repackaged as soon as they're copied, while other jars are still copying
+      repackageJarsInBackground(projectData, copies, cachedFiles);
+
+      List<ListenableFuture<?>> futures = new ArrayList<>(copies.values());
       if (removeMissingFiles) {
         futures.addAll(deleteCacheFiles(removed));
       }
 
       Futures.allAsList(futures).get();
+      copies.forEach(
+          (key, copy) -> {
+            if (!Futures.getUnchecked(copy)) {
+              failedKeys.add(key);
+            }
+          });
       if (!updated.isEmpty()) {
-        context.output(PrintOutput.log(String.format("Copied %d jars", updated.size())));
+        long millis = timer.elapsed().toMillis();
+        context.output(
+            PrintOutput.log(
+                String.format(
+                    "Copied %d jars (%d hard linked, %d kB copied) in %d ms, %d kB/s",
+                    updated.size() - failedKeys.size(),
+                    stats.linked.get(),
+                    stats.bytes.get() / 1024,
+                    millis,
+                    stats.bytes.get() / 1024 * 1000 / Math.max(millis, 1))));
       }
       if (!removed.isEmpty()) {
         context.output(PrintOutput.log(String.format("Removed %d jars", removed.size())));
       }
-
-      // repackage cached jars after cache has been updated
-      repackageJarsInBackground(projectData, updated.values());
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       context.setCancelled();
@@ -254,8 +306,70 @@ public class JarCache {
       IssueOutput.warn("Jar Cache synchronization didn't complete").submit(context);
     } finally {
       // update the in-memory record of which files are cached
-      ImmutableMap<String, File> state = readFileState();
-      logCacheSize(context, state);
+      ImmutableMap<String, File> cacheState = readFileState();
+      logCacheSize(context, cacheState);
+      if (trackState) {
+        saveState(state, cacheState, currentStates, failedKeys);
+      }
+    }
+  }
+
+  /**
+   * Returns the outputs which differ from their cached copies, according to the saved state of the
+   * cache. Outputs with no saved state, or whose current state can't be cheaply determined, are
+   * compared by {@link FileCacheDiffer}.
+   *
+   * @param currentStates populated with the current state of each output, where known
+   */
+  private static Map<String, BlazeArtifact> findUpdatedOutputs(
+      JarCacheState state,
+      ImmutableMap<String, BlazeArtifact> projectState,
+      ImmutableMap<String, File> cachedFiles,
+      RemoteOutputArtifacts previousOutputs,
+      Map<String, String> currentStates)
+      throws InterruptedException, ExecutionException {
+    ImmutableMap<File, Long> timestamps =
+        ModifiedTimeScanner.readTimestamps(BlazeArtifact.getLocalFiles(projectState.values()));
+    Map<String, BlazeArtifact> updated = new HashMap<>();
+    Map<String, BlazeArtifact> unknown = new HashMap<>();
+    projectState.forEach(
+        (key, artifact) -> {
+          String current = JarCacheState.stateOf(artifact, timestamps);
+          String cached = state.get(key);
+          if (current == null) {
+            unknown.put(key, artifact);
+            return;
+          }
+          currentStates.put(key, current);
+          if (!cachedFiles.containsKey(key) || (cached != null && !cached.equals(current))) {
+            updated.put(key, artifact);
+          } else if (cached == null) {
+            unknown.put(key, artifact);
+          }
+        });
+    updated.putAll(FileCacheDiffer.findUpdatedOutputs(unknown, cachedFiles, previousOutputs));
+    return updated;
+  }
+
+  /** Records the state of each cached artifact which was successfully cached. */
+  private void saveState(
+      JarCacheState state,
+      ImmutableMap<String, File> cachedFiles,
+      Map<String, String> currentStates,
+      Set<String> failedKeys) {
+    currentStates.forEach(
+        (key, current) -> {
+          if (failedKeys.contains(key)) {
+            state.remove(key);
+          } else {
+            state.put(key, current);
+          }
+        });
+    state.retainAll(cachedFiles.keySet());
+    try {
+      state.save();
+    } catch (IOException e) {
+      logger.warn("Failed to save jar cache state", e);
     }
   }
 
@@ -302,49 +416,103 @@ public class JarCache {
     return ImmutableMap.copyOf(newOutputs);
   }
 
-  /** Copy artifacts that needed to be updated to local cache, repackage it if it's lint jar. */
-  private List<ListenableFuture<?>> copyLocally(Map<String, BlazeArtifact> updated) {
-    List<ListenableFuture<?>> futures = new ArrayList<>();
+  /** Counts of the artifacts copied into the cache. */
+  private static class CopyStats {
+    final AtomicInteger linked = new AtomicInteger();
+    /** The bytes copied, excluding hard linked jars. */
+    final AtomicLong bytes = new AtomicLong();
+  }
+
+  /**
+   * Copy artifacts that needed to be updated to local cache. Each future returns whether the
+   * artifact was copied successfully.
+   *
+   * @param lintJarKeys the cache keys of lint jars, which are always copied rather than linked as
+   *     they're then repackaged
+   */
+  private ImmutableMap<String, ListenableFuture<Boolean>> copyLocally(
+      Map<String, BlazeArtifact> updated, ImmutableSet<String> lintJarKeys, CopyStats stats) {
+    // Windows locks files that are in use, so a linked jar open in the IDE would stop blaze from
+    // replacing its output.
+    boolean hardLink = hardLinkOutputs.getValue() && !SystemInfo.isWindows;
+    ImmutableMap.Builder<String, ListenableFuture<Boolean>> futures = ImmutableMap.builder();
     updated.forEach(
         (key, artifact) ->
-            futures.add(
+            futures.put(
+                key,
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       File destination = jarCacheFolderProvider.getCacheFileByKey(key);
                       try {
-                        copyLocally(artifact, destination);
+                        if (copyLocally(
+                            artifact, destination, hardLink && !lintJarKeys.contains(key))) {
+                          stats.linked.incrementAndGet();
+                        } else {
+                          stats.bytes.addAndGet(destination.length());
+                        }
+                        return true;
                       } catch (IOException e) {
                         logger.warn(
                             String.format(
                                 "Failed to copy artifact %s to %s",
                                 artifact, jarCacheFolderProvider.getJarCacheFolder().getPath()),
                             e);
+                        return false;
                       }
                     })));
-    return futures;
+    return futures.build();
   }
 
-  private static void copyLocally(BlazeArtifact output, File destination) throws IOException {
+  /**
+   * Copies {@code output} to {@code destination}, returning true if it was hard linked rather than
+   * copied.
+   *
+   * <p>Local build outputs are hard linked where possible, as blaze replaces outputs rather than
+   * modifying them in place, so the cached copy can't change underneath us.
+   */
+  private static boolean copyLocally(BlazeArtifact output, File destination, boolean hardLink)
+      throws IOException {
     if (output instanceof LocalFileArtifact) {
       File source = ((LocalFileArtifact) output).getFile();
+      if (hardLink && output instanceof OutputArtifactWithoutDigest) {
+        try {
+          Files.deleteIfExists(destination.toPath());
+          Files.createLink(destination.toPath(), source.toPath());
+          return true;
+        } catch (IOException | UnsupportedOperationException e) {
+          // e.g. the cache is on a different file system to the output, so fall back to copying
+        }
+      }
       Files.copy(
           Paths.get(source.getPath()),
           Paths.get(destination.getPath()),
           StandardCopyOption.REPLACE_EXISTING,
           StandardCopyOption.COPY_ATTRIBUTES);
-      return;
+      return false;
     }
     try (InputStream stream = output.getInputStream()) {
       Files.copy(stream, Paths.get(destination.getPath()), StandardCopyOption.REPLACE_EXISTING);
     }
+    return false;
+  }
+
+  private static ImmutableSet<String> getLintJarKeys(BlazeProjectData projectData) {
+    return LintJarHelper.collectLintJarsArtifacts(projectData).stream()
+        .map(JarCache::cacheKeyForJar)
+        .collect(toImmutableSet());
   }
 
   /**
    * Submit repackage tasks without blocking current thread. Log elapsed time when all tasks get
    * completed.
+   *
+   * @param copies the artifacts being copied into the cache, keyed by cache key
+   * @param cachedFiles the files which were cached before any copying started
    */
   private void repackageJarsInBackground(
-      BlazeProjectData projectData, Collection<BlazeArtifact> updatedJars) {
+      BlazeProjectData projectData,
+      ImmutableMap<String, ListenableFuture<Boolean>> copies,
+      ImmutableMap<String, File> cachedFiles) {
     JarRepackager jarRepackager = JarRepackager.getInstance();
     if (!jarRepackager.isEnabled()) {
       return;
@@ -357,7 +525,7 @@ public class JarCache {
       repackagingTasks.cancel(false);
     }
     ImmutableList<ListenableFuture<?>> tasks =
-        repackageJars(projectData, updatedJars, jarRepackager);
+        repackageJars(projectData, copies, cachedFiles, jarRepackager);
     if (tasks.isEmpty()) {
       return;
     }
@@ -388,51 +556,48 @@ public class JarCache {
         REPACKAGE_EXECUTOR);
   }
 
-  /** Repackage jars when necessary to avoid package name conflict. */
+  /**
+   * Repackage jars when necessary to avoid package name conflict. A jar is repackaged once it has
+   * been copied into the cache, or if it was cached but never repackaged.
+   */
   private ImmutableList<ListenableFuture<?>> repackageJars(
       BlazeProjectData projectData,
-      Collection<BlazeArtifact> updatedJars,
+      ImmutableMap<String, ListenableFuture<Boolean>> copies,
+      ImmutableMap<String, File> cachedFiles,
       JarRepackager jarRepackager) {
-    FileOperationProvider ops = FileOperationProvider.getInstance();
-
-    return LintJarHelper.collectLintJarsArtifacts(projectData).stream()
-        .map(
-            blazeArtifact ->
-                REPACKAGE_EXECUTOR.submit(
-                    () -> {
-                      try {
-                        repackageJar(
-                            jarRepackager,
-                            blazeArtifact,
-                            file -> {
-                              // repackage a jar when it's just updated or never repackaged.
-                              if (updatedJars.contains(blazeArtifact)) {
-                                return true;
-                              }
-                              File repackagedJar =
-                                  new File(
-                                      jarCacheFolderProvider.getJarCacheFolder(),
-                                      jarRepackager.getRepackagePrefix() + file.getName());
-                              return ops.exists(file) && !ops.exists(repackagedJar);
-                            });
-                      } catch (IOException | InterruptedException e) {
-                        logger.warn(
-                            String.format(
-                                "Failed to repackage artifact %s to %s",
-                                blazeArtifact,
-                                jarCacheFolderProvider.getJarCacheFolder().getPath()),
-                            e);
-                      }
-                    }))
-        .collect(toImmutableList());
+    ImmutableList.Builder<ListenableFuture<?>> tasks = ImmutableList.builder();
+    for (BlazeArtifact blazeArtifact : LintJarHelper.collectLintJarsArtifacts(projectData)) {
+      String key = cacheKeyForJar(blazeArtifact);
+      ListenableFuture<Boolean> copy = copies.get(key);
+      if (copy != null) {
+        tasks.add(
+            Futures.transform(
+                copy,
+                copied -> {
+                  if (copied) {
+                    repackageJar(jarRepackager, blazeArtifact);
+                  }
+                  return null;
+                },
+                REPACKAGE_EXECUTOR));
+      } else if (cachedFiles.containsKey(key)
+          && !cachedFiles.containsKey(jarRepackager.getRepackagePrefix() + key)) {
+        tasks.add(REPACKAGE_EXECUTOR.submit(() -> repackageJar(jarRepackager, blazeArtifact)));
+      }
+    }
+    return tasks.build();
   }
 
-  private void repackageJar(
-      JarRepackager jarRepackager, BlazeArtifact blazeArtifact, Predicate<File> shouldRepackage)
-      throws IOException, InterruptedException {
+  private void repackageJar(JarRepackager jarRepackager, BlazeArtifact blazeArtifact) {
     File jar = jarCacheFolderProvider.getCacheFileByKey(cacheKeyForJar(blazeArtifact));
-    if (shouldRepackage.test(jar)) {
+    try {
       jarRepackager.processJar(jar);
+    } catch (IOException | InterruptedException e) {
+      logger.warn(
+          String.format(
+              "Failed to repackage artifact %s to %s",
+              blazeArtifact, jarCacheFolderProvider.getJarCacheFolder().getPath()),
+          e);
     }
   }
 
@@ -453,6 +618,13 @@ public class JarCache {
 
   private void clearCache(BlazeContext context, boolean blockOnCompletion) {
     cacheState = ImmutableMap.of();
+    JarCacheState state = getState();
+    state.clear();
+    try {
+      state.save();
+    } catch (IOException e) {
+      logger.warn("Failed to save jar cache state", e);
+    }
     File[] cacheFiles = jarCacheFolderProvider.getJarCacheFolder().listFiles();
     if (cacheFiles == null) {
       return;
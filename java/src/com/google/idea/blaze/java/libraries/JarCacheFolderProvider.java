@@ -32,6 +32,7 @@ public class JarCacheFolderProvider {
   }
 
   private static final String JAR_CACHE_FOLDER_NAME = "libraries";
+  private static final String JAR_CACHE_STATE_FILE_NAME = "libraries.state";
 
   private final Project project;
 
@@ -46,6 +47,13 @@ public class JarCacheFolderProvider {
     return new File(BlazeDataStorage.getProjectDataDir(importSettings), JAR_CACHE_FOLDER_NAME);
   }
 
+  /** Gets the file recording the state of the artifacts in the JAR cache folder. */
+  public File getJarCacheStateFile() {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+    return new File(BlazeDataStorage.getProjectDataDir(importSettings), JAR_CACHE_STATE_FILE_NAME);
+  }
+
   /** Returns the {@link File} instance that represents a JAR file by the {@code key} value. */
   public File getCacheFileByKey(String key) {
     return new File(getJarCacheFolder(), key);
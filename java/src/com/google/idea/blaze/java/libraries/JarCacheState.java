@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.libraries;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
+import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * The state of each artifact as of when it was copied into the jar cache, keyed by cache key.
+ *
+ * <p>This is persisted across restarts, so that unchanged jars are never copied again, including
+ * on full syncs. Remote artifacts are identified by their content-derived ID, and local files by
+ * their modification time.
+ */
+final class JarCacheState {
+  private static final Logger logger = Logger.getInstance(JarCacheState.class);
+
+  private static final int MAGIC = 0x4a435354;
+  private static final int VERSION = 1;
+
+  private final Path file;
+  private final Map<String, String> states;
+
+  private JarCacheState(Path file, Map<String, String> states) {
+    this.file = file;
+    this.states = states;
+  }
+
+  /** Reads the state saved to {@code file}, or returns an empty state if it can't be read. */
+  static JarCacheState load(File file) {
+    Map<String, String> states = new ConcurrentHashMap<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unrecognized jar cache state format");
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        states.put(in.readUTF(), in.readUTF());
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing has been cached yet.
+    } catch (IOException e) {
+      logger.info("Ignoring unreadable jar cache state " + file, e);
+      states.clear();
+    }
+    return new JarCacheState(file.toPath(), states);
+  }
+
+  /**
+   * Returns a string identifying the contents of {@code artifact}, or null if there's no cheap way
+   * to identify them.
+   *
+   * @param timestamps the modification times of local files
+   */
+  @Nullable
+  static String stateOf(BlazeArtifact artifact, Map<File, Long> timestamps) {
+    if (artifact instanceof RemoteOutputArtifact) {
+      // differs for every version of the artifact with different contents
+      String id = ((RemoteOutputArtifact) artifact).getHashId();
+      return Strings.isNullOrEmpty(id) ? null : "remote:" + id;
+    }
+    if (artifact instanceof LocalFileArtifact) {
+      Long timestamp = timestamps.get(((LocalFileArtifact) artifact).getFile());
+      return timestamp == null ? null : "modified:" + timestamp;
+    }
+    return null;
+  }
+
+  /** Returns the state of the cached copy of {@code key}, or null if it's not known. */
+  @Nullable
+  String get(String key) {
+    return states.get(key);
+  }
+
+  void put(String key, String state) {
+    states.put(key, state);
+  }
+
+  void remove(String key) {
+    states.remove(key);
+  }
+
+  /** Forgets the state of every key not in {@code keys}. */
+  void retainAll(Collection<String> keys) {
+    states.keySet().retainAll(keys);
+  }
+
+  void clear() {
+    states.clear();
+  }
+
+  int size() {
+    return states.size();
+  }
+
+  /** Writes the state to disk, replacing any previously saved state. */
+  void save() throws IOException {
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      ImmutableMap<String, String> snapshot = ImmutableMap.copyOf(states);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(snapshot.size());
+      for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue());
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+}
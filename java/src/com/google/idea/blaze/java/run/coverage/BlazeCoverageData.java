@@ -17,32 +17,127 @@ package com.google.idea.blaze.java.run.coverage;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.prefetch.FetchExecutor;
 import com.intellij.openapi.diagnostic.Logger;
-import gnu.trove.TIntIntHashMap;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
-/** Blaze coverage data class. Parsed from LCOV-formatted blaze output. */
+/**
+ * Blaze coverage data class. Parsed from LCOV-formatted blaze output.
+ *
+ * <p>Combined coverage reports can be hundreds of MB, so the report is read in chunks of whole
+ * records, which are parsed in parallel.
+ */
 class BlazeCoverageData {
 
   private static final Logger logger = Logger.getInstance(BlazeCoverageData.class);
 
+  static BlazeCoverageData parse(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return parse(channel, FetchExecutor.EXECUTOR, LcovParser.CHUNK_SIZE);
+    }
+  }
+
+  /** Parses a report read from a stream, on the calling thread. */
   static BlazeCoverageData parse(InputStream inputStream) throws IOException {
-    return LcovParser.parse(inputStream);
+    return parse(
+        Channels.newChannel(inputStream),
+        MoreExecutors.newDirectExecutorService(),
+        LcovParser.CHUNK_SIZE);
   }
 
+  /**
+   * Reads the report in chunks of roughly {@code chunkSize} bytes, each ending at the end of a
+   * record, and parses them on {@code executor}. The partial record at the end of each read is
+   * carried over to the next chunk, and only a bounded number of chunks are held at once, so the
+   * whole report is never in memory.
+   */
+  @VisibleForTesting
+  static BlazeCoverageData parse(
+      ReadableByteChannel channel, ListeningExecutorService executor, int chunkSize)
+      throws IOException {
+    Deque<ListenableFuture<List<FileData>>> pending = new ArrayDeque<>();
+    // later records for the same source file replace earlier ones
+    Map<String, FileData> map = new LinkedHashMap<>();
+    byte[] buffer = new byte[chunkSize];
+    int filled = 0;
+    while (true) {
+      int read = channel.read(ByteBuffer.wrap(buffer, filled, buffer.length - filled));
+      if (read < 0) {
+        break;
+      }
+      filled += read;
+      if (filled < buffer.length) {
+        continue;
+      }
+      int end = LcovParser.lastRecordEnd(ByteBuffer.wrap(buffer, 0, filled));
+      if (end < 0) {
+        // a single record larger than the buffer
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        continue;
+      }
+      ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, end).slice();
+      if (pending.size() == LcovParser.MAX_PENDING_CHUNKS) {
+        LcovParser.addAll(pending.remove(), map);
+      }
+      pending.add(executor.submit(() -> LcovParser.parseChunk(chunk)));
+      int remaining = filled - end;
+      byte[] next = new byte[Math.max(chunkSize, remaining * 2)];
+      System.arraycopy(buffer, end, next, 0, remaining);
+      buffer = next;
+      filled = remaining;
+    }
+    if (filled > 0) {
+      ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, filled).slice();
+      // a report smaller than a single chunk is parsed on the calling thread
+      pending.add(
+          pending.isEmpty()
+              ? Futures.immediateFuture(LcovParser.parseChunk(chunk))
+              : executor.submit(() -> LcovParser.parseChunk(chunk)));
+    }
+    while (!pending.isEmpty()) {
+      LcovParser.addAll(pending.remove(), map);
+    }
+    return new BlazeCoverageData(ImmutableMap.copyOf(map));
+  }
+
+  /**
+   * The hit counts of one source file. {@code lines[i]} was hit {@code hits[i]} times, in the
+   * order they appear in the report.
+   */
   static class FileData {
     final String source;
-    final TIntIntHashMap lineHits;
+    final int[] lines;
+    final int[] hits;
 
-    private FileData(String source, TIntIntHashMap lineHits) {
+    private FileData(String source, int[] lines, int[] hits) {
       this.source = source;
-      this.lineHits = lineHits;
+      this.lines = lines;
+      this.hits = hits;
+    }
+
+    int maxLineNumber() {
+      return Arrays.stream(lines).max().orElse(0);
     }
   }
 
@@ -54,46 +149,194 @@ class BlazeCoverageData {
 
   private static class LcovParser {
     // there are other valid lcov tracefile prefixes, but they're all ignored here
-    static final String SF = "SF:";
-    static final String DA = "DA:";
-    static final String END_OF_RECORD = "end_of_record";
-
-    private static BlazeCoverageData parse(InputStream inputStream) throws IOException {
-      Map<String, FileData> map = new HashMap<>();
-      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.startsWith(SF)) {
-          String source = line.substring(SF.length());
-          TIntIntHashMap hits = parseHits(reader);
-          if (!hits.isEmpty()) {
-            map.put(source, new FileData(source, hits));
-          }
+    static final byte[] SF = "SF:".getBytes(UTF_8);
+    static final byte[] DA = "DA:".getBytes(UTF_8);
+    static final byte[] END_OF_RECORD = "end_of_record".getBytes(UTF_8);
+
+    /** Reports smaller than this are parsed on the calling thread. */
+    static final int CHUNK_SIZE = 4 << 20;
+
+    /** The most chunks parsed at once, which bounds the memory used while reading a report. */
+    static final int MAX_PENDING_CHUNKS = 16;
+
+    /**
+     * Returns the offset just past the last complete end_of_record line in {@code buffer}, or -1
+     * if there isn't one. Every record is complete before that offset, so parsing can start there
+     * without any state from the preceding lines.
+     */
+    private static int lastRecordEnd(ByteBuffer buffer) {
+      int lineEnd = buffer.limit();
+      // only a line ending in a newline is known to be complete
+      while (lineEnd > 0 && buffer.get(lineEnd - 1) != '\n') {
+        lineEnd--;
+      }
+      while (lineEnd > 0) {
+        int line = lineEnd - 1;
+        while (line > 0 && buffer.get(line - 1) != '\n') {
+          line--;
+        }
+        if (startsWith(buffer, line, lineEnd, END_OF_RECORD)) {
+          return lineEnd;
         }
+        lineEnd = line;
       }
-      return new BlazeCoverageData(ImmutableMap.copyOf(map));
+      return -1;
     }
 
-    private static TIntIntHashMap parseHits(BufferedReader reader) throws IOException {
-      TIntIntHashMap hits = new TIntIntHashMap();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.startsWith(END_OF_RECORD)) {
-          return hits;
+    /** Waits for the records parsed by {@code future}, adding them to {@code map}. */
+    private static void addAll(ListenableFuture<List<FileData>> future, Map<String, FileData> map)
+        throws IOException {
+      List<FileData> files;
+      try {
+        files = future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw new IOException(e.getCause());
+      }
+      for (FileData file : files) {
+        map.put(file.source, file);
+      }
+    }
+
+    private static List<FileData> parseChunk(ByteBuffer chunk) {
+      ImmutableList.Builder<FileData> files = ImmutableList.builder();
+      int limit = chunk.limit();
+      int line = 0;
+      while (line < limit) {
+        int next = nextLine(chunk, line);
+        if (startsWith(chunk, line, limit, SF)) {
+          next = parseRecord(chunk, line, lineEnd(chunk, line, next), next, files);
         }
-        if (line.startsWith(DA)) {
-          // DA:line,hits
-          int comma = line.indexOf(',');
-          try {
-            hits.put(
-                Integer.parseInt(line.substring(DA.length(), comma)),
-                Integer.parseInt(line.substring(comma + 1)));
-          } catch (NumberFormatException e) {
-            logger.warn("Cannot parse LCOV line: " + line, e);
+        line = next;
+      }
+      return files.build();
+    }
+
+    /**
+     * Parses the hits of the record for the source file named on the line {@code [start, end)},
+     * adding them to {@code files}, and returns the offset of the line following the record.
+     */
+    private static int parseRecord(
+        ByteBuffer chunk, int start, int end, int line, ImmutableList.Builder<FileData> files) {
+      String source = decode(chunk, start + SF.length, end);
+      int limit = chunk.limit();
+      int[] lines = new int[16];
+      int[] hits = new int[16];
+      int count = 0;
+      while (line < limit) {
+        int next = nextLine(chunk, line);
+        if (startsWith(chunk, line, limit, END_OF_RECORD)) {
+          line = next;
+          break;
+        }
+        if (startsWith(chunk, line, limit, DA)) {
+          // DA:line,hits[,checksum]
+          int lineEnd = lineEnd(chunk, line, next);
+          int comma = parseInt(chunk, line + DA.length, lineEnd);
+          int hitsEnd =
+              comma >= 0 && comma < lineEnd && chunk.get(comma) == ','
+                  ? parseInt(chunk, comma + 1, lineEnd)
+                  : -1;
+          if (hitsEnd < 0 || (hitsEnd < lineEnd && chunk.get(hitsEnd) != ',')) {
+            logger.warn("Cannot parse LCOV line: " + decode(chunk, line, lineEnd));
+          } else {
+            if (count == lines.length) {
+              lines = Arrays.copyOf(lines, count * 2);
+              hits = Arrays.copyOf(hits, count * 2);
+            }
+            lines[count] = parsedValue(chunk, line + DA.length, comma);
+            hits[count] = parsedValue(chunk, comma + 1, hitsEnd);
+            count++;
           }
         }
+        line = next;
+      }
+      if (count > 0) {
+        files.add(
+            new FileData(source, Arrays.copyOf(lines, count), Arrays.copyOf(hits, count)));
+      }
+      return line;
+    }
+
+    /**
+     * Checks that {@code [start, end)} begins with a decimal integer, optionally signed, returning
+     * the offset just past its digits, or -1 if there are none.
+     */
+    private static int parseInt(ByteBuffer chunk, int start, int end) {
+      int digits = start < end && isSign(chunk.get(start)) ? start + 1 : start;
+      int i = digits;
+      while (i < end && isDigit(chunk.get(i))) {
+        i++;
+      }
+      return i > digits ? i : -1;
+    }
+
+    /**
+     * Returns the value of the integer {@code [start, end)}, saturating rather than overflowing.
+     */
+    private static int parsedValue(ByteBuffer chunk, int start, int end) {
+      boolean negative = chunk.get(start) == '-';
+      int digits = isSign(chunk.get(start)) ? start + 1 : start;
+      long value = 0;
+      for (int i = digits; i < end; i++) {
+        value = Math.min(value * 10 + (chunk.get(i) - '0'), Integer.MAX_VALUE);
+      }
+      return (int) (negative ? -value : value);
+    }
+
+    private static boolean isSign(byte b) {
+      return b == '-' || b == '+';
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, int limit, byte[] prefix) {
+      if (limit - offset < prefix.length) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if (buffer.get(offset + i) != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** Returns the offset of the line after the one containing {@code offset}. */
+    private static int nextLine(ByteBuffer buffer, int offset) {
+      int limit = buffer.limit();
+      while (offset < limit && buffer.get(offset) != '\n') {
+        offset++;
+      }
+      return Math.min(offset + 1, limit);
+    }
+
+    /** Returns the end of the line {@code [start, next)}, excluding its line terminator. */
+    private static int lineEnd(ByteBuffer buffer, int start, int next) {
+      int end = next;
+      if (end > start && buffer.get(end - 1) == '\n') {
+        end--;
       }
-      return hits;
+      if (end > start && buffer.get(end - 1) == '\r') {
+        end--;
+      }
+      return end;
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+      byte[] bytes = new byte[end - start];
+      slice(buffer, start, end).get(bytes);
+      return new String(bytes, UTF_8);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(start).limit(end);
+      return slice.slice();
     }
   }
 }
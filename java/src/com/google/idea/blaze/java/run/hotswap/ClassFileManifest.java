@@ -16,7 +16,6 @@
 package com.google.idea.blaze.java.run.hotswap;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.ImmutableMap.toImmutableMap;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -24,20 +23,19 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.util.concurrent.Futures;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.filecache.FilesDiff;
+import com.google.idea.blaze.common.zip.ZipCentralDirectory;
 import com.intellij.execution.ExecutionException;
 import com.intellij.execution.RunCanceledByUserException;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
 /** A manifest of .class file hashes for jars needed at runtime. Used for HotSwapping. */
@@ -126,14 +124,16 @@ public class ClassFileManifest {
 
     @Nullable
     static JarManifest build(File file) {
-      try {
-        JarFile jar = new JarFile(file);
-        return new JarManifest(
-            file,
-            jar.stream()
-                .filter(e -> e.getName().endsWith(".class"))
-                .collect(
-                    toImmutableMap(JarEntry::getName, ZipEntry::getCrc, (first, second) -> first)));
+      // Only the central directory is read, and only the names of class files are decoded.
+      try (ZipCentralDirectory jar = ZipCentralDirectory.open(file.toPath())) {
+        Map<String, Long> nameToHash = new HashMap<>();
+        ZipCentralDirectory.Cursor entry = jar.cursor();
+        while (entry.next()) {
+          if (entry.nameEndsWith(".class")) {
+            nameToHash.putIfAbsent(entry.name(), entry.crc());
+          }
+        }
+        return new JarManifest(file, ImmutableMap.copyOf(nameToHash));
       } catch (IOException e) {
         logger.warn("Error reading jar file: " + file, e);
         return null;
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.qsync.java.PackageCache;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Gets the package of a source file from a {@link PackageCache} if the file hasn't changed since
+ * its package was cached, and from another reader otherwise.
+ */
+final class CachingJavaPackageReader extends JavaPackageReader {
+  private final PackageCache cache;
+  private final JavaPackageReader reader;
+
+  CachingJavaPackageReader(PackageCache cache, JavaPackageReader reader) {
+    this.cache = cache;
+    this.reader = reader;
+  }
+
+  @Override
+  @Nullable
+  String getDeclaredPackageOfJavaFile(
+      BlazeContext context,
+      ArtifactLocationDecoder artifactLocationDecoder,
+      SourceArtifact sourceArtifact) {
+    Path path = null;
+    Optional<BasicFileAttributes> attributes = Optional.empty();
+    if (sourceArtifact.artifactLocation.isSource()) {
+      File file = artifactLocationDecoder.resolveSource(sourceArtifact.artifactLocation);
+      if (file != null) {
+        path = file.toPath();
+        attributes = PackageCache.readAttributes(path);
+      }
+    }
+    if (attributes.isPresent()) {
+      Optional<String> cached = cache.get(path, attributes.get());
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+    }
+    String packageName =
+        reader.getDeclaredPackageOfJavaFile(context, artifactLocationDecoder, sourceArtifact);
+    if (packageName != null && attributes.isPresent()) {
+      cache.put(path, attributes.get(), packageName);
+    }
+    return packageName;
+  }
+}
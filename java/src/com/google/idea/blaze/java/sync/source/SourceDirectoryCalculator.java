@@ -40,14 +40,21 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.sync.projectview.ImportRoots;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.util.PackagePrefixCalculator;
 import com.google.idea.blaze.common.PrintOutput;
 import com.google.idea.blaze.java.sync.model.BlazeContentEntry;
 import com.google.idea.blaze.java.sync.model.BlazeSourceDirectory;
+import com.google.idea.blaze.qsync.java.PackageCache;
+import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -64,6 +71,7 @@ import javax.annotation.Nullable;
  * module and its Blaze {@link ArtifactLocation} list.
  */
 public final class SourceDirectoryCalculator {
+  private static final Logger logger = Logger.getInstance(SourceDirectoryCalculator.class);
 
   private static final Splitter PACKAGE_SPLITTER = Splitter.on('.');
   private static final Splitter PATH_SPLITTER = Splitter.on('/');
@@ -72,6 +80,9 @@ public final class SourceDirectoryCalculator {
 
   private static final JavaPackageReader generatedFileJavaPackageReader =
       new FilePathJavaPackageReader();
+
+  private static final BoolExperiment persistentPackageCache =
+      new BoolExperiment("blaze.sync.persistent.java.package.cache", true);
   private final ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
 
   public ImmutableList<BlazeContentEntry> calculateContentEntries(
@@ -99,11 +110,14 @@ public final class SourceDirectoryCalculator {
               return new ManifestFilePackageReader(manifestMap);
             });
 
+    PackageCache packageCache = loadPackageCache(project);
+    JavaPackageReader sourcePackageReader =
+        packageCache != null
+            ? new CachingJavaPackageReader(packageCache, JavaSourcePackageReader.getInstance())
+            : JavaSourcePackageReader.getInstance();
     final List<JavaPackageReader> javaPackageReaders =
         Lists.newArrayList(
-            manifestFilePackageReader,
-            JavaSourcePackageReader.getInstance(),
-            generatedFileJavaPackageReader);
+            manifestFilePackageReader, sourcePackageReader, generatedFileJavaPackageReader);
 
     Collection<SourceArtifact> nonGeneratedSources = filterGeneratedArtifacts(sources);
 
@@ -130,9 +144,37 @@ public final class SourceDirectoryCalculator {
           }
           result.sort(Comparator.comparing(lhs -> lhs.contentRoot));
         });
+    if (packageCache != null) {
+      try {
+        packageCache.save();
+      } catch (IOException e) {
+        // The packages will just be read again next time.
+        logger.warn("Failed to save java package cache", e);
+      }
+    }
     return ImmutableList.copyOf(result);
   }
 
+  /**
+   * Loads the cache of source file packages shared with query sync, or returns null if it's
+   * disabled or the project has no data directory.
+   */
+  @Nullable
+  private static PackageCache loadPackageCache(Project project) {
+    if (!persistentPackageCache.getValue()) {
+      return null;
+    }
+    BlazeImportSettingsManager importSettingsManager =
+        BlazeImportSettingsManager.getInstance(project);
+    BlazeImportSettings importSettings =
+        importSettingsManager != null ? importSettingsManager.getImportSettings() : null;
+    if (importSettings == null) {
+      return null;
+    }
+    File projectDataDir = BlazeDataStorage.getProjectDataDir(importSettings);
+    return PackageCache.load(projectDataDir.toPath().resolve(PackageCache.FILE_NAME));
+  }
+
   private Collection<SourceArtifact> filterGeneratedArtifacts(
       Collection<SourceArtifact> artifactLocations) {
     return artifactLocations.stream()
@@ -168,16 +168,84 @@ public class JarCacheTest extends BlazeTestCase {
     testRefreshLintJarCached(remoteArtifactLocationDecoder, SyncMode.FULL);
   }
 
+  @Test
+  public void refresh_incrementalSync_unchangedJarNotCopiedAgain() throws IOException {
+    ArtifactLocationDecoder decoder =
+        new MockArtifactLocationDecoder(workspaceRoot.directory(), /* isRemote= */ true);
+    File jar = workspaceRoot.fileForPath(new WorkspacePath(PLUGIN_PROCESSOR_JAR));
+    BlazeProjectData blazeProjectData = setupProjectWithLintRuleJar(jar, decoder);
+    syncFileCaches(blazeProjectData, SyncMode.FULL);
+    File cacheDir = JarCacheFolderProvider.getInstance(project).getJarCacheFolder();
+    File cachedJar = cacheDir.listFiles()[0];
+    // Mark the cached copy, so that we can tell whether it's replaced.
+    Files.write(cachedJar.toPath(), "marker".getBytes(UTF_8));
+
+    syncFileCaches(blazeProjectData, SyncMode.INCREMENTAL);
+
+    assertThat(cacheDir.list()).hasLength(1);
+    assertThat(Files.readAllBytes(cachedJar.toPath())).isEqualTo("marker".getBytes(UTF_8));
+
+    // Once the jar changes, it is copied again.
+    blazeProjectData = setupProjectWithLintRuleJar(jar, decoder, "class Changed {}");
+    syncFileCaches(blazeProjectData, SyncMode.INCREMENTAL);
+
+    assertThat(cacheDir.list()).hasLength(1);
+    assertThat(Files.readAllBytes(cachedJar.toPath())).isEqualTo(Files.readAllBytes(jar.toPath()));
+  }
+
+  @Test
+  public void refresh_fullSync_unchangedJarNotCopiedAgain() throws IOException {
+    ArtifactLocationDecoder decoder =
+        new MockArtifactLocationDecoder(workspaceRoot.directory(), /* isRemote= */ true);
+    File jar = workspaceRoot.fileForPath(new WorkspacePath(PLUGIN_PROCESSOR_JAR));
+    BlazeProjectData blazeProjectData = setupProjectWithLintRuleJar(jar, decoder);
+    syncFileCaches(blazeProjectData, SyncMode.FULL);
+    File cacheDir = JarCacheFolderProvider.getInstance(project).getJarCacheFolder();
+    File cachedJar = cacheDir.listFiles()[0];
+    Files.write(cachedJar.toPath(), "marker".getBytes(UTF_8));
+
+    // A full sync keeps the cached copy of an unchanged jar.
+    syncFileCaches(blazeProjectData, SyncMode.FULL);
+
+    assertThat(cacheDir.list()).hasLength(1);
+    assertThat(Files.readAllBytes(cachedJar.toPath())).isEqualTo("marker".getBytes(UTF_8));
+
+    blazeProjectData = setupProjectWithLintRuleJar(jar, decoder, "class Changed {}");
+    syncFileCaches(blazeProjectData, SyncMode.FULL);
+
+    assertThat(cacheDir.list()).hasLength(1);
+    assertThat(Files.readAllBytes(cachedJar.toPath())).isEqualTo(Files.readAllBytes(jar.toPath()));
+  }
+
+  private void syncFileCaches(BlazeProjectData blazeProjectData, SyncMode syncMode) {
+    FileCache.EP_NAME
+        .extensions()
+        .forEach(
+            ep ->
+                ep.onSync(
+                    getProject(),
+                    context,
+                    ProjectViewSet.builder().add(ProjectView.builder().build()).build(),
+                    blazeProjectData,
+                    null,
+                    syncMode));
+  }
+
   /**
    * Create a test project that has store jar in {@code PluginProcessorJars} of {@code
    * BlazeJavaImportResult}
    */
   private BlazeProjectData setupProjectWithLintRuleJar(File jar, ArtifactLocationDecoder decoder)
       throws IOException {
+    return setupProjectWithLintRuleJar(jar, decoder, "class Gen {}");
+  }
+
+  private BlazeProjectData setupProjectWithLintRuleJar(
+      File jar, ArtifactLocationDecoder decoder, String content) throws IOException {
 
     try (ZipOutputStream zo = new ZipOutputStream(new FileOutputStream(jar))) {
       zo.putNextEntry(new ZipEntry("com/google/foo/gen/Gen.java"));
-      zo.write("package gen; class Gen {}".getBytes(UTF_8));
+      zo.write(("package gen; " + content).getBytes(UTF_8));
       zo.closeEntry();
     }
 
@@ -19,14 +19,17 @@ import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.java.run.coverage.BlazeCoverageData.FileData;
-import gnu.trove.TIntIntHashMap;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.function.Function;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -56,11 +59,11 @@ public class BlazeCoverageDataTest {
 
     FileData fileData = data.perFileData.get("path/to/file.txt");
     assertThat(fileData.source).isEqualTo("path/to/file.txt");
-    assertThat(toMap(fileData.lineHits)).containsExactly(4, 0, 8, 0, 9, 1, 23, 3);
+    assertThat(toMap(fileData)).containsExactly(4, 0, 8, 0, 9, 1, 23, 3);
 
     fileData = data.perFileData.get("path/to/another/file.txt");
     assertThat(fileData.source).isEqualTo("path/to/another/file.txt");
-    assertThat(toMap(fileData.lineHits)).containsExactly(1, 1, 2, 2, 5, 0, 123, 1);
+    assertThat(toMap(fileData)).containsExactly(1, 1, 2, 2, 5, 0, 123, 1);
   }
 
   @Test
@@ -81,10 +84,96 @@ public class BlazeCoverageDataTest {
     assertThat(data.perFileData.keySet()).containsExactly("path/to/another/file.txt");
   }
 
-  private static ImmutableMap<Integer, Integer> toMap(TIntIntHashMap troveMap) {
-    return Arrays.stream(troveMap.keys())
-        .boxed()
-        .collect(ImmutableMap.toImmutableMap(Function.identity(), troveMap::get));
+  @Test
+  public void testParseInParallelChunks() throws IOException {
+    String[] lines = {
+      "TN:",
+      "SF:path/to/file.txt",
+      "DA:4,0",
+      "DA:8,0",
+      "end_of_record",
+      "SF:path/to/second.txt",
+      "DA:1,1",
+      "DA:2,2",
+      "end_of_record",
+      "SF:path/to/third.txt",
+      "DA:3,3",
+      "end_of_record",
+      "SF:path/to/file.txt",
+      "DA:9,1",
+      "end_of_record"
+    };
+    byte[] bytes = Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+        BlazeCoverageData data =
+            BlazeCoverageData.parse(
+                Channels.newChannel(new ByteArrayInputStream(bytes)),
+                MoreExecutors.listeningDecorator(executor),
+                chunkSize);
+        assertThat(data.perFileData.keySet())
+            .containsExactly("path/to/file.txt", "path/to/second.txt", "path/to/third.txt")
+            .inOrder();
+        // the last record for a file replaces any earlier ones
+        assertThat(toMap(data.perFileData.get("path/to/file.txt"))).containsExactly(9, 1);
+        assertThat(toMap(data.perFileData.get("path/to/second.txt"))).containsExactly(1, 1, 2, 2);
+        assertThat(toMap(data.perFileData.get("path/to/third.txt"))).containsExactly(3, 3);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParseManySmallChunks() throws IOException {
+    StringBuilder report = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      report.append("SF:path/to/file").append(i).append(".txt\n");
+      report.append("DA:").append(i).append(",1\n");
+      report.append("end_of_record\n");
+    }
+    byte[] bytes = report.toString().getBytes(StandardCharsets.UTF_8);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      BlazeCoverageData data =
+          BlazeCoverageData.parse(
+              Channels.newChannel(new ByteArrayInputStream(bytes)),
+              MoreExecutors.listeningDecorator(executor),
+              /* chunkSize= */ 16);
+      assertThat(data.perFileData).hasSize(100);
+      for (int i = 0; i < 100; i++) {
+        assertThat(toMap(data.perFileData.get("path/to/file" + i + ".txt")))
+            .containsExactly(i, 1);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testMalformedLinesIgnored() throws IOException {
+    BlazeCoverageData data =
+        BlazeCoverageData.parse(
+            inputStream(
+                "SF:path/to/file.txt\r",
+                "DA:4,2\r",
+                "DA:5\r",
+                "DA:x,1\r",
+                "DA:6,-1\r",
+                "DA:7,3,checksum\r",
+                "DA:8,99999999999\r",
+                "end_of_record\r"));
+    FileData fileData = data.perFileData.get("path/to/file.txt");
+    assertThat(toMap(fileData)).containsExactly(4, 2, 6, -1, 7, 3, 8, Integer.MAX_VALUE);
+  }
+
+  private static ImmutableMap<Integer, Integer> toMap(FileData fileData) {
+    Map<Integer, Integer> map = new LinkedHashMap<>();
+    for (int i = 0; i < fileData.lines.length; i++) {
+      map.put(fileData.lines[i], fileData.hits[i]);
+    }
+    return ImmutableMap.copyOf(map);
   }
 
   private static InputStream inputStream(String... lines) {
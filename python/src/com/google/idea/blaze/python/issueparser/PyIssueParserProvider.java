@@ -55,7 +55,7 @@ public class PyIssueParserProvider implements BlazeIssueParserProvider {
     final WorkspaceRoot workspaceRoot;
 
     PyTracebackIssueParser(Project project) {
-      super("File \"(.*?)\", line ([0-9]+), in (.*)");
+      super("File \"(.*?)\", line ([0-9]+), in (.*)", "\", line ");
       this.project = project;
       this.workspaceRoot = WorkspaceRoot.fromProject(project);
     }
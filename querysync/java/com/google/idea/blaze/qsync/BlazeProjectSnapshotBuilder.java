@@ -27,6 +27,8 @@ import com.google.idea.blaze.qsync.project.PostQuerySyncData;
 import com.google.idea.blaze.qsync.project.ProjectProto.Project;
 import com.google.idea.blaze.qsync.query.QuerySummary;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 
 /**
@@ -41,6 +43,7 @@ public class BlazeProjectSnapshotBuilder {
   private final ImmutableSet<String> handledRuleKinds;
   private final Supplier<Boolean> useNewResDirLogic;
   private final Supplier<Boolean> guessAndroidResPackages;
+  private final Supplier<Boolean> parseQueryInParallel;
 
   public BlazeProjectSnapshotBuilder(
       ListeningExecutorService executor,
@@ -48,13 +51,15 @@ public class BlazeProjectSnapshotBuilder {
       Path workspaceRoot,
       ImmutableSet<String> handledRuleKinds,
       Supplier<Boolean> useNewResDirLogic,
-      Supplier<Boolean> guessAndroidResPackages) {
+      Supplier<Boolean> guessAndroidResPackages,
+      Supplier<Boolean> parseQueryInParallel) {
     this.executor = executor;
     this.workspaceRelativePackageReader = workspaceRelativePackageReader;
     this.workspaceRoot = workspaceRoot;
     this.handledRuleKinds = handledRuleKinds;
     this.useNewResDirLogic = useNewResDirLogic;
     this.guessAndroidResPackages = guessAndroidResPackages;
+    this.parseQueryInParallel = parseQueryInParallel;
   }
 
   /**
@@ -67,6 +72,22 @@ public class BlazeProjectSnapshotBuilder {
       PostQuerySyncData postQuerySyncData,
       ProjectProtoTransform projectProtoTransform)
       throws BuildException {
+    return createBlazeProjectSnapshot(
+        context, postQuerySyncData, projectProtoTransform, Optional.empty());
+  }
+
+  /**
+   * As {@link #createBlazeProjectSnapshot(Context, PostQuerySyncData, ProjectProtoTransform)}, but
+   * derives the build graph from that of {@code previousSnapshot} when it is present: the graph is
+   * reused as is if the query data is unchanged, and otherwise only the changed packages are
+   * parsed.
+   */
+  public BlazeProjectSnapshot createBlazeProjectSnapshot(
+      Context<?> context,
+      PostQuerySyncData postQuerySyncData,
+      ProjectProtoTransform projectProtoTransform,
+      Optional<BlazeProjectSnapshot> previousSnapshot)
+      throws BuildException {
     Path effectiveWorkspaceRoot =
         postQuerySyncData.vcsState().flatMap(s -> s.workspaceSnapshotPath).orElse(workspaceRoot);
     WorkspaceResolvingPackageReader packageReader =
@@ -81,7 +102,7 @@ public class BlazeProjectSnapshotBuilder {
             useNewResDirLogic,
             guessAndroidResPackages);
     QuerySummary querySummary = postQuerySyncData.querySummary();
-    BuildGraphData graph = new BlazeQueryParser(querySummary, context, handledRuleKinds).parse();
+    BuildGraphData graph = createGraph(context, querySummary, previousSnapshot);
     Project project =
         projectProtoTransform.apply(graphToProjectConverter.createProject(graph), graph, context);
     return BlazeProjectSnapshot.builder()
@@ -90,4 +111,22 @@ public class BlazeProjectSnapshotBuilder {
         .project(project)
         .build();
   }
+
+  private BuildGraphData createGraph(
+      Context<?> context,
+      QuerySummary querySummary,
+      Optional<BlazeProjectSnapshot> previousSnapshot) {
+    BlazeQueryParser queryParser = new BlazeQueryParser(querySummary, context, handledRuleKinds);
+    if (previousSnapshot.isPresent()) {
+      QuerySummary previousQuery = previousSnapshot.get().queryData().querySummary();
+      if (previousQuery.proto() == querySummary.proto()) {
+        // e.g. after building dependencies, where only the project proto transform has changed.
+        return previousSnapshot.get().graph();
+      }
+      return queryParser.parseIncrementally(previousQuery, previousSnapshot.get().graph());
+    }
+    return parseQueryInParallel.get()
+        ? queryParser.parseInParallel(ForkJoinPool.commonPool())
+        : queryParser.parse();
+  }
 }
@@ -15,12 +15,15 @@
  */
 package com.google.idea.blaze.qsync;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.idea.blaze.common.Label.toLabelList;
 import static java.util.Arrays.stream;
 import static java.util.Objects.requireNonNull;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
 import com.google.idea.blaze.common.Context;
@@ -37,11 +40,17 @@ import com.google.idea.blaze.qsync.query.Query;
 import com.google.idea.blaze.qsync.query.Query.Rule;
 import com.google.idea.blaze.qsync.query.QuerySummary;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * A class that parses the proto output from a `blaze query --output=streamed_proto` invocation, and
@@ -66,6 +75,9 @@ public class BlazeQueryParser {
           "aar_import",
           "java_import");
 
+  /** The approximate number of rules or source files visited by each task in a parallel parse. */
+  private static final int SHARD_SIZE = 5000;
+
   private final Context<?> context;
   private final SetView<String> alwaysBuildRuleKinds;
 
@@ -92,58 +104,215 @@ public class BlazeQueryParser {
 
     long now = System.nanoTime();
 
-    // Counts of all kinds of rules
-    Map<String, Integer> ruleCount = new HashMap<>();
     for (Map.Entry<Label, Query.SourceFile> sourceFileEntry :
         query.getSourceFilesMap().entrySet()) {
-      Location l = new Location(sourceFileEntry.getValue().getLocation());
-      if (l.file.endsWith(Path.of("BUILD"))) {
-        packages.add(l.file.getParent());
-      }
-      graphBuilder.locationsBuilder().put(sourceFileEntry.getKey(), l);
-      graphBuilder.fileToTargetBuilder().put(l.file, sourceFileEntry.getKey());
+      addSourceFile(
+          sourceFileEntry.getKey(), new Location(sourceFileEntry.getValue().getLocation()));
     }
+    RuleVisitor visitor = new RuleVisitor();
     for (Map.Entry<Label, Query.Rule> ruleEntry : query.getRulesMap().entrySet()) {
-      String ruleClass = ruleEntry.getValue().getRuleClass();
-      ruleCount.compute(ruleClass, (k, v) -> (v == null ? 0 : v) + 1);
+      visitor.visit(ruleEntry.getKey(), ruleEntry.getValue());
+    }
+    merge(visitor);
+    return finish(now);
+  }
 
-      ProjectTarget.Builder targetBuilder = ProjectTarget.builder();
+  /**
+   * Equivalent to {@link #parse()}, but visits the source files and rules on {@code pool}.
+   *
+   * <p>Rules are partitioned into shards by build package, and each shard is visited by a separate
+   * task. The results from each shard are then merged in a fixed order, so the build graph is
+   * deterministic for a given query summary.
+   */
+  public BuildGraphData parseInParallel(ForkJoinPool pool) {
+    context.output(PrintOutput.log("Analyzing project structure (in parallel)..."));
 
-      targetBuilder.label(ruleEntry.getKey()).kind(ruleClass);
-      if (!ruleEntry.getValue().getTestApp().isEmpty()) {
-        targetBuilder.testApp(Label.of(ruleEntry.getValue().getTestApp()));
-      }
-      if (!ruleEntry.getValue().getInstruments().isEmpty()) {
-        targetBuilder.instruments(Label.of(ruleEntry.getValue().getInstruments()));
-      }
-      if (!ruleEntry.getValue().getCustomPackage().isEmpty()) {
-        targetBuilder.customPackage(ruleEntry.getValue().getCustomPackage());
-      }
-      if (!ruleEntry.getValue().getMainClass().isEmpty()) {
-        targetBuilder.mainClass(ruleEntry.getValue().getMainClass());
-      }
+    long now = System.nanoTime();
 
-      if (RuleKinds.isJava(ruleClass)) {
-        visitJavaRule(ruleEntry.getKey(), ruleEntry.getValue(), targetBuilder);
+    ImmutableList<Map.Entry<Label, Query.SourceFile>> sourceFiles =
+        query.getSourceFilesMap().entrySet().asList();
+    List<List<Location>> locationShards =
+        invokeAll(
+            pool,
+            Lists.partition(sourceFiles, SHARD_SIZE),
+            shard ->
+                shard.stream()
+                    .map(e -> new Location(e.getValue().getLocation()))
+                    .collect(toImmutableList()));
+    int i = 0;
+    for (List<Location> locations : locationShards) {
+      for (Location location : locations) {
+        addSourceFile(sourceFiles.get(i++).getKey(), location);
       }
-      if (RuleKinds.isCc(ruleClass)) {
-        visitCcRule(ruleEntry.getKey(), ruleEntry.getValue(), targetBuilder);
+    }
+
+    List<RuleVisitor> visitors =
+        invokeAll(
+            pool,
+            partitionByPackage(query.getRulesMap().entrySet()),
+            shard -> {
+              RuleVisitor visitor = new RuleVisitor();
+              for (Map.Entry<Label, Query.Rule> ruleEntry : shard) {
+                visitor.visit(ruleEntry.getKey(), ruleEntry.getValue());
+              }
+              return visitor;
+            });
+    visitors.forEach(this::merge);
+    return finish(now);
+  }
+
+  /**
+   * Equivalent to {@link #parse()}, but reuses the results of an earlier parse for build packages
+   * that have not changed since.
+   *
+   * <p>A package has changed if any rule or source file in it was added, removed or modified
+   * between {@code previousQuery} and the current query. Targets in unchanged packages are taken
+   * from {@code previousGraph} unless their sources refer to a changed package or to a rule that
+   * may need to be expanded, so the work done is mostly proportional to the size of the change.
+   * {@code previousGraph} must be the result of parsing {@code previousQuery} with the same handled
+   * rule kinds.
+   */
+  public BuildGraphData parseIncrementally(
+      QuerySummary previousQuery, BuildGraphData previousGraph) {
+    context.output(PrintOutput.log("Analyzing project structure (incrementally)..."));
+
+    long now = System.nanoTime();
+
+    Set<Path> changedPackages = new HashSet<>();
+    addChangedPackages(
+        previousQuery.getSourceFilesMap(), query.getSourceFilesMap(), changedPackages);
+    addChangedPackages(previousQuery.getRulesMap(), query.getRulesMap(), changedPackages);
+    ImmutableSet<String> changedPackageNames =
+        changedPackages.stream().map(Path::toString).collect(toImmutableSet());
+
+    for (Map.Entry<Label, Query.SourceFile> sourceFileEntry :
+        query.getSourceFilesMap().entrySet()) {
+      Label label = sourceFileEntry.getKey();
+      Location location =
+          changedPackages.contains(label.getPackage())
+              ? null
+              : previousGraph.locations().get(label);
+      addSourceFile(
+          label,
+          location != null ? location : new Location(sourceFileEntry.getValue().getLocation()));
+    }
+    RuleVisitor visitor = new RuleVisitor();
+    int reused = 0;
+    for (Map.Entry<Label, Query.Rule> ruleEntry : query.getRulesMap().entrySet()) {
+      Label label = ruleEntry.getKey();
+      ProjectTarget previous =
+          changedPackages.contains(label.getPackage())
+              ? null
+              : previousGraph.targetMap().get(label);
+      if (previous != null && !refersToChangedSources(ruleEntry.getValue(), changedPackageNames)) {
+        visitor.reuse(previous, previousGraph.projectDeps().contains(label));
+        reused++;
+      } else {
+        visitor.visit(label, ruleEntry.getValue());
       }
-      if (RuleKinds.isProtoSource(ruleClass)) {
-        visitProtoRule(ruleEntry.getValue(), targetBuilder);
+    }
+    merge(visitor);
+    context.output(
+        PrintOutput.log(
+            "%-10d Changed packages, %d targets reused", changedPackages.size(), reused));
+    return finish(now);
+  }
+
+  /**
+   * Adds the packages of all entries that differ between {@code before} and {@code after} to
+   * {@code changed}. Unchanged entries are usually the same proto instance in both maps, so are
+   * cheap to compare.
+   */
+  private static <T> void addChangedPackages(
+      Map<Label, T> before, Map<Label, T> after, Set<Path> changed) {
+    for (Map.Entry<Label, T> entry : after.entrySet()) {
+      if (!entry.getValue().equals(before.get(entry.getKey()))) {
+        changed.add(entry.getKey().getPackage());
       }
-      if (alwaysBuildRuleKinds.contains(ruleClass)) {
-        projectTargetsToBuild.add(ruleEntry.getKey());
+    }
+    for (Label label : before.keySet()) {
+      if (!after.containsKey(label)) {
+        changed.add(label.getPackage());
       }
-      targetBuilder.tags(ruleEntry.getValue().getTagsList());
-      ProjectTarget target = targetBuilder.build();
+    }
+  }
 
-      for (Label thisSource : target.sourceLabels().values()) {
-        addProjectTargetsToBuildIfGenerated(target.label(), thisSource);
+  /**
+   * Returns true if the sources of {@code rule} may resolve differently after the packages in
+   * {@code changedPackages} have changed: that is, if any of them is in a changed package, or is a
+   * rule that may be expanded by {@link #expandSourceLabel(Label)}.
+   */
+  private boolean refersToChangedSources(Rule rule, Set<String> changedPackages) {
+    return Stream.of(
+            rule.getSourcesList(),
+            rule.getHdrsList(),
+            rule.getResourceFilesList(),
+            ImmutableList.of(rule.getManifest()))
+        .flatMap(List::stream)
+        .filter(source -> !source.isEmpty())
+        .anyMatch(
+            source -> {
+              if (changedPackages.contains(QuerySummary.packageOf(source))) {
+                return true;
+              }
+              Rule sourceRule = query.proto().getRulesOrDefault(source, null);
+              return sourceRule != null && isSourceGroup(sourceRule);
+            });
+  }
+
+  /**
+   * Groups rules by build package, and then packs whole packages into shards of approximately
+   * {@link #SHARD_SIZE} rules. Packages are ordered by the first occurrence of one of their rules.
+   */
+  private static ImmutableList<List<Map.Entry<Label, Query.Rule>>> partitionByPackage(
+      Collection<Map.Entry<Label, Query.Rule>> rules) {
+    Map<Path, List<Map.Entry<Label, Query.Rule>>> byPackage = new LinkedHashMap<>();
+    for (Map.Entry<Label, Query.Rule> rule : rules) {
+      byPackage.computeIfAbsent(rule.getKey().getPackage(), p -> new ArrayList<>()).add(rule);
+    }
+    ImmutableList.Builder<List<Map.Entry<Label, Query.Rule>>> shards = ImmutableList.builder();
+    List<Map.Entry<Label, Query.Rule>> shard = new ArrayList<>();
+    for (List<Map.Entry<Label, Query.Rule>> packageRules : byPackage.values()) {
+      shard.addAll(packageRules);
+      if (shard.size() >= SHARD_SIZE) {
+        shards.add(shard);
+        shard = new ArrayList<>();
       }
+    }
+    if (!shard.isEmpty()) {
+      shards.add(shard);
+    }
+    return shards.build();
+  }
 
-      graphBuilder.targetMapBuilder().put(ruleEntry.getKey(), target);
+  /** Runs {@code work} for each shard on {@code pool}, returning the results in shard order. */
+  private static <S, R> ImmutableList<R> invokeAll(
+      ForkJoinPool pool, List<S> shards, Function<S, R> work) {
+    List<ForkJoinTask<R>> tasks = new ArrayList<>(shards.size());
+    for (S shard : shards) {
+      tasks.add(pool.submit(() -> work.apply(shard)));
     }
+    return tasks.stream().map(ForkJoinTask::join).collect(toImmutableList());
+  }
+
+  private void addSourceFile(Label label, Location l) {
+    if (l.file.endsWith(Path.of("BUILD"))) {
+      packages.add(l.file.getParent());
+    }
+    graphBuilder.locationsBuilder().put(label, l);
+    graphBuilder.fileToTargetBuilder().put(l.file, label);
+  }
+
+  private void merge(RuleVisitor visitor) {
+    for (ProjectTarget target : visitor.targets) {
+      graphBuilder.targetMapBuilder().put(target.label(), target);
+    }
+    visitor.allTargets.forEach(graphBuilder.allTargetsBuilder()::add);
+    projectTargetsToBuild.addAll(visitor.projectTargetsToBuild);
+    javaDeps.addAll(visitor.javaDeps);
+  }
+
+  private BuildGraphData finish(long startNanos) {
     int nTargets = query.proto().getRulesCount();
 
     // Calculate all the dependencies outside the project.
@@ -155,7 +324,7 @@ public class BlazeQueryParser {
     // Treat project targets the aspect needs to build as external deps
     projectDeps.addAll(projectTargetsToBuild);
 
-    long elapsedMs = (System.nanoTime() - now) / 1000000L;
+    long elapsedMs = (System.nanoTime() - startNanos) / 1000000L;
     context.output(PrintOutput.log("%-10d Targets (%d ms):", nTargets, elapsedMs));
 
     BuildGraphData graph = graphBuilder.projectDeps(projectDeps).packages(packages.build()).build();
@@ -169,57 +338,128 @@ public class BlazeQueryParser {
     return graph;
   }
 
-  private void visitProtoRule(Query.Rule rule, ProjectTarget.Builder targetBuilder) {
-    targetBuilder
-        .sourceLabelsBuilder()
-        .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()));
-  }
+  /**
+   * Visits rules from the query summary, accumulating the results locally. Rules may be visited by
+   * several instances of this class concurrently, as it only reads from shared state.
+   */
+  private class RuleVisitor {
+    private final List<ProjectTarget> targets = new ArrayList<>();
+    private final List<Label> allTargets = new ArrayList<>();
+    private final Set<Label> projectTargetsToBuild = new HashSet<>();
+    private final Set<Label> javaDeps = new HashSet<>();
 
-  private void visitJavaRule(Label label, Query.Rule rule, ProjectTarget.Builder targetBuilder) {
-    graphBuilder.allTargetsBuilder().add(label);
-    targetBuilder.languagesBuilder().add(QuerySyncLanguage.JAVA);
-    targetBuilder
-        .sourceLabelsBuilder()
-        .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()))
-        .putAll(SourceType.ANDROID_RESOURCES, expandFileGroupValues(rule.getResourceFilesList()));
+    void visit(Label label, Query.Rule rule) {
+      String ruleClass = rule.getRuleClass();
 
-    Set<Label> thisDeps = Sets.newHashSet(toLabelList(rule.getDepsList()));
-    targetBuilder.depsBuilder().addAll(thisDeps);
+      ProjectTarget.Builder targetBuilder = ProjectTarget.builder();
 
-    targetBuilder.runtimeDepsBuilder().addAll(toLabelList(rule.getRuntimeDepsList()));
-    javaDeps.addAll(thisDeps);
+      targetBuilder.label(label).kind(ruleClass);
+      if (!rule.getTestApp().isEmpty()) {
+        targetBuilder.testApp(Label.of(rule.getTestApp()));
+      }
+      if (!rule.getInstruments().isEmpty()) {
+        targetBuilder.instruments(Label.of(rule.getInstruments()));
+      }
+      if (!rule.getCustomPackage().isEmpty()) {
+        targetBuilder.customPackage(rule.getCustomPackage());
+      }
+      if (!rule.getMainClass().isEmpty()) {
+        targetBuilder.mainClass(rule.getMainClass());
+      }
 
-    if (RuleKinds.isAndroid(rule.getRuleClass())) {
-      // Add android targets with aidl files as external deps so the aspect generates
-      // the classes
-      if (!rule.getIdlSourcesList().isEmpty()) {
+      if (RuleKinds.isJava(ruleClass)) {
+        visitJavaRule(label, rule, targetBuilder);
+      }
+      if (RuleKinds.isCc(ruleClass)) {
+        visitCcRule(label, rule, targetBuilder);
+      }
+      if (RuleKinds.isProtoSource(ruleClass)) {
+        visitProtoRule(rule, targetBuilder);
+      }
+      if (alwaysBuildRuleKinds.contains(ruleClass)) {
         projectTargetsToBuild.add(label);
       }
-      if (!rule.getManifest().isEmpty()) {
-        targetBuilder
-            .sourceLabelsBuilder()
-            .put(SourceType.ANDROID_MANIFEST, Label.of(rule.getManifest()));
+      targetBuilder.tags(rule.getTagsList());
+      ProjectTarget target = targetBuilder.build();
+
+      for (Label thisSource : target.sourceLabels().values()) {
+        addProjectTargetsToBuildIfGenerated(target.label(), thisSource);
       }
+
+      targets.add(target);
     }
-  }
 
-  private void visitCcRule(Label label, Query.Rule rule, ProjectTarget.Builder targetBuilder) {
-    graphBuilder.allTargetsBuilder().add(label);
-    targetBuilder.languagesBuilder().add(QuerySyncLanguage.CC);
-    targetBuilder.coptsBuilder().addAll(rule.getCoptsList());
-    targetBuilder
-        .sourceLabelsBuilder()
-        .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()))
-        .putAll(SourceType.CC_HEADERS, expandFileGroupValues(rule.getHdrsList()));
-
-    Set<Label> thisDeps = Sets.newHashSet(toLabelList(rule.getDepsList()));
-    targetBuilder.depsBuilder().addAll(thisDeps);
-  }
+    /**
+     * Accumulates a target from an earlier parse, as if its (unchanged) rule had been visited.
+     *
+     * @param wasBuilt whether the earlier parse determined that the target needs to be built.
+     */
+    void reuse(ProjectTarget target, boolean wasBuilt) {
+      if (!target.languages().isEmpty()) {
+        allTargets.add(target.label());
+      }
+      if (RuleKinds.isJava(target.kind())) {
+        javaDeps.addAll(target.deps());
+      }
+      if (wasBuilt) {
+        projectTargetsToBuild.add(target.label());
+      }
+      targets.add(target);
+    }
 
-  /** Require build step for targets with generated sources. */
-  private void addProjectTargetsToBuildIfGenerated(Label label, Label source) {
-    if (!query.getSourceFilesMap().containsKey(source)) {
-      projectTargetsToBuild.add(label);
+    private void visitProtoRule(Query.Rule rule, ProjectTarget.Builder targetBuilder) {
+      targetBuilder
+          .sourceLabelsBuilder()
+          .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()));
+    }
+
+    private void visitJavaRule(Label label, Query.Rule rule, ProjectTarget.Builder targetBuilder) {
+      allTargets.add(label);
+      targetBuilder.languagesBuilder().add(QuerySyncLanguage.JAVA);
+      targetBuilder
+          .sourceLabelsBuilder()
+          .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()))
+          .putAll(
+              SourceType.ANDROID_RESOURCES, expandFileGroupValues(rule.getResourceFilesList()));
+
+      Set<Label> thisDeps = Sets.newHashSet(toLabelList(rule.getDepsList()));
+      targetBuilder.depsBuilder().addAll(thisDeps);
+
+      targetBuilder.runtimeDepsBuilder().addAll(toLabelList(rule.getRuntimeDepsList()));
+      javaDeps.addAll(thisDeps);
+
+      if (RuleKinds.isAndroid(rule.getRuleClass())) {
+        // Add android targets with aidl files as external deps so the aspect generates
+        // the classes
+        if (!rule.getIdlSourcesList().isEmpty()) {
+          projectTargetsToBuild.add(label);
+        }
+        if (!rule.getManifest().isEmpty()) {
+          targetBuilder
+              .sourceLabelsBuilder()
+              .put(SourceType.ANDROID_MANIFEST, Label.of(rule.getManifest()));
+        }
+      }
+    }
+
+    private void visitCcRule(Label label, Query.Rule rule, ProjectTarget.Builder targetBuilder) {
+      allTargets.add(label);
+      targetBuilder.languagesBuilder().add(QuerySyncLanguage.CC);
+      targetBuilder.coptsBuilder().addAll(rule.getCoptsList());
+      targetBuilder
+          .sourceLabelsBuilder()
+          .putAll(SourceType.REGULAR, expandFileGroupValues(rule.getSourcesList()))
+          .putAll(SourceType.CC_HEADERS, expandFileGroupValues(rule.getHdrsList()));
+
+      Set<Label> thisDeps = Sets.newHashSet(toLabelList(rule.getDepsList()));
+      targetBuilder.depsBuilder().addAll(thisDeps);
+    }
+
+    /** Require build step for targets with generated sources. */
+    private void addProjectTargetsToBuildIfGenerated(Label label, Label source) {
+      if (!query.getSourceFilesMap().containsKey(source)) {
+        projectTargetsToBuild.add(label);
+      }
     }
   }
 
@@ -255,6 +495,24 @@ public class BlazeQueryParser {
     if (rule == null) {
       return false;
     }
+    return isSourceGroup(rule);
+  }
+
+  /**
+   * Returns true if {@link #parse()} reads the sources or dependencies of the given rule.
+   *
+   * <p>Rules for which this returns false contribute only their kind and simple string attributes
+   * to the build graph, so their sources and deps need not be retained in the query summary.
+   */
+  public static boolean needsSourcesAndDeps(Rule rule) {
+    String ruleClass = rule.getRuleClass();
+    return RuleKinds.isJava(ruleClass)
+        || RuleKinds.isCc(ruleClass)
+        || RuleKinds.isProtoSource(ruleClass)
+        || isSourceGroup(rule);
+  }
+
+  private static boolean isSourceGroup(Rule rule) {
     if (rule.getRuleClass().equals("filegroup")) {
       return true;
     }
@@ -15,20 +15,19 @@
  */
 package com.google.idea.blaze.qsync;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
-import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.common.vcs.VcsState;
 import com.google.idea.blaze.qsync.project.PostQuerySyncData;
 import com.google.idea.blaze.qsync.query.Query;
-import com.google.idea.blaze.qsync.query.Query.SourceFile;
 import com.google.idea.blaze.qsync.query.QuerySpec;
 import com.google.idea.blaze.qsync.query.QuerySummary;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Implements a query strategy based on querying a minimal set of packages derived from the VCS
@@ -90,35 +89,36 @@ class PartialProjectRefresh implements RefreshOperation {
   /**
    * Calculates the effective query output, based on an earlier full query output, the output from a
    * partial query, and any deleted packages.
+   *
+   * <p>The result shares the entries for all unaffected packages with the earlier output: only the
+   * entries in affected packages are removed before the partial output is added, so the cost is
+   * proportional to the number of entries rather than requiring them all to be copied and re-keyed.
    */
   @VisibleForTesting
   QuerySummary applyDelta(QuerySummary partialQuery) {
-    // copy all unaffected rules / source files to result:
-    Map<Label, SourceFile> newSourceFiles = Maps.newHashMap();
-    for (Map.Entry<Label, SourceFile> sfEntry :
-        previousState.querySummary().getSourceFilesMap().entrySet()) {
-      Path buildPackage = sfEntry.getKey().getPackage();
-      if (!(deletedPackages.contains(buildPackage)
-          || partialQuery.getPackages().contains(buildPackage))) {
-        newSourceFiles.put(sfEntry.getKey(), sfEntry.getValue());
+    ImmutableSet<String> affectedPackages =
+        Stream.concat(deletedPackages.stream(), partialQuery.getPackages().asPathSet().stream())
+            .map(Path::toString)
+            .collect(toImmutableSet());
+    Query.Summary previous = previousState.querySummary().proto();
+    Query.Summary.Builder result =
+        previous.toBuilder().setVersion(QuerySummary.PROTO_VERSION).clearPackagesWithErrors();
+    // remove all affected rules / source files from the previous output:
+    for (String label : previous.getSourceFilesMap().keySet()) {
+      if (affectedPackages.contains(QuerySummary.packageOf(label))) {
+        result.removeSourceFiles(label);
       }
     }
-    Map<Label, Query.Rule> newRules = Maps.newHashMap();
-    for (Map.Entry<Label, Query.Rule> ruleEntry :
-        previousState.querySummary().getRulesMap().entrySet()) {
-      Path buildPackage = ruleEntry.getKey().getPackage();
-      if (!(deletedPackages.contains(buildPackage)
-          || partialQuery.getPackages().contains(buildPackage))) {
-        newRules.put(ruleEntry.getKey(), ruleEntry.getValue());
+    for (String label : previous.getRulesMap().keySet()) {
+      if (affectedPackages.contains(QuerySummary.packageOf(label))) {
+        result.removeRules(label);
       }
     }
     // now add all rules / source files from the delta
-    newSourceFiles.putAll(partialQuery.getSourceFilesMap());
-    newRules.putAll(partialQuery.getRulesMap());
-    return QuerySummary.newBuilder()
-        .putAllSourceFiles(newSourceFiles)
-        .putAllRules(newRules)
-        .putAllPackagesWithErrors(partialQuery.getPackagesWithErrors())
-        .build();
+    result
+        .putAllSourceFiles(partialQuery.proto().getSourceFilesMap())
+        .putAllRules(partialQuery.proto().getRulesMap())
+        .addAllPackagesWithErrors(partialQuery.proto().getPackagesWithErrorsList());
+    return QuerySummary.create(result.build());
   }
 }
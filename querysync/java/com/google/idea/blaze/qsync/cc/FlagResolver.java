@@ -23,11 +23,16 @@ import com.google.idea.blaze.qsync.project.ProjectProto.CcCompilerFlag;
 import com.google.idea.blaze.qsync.project.ProjectProto.CcCompilerFlagSet;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * Resolves {@link CcCompilerFlag} proto messages into strings, resolving included paths as
  * necessary.
+ *
+ * <p>The same include directories are used by most flag sets, so whether each resolved path is a
+ * directory is only checked once per instance.
  */
 public class FlagResolver {
 
@@ -36,6 +41,8 @@ public class FlagResolver {
   private final ProjectPath.Resolver pathResolver;
   private final boolean filterMissingPaths;
   private int missingFlagDirs = 0;
+  private final Map<Path, Boolean> isDirectory = new HashMap<>();
+  private int directoryChecks = 0;
 
   public FlagResolver(ProjectPath.Resolver pathResolver) {
     this.pathResolver = pathResolver;
@@ -50,7 +57,8 @@ public class FlagResolver {
   private Optional<String> resolve(CcCompilerFlag flag) {
     if (flag.hasPath()) {
       Path resolved = pathResolver.resolve(ProjectPath.create(flag.getPath()));
-      if (!Files.isDirectory(resolved)) {
+      directoryChecks++;
+      if (!isDirectory.computeIfAbsent(resolved, Files::isDirectory)) {
         // TODO(mathewi) it's unclear if this is necessary, and if so, if this is the right layer to
         //   do it (maybe better in CcWorkspaceBuilder?)
         if (missingFlagDirs < MISSING_DIR_WARNING_LIMIT) {
@@ -79,4 +87,14 @@ public class FlagResolver {
     }
     return resolved;
   }
+
+  /** The number of times a flag's path has been checked to be a directory. */
+  public int getDirectoryChecks() {
+    return directoryChecks;
+  }
+
+  /** The number of distinct paths checked, each of which needed a file system call. */
+  public int getUniqueDirectoryChecks() {
+    return isDirectory.size();
+  }
 }
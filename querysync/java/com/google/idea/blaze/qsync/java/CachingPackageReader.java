@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link PackageReader} that only reads the files whose packages aren't in a {@link
+ * PackageCache}, and saves the cache after reading a batch of files.
+ */
+public class CachingPackageReader implements PackageReader {
+
+  private final Logger logger = Logger.getLogger(CachingPackageReader.class.getSimpleName());
+
+  private final PackageCache cache;
+  private final PackageReader reader;
+
+  public CachingPackageReader(PackageCache cache, PackageReader reader) {
+    this.cache = cache;
+    this.reader = reader;
+  }
+
+  @Override
+  public String readPackage(Path path) throws IOException {
+    Optional<BasicFileAttributes> attributes = PackageCache.readAttributes(path);
+    if (attributes.isPresent()) {
+      Optional<String> cached = cache.get(path, attributes.get());
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+    }
+    String packageName = reader.readPackage(path);
+    attributes.ifPresent(a -> cache.put(path, a, packageName));
+    return packageName;
+  }
+
+  @Override
+  public List<String> readPackages(List<Path> paths) throws IOException {
+    List<String> packages = new ArrayList<>(paths.size());
+    List<Integer> uncachedIndices = new ArrayList<>();
+    List<Path> uncached = new ArrayList<>();
+    List<Optional<BasicFileAttributes>> uncachedAttributes = new ArrayList<>();
+    for (Path path : paths) {
+      Optional<BasicFileAttributes> attributes = PackageCache.readAttributes(path);
+      Optional<String> cached = attributes.flatMap(a -> cache.get(path, a));
+      if (!cached.isPresent()) {
+        uncachedIndices.add(packages.size());
+        uncached.add(path);
+        uncachedAttributes.add(attributes);
+      }
+      packages.add(cached.orElse(null));
+    }
+
+    if (!uncached.isEmpty()) {
+      List<String> read = reader.readPackages(uncached);
+      for (int i = 0; i < uncached.size(); i++) {
+        String packageName = read.get(i);
+        packages.set(uncachedIndices.get(i), packageName);
+        Path path = uncached.get(i);
+        uncachedAttributes.get(i).ifPresent(a -> cache.put(path, a, packageName));
+      }
+    }
+    try {
+      cache.save();
+    } catch (IOException e) {
+      // The packages will just be read again next time.
+      logger.log(Level.WARNING, "Failed to save package cache", e);
+    }
+    return packages;
+  }
+}
@@ -15,14 +15,17 @@
  */
 package com.google.idea.blaze.qsync.java;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.AllowPackagePrefixes.ALLOW_NON_EMPTY_PACKAGE_PREFIXES;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.JarPath;
 import com.google.idea.blaze.qsync.project.ProjectPath;
 import com.google.idea.blaze.qsync.project.ProjectProto;
 import com.google.idea.blaze.qsync.project.ProjectProto.Project;
+import java.nio.file.Path;
 
 /** Updates project protos with a content entry for generated sources */
 public class GeneratedSourceProjectUpdater {
@@ -48,16 +51,27 @@ public class GeneratedSourceProjectUpdater {
   private final ProjectPath.Resolver resolver;
 
   private final SrcJarInnerPathFinder srcJarInnerPathFinder;
+  private final SrcJarInnerPathIndex srcJarInnerPathIndex;
 
   public GeneratedSourceProjectUpdater(
       Project project,
       ImmutableSet<ProjectPath> genSrcFileFolders,
       ImmutableSet<GeneratedSourceJar> genSrcJars,
       ProjectPath.Resolver resolver) {
+    this(project, genSrcFileFolders, genSrcJars, resolver, SrcJarInnerPathIndex.NONE);
+  }
+
+  public GeneratedSourceProjectUpdater(
+      Project project,
+      ImmutableSet<ProjectPath> genSrcFileFolders,
+      ImmutableSet<GeneratedSourceJar> genSrcJars,
+      ProjectPath.Resolver resolver,
+      SrcJarInnerPathIndex srcJarInnerPathIndex) {
     this.project = project;
     this.genSrcRoots = genSrcFileFolders;
     this.genSrcJars = genSrcJars;
     this.resolver = resolver;
+    this.srcJarInnerPathIndex = srcJarInnerPathIndex;
     srcJarInnerPathFinder =
         new SrcJarInnerPathFinder(new PackageStatementParser(), ALLOW_NON_EMPTY_PACKAGE_PREFIXES);
   }
@@ -86,11 +100,17 @@ public class GeneratedSourceProjectUpdater {
       workspaceModule.addContentEntries(genSourcesContentEntry);
     }
 
+    ImmutableMap<Path, ImmutableSet<JarPath>> innerPaths =
+        srcJarInnerPathIndex.findInnerJarPaths(
+            srcJarInnerPathFinder,
+            genSrcJars.stream()
+                .map(GeneratedSourceJar::path)
+                .map(resolver::resolve)
+                .collect(toImmutableList()));
     for (GeneratedSourceJar jar : genSrcJars) {
       ProjectProto.ContentEntry.Builder genSrcJarContentEntry =
           ProjectProto.ContentEntry.newBuilder().setRoot(jar.path().toProto());
-      for (JarPath innerPath :
-          srcJarInnerPathFinder.findInnerJarPaths(resolver.resolve(jar.path()).toFile())) {
+      for (JarPath innerPath : innerPaths.get(resolver.resolve(jar.path()))) {
         genSrcJarContentEntry.addSources(
             ProjectProto.SourceFolder.newBuilder()
                 .setProjectPath(jar.path().withInnerJarPath(innerPath.path).toProto())
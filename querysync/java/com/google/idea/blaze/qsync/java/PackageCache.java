@@ -0,0 +1,124 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+/**
+ * The packages declared by source files, keyed by absolute path and persisted across restarts.
+ *
+ * <p>An entry is only used while the size and modification time of its file are unchanged, so a
+ * resync which doesn't touch any sources can find every package without reading a source file.
+ * This is shared by query sync and aspect sync.
+ *
+ * <p>Only the entries which were looked up since the cache was loaded or last saved are saved, so
+ * files which are no longer part of the project are dropped.
+ */
+public final class PackageCache {
+
+  /** The name of the cache file within the project data directory. */
+  public static final String FILE_NAME = "java_packages.cache";
+
+  private static final int MAGIC = 0x4a504b47;
+  private static final int VERSION = 1;
+
+  private static final PersistedEntries.Codec<Entry> CODEC =
+      new PersistedEntries.Codec<Entry>() {
+        @Override
+        public void write(DataOutput out, Entry entry) throws IOException {
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+          out.writeUTF(entry.packageName);
+        }
+
+        @Override
+        public Entry read(DataInput in) throws IOException {
+          return new Entry(in.readLong(), in.readLong(), in.readUTF());
+        }
+      };
+
+  private final PersistedEntries<Entry> entries;
+
+  private PackageCache(PersistedEntries<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /** Reads the cache saved to {@code file}, or returns an empty cache if it can't be read. */
+  public static PackageCache load(Path file) {
+    return new PackageCache(PersistedEntries.load(file, MAGIC, VERSION, CODEC));
+  }
+
+  /**
+   * Returns the cached package of {@code path}, if the file hasn't changed since it was cached.
+   *
+   * @param attributes the current attributes of the file
+   */
+  public Optional<String> get(Path path, BasicFileAttributes attributes) {
+    Entry entry = entries.get(path.toAbsolutePath().toString(), e -> e.matches(attributes));
+    return entry == null ? Optional.empty() : Optional.of(entry.packageName);
+  }
+
+  /**
+   * Records the package of {@code path}.
+   *
+   * @param attributes the attributes of the file as of before its package was read, so that a
+   *     concurrent modification causes the package to be read again next time
+   */
+  public void put(Path path, BasicFileAttributes attributes, String packageName) {
+    entries.put(
+        path.toAbsolutePath().toString(),
+        new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), packageName));
+  }
+
+  /** Returns the attributes of {@code path}, or empty if it can't be read. */
+  public static Optional<BasicFileAttributes> readAttributes(Path path) {
+    try {
+      return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+    } catch (IOException | UnsupportedOperationException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes the entries used since the cache was loaded or last saved to disk, if any of them are
+   * new or any other entries weren't used.
+   */
+  public void save() throws IOException {
+    entries.save();
+  }
+
+  private static final class Entry {
+    final long size;
+    final long lastModified;
+    final String packageName;
+
+    Entry(long size, long lastModified, String packageName) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.packageName = packageName;
+    }
+
+    boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+    }
+  }
+}
@@ -17,21 +17,25 @@ package com.google.idea.blaze.qsync.java;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-/** Package reader that parses package statements from java source files. */
+/**
+ * Package reader that parses package statements from java and kotlin source files.
+ *
+ * <p>The package statement must be the first declaration in the file, so rather than reading
+ * whole lines and matching them against a pattern, the bytes at the start of the file are scanned
+ * directly: leading comments, a shebang line and file annotations are skipped, and reading stops
+ * as soon as the package name (or any other declaration) has been found. Usually only the first
+ * buffer of the file is read.
+ */
 public class PackageStatementParser implements PackageReader {
 
-  private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w\\.]+)");
-  private static final Pattern SINGLE_LINE_PACKAGE_PATTERN =
-      Pattern.compile("\\bpackage\\s+([^;]+);");
+  private static final int BUFFER_SIZE = 4096;
+  private static final byte[] PACKAGE_KEYWORD = "package".getBytes(UTF_8);
 
   @Override
   public String readPackage(Path path) throws IOException {
@@ -40,28 +44,197 @@ public class PackageStatementParser implements PackageReader {
     }
   }
 
+  /** Returns the declared package, or an empty string if the source is in the default package. */
   public String readPackage(InputStream in) throws IOException {
-    BufferedReader javaReader = new BufferedReader(new InputStreamReader(in, UTF_8));
-    String firstLine = null;
-    String javaLine;
-    int linesRead = 0;
-    while ((javaLine = javaReader.readLine()) != null) {
-      if (firstLine == null) {
-        firstLine = javaLine;
+    return new Scanner(in).readPackage();
+  }
+
+  /** Scans the tokens at the start of a source file. Returns -1 from the read methods at EOF. */
+  private static final class Scanner {
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    Scanner(InputStream in) {
+      this.in = in;
+    }
+
+    String readPackage() throws IOException {
+      skipByteOrderMark();
+      if (peek() == '#' && peek(1) == '!') {
+        skipLine();
       }
-      linesRead++;
-      Matcher packageMatch = PACKAGE_PATTERN.matcher(javaLine);
-      if (packageMatch.find()) {
-        return packageMatch.group(1);
+      while (true) {
+        skipWhitespaceAndComments();
+        int c = peek();
+        if (c == '@') {
+          next();
+          skipAnnotation();
+        } else if (c == ';') {
+          next();
+        } else if (isKeyword(PACKAGE_KEYWORD)) {
+          position += PACKAGE_KEYWORD.length;
+          skipWhitespaceAndComments();
+          return readQualifiedName();
+        } else {
+          // The first declaration isn't a package statement, or this isn't a source file at all.
+          return "";
+        }
       }
     }
-    // A special case for generated sources files with no newlines in them:
-    if (linesRead == 1) {
-      Matcher packageMatch = SINGLE_LINE_PACKAGE_PATTERN.matcher(firstLine);
-      if (packageMatch.find()) {
-        return packageMatch.group(1);
+
+    private void skipByteOrderMark() throws IOException {
+      if (peek() == 0xef && peek(1) == 0xbb && peek(2) == 0xbf) {
+        position += 3;
+      }
+    }
+
+    private void skipLine() throws IOException {
+      int c;
+      do {
+        c = next();
+      } while (c != -1 && c != '\n');
+    }
+
+    private void skipWhitespaceAndComments() throws IOException {
+      while (true) {
+        int c = peek();
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+          next();
+        } else if (c == '/' && peek(1) == '/') {
+          skipLine();
+        } else if (c == '/' && peek(1) == '*') {
+          position += 2;
+          int previous = 0;
+          while ((c = next()) != -1 && !(previous == '*' && c == '/')) {
+            previous = c;
+          }
+        } else {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Skips the annotation following an {@code @}, including a kotlin use-site target such as
+     * {@code @file:JvmName("Name")} and any bracketed arguments.
+     */
+    private void skipAnnotation() throws IOException {
+      skipWhitespaceAndComments();
+      readQualifiedName();
+      skipWhitespaceAndComments();
+      if (peek() == ':') {
+        next();
+        skipWhitespaceAndComments();
+        if (peek() == '[') {
+          skipBracketed();
+          return;
+        }
+        readQualifiedName();
+        skipWhitespaceAndComments();
+      }
+      if (peek() == '(') {
+        skipBracketed();
+      }
+    }
+
+    /** Skips a bracketed expression, including any nested brackets, strings and comments. */
+    private void skipBracketed() throws IOException {
+      int depth = 0;
+      do {
+        skipWhitespaceAndComments();
+        int c = next();
+        if (c == -1) {
+          return;
+        } else if (c == '(' || c == '[' || c == '{') {
+          depth++;
+        } else if (c == ')' || c == ']' || c == '}') {
+          depth--;
+        } else if (c == '"' || c == '\'') {
+          skipQuoted(c);
+        }
+      } while (depth > 0);
+    }
+
+    private void skipQuoted(int quote) throws IOException {
+      int c;
+      while ((c = next()) != -1 && c != quote) {
+        if (c == '\\') {
+          next();
+        }
+      }
+    }
+
+    /** Reads identifiers separated by dots, which may be surrounded by whitespace. */
+    private String readQualifiedName() throws IOException {
+      ByteArrayOutputStream name = new ByteArrayOutputStream();
+      while (readIdentifier(name)) {
+        skipWhitespaceAndComments();
+        if (peek() != '.') {
+          break;
+        }
+        name.write(next());
+        skipWhitespaceAndComments();
+      }
+      return name.toString(UTF_8.name());
+    }
+
+    private boolean readIdentifier(ByteArrayOutputStream out) throws IOException {
+      boolean read = false;
+      while (isIdentifierByte(peek())) {
+        out.write(next());
+        read = true;
+      }
+      return read;
+    }
+
+    private boolean isKeyword(byte[] keyword) throws IOException {
+      for (int i = 0; i < keyword.length; i++) {
+        if (peek(i) != keyword[i]) {
+          return false;
+        }
+      }
+      return !isIdentifierByte(peek(keyword.length));
+    }
+
+    private static boolean isIdentifierByte(int c) {
+      // Bytes of non-ascii characters are all >= 0x80.
+      return (c >= 'a' && c <= 'z')
+          || (c >= 'A' && c <= 'Z')
+          || (c >= '0' && c <= '9')
+          || c == '_'
+          || c == '$'
+          || c >= 0x80;
+    }
+
+    private int next() throws IOException {
+      int c = peek();
+      if (c != -1) {
+        position++;
+      }
+      return c;
+    }
+
+    private int peek() throws IOException {
+      return peek(0);
+    }
+
+    /** Returns the byte {@code offset} bytes ahead, reading more of the stream if necessary. */
+    private int peek(int offset) throws IOException {
+      while (position + offset >= limit) {
+        if (position > 0) {
+          System.arraycopy(buffer, position, buffer, 0, limit - position);
+          limit -= position;
+          position = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+          return -1;
+        }
+        limit += read;
       }
+      return buffer[position + offset] & 0xff;
     }
-    return "";
   }
 }
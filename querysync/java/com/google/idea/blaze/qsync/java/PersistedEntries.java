@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Values keyed by string, persisted to a file across restarts.
+ *
+ * <p>Only the entries which were looked up or put since the file was loaded or last saved are
+ * saved again, so entries which are no longer needed are dropped. The file is only rewritten when
+ * that changes its contents.
+ */
+final class PersistedEntries<V> {
+
+  /** Writes and reads the values of the entries. */
+  interface Codec<V> {
+    void write(DataOutput out, V value) throws IOException;
+
+    V read(DataInput in) throws IOException;
+  }
+
+  private static final Logger logger = Logger.getLogger(PersistedEntries.class.getSimpleName());
+
+  private final Path file;
+  private final int magic;
+  private final int version;
+  private final Codec<V> codec;
+  /** The entries in the file, as of when it was loaded or last saved. */
+  private volatile ImmutableMap<String, V> saved;
+
+  private final Map<String, V> used = new ConcurrentHashMap<>();
+  private final AtomicBoolean modified = new AtomicBoolean();
+
+  private PersistedEntries(
+      Path file, int magic, int version, Codec<V> codec, ImmutableMap<String, V> saved) {
+    this.file = file;
+    this.magic = magic;
+    this.version = version;
+    this.codec = codec;
+    this.saved = saved;
+  }
+
+  /**
+   * Reads the entries saved to {@code file}, or returns no entries if it can't be read.
+   *
+   * @param magic identifies the kind of file, and is written before its entries
+   * @param version the version of the format of the file, incremented whenever the codec changes
+   */
+  static <V> PersistedEntries<V> load(Path file, int magic, int version, Codec<V> codec) {
+    ImmutableMap.Builder<String, V> entries = ImmutableMap.builder();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        throw new IOException("Unrecognized format");
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        entries.put(in.readUTF(), codec.read(in));
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing has been saved yet.
+      entries = ImmutableMap.builder();
+    } catch (IOException e) {
+      logger.log(Level.INFO, "Ignoring unreadable file " + file, e);
+      entries = ImmutableMap.builder();
+    }
+    return new PersistedEntries<>(file, magic, version, codec, entries.buildKeepingLast());
+  }
+
+  /** Returns the value of {@code key}, or null if there isn't one. */
+  @Nullable
+  V get(String key) {
+    return get(key, value -> true);
+  }
+
+  /**
+   * Returns the value of {@code key}, or null if there isn't one or it isn't current. Values
+   * which aren't current are not kept when the entries are next saved, unless they're replaced.
+   */
+  @Nullable
+  V get(String key, Predicate<? super V> isCurrent) {
+    V value = used.get(key);
+    if (value == null) {
+      value = saved.get(key);
+    }
+    if (value == null || !isCurrent.test(value)) {
+      return null;
+    }
+    used.putIfAbsent(key, value);
+    return value;
+  }
+
+  void put(String key, V value) {
+    used.put(key, value);
+    modified.set(true);
+  }
+
+  /**
+   * Writes the entries used since the file was loaded or last saved to disk, if any of them are
+   * new or any other entries weren't used, and starts recording the entries used afresh.
+   */
+  void save() throws IOException {
+    boolean wasModified = modified.getAndSet(false);
+    ImmutableMap<String, V> snapshot = ImmutableMap.copyOf(used);
+    // Only forget the entries in the snapshot, in case others are being used concurrently.
+    snapshot.forEach(used::remove);
+    if (!wasModified && snapshot.size() == saved.size()) {
+      return;
+    }
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, V> entry : snapshot.entrySet()) {
+          out.writeUTF(entry.getKey());
+          codec.write(out, entry.getValue());
+        }
+      }
+      Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      // Entries used since the snapshot are kept, so only the snapshot needs restoring.
+      snapshot.forEach(used::putIfAbsent);
+      modified.set(true);
+      throw e;
+    }
+    saved = snapshot;
+  }
+}
@@ -17,16 +17,14 @@ package com.google.idea.blaze.qsync.java;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.idea.blaze.common.zip.ZipCentralDirectory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.Enumeration;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /** Utility for finding inner paths of a source jar corresponding to package roots */
 public class SrcJarInnerPathFinder {
@@ -71,26 +69,26 @@ public class SrcJarInnerPathFinder {
     this.allowPackagePrefixes = allowPackagePrefixes;
   }
 
+  AllowPackagePrefixes getAllowPackagePrefixes() {
+    return allowPackagePrefixes;
+  }
+
   public ImmutableSet<JarPath> findInnerJarPaths(File jarFile) {
     Set<JarPath> paths = Sets.newHashSet();
-    try {
-      ZipFile zip = new ZipFile(jarFile);
-      Enumeration<? extends ZipEntry> entries = zip.entries();
+    // Only the central directory is read, and only the first source under each top level directory
+    // is inflated.
+    try (ZipCentralDirectory zip = ZipCentralDirectory.open(jarFile.toPath())) {
+      ZipCentralDirectory.Cursor e = zip.cursor();
       Set<Path> topLevelPaths = Sets.newHashSet();
-      while (entries.hasMoreElements()) {
-        ZipEntry e = entries.nextElement();
-        if (e.isDirectory()) {
-          continue;
-        }
-        Path zipfilePath = Path.of(e.getName());
-        if (!(zipfilePath.getFileName().toString().endsWith(".java")
-            || zipfilePath.getFileName().toString().endsWith(".kt"))) {
+      while (e.next()) {
+        if (e.isDirectory() || !(e.nameEndsWith(".java") || e.nameEndsWith(".kt"))) {
           continue;
         }
+        Path zipfilePath = Path.of(e.name());
         if (!topLevelPaths.add(zipfilePath.getName(0))) {
           continue;
         }
-        try (InputStream in = zip.getInputStream(e)) {
+        try (InputStream in = e.openStream()) {
           String pname = packageStatementParser.readPackage(in);
           Path packageAsPath = Path.of(pname.replace('.', '/'));
           Path zipPath = zipfilePath.getParent();
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.JarPath;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+
+/**
+ * The inner paths of source jars found by {@link SrcJarInnerPathFinder}, keyed by the digest of
+ * each jar and persisted across restarts.
+ *
+ * <p>Only jars with a digest which isn't in the index are examined, in parallel. Jars with no
+ * known digest, such as those checked in to the workspace, are keyed by their path, size and
+ * modification time instead.
+ *
+ * <p>Only the entries which were looked up since the index was last saved are saved again, so
+ * entries for jars which are no longer part of the project are dropped.
+ */
+public class SrcJarInnerPathIndex {
+
+  /** Looks up the digest of a jar, if it's known without reading the jar. */
+  public interface DigestLookup {
+    Optional<String> getDigest(Path jar);
+  }
+
+  /** An index which doesn't index anything, and examines every jar on the calling thread. */
+  public static final SrcJarInnerPathIndex NONE =
+      new SrcJarInnerPathIndex(
+          null, MoreExecutors.newDirectExecutorService(), jar -> Optional.empty());
+
+  private static final int MAGIC = 0x534a4950;
+  private static final int VERSION = 1;
+
+  private static final PersistedEntries.Codec<ImmutableSet<JarPath>> CODEC =
+      new PersistedEntries.Codec<ImmutableSet<JarPath>>() {
+        @Override
+        public void write(DataOutput out, ImmutableSet<JarPath> paths) throws IOException {
+          out.writeInt(paths.size());
+          for (JarPath path : paths) {
+            out.writeUTF(path.path.toString());
+            out.writeUTF(path.packagePrefix);
+          }
+        }
+
+        @Override
+        public ImmutableSet<JarPath> read(DataInput in) throws IOException {
+          int count = in.readInt();
+          ImmutableSet.Builder<JarPath> paths = ImmutableSet.builder();
+          for (int i = 0; i < count; i++) {
+            paths.add(JarPath.create(in.readUTF(), in.readUTF()));
+          }
+          return paths.build();
+        }
+      };
+
+  /** The indexed jars, or null if nothing is indexed. */
+  @Nullable private final PersistedEntries<ImmutableSet<JarPath>> entries;
+
+  private final ListeningExecutorService executor;
+  private final DigestLookup digests;
+
+  private SrcJarInnerPathIndex(
+      @Nullable PersistedEntries<ImmutableSet<JarPath>> entries,
+      ListeningExecutorService executor,
+      DigestLookup digests) {
+    this.entries = entries;
+    this.executor = executor;
+    this.digests = digests;
+  }
+
+  /**
+   * Reads the index saved to {@code file}, or returns an empty index if it can't be read.
+   *
+   * @param executor the executor to examine new jars on
+   */
+  public static SrcJarInnerPathIndex load(
+      Path file, ListeningExecutorService executor, DigestLookup digests) {
+    return new SrcJarInnerPathIndex(
+        PersistedEntries.load(file, MAGIC, VERSION, CODEC), executor, digests);
+  }
+
+  /**
+   * Returns the inner paths of each of {@code jars}, as found by {@code finder}. Jars which aren't
+   * in the index yet are examined in parallel.
+   */
+  public ImmutableMap<Path, ImmutableSet<JarPath>> findInnerJarPaths(
+      SrcJarInnerPathFinder finder, Collection<Path> jars) {
+    Map<Path, ImmutableSet<JarPath>> found = new LinkedHashMap<>();
+    Map<Path, ListenableFuture<ImmutableSet<JarPath>>> pending = new LinkedHashMap<>();
+    for (Path jar : jars) {
+      Optional<String> key = keyFor(finder, jar);
+      ImmutableSet<JarPath> indexed = key.map(k -> entries.get(k)).orElse(null);
+      if (indexed != null) {
+        found.put(jar, indexed);
+        continue;
+      }
+      pending.put(
+          jar,
+          executor.submit(
+              () -> {
+                ImmutableSet<JarPath> paths = finder.findInnerJarPaths(jar.toFile());
+                key.ifPresent(k -> entries.put(k, paths));
+                return paths;
+              }));
+    }
+    if (!pending.isEmpty()) {
+      List<ImmutableSet<JarPath>> examined;
+      try {
+        examined =
+            Uninterruptibles.getUninterruptibly(
+                Futures.allAsList(ImmutableList.copyOf(pending.values())));
+      } catch (ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IllegalStateException(e.getCause());
+      }
+      int i = 0;
+      for (Path jar : pending.keySet()) {
+        found.put(jar, examined.get(i++));
+      }
+    }
+    ImmutableMap.Builder<Path, ImmutableSet<JarPath>> result = ImmutableMap.builder();
+    for (Path jar : jars) {
+      result.put(jar, found.get(jar));
+    }
+    return result.buildKeepingLast();
+  }
+
+  /**
+   * Returns the key of {@code jar} for {@code finder}, or empty if the jar can't be identified
+   * without reading it.
+   */
+  private Optional<String> keyFor(SrcJarInnerPathFinder finder, Path jar) {
+    if (entries == null) {
+      // Nothing is indexed.
+      return Optional.empty();
+    }
+    String mode = finder.getAllowPackagePrefixes().name();
+    Optional<String> digest = digests.getDigest(jar).filter(d -> !Strings.isNullOrEmpty(d));
+    if (digest.isPresent()) {
+      return Optional.of(mode + ":digest:" + digest.get());
+    }
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+      return Optional.of(
+          String.format(
+              "%s:file:%s:%d:%d",
+              mode,
+              jar.toAbsolutePath(),
+              attributes.size(),
+              attributes.lastModifiedTime().toMillis()));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes the entries used since the index was loaded or last saved to disk, if any of them are
+   * new or any other entries weren't used.
+   */
+  public void save() throws IOException {
+    if (entries != null) {
+      entries.save();
+    }
+  }
+}
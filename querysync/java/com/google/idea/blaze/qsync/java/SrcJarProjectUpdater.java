@@ -20,7 +20,9 @@ import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.AllowPackagePrefixes.EMPTY_PACKAGE_PREFIXES_ONLY;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.JarPath;
 import com.google.idea.blaze.qsync.project.ProjectPath;
 import com.google.idea.blaze.qsync.project.ProjectProto;
 import com.google.idea.blaze.qsync.project.ProjectProto.Library;
@@ -36,14 +38,24 @@ public class SrcJarProjectUpdater {
   private final Collection<ProjectPath> srcJars;
   private final ProjectPath.Resolver resolver;
   private final SrcJarInnerPathFinder srcJarInnerPathFinder;
+  private final SrcJarInnerPathIndex srcJarInnerPathIndex;
 
   public SrcJarProjectUpdater(
       ProjectProto.Project project,
       Collection<ProjectPath> srcJars,
       ProjectPath.Resolver resolver) {
+    this(project, srcJars, resolver, SrcJarInnerPathIndex.NONE);
+  }
+
+  public SrcJarProjectUpdater(
+      ProjectProto.Project project,
+      Collection<ProjectPath> srcJars,
+      ProjectPath.Resolver resolver,
+      SrcJarInnerPathIndex srcJarInnerPathIndex) {
     this.project = project;
     this.srcJars = srcJars;
     this.resolver = resolver;
+    this.srcJarInnerPathIndex = srcJarInnerPathIndex;
     // Require empty package prefixes for srcjar inner paths, since the ultimate consumer of these
     // paths does not support setting a package prefix (see `Library.ModifiableModel.addRoot`).
     srcJarInnerPathFinder =
@@ -102,10 +114,14 @@ public class SrcJarProjectUpdater {
    * root within that jar file, if necessary.
    */
   private ImmutableList<ProjectPath> resolveSrcJarInnerPaths(Collection<ProjectPath> srcJars) {
+    ImmutableMap<Path, ImmutableSet<JarPath>> innerPaths =
+        srcJarInnerPathIndex.findInnerJarPaths(
+            srcJarInnerPathFinder,
+            srcJars.stream().map(resolver::resolve).collect(toImmutableList()));
     ImmutableList.Builder<ProjectPath> newSrcJars = ImmutableList.builder();
     for (ProjectPath srcJar : srcJars) {
       Path jarFile = resolver.resolve(srcJar);
-      srcJarInnerPathFinder.findInnerJarPaths(jarFile.toFile()).stream()
+      innerPaths.get(jarFile).stream()
           .map(p -> p.path)
           .map(srcJar::withInnerJarPath)
           .forEach(newSrcJars::add);
@@ -30,10 +30,9 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Queues;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.idea.blaze.common.Context;
 import com.google.idea.blaze.common.Label;
@@ -47,11 +46,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -84,21 +81,12 @@ public abstract class BuildGraphData {
   public abstract ImmutableMap<Label, ProjectTarget> targetMap();
 
   /**
-   * All in-project targets with a direct compile or runtime dependency on a specified target, which
-   * may be external.
+   * The dependency edges of this graph in compact form. This is used for all graph walks, in place
+   * of the {@link ProjectTarget#deps()} of the targets in {@link #targetMap()}.
    */
   @Memoized
-  ImmutableMultimap<Label, Label> reverseDeps() {
-    ImmutableMultimap.Builder<Label, Label> map = ImmutableMultimap.builder();
-    for (ProjectTarget t : targetMap().values()) {
-      for (Label dep : t.deps()) {
-        map.put(dep, t.label());
-      }
-      for (Label runtimeDep : t.runtimeDeps()) {
-        map.put(runtimeDep, t.label());
-      }
-    }
-    return map.build();
+  public IndexedBuildGraph indexedGraph() {
+    return IndexedBuildGraph.create(targetMap(), projectDeps());
   }
 
   /**
@@ -106,7 +94,7 @@ public abstract class BuildGraphData {
    * themselves).
    */
   public ImmutableSet<Label> getSameLanguageTargetsDependingOn(Set<Label> targets) {
-    ImmutableMultimap<Label, Label> rdeps = reverseDeps();
+    IndexedBuildGraph graph = indexedGraph();
     ImmutableSet.Builder<Label> directRdeps = ImmutableSet.builder();
     directRdeps.addAll(targets);
     for (Label target : targets) {
@@ -114,7 +102,7 @@ public abstract class BuildGraphData {
       // filter the rdeps based on the languages, removing those that don't have a common
       // language. This ensures we don't follow reverse deps of (e.g.) a java target depending on
       // a cc target.
-      rdeps.get(target).stream()
+      graph.getDirectReverseDeps(target).stream()
           .filter(d -> !Collections.disjoint(targetMap().get(d).languages(), targetLanguages))
           .forEach(directRdeps::add);
     }
@@ -136,17 +124,7 @@ public abstract class BuildGraphData {
       return ImmutableList.of();
     }
 
-    Queue<Label> toVisit = Queues.newArrayDeque(targetOwners);
-    Set<Label> visited = Sets.newHashSet();
-
-    while (!toVisit.isEmpty()) {
-      Label next = toVisit.remove();
-      if (visited.add(next)) {
-        toVisit.addAll(reverseDeps().get(next));
-      }
-    }
-
-    return visited.stream()
+    return indexedGraph().getTransitiveReverseDeps(targetOwners).stream()
         .map(label -> targetMap().get(label))
         .filter(Objects::nonNull)
         .collect(toImmutableList());
@@ -207,7 +185,7 @@ public abstract class BuildGraphData {
       // these are memoized, but we choose to pay the cost of building it now so that it's done at
       // sync time rather than later on.
       ImmutableSetMultimap<Label, Label> unused = result.sourceOwners();
-      ImmutableMultimap<Label, Label> unused2 = result.reverseDeps();
+      IndexedBuildGraph unused2 = result.indexedGraph();
       return result;
     }
   }
@@ -239,35 +217,25 @@ public abstract class BuildGraphData {
 
   private final LoadingCache<Label, ImmutableSet<Label>> transitiveDeps =
       CacheBuilder.newBuilder()
-          .build(CacheLoader.from(this::calculateTransitiveExternalDependencies));
+          .build(CacheLoader.from(t -> indexedGraph().getTransitiveExternalDependencies(t)));
 
   public ImmutableSet<Label> getTransitiveExternalDependencies(Label target) {
     return transitiveDeps.getUnchecked(target);
   }
 
-  private ImmutableSet<Label> calculateTransitiveExternalDependencies(Label target) {
-    ImmutableSet.Builder<Label> builder = ImmutableSet.builder();
-
-    // Targets with cyclic dependencies will not build, but the query does not check for cycles
-    Set<Label> visited = Sets.newHashSet();
-    Deque<Label> toVisit = Queues.newArrayDeque();
-    toVisit.add(target);
-
-    while (!toVisit.isEmpty()) {
-      Label nextLabel = toVisit.poll();
-      if (visited.add(nextLabel)) {
-        // targetMap only contains in-project target labels.
-        if (!targetMap().containsKey(nextLabel)) {
-          builder.add(nextLabel);
-        } else {
-          if (projectDeps().contains(nextLabel)) {
-            builder.add(nextLabel);
-          }
-          toVisit.addAll(targetMap().get(nextLabel).deps());
-        }
-      }
+  /**
+   * Below this many targets, transitive external dependencies are found one target at a time so
+   * that the cached results are used. The single pass calculation allocates state for the whole
+   * graph on each call, so it only pays off for bulk requests.
+   */
+  private static final int MIN_TARGETS_TO_BATCH = 16;
+
+  private ImmutableMap<Label, ImmutableSet<Label>> transitiveExternalDependencies(
+      ImmutableSet<Label> targets) {
+    if (targets.size() < MIN_TARGETS_TO_BATCH) {
+      return Maps.toMap(targets, this::getTransitiveExternalDependencies);
     }
-    return Sets.intersection(builder.build(), projectDeps()).immutableCopy();
+    return indexedGraph().getTransitiveExternalDependencies(targets);
   }
 
   @Memoized
@@ -463,6 +431,42 @@ public abstract class BuildGraphData {
     return deps.build();
   }
 
+  /**
+   * Calculates {@link #getExternalDepsToBuildFor(Label)} for each of a set of project targets.
+   *
+   * <p>When there are many targets, their transitive external dependencies are calculated together
+   * in a single pass over the graph, which is much cheaper than calculating them one target at a
+   * time. A few targets, such as the owners of a single file, are looked up one at a time.
+   */
+  public ImmutableMap<Label, ImmutableSet<Label>> getExternalDepsToBuildFor(
+      Collection<Label> projectTargets) {
+    ImmutableMap<Label, ImmutableSet<Label>> transitiveExternalDeps =
+        transitiveExternalDependencies(
+            projectTargets.stream()
+                .filter(
+                    t ->
+                        getDependencyTrackingBehaviors(t)
+                            .contains(DependencyTrackingBehavior.EXTERNAL_DEPENDENCIES))
+                .collect(toImmutableSet()));
+
+    ImmutableMap.Builder<Label, ImmutableSet<Label>> result = ImmutableMap.builder();
+    for (Label projectTarget : ImmutableSet.copyOf(projectTargets)) {
+      ImmutableSet.Builder<Label> deps = ImmutableSet.builder();
+      for (DependencyTrackingBehavior behavior : getDependencyTrackingBehaviors(projectTarget)) {
+        switch (behavior) {
+          case EXTERNAL_DEPENDENCIES:
+            deps.addAll(transitiveExternalDeps.get(projectTarget));
+            break;
+          case SELF:
+            deps.add(projectTarget);
+            break;
+        }
+      }
+      result.put(projectTarget, deps.build());
+    }
+    return result.buildOrThrow();
+  }
+
   /**
    * Returns the set of {@link ProjectTarget#languages() target languages} for a set of project
    * targets.
@@ -484,12 +488,16 @@ public abstract class BuildGraphData {
    */
   public Optional<RequestedTargets> computeRequestedTargets(Set<Label> projectTargets) {
     ImmutableSet<Label> externalDeps =
-        projectTargets.stream()
-            .filter(
-                t ->
-                    getDependencyTrackingBehaviors(t).stream()
-                        .anyMatch(b -> b.shouldIncludeExternalDependencies))
-            .flatMap(t -> getTransitiveExternalDependencies(t).stream())
+        transitiveExternalDependencies(
+                projectTargets.stream()
+                    .filter(
+                        t ->
+                            getDependencyTrackingBehaviors(t).stream()
+                                .anyMatch(b -> b.shouldIncludeExternalDependencies))
+                    .collect(toImmutableSet()))
+            .values()
+            .stream()
+            .flatMap(Set::stream)
             .collect(toImmutableSet());
 
     return Optional.of(new RequestedTargets(ImmutableSet.copyOf(projectTargets), externalDeps));
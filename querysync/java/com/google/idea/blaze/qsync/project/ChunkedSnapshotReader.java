@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.idea.blaze.common.Context;
+import com.google.idea.blaze.qsync.query.Query;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistry;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Reads a snapshot written by {@link ChunkedSnapshotWriter}.
+ *
+ * <p>Only the header and the index of the chunks are read when the snapshot is opened. {@link
+ * #readPackage(Path)} reads and decodes just the chunk of a single package. {@link
+ * #readSyncData(Context)} streams through every chunk in a single pass, without the decompression
+ * needed for the format written by {@link SnapshotSerializer}. This is what project load uses,
+ * since the build graph is derived from the whole query summary.
+ *
+ * <p>The file is only open while it is being read, and is not memory mapped, since on Windows an
+ * open file would prevent the next snapshot from being written in its place.
+ *
+ * <p>This class is thread safe.
+ */
+public class ChunkedSnapshotReader {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path file;
+  private final SnapshotProto.Snapshot header;
+  private final ImmutableMap<String, SnapshotProto.SummaryChunk> chunkIndex;
+  // The offset of the first chunk in the file.
+  private final long chunksStart;
+  private final Map<String, Query.Summary> decodedChunks = new ConcurrentHashMap<>();
+
+  private ChunkedSnapshotReader(Path file, SnapshotProto.Snapshot header, long chunksStart) {
+    this.file = file;
+    this.header = header;
+    this.chunkIndex =
+        header.getQuerySummaryChunksList().stream()
+            .collect(toImmutableMap(SnapshotProto.SummaryChunk::getPackage, Function.identity()));
+    this.chunksStart = chunksStart;
+  }
+
+  public static ChunkedSnapshotReader open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer prefix = read(channel, 0, 8);
+      if (prefix.limit() < 8 || prefix.getInt(0) != ChunkedSnapshotWriter.MAGIC) {
+        throw new IOException("Not a chunked snapshot file: " + file);
+      }
+      int headerLength = prefix.getInt(4);
+      ByteBuffer headerBytes = read(channel, 8, headerLength);
+      if (headerLength < 0 || headerBytes.limit() < headerLength) {
+        throw new IOException("Truncated chunked snapshot file: " + file);
+      }
+      SnapshotProto.Snapshot header =
+          SnapshotProto.Snapshot.parseFrom(headerBytes, ExtensionRegistry.getEmptyRegistry());
+      return new ChunkedSnapshotReader(file, header, 8L + headerLength);
+    }
+  }
+
+  /** Returns the workspace relative paths of all build packages in the snapshot. */
+  public ImmutableSet<String> packages() {
+    return chunkIndex.keySet();
+  }
+
+  /**
+   * Returns the rules and source files of a single build package, reading and decoding them on
+   * first access. This is cheaper than {@link #readSyncData(Context)} for tools that only need a
+   * few packages.
+   */
+  public Optional<Query.Summary> readPackage(Path buildPackage) throws IOException {
+    SnapshotProto.SummaryChunk chunk = chunkIndex.get(buildPackage.toString());
+    if (chunk == null) {
+      return Optional.empty();
+    }
+    Query.Summary decoded = decodedChunks.get(chunk.getPackage());
+    if (decoded == null) {
+      ByteBuffer bytes;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        bytes = read(channel, chunksStart + chunk.getOffset(), chunk.getLength());
+      }
+      if (bytes.limit() < chunk.getLength()) {
+        throw new IOException("Truncated chunked snapshot file: " + file);
+      }
+      decoded = Query.Summary.parseFrom(bytes, ExtensionRegistry.getEmptyRegistry());
+      decodedChunks.putIfAbsent(chunk.getPackage(), decoded);
+    }
+    return Optional.of(decoded);
+  }
+
+  /**
+   * Reads the entire snapshot. Returns empty if it was written by an incompatible version of the
+   * IDE.
+   */
+  public Optional<PostQuerySyncData> readSyncData(Context<?> context) throws IOException {
+    Query.Summary.Builder summary = header.getQuerySummary().toBuilder();
+    try (InputStream in = Files.newInputStream(file)) {
+      ByteStreams.skipFully(in, chunksStart);
+      CodedInputStream input = CodedInputStream.newInstance(in, BUFFER_SIZE);
+      long offset = 0;
+      // The chunks are written back to back in the order of the index. Each is a serialized
+      // summary, so parsing them into the same builder merges them all together.
+      for (SnapshotProto.SummaryChunk chunk : header.getQuerySummaryChunksList()) {
+        if (chunk.getOffset() != offset) {
+          throw new IOException("Unexpected chunk offset in " + file);
+        }
+        int oldLimit = input.pushLimit(chunk.getLength());
+        summary.mergeFrom(input, ExtensionRegistry.getEmptyRegistry());
+        input.checkLastTagWas(0);
+        input.popLimit(oldLimit);
+        // The size limit applies to everything read from the stream, not to each chunk.
+        input.resetSizeCounter();
+        offset += chunk.getLength();
+      }
+    }
+    return new SnapshotDeserializer()
+        .readFrom(
+            header.toBuilder().clearQuerySummaryChunks().setQuerySummary(summary).build(),
+            context)
+        .map(SnapshotDeserializer::getSyncData);
+  }
+
+  /**
+   * Reads {@code length} bytes of {@code channel} from {@code position}, or fewer if the end of
+   * the file is reached first.
+   */
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Math.max(length, 0));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+    return buffer.flip();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import com.google.idea.blaze.qsync.query.Query;
+import com.google.idea.blaze.qsync.query.QuerySummary;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes a {@link PostQuerySyncData} in the chunked snapshot format, which can be read lazily by
+ * {@link ChunkedSnapshotReader}.
+ *
+ * <p>The file consists of:
+ *
+ * <ul>
+ *   <li>A 4 byte magic number, {@link #MAGIC}.
+ *   <li>The 4 byte length of the header.
+ *   <li>The header: a {@link SnapshotProto.Snapshot} containing everything apart from the rules and
+ *       source files of the query summary, and an index of the chunks that follow.
+ *   <li>One {@link Query.Summary} chunk for each build package, containing the rules and source
+ *       files in that package, sorted by package.
+ * </ul>
+ *
+ * <p>Unlike the format written by {@link SnapshotSerializer}, the file is not compressed, so that
+ * it can be parsed straight from its contents.
+ */
+public class ChunkedSnapshotWriter {
+
+  static final int MAGIC = 0x51534e50; // "QSNP"
+
+  private ChunkedSnapshotWriter() {}
+
+  public static void write(PostQuerySyncData snapshot, Path file) throws IOException {
+    write(new SnapshotSerializer().visit(snapshot).buildProto(), file);
+  }
+
+  static void write(SnapshotProto.Snapshot snapshot, Path file) throws IOException {
+    Query.Summary summary = snapshot.getQuerySummary();
+    Map<String, Query.Summary.Builder> chunks = new TreeMap<>();
+    for (Map.Entry<String, Query.SourceFile> entry : summary.getSourceFilesMap().entrySet()) {
+      chunks
+          .computeIfAbsent(QuerySummary.packageOf(entry.getKey()), p -> Query.Summary.newBuilder())
+          .putSourceFiles(entry.getKey(), entry.getValue());
+    }
+    for (Map.Entry<String, Query.Rule> entry : summary.getRulesMap().entrySet()) {
+      chunks
+          .computeIfAbsent(QuerySummary.packageOf(entry.getKey()), p -> Query.Summary.newBuilder())
+          .putRules(entry.getKey(), entry.getValue());
+    }
+
+    SnapshotProto.Snapshot.Builder header =
+        snapshot.toBuilder()
+            .setQuerySummary(
+                Query.Summary.newBuilder()
+                    .setVersion(summary.getVersion())
+                    .addAllPackagesWithErrors(summary.getPackagesWithErrorsList()));
+    List<Query.Summary> chunkProtos = new ArrayList<>(chunks.size());
+    long offset = 0;
+    for (Map.Entry<String, Query.Summary.Builder> chunk : chunks.entrySet()) {
+      Query.Summary chunkProto = chunk.getValue().build();
+      int length = chunkProto.getSerializedSize();
+      header.addQuerySummaryChunks(
+          SnapshotProto.SummaryChunk.newBuilder()
+              .setPackage(chunk.getKey())
+              .setOffset(offset)
+              .setLength(length));
+      chunkProtos.add(chunkProto);
+      offset += length;
+    }
+
+    byte[] headerBytes = header.build().toByteArray();
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(headerBytes.length);
+      out.write(headerBytes);
+      for (Query.Summary chunkProto : chunkProtos) {
+        chunkProto.writeTo(out);
+      }
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.common.Label;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, integer indexed representation of the dependency edges of a {@link BuildGraphData}.
+ *
+ * <p>Each label in the graph is assigned a dense integer id, its index in a table of labels sorted
+ * by their string form. Forward (compile time) and reverse (compile and runtime) edges are stored in
+ * compressed sparse row form: the edges of node {@code n} are {@code edges[offsets[n]]} to {@code
+ * edges[offsets[n + 1] - 1]}. Graph walks therefore touch only int arrays and bitsets, and no
+ * per-edge objects are retained.
+ *
+ * <p>This class is immutable.
+ */
+public final class IndexedBuildGraph {
+
+  private static final Comparator<Label> LABEL_ORDER = Comparator.comparing(Label::toString);
+
+  /** All labels in the graph, sorted by {@link #LABEL_ORDER}. A label's index is its id. */
+  private final Label[] labels;
+
+  private final int[] depOffsets;
+  private final int[] deps;
+  private final int[] rdepOffsets;
+  private final int[] rdeps;
+
+  /** Ids of targets that are part of the project, i.e. in {@link BuildGraphData#targetMap()}. */
+  private final BitSet projectTargets;
+
+  /** Ids of targets in {@link BuildGraphData#projectDeps()}. */
+  private final BitSet projectDeps;
+
+  private IndexedBuildGraph(
+      Label[] labels,
+      int[] depOffsets,
+      int[] deps,
+      int[] rdepOffsets,
+      int[] rdeps,
+      BitSet projectTargets,
+      BitSet projectDeps) {
+    this.labels = labels;
+    this.depOffsets = depOffsets;
+    this.deps = deps;
+    this.rdepOffsets = rdepOffsets;
+    this.rdeps = rdeps;
+    this.projectTargets = projectTargets;
+    this.projectDeps = projectDeps;
+  }
+
+  static IndexedBuildGraph create(Map<Label, ProjectTarget> targetMap, Set<Label> projectDeps) {
+    Set<Label> allLabels = new HashSet<>(targetMap.keySet());
+    allLabels.addAll(projectDeps);
+    for (ProjectTarget t : targetMap.values()) {
+      allLabels.addAll(t.deps());
+      allLabels.addAll(t.runtimeDeps());
+    }
+    Label[] labels = allLabels.toArray(new Label[0]);
+    Arrays.sort(labels, LABEL_ORDER);
+
+    // This map is only needed while building the graph; lookups afterwards use binary search.
+    Map<Label, Integer> ids = new HashMap<>(labels.length * 2);
+    for (int i = 0; i < labels.length; i++) {
+      ids.put(labels[i], i);
+    }
+
+    int[] depOffsets = new int[labels.length + 1];
+    int[] rdepCounts = new int[labels.length];
+    int edgeCount = 0;
+    int rdepCount = 0;
+    BitSet projectTargets = new BitSet(labels.length);
+    for (int i = 0; i < labels.length; i++) {
+      depOffsets[i] = edgeCount;
+      ProjectTarget t = targetMap.get(labels[i]);
+      if (t == null) {
+        continue;
+      }
+      projectTargets.set(i);
+      edgeCount += t.deps().size();
+      for (Label dep : t.deps()) {
+        rdepCounts[ids.get(dep)]++;
+      }
+      for (Label dep : t.runtimeDeps()) {
+        rdepCounts[ids.get(dep)]++;
+      }
+      rdepCount += t.deps().size() + t.runtimeDeps().size();
+    }
+    depOffsets[labels.length] = edgeCount;
+
+    int[] rdepOffsets = new int[labels.length + 1];
+    for (int i = 0; i < labels.length; i++) {
+      rdepOffsets[i + 1] = rdepOffsets[i] + rdepCounts[i];
+    }
+
+    int[] deps = new int[edgeCount];
+    int[] rdeps = new int[rdepCount];
+    // Reuse rdepCounts as the insertion position for each node's reverse edges.
+    System.arraycopy(rdepOffsets, 0, rdepCounts, 0, labels.length);
+    for (int i = projectTargets.nextSetBit(0); i >= 0; i = projectTargets.nextSetBit(i + 1)) {
+      ProjectTarget t = targetMap.get(labels[i]);
+      int next = depOffsets[i];
+      for (Label dep : t.deps()) {
+        int depId = ids.get(dep);
+        deps[next++] = depId;
+        rdeps[rdepCounts[depId]++] = i;
+      }
+      for (Label dep : t.runtimeDeps()) {
+        int depId = ids.get(dep);
+        rdeps[rdepCounts[depId]++] = i;
+      }
+    }
+
+    BitSet projectDepIds = new BitSet(labels.length);
+    for (Label dep : projectDeps) {
+      projectDepIds.set(ids.get(dep));
+    }
+    return new IndexedBuildGraph(
+        labels, depOffsets, deps, rdepOffsets, rdeps, projectTargets, projectDepIds);
+  }
+
+  /** Returns the number of labels in the graph. */
+  public int size() {
+    return labels.length;
+  }
+
+  /** Returns the id of a label, or -1 if it is not part of the graph. */
+  public int idOf(Label label) {
+    int id = Arrays.binarySearch(labels, label, LABEL_ORDER);
+    return id >= 0 ? id : -1;
+  }
+
+  public Label labelOf(int id) {
+    return labels[id];
+  }
+
+  /** Returns the index of the first forward edge of node {@code id} in {@link #depAt(int)}. */
+  int depsStart(int id) {
+    return depOffsets[id];
+  }
+
+  /** Returns the index after the last forward edge of node {@code id} in {@link #depAt(int)}. */
+  int depsEnd(int id) {
+    return depOffsets[id + 1];
+  }
+
+  int depAt(int edge) {
+    return deps[edge];
+  }
+
+  boolean isProjectDep(int id) {
+    return projectDeps.get(id);
+  }
+
+  BitSet projectDeps() {
+    return projectDeps;
+  }
+
+  /**
+   * Returns the members of {@link BuildGraphData#projectDeps()} that are reachable from {@code
+   * target} via compile time dependencies, without passing through any targets outside of the
+   * project. This includes {@code target} itself if it is a project dep.
+   */
+  public ImmutableSet<Label> getTransitiveExternalDependencies(Label target) {
+    int start = idOf(target);
+    if (start < 0) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Label> result = ImmutableSet.builder();
+    // Targets with cyclic dependencies will not build, but the query does not check for cycles
+    BitSet visited = new BitSet(labels.length);
+    int[] queue = new int[labels.length];
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = start;
+    visited.set(start);
+    while (head < tail) {
+      int next = queue[head++];
+      if (projectDeps.get(next)) {
+        result.add(labels[next]);
+      }
+      // Only project targets have outgoing edges.
+      for (int e = depOffsets[next]; e < depOffsets[next + 1]; e++) {
+        int dep = deps[e];
+        if (!visited.get(dep)) {
+          visited.set(dep);
+          queue[tail++] = dep;
+        }
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Calculates {@link #getTransitiveExternalDependencies(Label)} for each of {@code targets}.
+   *
+   * <p>This is done in a single pass over the part of the graph reachable from the targets, so is
+   * much cheaper than calling {@link #getTransitiveExternalDependencies(Label)} for each target
+   * when the targets share dependencies.
+   */
+  public ImmutableMap<Label, ImmutableSet<Label>> getTransitiveExternalDependencies(
+      Collection<Label> targets) {
+    return new TransitiveClosureCalculator(this).calculate(targets);
+  }
+
+  /**
+   * Returns the project targets that depend on any of {@code targets} via an in-project dependency
+   * chain of compile or runtime dependencies, including those of {@code targets} that are
+   * themselves project targets.
+   */
+  public ImmutableSet<Label> getTransitiveReverseDeps(Collection<Label> targets) {
+    BitSet visited = new BitSet(labels.length);
+    int[] queue = new int[labels.length];
+    int tail = 0;
+    for (Label target : targets) {
+      int id = idOf(target);
+      if (id >= 0 && !visited.get(id)) {
+        visited.set(id);
+        queue[tail++] = id;
+      }
+    }
+    ImmutableSet.Builder<Label> result = ImmutableSet.builder();
+    int head = 0;
+    while (head < tail) {
+      int next = queue[head++];
+      if (projectTargets.get(next)) {
+        result.add(labels[next]);
+      }
+      for (int e = rdepOffsets[next]; e < rdepOffsets[next + 1]; e++) {
+        int rdep = rdeps[e];
+        if (!visited.get(rdep)) {
+          visited.set(rdep);
+          queue[tail++] = rdep;
+        }
+      }
+    }
+    return result.build();
+  }
+
+  /** Returns the project targets with a direct compile or runtime dependency on {@code target}. */
+  public ImmutableSet<Label> getDirectReverseDeps(Label target) {
+    int id = idOf(target);
+    if (id < 0) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Label> result = ImmutableSet.builder();
+    for (int e = rdepOffsets[id]; e < rdepOffsets[id + 1]; e++) {
+      result.add(labels[rdeps[e]]);
+    }
+    return result.build();
+  }
+}
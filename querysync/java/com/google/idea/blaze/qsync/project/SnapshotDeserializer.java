@@ -47,8 +47,12 @@ public class SnapshotDeserializer {
   @CanIgnoreReturnValue
   public Optional<SnapshotDeserializer> readFrom(InputStream in, Context<?> context)
       throws IOException {
-    SnapshotProto.Snapshot proto =
-        SnapshotProto.Snapshot.parseFrom(in, ExtensionRegistry.getEmptyRegistry());
+    return readFrom(
+        SnapshotProto.Snapshot.parseFrom(in, ExtensionRegistry.getEmptyRegistry()), context);
+  }
+
+  @CanIgnoreReturnValue
+  Optional<SnapshotDeserializer> readFrom(SnapshotProto.Snapshot proto, Context<?> context) {
     if (proto.getVersion() != SnapshotSerializer.PROTO_VERSION) {
       context.output(PrintOutput.output("IDE has updated since last sync; performing full sync"));
       return Optional.empty();
@@ -57,6 +57,10 @@ public class SnapshotSerializer {
   }
 
   public AbstractMessageLite<?, ?> toProto() {
+    return buildProto();
+  }
+
+  SnapshotProto.Snapshot buildProto() {
     return proto.build();
   }
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.common.Label;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calculates the transitive external dependencies of many targets of an {@link IndexedBuildGraph}
+ * in a single pass.
+ *
+ * <p>The part of the graph reachable from the requested targets is condensed into its strongly
+ * connected components using Tarjan's algorithm, which yields the components in reverse
+ * topological order. The closure of each component is then a bitset over the project deps,
+ * calculated as the union of the project deps within the component and the closures of the
+ * components it depends on. Each sub-result is therefore computed once, and closures are discarded
+ * as soon as all the components that depend on them have been processed.
+ *
+ * <p>Instances of this class are single use.
+ */
+final class TransitiveClosureCalculator {
+
+  private final IndexedBuildGraph graph;
+
+  // Tarjan state, indexed by node id.
+  private final int[] index;
+  private final int[] lowLink;
+  private final BitSet onStack;
+  private final int[] stack;
+  private int stackSize = 0;
+  private int nextIndex = 0;
+
+  /** The component of each visited node, indexed by node id. */
+  private final int[] componentOf;
+
+  /**
+   * The members of each component, in order of discovery: the members of component {@code c} are
+   * {@code members[componentStart[c]]} to {@code members[componentStart[c + 1] - 1]}.
+   */
+  private final int[] members;
+
+  private final int[] componentStart;
+  private int componentCount = 0;
+
+  TransitiveClosureCalculator(IndexedBuildGraph graph) {
+    this.graph = graph;
+    int n = graph.size();
+    index = new int[n];
+    Arrays.fill(index, -1);
+    lowLink = new int[n];
+    onStack = new BitSet(n);
+    stack = new int[n];
+    componentOf = new int[n];
+    members = new int[n];
+    componentStart = new int[n + 1];
+  }
+
+  ImmutableMap<Label, ImmutableSet<Label>> calculate(Collection<Label> targets) {
+    for (Label target : targets) {
+      int id = graph.idOf(target);
+      if (id >= 0 && index[id] < 0) {
+        findComponents(id);
+      }
+    }
+
+    // Project deps are numbered densely, so that closures only need one bit per project dep.
+    BitSet projectDeps = graph.projectDeps();
+    int[] rankOf = new int[graph.size()];
+    int[] idOfRank = new int[projectDeps.cardinality()];
+    int rank = 0;
+    for (int id = projectDeps.nextSetBit(0); id >= 0; id = projectDeps.nextSetBit(id + 1)) {
+      rankOf[id] = rank;
+      idOfRank[rank++] = id;
+    }
+
+    BitSet requested = new BitSet(componentCount);
+    for (Label target : targets) {
+      int id = graph.idOf(target);
+      if (id >= 0) {
+        requested.set(componentOf[id]);
+      }
+    }
+
+    // Count the edges into each component from other components, so that we know when its closure
+    // is no longer needed.
+    int[] pendingUses = new int[componentCount];
+    for (int c = 0; c < componentCount; c++) {
+      for (int m = componentStart[c]; m < componentStart[c + 1]; m++) {
+        int node = members[m];
+        for (int e = graph.depsStart(node); e < graph.depsEnd(node); e++) {
+          int depComponent = componentOf[graph.depAt(e)];
+          if (depComponent != c) {
+            pendingUses[depComponent]++;
+          }
+        }
+      }
+    }
+
+    // Components are numbered in reverse topological order, so the closures of the dependencies of
+    // a component are always calculated before the closure of the component itself.
+    BitSet[] closures = new BitSet[componentCount];
+    for (int c = 0; c < componentCount; c++) {
+      BitSet closure = new BitSet();
+      for (int m = componentStart[c]; m < componentStart[c + 1]; m++) {
+        int node = members[m];
+        if (graph.isProjectDep(node)) {
+          closure.set(rankOf[node]);
+        }
+        for (int e = graph.depsStart(node); e < graph.depsEnd(node); e++) {
+          int depComponent = componentOf[graph.depAt(e)];
+          if (depComponent == c) {
+            continue;
+          }
+          closure.or(closures[depComponent]);
+          if (--pendingUses[depComponent] == 0 && !requested.get(depComponent)) {
+            closures[depComponent] = null;
+          }
+        }
+      }
+      closures[c] = closure;
+    }
+
+    Map<Integer, ImmutableSet<Label>> results = new HashMap<>();
+    ImmutableMap.Builder<Label, ImmutableSet<Label>> resultMap = ImmutableMap.builder();
+    for (Label target : ImmutableSet.copyOf(targets)) {
+      int id = graph.idOf(target);
+      if (id < 0) {
+        resultMap.put(target, ImmutableSet.of());
+        continue;
+      }
+      resultMap.put(
+          target,
+          results.computeIfAbsent(componentOf[id], c -> toLabels(closures[c], idOfRank)));
+    }
+    return resultMap.buildOrThrow();
+  }
+
+  private ImmutableSet<Label> toLabels(BitSet closure, int[] idOfRank) {
+    ImmutableSet.Builder<Label> labels = ImmutableSet.builder();
+    for (int r = closure.nextSetBit(0); r >= 0; r = closure.nextSetBit(r + 1)) {
+      labels.add(graph.labelOf(idOfRank[r]));
+    }
+    return labels.build();
+  }
+
+  /** An iterative implementation of Tarjan's algorithm, starting from node {@code root}. */
+  private void findComponents(int root) {
+    // The explicit call stack: the node being visited, and the next of its edges to follow.
+    int[] callNode = new int[16];
+    int[] callEdge = new int[16];
+    int depth = 0;
+    callNode[depth] = root;
+    callEdge[depth++] = -1;
+
+    while (depth > 0) {
+      int node = callNode[depth - 1];
+      if (callEdge[depth - 1] < 0) {
+        index[node] = nextIndex;
+        lowLink[node] = nextIndex++;
+        stack[stackSize++] = node;
+        onStack.set(node);
+        callEdge[depth - 1] = graph.depsStart(node);
+      }
+      int edge = callEdge[depth - 1];
+      if (edge < graph.depsEnd(node)) {
+        callEdge[depth - 1]++;
+        int dep = graph.depAt(edge);
+        if (index[dep] < 0) {
+          if (depth == callNode.length) {
+            callNode = Arrays.copyOf(callNode, depth * 2);
+            callEdge = Arrays.copyOf(callEdge, depth * 2);
+          }
+          callNode[depth] = dep;
+          callEdge[depth++] = -1;
+        } else if (onStack.get(dep)) {
+          lowLink[node] = Math.min(lowLink[node], index[dep]);
+        }
+        continue;
+      }
+
+      // All edges of node have been followed.
+      if (lowLink[node] == index[node]) {
+        int memberCount = componentStart[componentCount];
+        int member;
+        do {
+          member = stack[--stackSize];
+          onStack.clear(member);
+          componentOf[member] = componentCount;
+          members[memberCount++] = member;
+        } while (member != node);
+        componentStart[++componentCount] = memberCount;
+      }
+      depth--;
+      if (depth > 0) {
+        int parent = callNode[depth - 1];
+        lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+      }
+    }
+  }
+}
@@ -44,6 +44,7 @@ import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -78,7 +79,7 @@ public abstract class QuerySummary {
       create(Query.Summary.newBuilder().setVersion(PROTO_VERSION).build());
 
   // Compile-time dependency attributes, as they appear in streamed_proto output
-  private static final ImmutableSet<String> DEPENDENCY_ATTRIBUTES =
+  static final ImmutableSet<String> DEPENDENCY_ATTRIBUTES =
       ImmutableSet.of(
           // android_local_test depends on junit implicitly using the _junit attribute.
           "$junit",
@@ -94,7 +95,7 @@ public abstract class QuerySummary {
 
   // Compile time dependency attributes scoped to specific rule kind, for cases where sync does not
   // need to always need to traverse the attribute.
-  private static final ImmutableMap<String, ImmutableSet<String>> RULE_SCOPED_ATTRIBUTES =
+  static final ImmutableMap<String, ImmutableSet<String>> RULE_SCOPED_ATTRIBUTES =
       ImmutableMap.of(
           "$toolchain",
           ImmutableSet.of(
@@ -105,7 +106,7 @@ public abstract class QuerySummary {
               "kt_android_library"));
 
   // Runtime dependency attributes
-  private static final ImmutableSet<String> RUNTIME_DEP_ATTRIBUTES =
+  static final ImmutableSet<String> RUNTIME_DEP_ATTRIBUTES =
       ImmutableSet.of(
           // From android_binary rules used in android_instrumentation_tests
           "instruments",
@@ -131,6 +132,7 @@ public abstract class QuerySummary {
   public static QuerySummary create(InputStream protoInputStream) throws IOException {
     // IMPORTANT: when changing the logic herein, you should also update PROTO_VERSION above.
     // Failure to do so is likely to result in problems during a partial sync.
+    // StreamingQuerySummaryReader must be kept in sync with this method.
     Map<String, Query.SourceFile> sourceFileMap = Maps.newHashMap();
     Map<String, Query.Rule> ruleMap = Maps.newHashMap();
     Set<String> packagesWithErrors = Sets.newHashSet();
@@ -209,12 +211,15 @@ public abstract class QuerySummary {
   }
 
   private static boolean attributeIsTrackedDependency(String attributeName, Build.Target target) {
+    return attributeIsTrackedDependency(attributeName, target.getRule().getRuleClass());
+  }
+
+  static boolean attributeIsTrackedDependency(String attributeName, String ruleClass) {
     if (DEPENDENCY_ATTRIBUTES.contains(attributeName)) {
       return true;
     }
     if (RULE_SCOPED_ATTRIBUTES.containsKey(attributeName)) {
-      return requireNonNull(RULE_SCOPED_ATTRIBUTES.get(attributeName))
-          .contains(target.getRule().getRuleClass());
+      return requireNonNull(RULE_SCOPED_ATTRIBUTES.get(attributeName)).contains(ruleClass);
     }
     return false;
   }
@@ -223,10 +228,35 @@ public abstract class QuerySummary {
     return create(new BufferedInputStream(new FileInputStream(protoFile)));
   }
 
+  /**
+   * Creates a summary from {@code streamed_proto} query output without parsing each target into a
+   * full {@link Build.Target} proto first. Attributes that are not needed by querysync are skipped
+   * on the wire.
+   *
+   * <p>The output is identical to that of {@link #create(InputStream)}, except that rules for which
+   * {@code needsSourcesAndDeps} returns false have their source and dependency attributes dropped.
+   * Such rules are still included in the summary with their rule class and simple attributes, so
+   * that they are still known to be part of the project.
+   */
+  public static QuerySummary createStreaming(
+      InputStream protoInputStream, Predicate<Query.Rule> needsSourcesAndDeps)
+      throws IOException {
+    return new StreamingQuerySummaryReader(needsSourcesAndDeps).read(protoInputStream);
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
 
+  /**
+   * Returns the package part of a label as it appears in the query output, e.g. {@code foo/bar}
+   * for {@code //foo/bar:baz}. This matches {@link Label#getPackage()}, but avoids parsing the
+   * label, so is suitable for use on every key of a large summary.
+   */
+  public static String packageOf(String label) {
+    return label.substring(label.indexOf("//") + 2, label.indexOf(':'));
+  }
+
   /**
    * Returns the map of source files included in the query output.
    *
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.query;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.idea.blaze.qsync.query.QuerySummary.DEPENDENCY_ATTRIBUTES;
+import static com.google.idea.blaze.qsync.query.QuerySummary.RULE_SCOPED_ATTRIBUTES;
+import static com.google.idea.blaze.qsync.query.QuerySummary.RUNTIME_DEP_ATTRIBUTES;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Reads {@code streamed_proto} query output directly from the wire into a {@link Query.Summary}.
+ *
+ * <p>Unlike {@link QuerySummary#create(InputStream)}, this never parses a complete {@link
+ * Build.Target} proto: only the fields used by the summary are decoded, and all other attributes
+ * are skipped without allocating anything for them. Rules are written straight into the summary
+ * builder as they are read.
+ *
+ * <p>The logic that maps attributes to the summary must match {@link
+ * QuerySummary#create(InputStream)}.
+ */
+final class StreamingQuerySummaryReader {
+
+  /** Attribute names whose values are (possibly) copied into the summary. */
+  private static final ImmutableSet<String> SUMMARIZED_ATTRIBUTES =
+      ImmutableSet.<String>builder()
+          .addAll(DEPENDENCY_ATTRIBUTES)
+          .addAll(RULE_SCOPED_ATTRIBUTES.keySet())
+          .addAll(RUNTIME_DEP_ATTRIBUTES)
+          .add(
+              "srcs",
+              "hdrs",
+              "idl_srcs",
+              "resource_files",
+              "manifest",
+              "custom_package",
+              "copts",
+              "tags",
+              "main_class")
+          .build();
+
+  private final Predicate<Query.Rule> needsSourcesAndDeps;
+  private final Query.Summary.Builder summary =
+      Query.Summary.newBuilder().setVersion(QuerySummary.PROTO_VERSION);
+  private final Set<String> packagesWithErrors = Sets.newHashSet();
+
+  StreamingQuerySummaryReader(Predicate<Query.Rule> needsSourcesAndDeps) {
+    this.needsSourcesAndDeps = needsSourcesAndDeps;
+  }
+
+  QuerySummary read(InputStream protoInputStream) throws IOException {
+    CodedInputStream input = CodedInputStream.newInstance(protoInputStream);
+    while (!input.isAtEnd()) {
+      // The size limit applies to the total number of bytes read, but the query output can be many
+      // GB in size, so reset it for each delimited target.
+      input.resetSizeCounter();
+      int oldLimit = input.pushLimit(input.readRawVarint32());
+      readTarget(input);
+      input.popLimit(oldLimit);
+    }
+    return QuerySummary.create(summary.addAllPackagesWithErrors(packagesWithErrors).build());
+  }
+
+  private void readTarget(CodedInputStream input) throws IOException {
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case Build.Target.RULE_FIELD_NUMBER:
+          int oldLimit = input.pushLimit(input.readRawVarint32());
+          readRule(input);
+          input.popLimit(oldLimit);
+          break;
+        case Build.Target.SOURCE_FILE_FIELD_NUMBER:
+          oldLimit = input.pushLimit(input.readRawVarint32());
+          readSourceFile(input);
+          input.popLimit(oldLimit);
+          break;
+        default:
+          input.skipField(tag);
+          break;
+      }
+    }
+  }
+
+  private void readSourceFile(CodedInputStream input) throws IOException {
+    String name = null;
+    Query.SourceFile.Builder sourceFile = Query.SourceFile.newBuilder();
+    boolean packageContainsErrors = false;
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case Build.SourceFile.NAME_FIELD_NUMBER:
+          name = input.readString();
+          break;
+        case Build.SourceFile.LOCATION_FIELD_NUMBER:
+          sourceFile.setLocation(input.readString());
+          break;
+        case Build.SourceFile.SUBINCLUDE_FIELD_NUMBER:
+          sourceFile.addSubinclude(input.readString());
+          break;
+        case Build.SourceFile.PACKAGE_CONTAINS_ERRORS_FIELD_NUMBER:
+          packageContainsErrors = input.readBool();
+          break;
+        default:
+          input.skipField(tag);
+          break;
+      }
+    }
+    if (name == null) {
+      throw new InvalidProtocolBufferException("Source file target has no name");
+    }
+    summary.putSourceFiles(name, sourceFile.build());
+    if (packageContainsErrors) {
+      packagesWithErrors.add(name);
+    }
+  }
+
+  private void readRule(CodedInputStream input) throws IOException {
+    String name = null;
+    String ruleClass = null;
+    Query.Rule.Builder rule = Query.Rule.newBuilder();
+    // Attributes seen before the rule class, which can only happen if the proto was not written in
+    // field number order. These are applied once the rule class is known.
+    List<Attribute> deferred = new ArrayList<>();
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case Build.Rule.NAME_FIELD_NUMBER:
+          name = input.readString();
+          break;
+        case Build.Rule.RULE_CLASS_FIELD_NUMBER:
+          ruleClass = input.readString();
+          rule.setRuleClass(ruleClass);
+          for (Attribute a : deferred) {
+            a.applyTo(rule, ruleClass);
+          }
+          deferred.clear();
+          break;
+        case Build.Rule.ATTRIBUTE_FIELD_NUMBER:
+          int oldLimit = input.pushLimit(input.readRawVarint32());
+          Attribute attribute = readAttribute(input);
+          input.popLimit(oldLimit);
+          if (attribute == null) {
+            break;
+          }
+          if (ruleClass != null) {
+            attribute.applyTo(rule, ruleClass);
+          } else {
+            deferred.add(attribute);
+          }
+          break;
+        default:
+          input.skipField(tag);
+          break;
+      }
+    }
+    if (name == null || ruleClass == null) {
+      throw new InvalidProtocolBufferException("Rule target has no name or rule class");
+    }
+    Query.Rule built = rule.build();
+    if (!needsSourcesAndDeps.test(built)) {
+      built =
+          built.toBuilder()
+              .clearSources()
+              .clearHdrs()
+              .clearDeps()
+              .clearRuntimeDeps()
+              .clearIdlSources()
+              .clearResourceFiles()
+              .clearManifest()
+              .clearCopts()
+              .build();
+    }
+    summary.putRules(name, built);
+  }
+
+  /**
+   * Reads a single attribute, returning null if it is not needed by the summary. The remainder of
+   * an unneeded attribute is skipped as soon as its name has been read.
+   */
+  @Nullable
+  private static Attribute readAttribute(CodedInputStream input) throws IOException {
+    Attribute attribute = new Attribute();
+    int tag;
+    while ((tag = input.readTag()) != 0) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case Build.Attribute.NAME_FIELD_NUMBER:
+          attribute.name = input.readString();
+          if (!SUMMARIZED_ATTRIBUTES.contains(attribute.name)) {
+            input.skipRawBytes(input.getBytesUntilLimit());
+            return null;
+          }
+          break;
+        case Build.Attribute.STRING_VALUE_FIELD_NUMBER:
+          attribute.stringValue = input.readString();
+          break;
+        case Build.Attribute.STRING_LIST_VALUE_FIELD_NUMBER:
+          attribute.stringListValue.add(input.readString());
+          break;
+        default:
+          input.skipField(tag);
+          break;
+      }
+    }
+    if (attribute.name == null) {
+      throw new InvalidProtocolBufferException("Attribute has no name");
+    }
+    return attribute;
+  }
+
+  /** The parts of a {@link Build.Attribute} that are used by the summary. */
+  private static class Attribute {
+    String name;
+    @Nullable String stringValue;
+    final List<String> stringListValue = new ArrayList<>();
+
+    /** Mirrors the attribute handling in {@link QuerySummary#create(InputStream)}. */
+    void applyTo(Query.Rule.Builder rule, String ruleClass) {
+      if (name.equals("srcs")) {
+        rule.addAllSources(stringListValue);
+      } else if (name.equals("hdrs")) {
+        rule.addAllHdrs(stringListValue);
+      } else if (QuerySummary.attributeIsTrackedDependency(name, ruleClass)) {
+        if (stringValue != null) {
+          rule.addDeps(stringValue);
+        } else {
+          rule.addAllDeps(stringListValue);
+        }
+      } else if (RUNTIME_DEP_ATTRIBUTES.contains(name)) {
+        if (stringValue != null) {
+          rule.addRuntimeDeps(stringValue);
+        } else {
+          rule.addAllRuntimeDeps(stringListValue);
+        }
+      } else if (name.equals("idl_srcs")) {
+        rule.addAllIdlSources(stringListValue);
+      } else if (name.equals("resource_files")) {
+        rule.addAllResourceFiles(stringListValue);
+      } else if (name.equals("manifest")) {
+        rule.setManifest(nullToEmpty(stringValue));
+      } else if (name.equals("custom_package")) {
+        rule.setCustomPackage(nullToEmpty(stringValue));
+      } else if (name.equals("copts")) {
+        rule.addAllCopts(stringListValue);
+      } else if (name.equals("tags")) {
+        rule.addAllTags(stringListValue);
+      } else if (name.equals("main_class")) {
+        rule.setMainClass(nullToEmpty(stringValue));
+      }
+
+      if (name.equals("test_app")) {
+        rule.setTestApp(nullToEmpty(stringValue));
+      } else if (name.equals("instruments")) {
+        rule.setInstruments(nullToEmpty(stringValue));
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.util;
+
+import com.google.idea.blaze.qsync.project.ChunkedSnapshotReader;
+import com.google.idea.blaze.qsync.project.ChunkedSnapshotWriter;
+import com.google.idea.blaze.qsync.project.PostQuerySyncData;
+import com.google.idea.blaze.qsync.project.SnapshotDeserializer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command line tool to compare the time and heap taken to load a project snapshot from the
+ * compressed proto format and from the chunked format.
+ *
+ * <p>To use this, run:
+ *
+ * <pre>
+ *   blaze run //querysync/java/com/google/idea/blaze/qsync/util:snapshot_format_benchmark \
+ *     -- /path/to/qsyncdata.gz [iterations]
+ * </pre>
+ *
+ * Where {@code /path/to/qsyncdata.gz} is a snapshot file from a project data directory. A chunked
+ * copy of it is written to a temporary file. Each measurement is the median over all iterations.
+ */
+public class SnapshotFormatBenchmark {
+
+  private final CliContext context = new CliContext();
+  private final File snapshotFile;
+  private final int iterations;
+
+  public static void main(String[] args) throws Exception {
+    System.exit(
+        new SnapshotFormatBenchmark(
+                new File(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 10)
+            .run());
+  }
+
+  private SnapshotFormatBenchmark(File snapshotFile, int iterations) {
+    this.snapshotFile = snapshotFile;
+    this.iterations = iterations;
+  }
+
+  private int run() throws IOException {
+    PostQuerySyncData snapshot = readGzipped();
+    Path chunked = Files.createTempFile("qsyncdata", ".chunked");
+    try {
+      ChunkedSnapshotWriter.write(snapshot, chunked);
+      System.err.printf(
+          "Compressed format: %d bytes; chunked format: %d bytes%n",
+          snapshotFile.length(), Files.size(chunked));
+      String firstPackage =
+          ChunkedSnapshotReader.open(chunked).packages().stream().findFirst().orElse("");
+      snapshot = null;
+
+      measure("compressed: read all", this::readGzipped);
+      measure("chunked: open", () -> ChunkedSnapshotReader.open(chunked));
+      measure(
+          "chunked: read all",
+          () -> ChunkedSnapshotReader.open(chunked).readSyncData(context).orElseThrow());
+      measure(
+          "chunked: open and read one package",
+          () -> {
+            ChunkedSnapshotReader reader = ChunkedSnapshotReader.open(chunked);
+            reader.readPackage(Path.of(firstPackage));
+            return reader;
+          });
+    } finally {
+      Files.delete(chunked);
+    }
+    return context.hasError() ? 1 : 0;
+  }
+
+  private PostQuerySyncData readGzipped() throws IOException {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(snapshotFile))) {
+      return new SnapshotDeserializer().readFrom(in, context).orElseThrow().getSyncData();
+    }
+  }
+
+  /** Prints the median time taken by {@code load}, and the heap retained by its result. */
+  private void measure(String name, Load load) throws IOException {
+    long[] timesNanos = new long[iterations];
+    long retainedBytes = 0;
+    for (int i = 0; i < iterations; i++) {
+      long heapBefore = usedHeap();
+      long start = System.nanoTime();
+      Object result = load.run();
+      timesNanos[i] = System.nanoTime() - start;
+      retainedBytes = usedHeap() - heapBefore;
+      // Keep the result reachable until the heap has been measured.
+      if (result == null) {
+        throw new IllegalStateException(name);
+      }
+    }
+    Arrays.sort(timesNanos);
+    System.err.printf(
+        "%-40s %8d ms %10d KB retained%n",
+        name, timesNanos[iterations / 2] / 1000000L, retainedBytes / 1024);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private interface Load {
+    Object run() throws IOException;
+  }
+}
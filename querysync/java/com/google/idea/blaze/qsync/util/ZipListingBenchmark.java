@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.idea.blaze.common.zip.ZipCentralDirectory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Command line tool to compare the time taken to list the names and CRCs of the class files in a
+ * jar with {@link ZipFile} and with {@link ZipCentralDirectory}.
+ *
+ * <p>To use this, run:
+ *
+ * <pre>
+ *   blaze run //querysync/java/com/google/idea/blaze/qsync/util:zip_listing_benchmark \
+ *     -- [/path/to/lib.jar] [iterations]
+ * </pre>
+ *
+ * Where {@code /path/to/lib.jar} is a jar from a real build. Without it, a jar of 20000 classes is
+ * generated in a temporary file. Each measurement is the median over all iterations.
+ */
+public class ZipListingBenchmark {
+
+  private static final int GENERATED_CLASSES = 20000;
+
+  private final Path jar;
+  private final int iterations;
+
+  public static void main(String[] args) throws IOException {
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    if (args.length > 0) {
+      new ZipListingBenchmark(Paths.get(args[0]), iterations).run();
+      return;
+    }
+    Path jar = Files.createTempFile("benchmark", ".jar");
+    try {
+      writeJar(jar);
+      new ZipListingBenchmark(jar, iterations).run();
+    } finally {
+      Files.delete(jar);
+    }
+  }
+
+  private ZipListingBenchmark(Path jar, int iterations) {
+    this.jar = jar;
+    this.iterations = iterations;
+  }
+
+  private static void writeJar(Path jar) throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (int i = 0; i < GENERATED_CLASSES; i++) {
+        out.putNextEntry(new ZipEntry("com/example/package" + i / 100 + "/Class" + i + ".class"));
+        out.write(("class " + i).getBytes(UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private void run() throws IOException {
+    long zipFileCrcs = measure("ZipFile", this::listWithZipFile);
+    long directoryCrcs = measure("ZipCentralDirectory", this::listWithCentralDirectory);
+    if (zipFileCrcs != directoryCrcs) {
+      throw new IllegalStateException("ZipFile and ZipCentralDirectory listed different CRCs");
+    }
+  }
+
+  private long listWithZipFile() throws IOException {
+    long crcs = 0;
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(".class")) {
+          crcs += entry.getCrc();
+        }
+      }
+    }
+    return crcs;
+  }
+
+  private long listWithCentralDirectory() throws IOException {
+    long crcs = 0;
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(jar)) {
+      ZipCentralDirectory.Cursor cursor = directory.cursor();
+      while (cursor.next()) {
+        if (cursor.nameEndsWith(".class")) {
+          crcs += cursor.crc();
+        }
+      }
+    }
+    return crcs;
+  }
+
+  /** Prints the median time taken by {@code listing}, and returns the sum of the CRCs it lists. */
+  private long measure(String name, Listing listing) throws IOException {
+    long[] timesNanos = new long[iterations];
+    long crcs = 0;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      crcs = listing.run();
+      timesNanos[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(timesNanos);
+    System.err.printf("%-20s %8d us%n", name, timesNanos[iterations / 2] / 1000L);
+    return crcs;
+  }
+
+  private interface Listing {
+    long run() throws IOException;
+  }
+}
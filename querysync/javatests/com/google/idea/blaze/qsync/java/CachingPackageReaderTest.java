@@ -0,0 +1,109 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CachingPackageReaderTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final List<Path> pathsRead = new ArrayList<>();
+  private final PackageReader recordingReader =
+      path -> {
+        pathsRead.add(path);
+        return new PackageStatementParser().readPackage(path);
+      };
+
+  @Test
+  public void unchangedFiles_notReadAfterRestart() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve(PackageCache.FILE_NAME);
+    Path a = writeSource("a/A.java", "package com.a;");
+    Path b = writeSource("b/B.java", "package com.b;");
+
+    assertThat(
+            new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+                .readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.a", "com.b")
+        .inOrder();
+    assertThat(pathsRead).containsExactly(a, b);
+
+    pathsRead.clear();
+    assertThat(
+            new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+                .readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.a", "com.b")
+        .inOrder();
+    assertThat(pathsRead).isEmpty();
+  }
+
+  @Test
+  public void modifiedFile_readAgain() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve(PackageCache.FILE_NAME);
+    Path a = writeSource("a/A.java", "package com.a;");
+    Path b = writeSource("b/B.java", "package com.b;");
+    new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+        .readPackages(ImmutableList.of(a, b));
+
+    pathsRead.clear();
+    Files.write(b, "package com.b.moved;".getBytes(UTF_8));
+    Files.setLastModifiedTime(b, FileTime.fromMillis(Files.getLastModifiedTime(b).toMillis() + 1));
+    assertThat(
+            new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+                .readPackages(ImmutableList.of(a, b)))
+        .containsExactly("com.a", "com.b.moved")
+        .inOrder();
+    assertThat(pathsRead).containsExactly(b);
+  }
+
+  @Test
+  public void unusedEntries_notSaved() throws IOException {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve(PackageCache.FILE_NAME);
+    Path a = writeSource("a/A.java", "package com.a;");
+    Path b = writeSource("b/B.java", "package com.b;");
+    new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+        .readPackages(ImmutableList.of(a, b));
+    new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+        .readPackages(ImmutableList.of(a));
+
+    pathsRead.clear();
+    new CachingPackageReader(PackageCache.load(cacheFile), recordingReader)
+        .readPackages(ImmutableList.of(a, b));
+    assertThat(pathsRead).containsExactly(b);
+  }
+
+  private Path writeSource(String relativePath, String content) throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve(relativePath);
+    Files.createDirectories(path.getParent());
+    Files.write(path, content.getBytes(UTF_8));
+    return path;
+  }
+}
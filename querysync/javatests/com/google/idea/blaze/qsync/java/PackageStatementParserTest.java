@@ -18,6 +18,7 @@ package com.google.idea.blaze.qsync.java;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -124,4 +125,45 @@ public class PackageStatementParserTest {
                         .getBytes(StandardCharsets.UTF_8))))
         .isEqualTo("com.myorg.kotlinpackage");
   }
+
+  @Test
+  public void annotated_package_info() throws IOException {
+    PackageStatementParser psp = new PackageStatementParser();
+    assertThat(
+            psp.readPackage(
+                new ByteArrayInputStream(
+                    Joiner.on("\n")
+                        .join(
+                            "// Copyright statement!",
+                            "@CheckReturnValue",
+                            "@Generated(value = {\"a\", \"b)\"})",
+                            "package com.myorg.annotated;",
+                            "",
+                            "import javax.annotation.CheckReturnValue;")
+                        .getBytes(StandardCharsets.UTF_8))))
+        .isEqualTo("com.myorg.annotated");
+  }
+
+  @Test
+  public void default_package() throws IOException {
+    PackageStatementParser psp = new PackageStatementParser();
+    assertThat(
+            psp.readPackage(
+                new ByteArrayInputStream(
+                    Joiner.on("\n")
+                        .join("import java.util.List;", "", "public class MyClass {}")
+                        .getBytes(StandardCharsets.UTF_8))))
+        .isEmpty();
+  }
+
+  @Test
+  public void only_reads_start_of_file() throws IOException {
+    PackageStatementParser psp = new PackageStatementParser();
+    ByteArrayInputStream in =
+        new ByteArrayInputStream(
+            ("package com.myorg.somepackage;\n" + Strings.repeat(" ", 100_000))
+                .getBytes(StandardCharsets.UTF_8));
+    assertThat(psp.readPackage(in)).isEqualTo("com.myorg.somepackage");
+    assertThat(in.available()).isGreaterThan(90_000);
+  }
 }
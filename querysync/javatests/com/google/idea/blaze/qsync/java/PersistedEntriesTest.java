@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PersistedEntriesTest {
+
+  private static final int MAGIC = 0x54455354;
+  private static final int VERSION = 1;
+
+  private static final PersistedEntries.Codec<String> CODEC =
+      new PersistedEntries.Codec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+          out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+          return in.readUTF();
+        }
+      };
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path file;
+
+  @Before
+  public void setUp() {
+    file = temporaryFolder.getRoot().toPath().resolve("dir/entries");
+  }
+
+  @Test
+  public void savedEntries_loadedAfterRestart() throws Exception {
+    PersistedEntries<String> entries = load();
+    entries.put("a", "1");
+    entries.put("b", "2");
+    entries.save();
+
+    entries = load();
+    assertThat(entries.get("a")).isEqualTo("1");
+    assertThat(entries.get("b")).isEqualTo("2");
+    assertThat(entries.get("c")).isNull();
+  }
+
+  @Test
+  public void unusedEntries_droppedOnSave() throws Exception {
+    PersistedEntries<String> entries = load();
+    entries.put("a", "1");
+    entries.put("b", "2");
+    entries.save();
+
+    assertThat(entries.get("a")).isEqualTo("1");
+    entries.save();
+
+    entries = load();
+    assertThat(entries.get("a")).isEqualTo("1");
+    assertThat(entries.get("b")).isNull();
+  }
+
+  @Test
+  public void entriesNotCurrent_droppedOnSave() throws Exception {
+    PersistedEntries<String> entries = load();
+    entries.put("a", "1");
+    entries.put("b", "2");
+    entries.save();
+
+    assertThat(entries.get("a")).isEqualTo("1");
+    assertThat(entries.get("b", value -> false)).isNull();
+    entries.save();
+
+    assertThat(load().get("b")).isNull();
+  }
+
+  @Test
+  public void unchangedEntries_notRewritten() throws Exception {
+    PersistedEntries<String> entries = load();
+    entries.put("a", "1");
+    entries.save();
+    FileTime marker = FileTime.fromMillis(1000);
+    Files.setLastModifiedTime(file, marker);
+
+    // Used in each of several rounds, without changing.
+    for (int i = 0; i < 3; i++) {
+      assertThat(entries.get("a")).isEqualTo("1");
+      entries.save();
+    }
+
+    assertThat(Files.getLastModifiedTime(file)).isEqualTo(marker);
+  }
+
+  @Test
+  public void unreadableFile_loadsNoEntries() throws Exception {
+    Files.createDirectories(file.getParent());
+    Files.write(file, "not an entries file".getBytes(UTF_8));
+
+    PersistedEntries<String> entries = load();
+    assertThat(entries.get("a")).isNull();
+    entries.put("a", "1");
+    entries.save();
+
+    assertThat(load().get("a")).isEqualTo("1");
+  }
+
+  private PersistedEntries<String> load() {
+    return PersistedEntries.load(file, MAGIC, VERSION, CODEC);
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.java;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.qsync.QuerySyncTestUtils.createSrcJar;
+import static com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.AllowPackagePrefixes.EMPTY_PACKAGE_PREFIXES_ONLY;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.qsync.QuerySyncTestUtils.PathPackage;
+import com.google.idea.blaze.qsync.java.SrcJarInnerPathFinder.JarPath;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SrcJarInnerPathIndexTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final List<File> jarsExamined = new CopyOnWriteArrayList<>();
+  private final SrcJarInnerPathFinder finder =
+      new SrcJarInnerPathFinder(new PackageStatementParser(), EMPTY_PACKAGE_PREFIXES_ONLY) {
+        @Override
+        public ImmutableSet<JarPath> findInnerJarPaths(File jarFile) {
+          jarsExamined.add(jarFile);
+          return super.findInnerJarPaths(jarFile);
+        }
+      };
+  private final Map<Path, String> digests = new HashMap<>();
+
+  private Path indexFile;
+  private Path jar1;
+  private Path jar2;
+
+  @Before
+  public void createJars() throws Exception {
+    indexFile = temporaryFolder.getRoot().toPath().resolve("srcjar_inner_paths");
+    jar1 = temporaryFolder.getRoot().toPath().resolve("jars/one.srcjar");
+    createSrcJar(jar1, PathPackage.of("root/com/org/Class1.java", "com.org"));
+    jar2 = temporaryFolder.getRoot().toPath().resolve("jars/two.srcjar");
+    createSrcJar(jar2, PathPackage.of("com/org/Class2.java", "com.org"));
+    digests.put(jar1, "digest1");
+  }
+
+  @Test
+  public void indexedJars_notExaminedAfterRestart() throws Exception {
+    ImmutableMap<Path, ImmutableSet<JarPath>> found = findAfterRestart(jar1, jar2);
+    assertThat(paths(found.get(jar1))).containsExactly(Path.of("root"));
+    assertThat(paths(found.get(jar2))).containsExactly(Path.of(""));
+    assertThat(jarsExamined).containsExactly(jar1.toFile(), jar2.toFile());
+
+    jarsExamined.clear();
+    found = findAfterRestart(jar1, jar2);
+    assertThat(paths(found.get(jar1))).containsExactly(Path.of("root"));
+    assertThat(paths(found.get(jar2))).containsExactly(Path.of(""));
+    assertThat(jarsExamined).isEmpty();
+  }
+
+  @Test
+  public void changedDigest_jarExaminedAgain() throws Exception {
+    findAfterRestart(jar1, jar2);
+
+    jarsExamined.clear();
+    digests.put(jar1, "digest2");
+    findAfterRestart(jar1, jar2);
+    assertThat(jarsExamined).containsExactly(jar1.toFile());
+  }
+
+  @Test
+  public void noIndex_examinesEveryJar() throws Exception {
+    SrcJarInnerPathIndex.NONE.findInnerJarPaths(finder, ImmutableList.of(jar1, jar2));
+    SrcJarInnerPathIndex.NONE.findInnerJarPaths(finder, ImmutableList.of(jar1, jar2));
+    assertThat(jarsExamined).hasSize(4);
+  }
+
+  /** Loads the index from disk, as after a restart, and saves it once {@code jars} are found. */
+  private ImmutableMap<Path, ImmutableSet<JarPath>> findAfterRestart(Path... jars)
+      throws IOException {
+    SrcJarInnerPathIndex index =
+        SrcJarInnerPathIndex.load(
+            indexFile,
+            MoreExecutors.newDirectExecutorService(),
+            jar -> Optional.ofNullable(digests.get(jar)));
+    ImmutableMap<Path, ImmutableSet<JarPath>> found =
+        index.findInnerJarPaths(finder, ImmutableList.copyOf(jars));
+    index.save();
+    return found;
+  }
+
+  private static ImmutableList<Path> paths(ImmutableSet<JarPath> jarPaths) {
+    return jarPaths.stream().map(p -> p.path).collect(toImmutableList());
+  }
+}
@@ -22,10 +22,13 @@ import static com.google.idea.blaze.qsync.QuerySyncTestUtils.getQuerySummary;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.BlazeQueryParser;
+import com.google.idea.blaze.qsync.query.QuerySummary;
+import com.google.idea.blaze.qsync.query.QuerySummaryTestBuilder;
 import com.google.idea.blaze.qsync.testdata.BuildGraphs;
 import com.google.idea.blaze.qsync.testdata.TestData;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -427,4 +430,89 @@ public class BuildGraphDataTest {
         .containsExactly(TestData.CC_EXTERNAL_DEP_QUERY.getAssumedOnlyLabel());
     assertThat(targets.get().expectedDependencyTargets).isEmpty();
   }
+
+  @Test
+  public void parseInParallel_matchesParse() throws Exception {
+    for (TestData testData : TestData.values()) {
+      QuerySummary summary = getQuerySummary(testData);
+      assertSameGraph(
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+              .parseInParallel(ForkJoinPool.commonPool()),
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse());
+    }
+  }
+
+  @Test
+  public void parseInParallel_manyPackages_matchesParse() {
+    QuerySummaryTestBuilder builder = new QuerySummaryTestBuilder();
+    for (int i = 0; i < 12000; i++) {
+      builder.addPackages(String.format("//pkg%d/sub%d:rule", i % 100, i));
+    }
+    QuerySummary summary = QuerySummary.create(builder.build());
+    assertSameGraph(
+        new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+            .parseInParallel(ForkJoinPool.commonPool()),
+        new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse());
+  }
+
+  @Test
+  public void parseIncrementally_fromEmpty_matchesParse() throws Exception {
+    BuildGraphData empty =
+        new BlazeQueryParser(QuerySummary.EMPTY, NOOP_CONTEXT, ImmutableSet.of()).parse();
+    for (TestData testData : TestData.values()) {
+      QuerySummary summary = getQuerySummary(testData);
+      assertSameGraph(
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+              .parseIncrementally(QuerySummary.EMPTY, empty),
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse());
+    }
+  }
+
+  @Test
+  public void parseIncrementally_unchanged_reusesTargets() throws Exception {
+    for (TestData testData : TestData.values()) {
+      QuerySummary summary = getQuerySummary(testData);
+      BuildGraphData previous =
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse();
+      BuildGraphData graph =
+          new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+              .parseIncrementally(summary, previous);
+      assertSameGraph(graph, previous);
+      for (ProjectTarget target : graph.targetMap().values()) {
+        assertThat(target).isSameInstanceAs(previous.targetMap().get(target.label()));
+      }
+    }
+  }
+
+  @Test
+  public void parseIncrementally_changedPackage_matchesParse() throws Exception {
+    QuerySummary summary = getQuerySummary(TestData.JAVA_LIBRARY_TRANSITIVE_INTERNAL_DEP_QUERY);
+    Label changedRule = Label.of("//" + TESTDATA_ROOT + "/nodeps:nodeps");
+    Label unchangedRule =
+        Label.of("//" + TESTDATA_ROOT + "/transitiveinternaldep:transitiveinternaldep");
+    QuerySummary previousSummary =
+        QuerySummary.create(
+            summary.proto().toBuilder().removeRules(changedRule.toString()).build());
+    BuildGraphData previous =
+        new BlazeQueryParser(previousSummary, NOOP_CONTEXT, ImmutableSet.of()).parse();
+
+    BuildGraphData graph =
+        new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of())
+            .parseIncrementally(previousSummary, previous);
+
+    assertSameGraph(
+        graph, new BlazeQueryParser(summary, NOOP_CONTEXT, ImmutableSet.of()).parse());
+    assertThat(graph.targetMap()).containsKey(changedRule);
+    assertThat(graph.targetMap().get(unchangedRule))
+        .isSameInstanceAs(previous.targetMap().get(unchangedRule));
+  }
+
+  private static void assertSameGraph(BuildGraphData actual, BuildGraphData expected) {
+    assertThat(actual.targetMap()).isEqualTo(expected.targetMap());
+    assertThat(actual.locations().keySet()).isEqualTo(expected.locations().keySet());
+    assertThat(actual.getAllSourceFiles()).isEqualTo(expected.getAllSourceFiles());
+    assertThat(actual.projectDeps()).isEqualTo(expected.projectDeps());
+    assertThat(actual.packages().asPathSet()).isEqualTo(expected.packages().asPathSet());
+    assertThat(actual.allTargets().toLabelSet()).isEqualTo(expected.allTargets().toLabelSet());
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.idea.blaze.qsync.QuerySyncTestUtils.NOOP_CONTEXT;
+import static com.google.idea.blaze.qsync.QuerySyncTestUtils.getQuerySummary;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.truth.Truth8;
+import com.google.idea.blaze.common.vcs.VcsState;
+import com.google.idea.blaze.common.vcs.WorkspaceFileChange;
+import com.google.idea.blaze.common.vcs.WorkspaceFileChange.Operation;
+import com.google.idea.blaze.qsync.query.Query;
+import com.google.idea.blaze.qsync.query.QuerySummary;
+import com.google.idea.blaze.qsync.query.QuerySummaryTestUtil;
+import com.google.idea.blaze.qsync.testdata.TestData;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChunkedSnapshotTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final ProjectDefinition PROJECT_DEFINITION =
+      ProjectDefinition.create(
+          ImmutableSet.of(Path.of("project/path")),
+          ImmutableSet.of(Path.of("project/path/excluded")),
+          ImmutableSet.of(QuerySyncLanguage.JAVA),
+          ImmutableSet.of("javatests/*"));
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    PostQuerySyncData original =
+        PostQuerySyncData.builder()
+            .setProjectDefinition(PROJECT_DEFINITION)
+            .setVcsState(
+                Optional.of(
+                    new VcsState(
+                        "workspaceId",
+                        "123",
+                        ImmutableSet.of(
+                            new WorkspaceFileChange(
+                                Operation.ADD, Path.of("project/path/Added.java"))),
+                        Optional.of(Path.of("/snapshot/user/snapshot/1")))))
+            .setQuerySummary(
+                QuerySummaryTestUtil.createProtoForPackages(
+                    "//project/path:path", "//project/path/sub:sub"))
+            .build();
+    Path file = temporaryFolder.newFile().toPath();
+    ChunkedSnapshotWriter.write(original, file);
+
+    PostQuerySyncData read =
+        ChunkedSnapshotReader.open(file).readSyncData(NOOP_CONTEXT).orElseThrow();
+    Truth8.assertThat(read.vcsState()).isEqualTo(original.vcsState());
+    assertThat(read).isEqualTo(original);
+  }
+
+  @Test
+  public void testRoundTrip_testData() throws IOException {
+    for (TestData testData : TestData.values()) {
+      QuerySummary summary = getQuerySummary(testData);
+      PostQuerySyncData original =
+          PostQuerySyncData.builder()
+              .setProjectDefinition(PROJECT_DEFINITION)
+              .setVcsState(Optional.empty())
+              .setQuerySummary(summary)
+              .build();
+      Path file = temporaryFolder.newFile().toPath();
+      ChunkedSnapshotWriter.write(original, file);
+
+      PostQuerySyncData read =
+          ChunkedSnapshotReader.open(file).readSyncData(NOOP_CONTEXT).orElseThrow();
+      assertThat(read.querySummary().proto()).isEqualTo(summary.proto());
+    }
+  }
+
+  @Test
+  public void testReadPackage() throws IOException {
+    PostQuerySyncData original =
+        PostQuerySyncData.EMPTY.toBuilder()
+            .setQuerySummary(
+                QuerySummaryTestUtil.createProtoForPackages(
+                    "//project/path:path", "//project/path/sub:sub"))
+            .build();
+    Path file = temporaryFolder.newFile().toPath();
+    ChunkedSnapshotWriter.write(original, file);
+
+    ChunkedSnapshotReader reader = ChunkedSnapshotReader.open(file);
+    assertThat(reader.packages()).containsExactly("project/path", "project/path/sub");
+    Query.Summary chunk = reader.readPackage(Path.of("project/path/sub")).orElseThrow();
+    assertThat(chunk.getRulesMap().keySet()).containsExactly("//project/path/sub:sub");
+    assertThat(chunk.getSourceFilesMap().keySet()).containsExactly("//project/path/sub:BUILD");
+    Truth8.assertThat(reader.readPackage(Path.of("project/other"))).isEmpty();
+  }
+
+  @Test
+  public void testVersionBump() throws IOException {
+    PostQuerySyncData original =
+        PostQuerySyncData.EMPTY.toBuilder()
+            .setQuerySummary(QuerySummaryTestUtil.createProtoForPackages("//project/path:path"))
+            .build();
+    Path file = temporaryFolder.newFile().toPath();
+    ChunkedSnapshotWriter.write(new SnapshotSerializer(-1).visit(original).buildProto(), file);
+
+    Truth8.assertThat(ChunkedSnapshotReader.open(file).readSyncData(NOOP_CONTEXT)).isEmpty();
+  }
+
+  @Test
+  public void testTruncatedChunks() throws IOException {
+    PostQuerySyncData original =
+        PostQuerySyncData.EMPTY.toBuilder()
+            .setQuerySummary(
+                QuerySummaryTestUtil.createProtoForPackages(
+                    "//project/path:path", "//project/path/sub:sub"))
+            .build();
+    Path file = temporaryFolder.newFile().toPath();
+    ChunkedSnapshotWriter.write(original, file);
+    byte[] contents = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(contents, contents.length - 1));
+
+    ChunkedSnapshotReader reader = ChunkedSnapshotReader.open(file);
+    assertThrows(IOException.class, () -> reader.readSyncData(NOOP_CONTEXT));
+    assertThrows(IOException.class, () -> reader.readPackage(Path.of("project/path/sub")));
+  }
+
+  @Test
+  public void testNotChunkedSnapshot() throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+    assertThrows(IOException.class, () -> ChunkedSnapshotReader.open(file));
+  }
+}
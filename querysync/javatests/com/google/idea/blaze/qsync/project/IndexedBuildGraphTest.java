@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.qsync.project;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.common.Label;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IndexedBuildGraphTest {
+
+  private static final Label A = Label.of("//a:a");
+  private static final Label B = Label.of("//b:b");
+  private static final Label C = Label.of("//c:c");
+  private static final Label D = Label.of("//d:d");
+  private static final Label EXT1 = Label.of("@ext//x:one");
+  private static final Label EXT2 = Label.of("@ext//x:two");
+
+  private static ProjectTarget target(Label label, Label... deps) {
+    ProjectTarget.Builder builder = ProjectTarget.builder().label(label).kind("java_library");
+    builder.depsBuilder().addAll(Arrays.asList(deps));
+    return builder.build();
+  }
+
+  private static ImmutableMap<Label, ProjectTarget> targetMap(ProjectTarget... targets) {
+    ImmutableMap.Builder<Label, ProjectTarget> map = ImmutableMap.builder();
+    for (ProjectTarget t : targets) {
+      map.put(t.label(), t);
+    }
+    return map.buildOrThrow();
+  }
+
+  @Test
+  public void getTransitiveExternalDependencies_followsProjectTargets() {
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(
+            targetMap(target(A, B, EXT1), target(B, EXT2), target(C, EXT1)),
+            ImmutableSet.of(EXT1, EXT2));
+
+    assertThat(graph.getTransitiveExternalDependencies(A)).containsExactly(EXT1, EXT2);
+    assertThat(graph.getTransitiveExternalDependencies(B)).containsExactly(EXT2);
+    assertThat(graph.getTransitiveExternalDependencies(C)).containsExactly(EXT1);
+    assertThat(graph.getTransitiveExternalDependencies(EXT1)).containsExactly(EXT1);
+    assertThat(graph.getTransitiveExternalDependencies(D)).isEmpty();
+  }
+
+  @Test
+  public void getTransitiveExternalDependencies_cycle() {
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(
+            targetMap(target(A, B), target(B, A, EXT1)), ImmutableSet.of(EXT1));
+
+    assertThat(graph.getTransitiveExternalDependencies(A)).containsExactly(EXT1);
+  }
+
+  @Test
+  public void getTransitiveExternalDependencies_includesProjectTargetsToBuild() {
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(targetMap(target(A, B), target(B)), ImmutableSet.of(B));
+
+    assertThat(graph.getTransitiveExternalDependencies(A)).containsExactly(B);
+  }
+
+  @Test
+  public void getTransitiveReverseDeps() {
+    ProjectTarget.Builder withRuntimeDep = ProjectTarget.builder().label(D).kind("java_binary");
+    withRuntimeDep.runtimeDepsBuilder().add(C);
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(
+            targetMap(target(A, B), target(B, EXT1), target(C, A), withRuntimeDep.build()),
+            ImmutableSet.of(EXT1));
+
+    assertThat(graph.getTransitiveReverseDeps(ImmutableList.of(B)))
+        .containsExactly(A, B, C, D);
+    assertThat(graph.getTransitiveReverseDeps(ImmutableList.of(EXT1)))
+        .containsExactly(A, B, C, D);
+    assertThat(graph.getTransitiveReverseDeps(ImmutableList.of(C))).containsExactly(C, D);
+    assertThat(graph.getDirectReverseDeps(B)).containsExactly(A);
+    assertThat(graph.getDirectReverseDeps(D)).isEmpty();
+  }
+
+  @Test
+  public void idOf_labelOf() {
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(targetMap(target(B, EXT1), target(A)), ImmutableSet.of(EXT1));
+
+    assertThat(graph.size()).isEqualTo(3);
+    for (Label label : ImmutableList.of(A, B, EXT1)) {
+      assertThat(graph.labelOf(graph.idOf(label))).isEqualTo(label);
+    }
+    assertThat(graph.idOf(C)).isEqualTo(-1);
+  }
+
+  @Test
+  public void getTransitiveExternalDependencies_batch_matchesSingle() {
+    IndexedBuildGraph graph =
+        IndexedBuildGraph.create(
+            targetMap(
+                target(A, B, EXT1),
+                target(B, C),
+                target(C, B, EXT2),
+                target(D, EXT1)),
+            ImmutableSet.of(EXT1, EXT2, D));
+
+    ImmutableList<Label> targets = ImmutableList.of(A, B, C, D, EXT1, Label.of("//z:z"));
+    ImmutableMap<Label, ImmutableSet<Label>> batch =
+        graph.getTransitiveExternalDependencies(targets);
+
+    assertThat(batch.keySet()).containsExactlyElementsIn(targets);
+    for (Label target : targets) {
+      assertThat(batch.get(target))
+          .containsExactlyElementsIn(graph.getTransitiveExternalDependencies(target));
+    }
+    assertThat(batch.get(A)).containsExactly(EXT1, EXT2);
+    assertThat(batch.get(C)).containsExactly(EXT2);
+    assertThat(batch.get(D)).containsExactly(D, EXT1);
+  }
+}
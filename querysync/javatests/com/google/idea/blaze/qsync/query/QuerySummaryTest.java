@@ -22,7 +22,11 @@ import com.google.common.truth.Truth8;
 import com.google.idea.blaze.common.Label;
 import com.google.idea.blaze.qsync.query.Query.SourceFile;
 import com.google.idea.blaze.qsync.testdata.TestData;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -159,4 +163,46 @@ public class QuerySummaryTest {
     assertThat(qs.getPackages().size()).isEqualTo(1);
     assertThat(qs.getPackages().asPathSet()).containsExactly(TestData.ROOT.resolve("empty"));
   }
+
+  @Test
+  public void testCreateStreaming_matchesCreate() throws IOException {
+    for (TestData testData : TestData.values()) {
+      File queryOutput = testData.getQueryOutputPath().toFile();
+      QuerySummary streamed;
+      try (InputStream in = new BufferedInputStream(new FileInputStream(queryOutput))) {
+        streamed = QuerySummary.createStreaming(in, rule -> true);
+      }
+      assertThat(streamed.proto()).isEqualTo(QuerySummary.create(queryOutput).proto());
+    }
+  }
+
+  @Test
+  public void testCreateStreaming_dropsUnneededSourcesAndDeps() throws IOException {
+    QuerySummary qs;
+    try (InputStream in =
+        new BufferedInputStream(
+            new FileInputStream(TestData.CC_LIBRARY_QUERY.getQueryOutputPath().toFile()))) {
+      qs = QuerySummary.createStreaming(in, rule -> !rule.getRuleClass().equals("cc_library"));
+    }
+    Label cc = Label.of(TestData.ROOT_PACKAGE + "/cc:cc");
+    assertThat(qs.getRulesMap().keySet()).containsExactly(cc);
+    Query.Rule rule = qs.getRulesMap().get(cc);
+    assertThat(rule.getRuleClass()).isEqualTo("cc_library");
+    assertThat(rule.getSourcesCount()).isEqualTo(0);
+    assertThat(rule.getHdrsCount()).isEqualTo(0);
+    assertThat(rule.getCoptsCount()).isEqualTo(0);
+    assertThat(qs.getSourceFilesMap().keySet())
+        .containsExactly(
+            new Label(TestData.ROOT_PACKAGE + "/cc:TestClass.cc"),
+            new Label(TestData.ROOT_PACKAGE + "/cc:TestClass.h"),
+            new Label(TestData.ROOT_PACKAGE + "/cc:BUILD"));
+  }
+
+  @Test
+  public void testPackageOf() {
+    assertThat(QuerySummary.packageOf("//my/build/package:rule")).isEqualTo("my/build/package");
+    assertThat(QuerySummary.packageOf("//:rule")).isEmpty();
+    assertThat(QuerySummary.packageOf("@repo//some/package:file.java")).isEqualTo("some/package");
+    assertThat(QuerySummary.packageOf("//my/package:sub/dir/file.java")).isEqualTo("my/package");
+  }
 }
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Lists the entries of a zip file from its central directory, without reading the entries
+ * themselves.
+ *
+ * <p>Only the end of central directory record and the central directory are read, each with a
+ * single bulk read, and entries are visited through a single reusable {@link Cursor}, so that
+ * listing the names and CRCs of a jar doesn't allocate per entry as {@link java.util.zip.ZipFile}
+ * does. The contents of an entry are only read and inflated when {@link Cursor#openStream()} is
+ * called. Nothing is memory mapped, as a mapped file can't be deleted or replaced on Windows until
+ * the mapping is garbage collected.
+ *
+ * <p>Zip64 archives are supported. Archives split across multiple disks, and encrypted entries,
+ * are not.
+ */
+public final class ZipCentralDirectory implements Closeable {
+
+  /** The compression method of entries which are stored uncompressed. */
+  public static final int STORED = 0;
+
+  /** The compression method of entries compressed with deflate. */
+  public static final int DEFLATED = 8;
+
+  private static final int EOCD_SIGNATURE = 0x06054b50;
+  private static final int EOCD_SIZE = 22;
+  private static final int MAX_COMMENT_LENGTH = 0xffff;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_EOCD_SIZE = 56;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final int HEADER_SIGNATURE = 0x02014b50;
+  private static final int HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final long UNSIGNED_INT_MAX = 0xffffffffL;
+  private static final int INFLATER_BUFFER_SIZE = 8192;
+
+  private final Path file;
+  private final FileChannel channel;
+  private final ByteBuffer directory;
+  private final int entryCount;
+
+  private ZipCentralDirectory(
+      Path file, FileChannel channel, ByteBuffer directory, int entryCount) {
+    this.file = file;
+    this.channel = channel;
+    this.directory = directory;
+    this.entryCount = entryCount;
+  }
+
+  /** Opens {@code file} and reads its central directory into memory. */
+  public static ZipCentralDirectory open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return read(file, channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static ZipCentralDirectory read(Path file, FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    int tailSize = (int) Math.min(fileSize, ZIP64_LOCATOR_SIZE + EOCD_SIZE + MAX_COMMENT_LENGTH);
+    ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+
+    // The record is followed by a comment of up to 64k, so search backwards from the end.
+    int eocd = tailSize - EOCD_SIZE;
+    while (eocd >= 0
+        && (tail.getInt(eocd) != EOCD_SIGNATURE
+            || eocd + EOCD_SIZE + unsignedShort(tail, eocd + 20) > tailSize)) {
+      eocd--;
+    }
+    if (eocd < 0) {
+      throw new ZipException("No end of central directory record found in " + file);
+    }
+    long disk = unsignedShort(tail, eocd + 4);
+    long directoryDisk = unsignedShort(tail, eocd + 6);
+    long entries = unsignedShort(tail, eocd + 10);
+    long directorySize = unsignedInt(tail, eocd + 12);
+    long directoryOffset = unsignedInt(tail, eocd + 16);
+
+    int locator = eocd - ZIP64_LOCATOR_SIZE;
+    if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+      long recordOffset = tail.getLong(locator + 8);
+      if (recordOffset < 0 || recordOffset > fileSize - ZIP64_EOCD_SIZE) {
+        throw new ZipException("Invalid zip64 end of central directory offset in " + file);
+      }
+      ByteBuffer record = read(channel, recordOffset, ZIP64_EOCD_SIZE);
+      if (record.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+        throw new ZipException("No zip64 end of central directory record found in " + file);
+      }
+      disk = unsignedInt(record, 16);
+      directoryDisk = unsignedInt(record, 20);
+      entries = record.getLong(32);
+      directorySize = record.getLong(40);
+      directoryOffset = record.getLong(48);
+    }
+
+    if (disk != 0 || directoryDisk != 0) {
+      throw new ZipException("Multi-disk zip files are not supported: " + file);
+    }
+    if (directoryOffset < 0
+        || directorySize < 0
+        || directorySize > Integer.MAX_VALUE
+        || directoryOffset > fileSize - directorySize) {
+      throw new ZipException("Invalid central directory bounds in " + file);
+    }
+    if (entries < 0 || entries > directorySize / HEADER_SIZE) {
+      throw new ZipException("Invalid entry count " + entries + " in " + file);
+    }
+    return new ZipCentralDirectory(
+        file, channel, read(channel, directoryOffset, (int) directorySize), (int) entries);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /** Returns the number of entries in the zip file. */
+  public int size() {
+    return entryCount;
+  }
+
+  /**
+   * Returns a new cursor positioned before the first entry. Cursors are not thread safe, but any
+   * number may be used concurrently.
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Closes the zip file. Its entries can still be listed, but streams opened from it can no longer
+   * be read.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+
+  /**
+   * Visits the entries of the central directory in order. The accessors describe the entry the
+   * cursor is positioned on, and must only be called after {@link #next()} returns true.
+   */
+  public final class Cursor {
+    private int index = -1;
+    private int header;
+    private int nextHeader;
+    private int nameLength;
+    private long compressedSize;
+    private long size;
+    private long localHeaderOffset;
+
+    private Cursor() {}
+
+    /** Moves to the next entry, returning false once there are no more. */
+    public boolean next() throws IOException {
+      if (index + 1 >= entryCount) {
+        return false;
+      }
+      header = nextHeader;
+      if (header > directory.limit() - HEADER_SIZE
+          || directory.getInt(header) != HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header " + (index + 1) + " in " + file);
+      }
+      nameLength = unsignedShort(directory, header + 28);
+      int extraLength = unsignedShort(directory, header + 30);
+      int commentLength = unsignedShort(directory, header + 32);
+      nextHeader = header + HEADER_SIZE + nameLength + extraLength + commentLength;
+      if (nextHeader > directory.limit()) {
+        throw new ZipException(
+            "Truncated central directory header " + (index + 1) + " in " + file);
+      }
+      compressedSize = unsignedInt(directory, header + 20);
+      size = unsignedInt(directory, header + 24);
+      localHeaderOffset = unsignedInt(directory, header + 42);
+      if (compressedSize == UNSIGNED_INT_MAX
+          || size == UNSIGNED_INT_MAX
+          || localHeaderOffset == UNSIGNED_INT_MAX) {
+        readZip64Extra(header + HEADER_SIZE + nameLength, extraLength);
+      }
+      index++;
+      return true;
+    }
+
+    /** Reads the 64-bit values of fields that are saturated in the header itself. */
+    private void readZip64Extra(int start, int length) throws ZipException {
+      int end = start + length;
+      for (int field = start; field <= end - 4; ) {
+        int fieldId = unsignedShort(directory, field);
+        int fieldEnd = field + 4 + unsignedShort(directory, field + 2);
+        if (fieldEnd > end) {
+          break;
+        }
+        if (fieldId == ZIP64_EXTRA_ID) {
+          int value = field + 4;
+          if (size == UNSIGNED_INT_MAX) {
+            size = readZip64Value(value, fieldEnd);
+            value += Long.BYTES;
+          }
+          if (compressedSize == UNSIGNED_INT_MAX) {
+            compressedSize = readZip64Value(value, fieldEnd);
+            value += Long.BYTES;
+          }
+          if (localHeaderOffset == UNSIGNED_INT_MAX) {
+            localHeaderOffset = readZip64Value(value, fieldEnd);
+          }
+          return;
+        }
+        field = fieldEnd;
+      }
+    }
+
+    private long readZip64Value(int position, int fieldEnd) throws ZipException {
+      long value = position <= fieldEnd - Long.BYTES ? directory.getLong(position) : -1;
+      if (value < 0) {
+        throw new ZipException("Invalid zip64 extra field for entry " + name() + " in " + file);
+      }
+      return value;
+    }
+
+    /** Returns the index of the entry within the central directory. */
+    public int index() {
+      return index;
+    }
+
+    /** Returns the name of the entry. Unlike the other accessors, this allocates a string. */
+    public String name() {
+      byte[] name = new byte[nameLength];
+      directory.get(header + HEADER_SIZE, name);
+      return new String(name, UTF_8);
+    }
+
+    /** Returns whether the name of the entry ends with {@code suffix}, without decoding it. */
+    public boolean nameEndsWith(String suffix) {
+      int start = nameLength - suffix.length();
+      if (start < 0) {
+        return false;
+      }
+      int name = header + HEADER_SIZE + start;
+      for (int i = 0; i < suffix.length(); i++) {
+        char c = suffix.charAt(i);
+        if (c >= 0x80) {
+          // Non-ASCII characters don't map to single bytes.
+          return name().endsWith(suffix);
+        }
+        if (directory.get(name + i) != c) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    public boolean isDirectory() {
+      return nameLength > 0 && directory.get(header + HEADER_SIZE + nameLength - 1) == '/';
+    }
+
+    /** Returns the CRC-32 of the uncompressed contents of the entry. */
+    public long crc() {
+      return unsignedInt(directory, header + 16);
+    }
+
+    /** Returns the compression method, such as {@link #STORED} or {@link #DEFLATED}. */
+    public int method() {
+      return unsignedShort(directory, header + 10);
+    }
+
+    public long compressedSize() {
+      return compressedSize;
+    }
+
+    /** Returns the uncompressed size of the entry. */
+    public long size() {
+      return size;
+    }
+
+    /** Returns the offset of the local header of the entry from the start of the file. */
+    public long localHeaderOffset() {
+      return localHeaderOffset;
+    }
+
+    /**
+     * Returns a stream of the contents of the entry, inflated if compressed. The stream reads from
+     * the zip file, so must be read before the zip file is closed.
+     */
+    public InputStream openStream() throws IOException {
+      if ((unsignedShort(directory, header + 8) & 1) != 0) {
+        throw new ZipException("Encrypted entry " + name() + " in " + file + " is not supported");
+      }
+      int method = method();
+      if (method != STORED && method != DEFLATED) {
+        throw new ZipException(
+            "Unsupported compression method " + method + " for " + name() + " in " + file);
+      }
+      ByteBuffer localHeader =
+          ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (localHeader.hasRemaining()) {
+        if (channel.read(localHeader, localHeaderOffset + localHeader.position()) < 0) {
+          throw new EOFException("Truncated local header for " + name() + " in " + file);
+        }
+      }
+      if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid local header for " + name() + " in " + file);
+      }
+      // The local name and extra field may differ in length from those in the central directory.
+      long dataOffset =
+          localHeaderOffset
+              + LOCAL_HEADER_SIZE
+              + unsignedShort(localHeader, 26)
+              + unsignedShort(localHeader, 28);
+      if (dataOffset > channel.size() - compressedSize) {
+        throw new ZipException("Invalid bounds for " + name() + " in " + file);
+      }
+      InputStream contents = new ChannelInputStream(channel, dataOffset, compressedSize);
+      return method == STORED ? contents : new EntryInflaterInputStream(contents);
+    }
+
+    @Override
+    public String toString() {
+      return index < 0 ? "before the first entry of " + file : name() + " in " + file;
+    }
+  }
+
+  /** Reads {@code size} bytes from {@code position} into a new heap buffer. */
+  private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    return buffer.rewind();
+  }
+
+  private static int unsignedShort(ByteBuffer buffer, int index) {
+    return buffer.getShort(index) & 0xffff;
+  }
+
+  private static long unsignedInt(ByteBuffer buffer, int index) {
+    return buffer.getInt(index) & UNSIGNED_INT_MAX;
+  }
+
+  /**
+   * Inflates raw deflate data, which may need an extra byte of input past the end of the data to
+   * finish, as {@link java.util.zip.ZipFile} provides.
+   */
+  private static final class EntryInflaterInputStream extends InflaterInputStream {
+    private boolean eof;
+    private boolean closed;
+
+    EntryInflaterInputStream(InputStream in) {
+      super(in, new Inflater(/* nowrap= */ true), INFLATER_BUFFER_SIZE);
+    }
+
+    @Override
+    protected void fill() throws IOException {
+      if (eof) {
+        throw new EOFException("Unexpected end of deflated entry");
+      }
+      len = in.read(buf, 0, buf.length);
+      if (len == -1) {
+        buf[0] = 0;
+        len = 1;
+        eof = true;
+      }
+      inf.setInput(buf, 0, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        // The inflater was not created by the superclass, so it won't release it.
+        inf.end();
+        super.close();
+      }
+    }
+  }
+
+  /** Reads a range of a file, without changing the position of its channel. */
+  private static final class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    ChannelInputStream(FileChannel channel, long position, long size) {
+      this.channel = channel;
+      this.position = position;
+      this.end = position + size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (position >= end) {
+        return -1;
+      }
+      int read =
+          channel.read(ByteBuffer.wrap(bytes, off, (int) Math.min(len, end - position)), position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+      position += read;
+      return read;
+    }
+
+    @Override
+    public long skip(long n) {
+      long skipped = Math.max(0, Math.min(n, end - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(end - position, Integer.MAX_VALUE);
+    }
+  }
+}
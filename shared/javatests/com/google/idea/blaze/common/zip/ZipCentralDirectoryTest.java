@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.common.zip;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ZipCentralDirectoryTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void listsEntriesAsZipFileDoes() throws IOException {
+    Path zip = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Map<String, String> contents = new LinkedHashMap<>();
+    contents.put("com/", null);
+    contents.put("com/example/A.class", "compressed " + Strings.repeat("a", 1000));
+    contents.put("com/example/stored.txt", "stored");
+    contents.put("com/example/é.txt", "");
+    writeZip(zip, contents, "a comment");
+
+    List<String> expected = new ArrayList<>();
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        expected.add(
+            String.format(
+                "%s %s %d %d %d %d",
+                entry.getName(),
+                entry.isDirectory(),
+                entry.getCrc(),
+                entry.getMethod(),
+                entry.getCompressedSize(),
+                entry.getSize()));
+      }
+    }
+
+    List<String> actual = new ArrayList<>();
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(zip)) {
+      assertThat(directory.size()).isEqualTo(4);
+      ZipCentralDirectory.Cursor cursor = directory.cursor();
+      while (cursor.next()) {
+        actual.add(
+            String.format(
+                "%s %s %d %d %d %d",
+                cursor.name(),
+                cursor.isDirectory(),
+                cursor.crc(),
+                cursor.method(),
+                cursor.compressedSize(),
+                cursor.size()));
+      }
+    }
+    assertThat(actual).containsExactlyElementsIn(expected).inOrder();
+  }
+
+  @Test
+  public void openStream_readsStoredAndDeflatedEntries() throws IOException {
+    Path zip = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Map<String, String> contents = new LinkedHashMap<>();
+    contents.put("compressed.txt", "compressed " + Strings.repeat("abc", 10000));
+    contents.put("stored.txt", "stored");
+    writeZip(zip, contents, null);
+
+    Map<String, String> read = new LinkedHashMap<>();
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(zip)) {
+      ZipCentralDirectory.Cursor cursor = directory.cursor();
+      while (cursor.next()) {
+        try (InputStream in = cursor.openStream()) {
+          read.put(cursor.name(), new String(ByteStreams.toByteArray(in), UTF_8));
+        }
+      }
+    }
+    assertThat(read).containsExactlyEntriesIn(contents).inOrder();
+  }
+
+  @Test
+  public void nameEndsWith() throws IOException {
+    Path zip = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    Map<String, String> contents = new LinkedHashMap<>();
+    contents.put("Foo.java", "");
+    contents.put("café.kt", "");
+    writeZip(zip, contents, null);
+
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(zip)) {
+      ZipCentralDirectory.Cursor cursor = directory.cursor();
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.nameEndsWith(".java")).isTrue();
+      assertThat(cursor.nameEndsWith(".kt")).isFalse();
+      assertThat(cursor.nameEndsWith("LongerThanTheName.java")).isFalse();
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.nameEndsWith(".kt")).isTrue();
+      assertThat(cursor.nameEndsWith("é.kt")).isTrue();
+      assertThat(cursor.nameEndsWith("e.kt")).isFalse();
+      assertThat(cursor.next()).isFalse();
+    }
+  }
+
+  @Test
+  public void readsZip64Directory() throws IOException {
+    // More entries than fit in the end of central directory record, so zip64 records are written.
+    Path zip = temporaryFolder.getRoot().toPath().resolve("test.jar");
+    int count = 0x10000 + 10;
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      for (int i = 0; i < count; i++) {
+        out.putNextEntry(new ZipEntry("e" + i));
+        out.write(Integer.toString(i).getBytes(UTF_8));
+        out.closeEntry();
+      }
+    }
+
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(zip)) {
+      assertThat(directory.size()).isEqualTo(count);
+      ZipCentralDirectory.Cursor cursor = directory.cursor();
+      int read = 0;
+      while (cursor.next()) {
+        if (cursor.index() == count - 1) {
+          assertThat(cursor.name()).isEqualTo("e" + (count - 1));
+          try (InputStream in = cursor.openStream()) {
+            assertThat(new String(ByteStreams.toByteArray(in), UTF_8))
+                .isEqualTo(Integer.toString(count - 1));
+          }
+        }
+        read++;
+      }
+      assertThat(read).isEqualTo(count);
+    }
+  }
+
+  @Test
+  public void emptyZip() throws IOException {
+    Path zip = temporaryFolder.getRoot().toPath().resolve("empty.jar");
+    writeZip(zip, new LinkedHashMap<>(), null);
+
+    try (ZipCentralDirectory directory = ZipCentralDirectory.open(zip)) {
+      assertThat(directory.size()).isEqualTo(0);
+      assertThat(directory.cursor().next()).isFalse();
+    }
+  }
+
+  @Test
+  public void notAZip_throws() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("notazip.jar");
+    Files.write(file, Strings.repeat("not a zip file", 100).getBytes(UTF_8));
+
+    assertThrows(ZipException.class, () -> ZipCentralDirectory.open(file));
+  }
+
+  /**
+   * Writes a zip with the given entries, storing those whose names contain "stored" and
+   * deflating the others. Entries with null contents are directories.
+   */
+  private static void writeZip(Path zip, Map<String, String> contents, String comment)
+      throws IOException {
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      if (comment != null) {
+        out.setComment(comment);
+      }
+      for (Map.Entry<String, String> file : contents.entrySet()) {
+        ZipEntry entry = new ZipEntry(file.getKey());
+        byte[] bytes = file.getValue() == null ? new byte[0] : file.getValue().getBytes(UTF_8);
+        if (file.getKey().contains("stored")) {
+          CRC32 crc = new CRC32();
+          crc.update(bytes);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(bytes.length);
+          entry.setCompressedSize(bytes.length);
+          entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+      }
+    }
+  }
+}